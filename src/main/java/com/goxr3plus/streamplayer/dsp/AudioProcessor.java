@@ -0,0 +1,38 @@
+package com.goxr3plus.streamplayer.dsp;
+
+/**
+ * A stage of the software processing chain which {@link com.goxr3plus.streamplayer.stream.StreamPlayer}
+ * runs between the decoder and the line.
+ * <p>
+ * Samples are interleaved floats in the range -1.0 ... 1.0, processed in place. {@link #process(float[], int, int)}
+ * runs on the playback thread for every buffer, so it must not block nor allocate. Setters called from other
+ * threads should only publish new values which the next call of {@link #process(float[], int, int)} picks up.
+ *
+ * @author GOXR3PLUS
+ */
+public interface AudioProcessor {
+
+	/**
+	 * Called before the first buffer, and whenever the format of the audio changes.
+	 *
+	 * @param sampleRate the sample rate in Hz
+	 * @param channels   the number of interleaved channels
+	 */
+	default void configure(float sampleRate, int channels) {
+	}
+
+	/**
+	 * Process a buffer in place.
+	 *
+	 * @param samples  interleaved samples, -1.0 ... 1.0
+	 * @param frames   the number of valid frames in samples
+	 * @param channels the number of interleaved channels
+	 */
+	void process(float[] samples, int frames, int channels);
+
+	/**
+	 * Forget any state which depends on previous buffers, for example after a seek.
+	 */
+	default void reset() {
+	}
+}
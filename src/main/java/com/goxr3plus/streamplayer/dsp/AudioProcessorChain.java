@@ -0,0 +1,84 @@
+package com.goxr3plus.streamplayer.dsp;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Ordered list of {@link AudioProcessor}s.
+ * <p>
+ * Processors can be added and removed from any thread while the chain is running; the playback thread
+ * always iterates over an immutable snapshot, so {@link #process(float[], int, int)} neither locks nor allocates.
+ *
+ * @author GOXR3PLUS
+ */
+public final class AudioProcessorChain implements AudioProcessor {
+
+	private static final AudioProcessor[] EMPTY = new AudioProcessor[0];
+
+	private volatile AudioProcessor[] processors = EMPTY;
+
+	private float sampleRate = -1;
+	private int channels = -1;
+
+	/**
+	 * Append a processor at the end of the chain. It is configured with the current format first.
+	 *
+	 * @param processor the processor
+	 */
+	public synchronized void add(final AudioProcessor processor) {
+		Objects.requireNonNull(processor, "null is not allowed as AudioProcessor value.");
+		if (channels > 0)
+			processor.configure(sampleRate, channels);
+		final AudioProcessor[] copy = Arrays.copyOf(processors, processors.length + 1);
+		copy[copy.length - 1] = processor;
+		processors = copy;
+	}
+
+	/**
+	 * Remove a processor from the chain.
+	 *
+	 * @param processor the processor
+	 * @return true if the processor was in the chain
+	 */
+	public synchronized boolean remove(final AudioProcessor processor) {
+		final AudioProcessor[] current = processors;
+		for (int i = 0; i < current.length; i++)
+			if (current[i] == processor) {
+				final AudioProcessor[] copy = new AudioProcessor[current.length - 1];
+				System.arraycopy(current, 0, copy, 0, i);
+				System.arraycopy(current, i + 1, copy, i, copy.length - i);
+				processors = copy;
+				return true;
+			}
+		return false;
+	}
+
+	/**
+	 * @return true if there is no processor in the chain
+	 */
+	public boolean isEmpty() {
+		return processors.length == 0;
+	}
+
+	@Override
+	public synchronized void configure(final float sampleRate, final int channels) {
+		this.sampleRate = sampleRate;
+		this.channels = channels;
+		for (final AudioProcessor processor : processors)
+			processor.configure(sampleRate, channels);
+	}
+
+	@Override
+	public void process(final float[] samples, final int frames, final int channels) {
+		final AudioProcessor[] current = processors;
+		for (int i = 0; i < current.length; i++)
+			current[i].process(samples, frames, channels);
+	}
+
+	@Override
+	public void reset() {
+		final AudioProcessor[] current = processors;
+		for (int i = 0; i < current.length; i++)
+			current[i].reset();
+	}
+}
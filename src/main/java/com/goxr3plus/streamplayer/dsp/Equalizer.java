@@ -0,0 +1,289 @@
+package com.goxr3plus.streamplayer.dsp;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Software N-band equalizer made of peaking biquad filters (RBJ audio EQ cookbook), one per band.
+ * <p>
+ * Band gains can be changed from any thread without locking: the new gains are published with a version
+ * counter which the processing thread checks once per buffer. The processing thread then glides from the
+ * applied gains to the new ones with a short time constant, recomputing the coefficients of the bands that
+ * move, so changes don't click. Bands at 0 dB are skipped, a flat equalizer costs nothing.
+ *
+ * @author GOXR3PLUS
+ */
+public final class Equalizer implements AudioProcessor {
+
+	/** Center frequencies of the classic 10-band octave equalizer, in Hz */
+	public static final float[] OCTAVE_BANDS = { 31.25f, 62.5f, 125, 250, 500, 1000, 2000, 4000, 8000, 16000 };
+
+	/** The highest boost or cut of a band, in dB */
+	public static final float MAXIMUM_GAIN_DB = 24f;
+
+	/** Time constant of the glide towards new gains, in seconds */
+	private static final double SMOOTHING_SECONDS = 0.02;
+
+	/** Below this difference, in dB, a gliding band snaps to its target */
+	private static final float SNAP_DB = 0.01f;
+
+	/** Filter states smaller than this are flushed to zero, to avoid denormal numbers */
+	private static final float DENORMAL = 1e-20f;
+
+	private final float[] frequencies;
+	private final double q;
+
+	/** Gains requested by the control threads */
+	private final float[] targetGains;
+	private final AtomicInteger version = new AtomicInteger();
+
+	// ----------Only touched by the processing thread----------
+
+	private int appliedVersion;
+	private boolean gliding;
+	private final float[] currentGains;
+	private final float[] b0;
+	private final float[] b1;
+	private final float[] b2;
+	private final float[] a1;
+	private final float[] a2;
+	private float[] z1 = new float[0];
+	private float[] z2 = new float[0];
+	private float sampleRate = 44100;
+	private int channels;
+
+	/**
+	 * Creates the classic 10-band octave equalizer.
+	 */
+	public Equalizer() {
+		this(OCTAVE_BANDS, Math.sqrt(2));
+	}
+
+	/**
+	 * @param frequencies the center frequency of every band, in Hz
+	 * @param q           the quality factor of every band, higher is narrower
+	 */
+	public Equalizer(final float[] frequencies, final double q) {
+		if (frequencies.length == 0)
+			throw new IllegalArgumentException("An equalizer needs at least one band");
+		if (q <= 0)
+			throw new IllegalArgumentException("Q must be positive: " + q);
+		this.frequencies = frequencies.clone();
+		this.q = q;
+		final int bands = frequencies.length;
+		targetGains = new float[bands];
+		currentGains = new float[bands];
+		b0 = new float[bands];
+		b1 = new float[bands];
+		b2 = new float[bands];
+		a1 = new float[bands];
+		a2 = new float[bands];
+		for (int band = 0; band < bands; band++)
+			computeCoefficients(band);
+	}
+
+	/**
+	 * @return the number of bands
+	 */
+	public int getBandCount() {
+		return frequencies.length;
+	}
+
+	/**
+	 * @param band the band index
+	 * @return the center frequency of the band, in Hz
+	 */
+	public float getBandFrequency(final int band) {
+		return frequencies[band];
+	}
+
+	/**
+	 * Set the gain of one band. Can be called from any thread.
+	 *
+	 * @param band   the band index
+	 * @param gainDb the gain in dB, clamped to +/- {@link #MAXIMUM_GAIN_DB}
+	 */
+	public void setBandGain(final int band, final float gainDb) {
+		targetGains[band] = clamp(gainDb);
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Set the gains of the first bands at once. Can be called from any thread.
+	 *
+	 * @param gainsDb the gains in dB, extra values are ignored
+	 */
+	public void setBandGains(final float[] gainsDb) {
+		final int count = Math.min(gainsDb.length, targetGains.length);
+		for (int band = 0; band < count; band++)
+			targetGains[band] = clamp(gainsDb[band]);
+		version.incrementAndGet();
+	}
+
+	/**
+	 * @param band the band index
+	 * @return the requested gain of the band, in dB
+	 */
+	public float getBandGain(final int band) {
+		return targetGains[band];
+	}
+
+	/**
+	 * Set every band to 0 dB.
+	 */
+	public void flatten() {
+		Arrays.fill(targetGains, 0f);
+		version.incrementAndGet();
+	}
+
+	/**
+	 * @return true if processing would leave the audio untouched, so it can be skipped
+	 */
+	public boolean isFlat() {
+		if (gliding || appliedVersion != version.get())
+			return false;
+		for (final float gain : currentGains)
+			if (gain != 0f)
+				return false;
+		return true;
+	}
+
+	@Override
+	public void configure(final float sampleRate, final int channels) {
+		if (sampleRate > 0)
+			this.sampleRate = sampleRate;
+		if (channels != this.channels) {
+			this.channels = channels;
+			z1 = new float[frequencies.length * channels];
+			z2 = new float[frequencies.length * channels];
+		}
+		for (int band = 0; band < frequencies.length; band++)
+			computeCoefficients(band);
+	}
+
+	@Override
+	public void process(final float[] samples, final int frames, final int channels) {
+		if (channels != this.channels)
+			configure(sampleRate, channels);
+
+		final int current = version.get();
+		if (current != appliedVersion) {
+			appliedVersion = current;
+			gliding = true;
+		}
+		if (gliding)
+			glide(frames);
+
+		final int length = frames * channels;
+		for (int band = 0; band < frequencies.length; band++) {
+			if (currentGains[band] == 0f)
+				continue;
+
+			final float cb0 = b0[band], cb1 = b1[band], cb2 = b2[band], ca1 = a1[band], ca2 = a2[band];
+			if (channels == 2) {
+				processStereo(samples, length, band * 2, cb0, cb1, cb2, ca1, ca2);
+				continue;
+			}
+			for (int c = 0; c < channels; c++) {
+				final int state = band * channels + c;
+				float s1 = z1[state];
+				float s2 = z2[state];
+				// Transposed direct form II
+				for (int i = c; i < length; i += channels) {
+					final float x = samples[i];
+					final float y = cb0 * x + s1;
+					s1 = cb1 * x - ca1 * y + s2;
+					s2 = cb2 * x - ca2 * y;
+					samples[i] = y;
+				}
+				z1[state] = Math.abs(s1) < DENORMAL ? 0f : s1;
+				z2[state] = Math.abs(s2) < DENORMAL ? 0f : s2;
+			}
+		}
+	}
+
+	/**
+	 * Both channels in the same loop, so that the two independent filters run in parallel.
+	 */
+	private void processStereo(final float[] samples, final int length, final int state, final float cb0,
+			final float cb1, final float cb2, final float ca1, final float ca2) {
+		float l1 = z1[state], l2 = z2[state];
+		float r1 = z1[state + 1], r2 = z2[state + 1];
+		for (int i = 0; i < length; i += 2) {
+			final float xl = samples[i];
+			final float xr = samples[i + 1];
+			final float yl = cb0 * xl + l1;
+			final float yr = cb0 * xr + r1;
+			l1 = cb1 * xl - ca1 * yl + l2;
+			r1 = cb1 * xr - ca1 * yr + r2;
+			l2 = cb2 * xl - ca2 * yl;
+			r2 = cb2 * xr - ca2 * yr;
+			samples[i] = yl;
+			samples[i + 1] = yr;
+		}
+		z1[state] = Math.abs(l1) < DENORMAL ? 0f : l1;
+		z2[state] = Math.abs(l2) < DENORMAL ? 0f : l2;
+		z1[state + 1] = Math.abs(r1) < DENORMAL ? 0f : r1;
+		z2[state + 1] = Math.abs(r2) < DENORMAL ? 0f : r2;
+	}
+
+	@Override
+	public void reset() {
+		Arrays.fill(z1, 0f);
+		Arrays.fill(z2, 0f);
+	}
+
+	/**
+	 * Move the applied gains towards the requested ones, by the time span of one buffer.
+	 */
+	private void glide(final int frames) {
+		final float amount = (float) (1 - Math.exp(-frames / (sampleRate * SMOOTHING_SECONDS)));
+		boolean moving = false;
+		for (int band = 0; band < frequencies.length; band++) {
+			final float target = targetGains[band];
+			final float gain = currentGains[band];
+			if (gain == target)
+				continue;
+
+			float next = gain + (target - gain) * amount;
+			if (Math.abs(target - next) < SNAP_DB)
+				next = target;
+			else
+				moving = true;
+
+			// A band that becomes active starts from a clean state
+			if (gain == 0f) {
+				for (int c = 0; c < channels; c++) {
+					z1[band * channels + c] = 0f;
+					z2[band * channels + c] = 0f;
+				}
+			}
+			currentGains[band] = next;
+			computeCoefficients(band);
+		}
+		gliding = moving;
+	}
+
+	/**
+	 * Peaking EQ coefficients, normalized by a0.
+	 */
+	private void computeCoefficients(final int band) {
+		// Bands above the Nyquist frequency have no effect
+		final double frequency = Math.min(frequencies[band], sampleRate * 0.45);
+		final double a = Math.pow(10, currentGains[band] / 40.0);
+		final double w0 = 2 * Math.PI * frequency / sampleRate;
+		final double alpha = Math.sin(w0) / (2 * q);
+		final double cos = Math.cos(w0);
+		final double a0 = 1 + alpha / a;
+
+		b0[band] = (float) ((1 + alpha * a) / a0);
+		b1[band] = (float) (-2 * cos / a0);
+		b2[band] = (float) ((1 - alpha * a) / a0);
+		a1[band] = (float) (-2 * cos / a0);
+		a2[band] = (float) ((1 - alpha / a) / a0);
+	}
+
+	private static float clamp(final float gainDb) {
+		return Math.max(-MAXIMUM_GAIN_DB, Math.min(gainDb, MAXIMUM_GAIN_DB));
+	}
+}
@@ -0,0 +1,142 @@
+package com.goxr3plus.streamplayer.dsp;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Converts integer PCM bytes to interleaved float samples in the range -1.0 ... 1.0 and back.
+ * <p>
+ * Supports signed PCM of 8, 16, 24 and 32 bits in both byte orders, and unsigned 8 bit PCM.
+ * Conversion back to bytes clips samples outside of the range.
+ *
+ * @author GOXR3PLUS
+ */
+public final class PcmConverter {
+
+	private final int bytesPerSample;
+	private final boolean bigEndian;
+	private final boolean unsigned;
+	private final float scale;
+	private final int channels;
+
+	/**
+	 * @param format the format of the PCM bytes
+	 * @throws IllegalArgumentException if the format is not supported, see {@link #isSupported(AudioFormat)}
+	 */
+	public PcmConverter(final AudioFormat format) {
+		if (!isSupported(format))
+			throw new IllegalArgumentException("Unsupported PCM format: " + format);
+		bytesPerSample = format.getSampleSizeInBits() / 8;
+		bigEndian = format.isBigEndian();
+		unsigned = format.getEncoding() == AudioFormat.Encoding.PCM_UNSIGNED;
+		scale = (float) (1L << (format.getSampleSizeInBits() - 1));
+		channels = format.getChannels();
+	}
+
+	/**
+	 * @param format an audio format
+	 * @return true if a PcmConverter can be created for the format
+	 */
+	public static boolean isSupported(final AudioFormat format) {
+		final int bits = format.getSampleSizeInBits();
+		if (format.getChannels() <= 0)
+			return false;
+		if (format.getEncoding() == AudioFormat.Encoding.PCM_SIGNED)
+			return bits == 8 || bits == 16 || bits == 24 || bits == 32;
+		return format.getEncoding() == AudioFormat.Encoding.PCM_UNSIGNED && bits == 8;
+	}
+
+	/**
+	 * @return the number of bytes of one sample of one channel
+	 */
+	public int getBytesPerSample() {
+		return bytesPerSample;
+	}
+
+	/**
+	 * @return the number of interleaved channels
+	 */
+	public int getChannels() {
+		return channels;
+	}
+
+	/**
+	 * Converts PCM bytes to float samples.
+	 *
+	 * @param source the PCM bytes
+	 * @param length the number of valid bytes in source
+	 * @param target receives the samples, must hold at least length / bytesPerSample samples
+	 * @return the number of converted samples
+	 */
+	public int toFloat(final byte[] source, final int length, final float[] target) {
+		return toFloat(source, 0, length, target);
+	}
+
+	/**
+	 * Converts a part of the PCM bytes to float samples.
+	 *
+	 * @param source the PCM bytes
+	 * @param from   the offset of the first byte to convert, at the start of a sample
+	 * @param length the number of bytes to convert
+	 * @param target receives the samples from its start, must hold at least length / bytesPerSample samples
+	 * @return the number of converted samples
+	 */
+	public int toFloat(final byte[] source, final int from, final int length, final float[] target) {
+		final int samples = length / bytesPerSample;
+		int offset = from;
+		for (int i = 0; i < samples; i++, offset += bytesPerSample)
+			target[i] = readSample(source, offset) / scale;
+		return samples;
+	}
+
+	/**
+	 * Converts float samples back to PCM bytes.
+	 *
+	 * @param source  the samples
+	 * @param samples the number of samples to convert
+	 * @param target  receives the PCM bytes, must hold at least samples * bytesPerSample bytes
+	 * @return the number of written bytes
+	 */
+	public int toBytes(final float[] source, final int samples, final byte[] target) {
+		final float max = scale - 1;
+		int offset = 0;
+		for (int i = 0; i < samples; i++, offset += bytesPerSample) {
+			float value = source[i] * scale;
+			if (value > max)
+				value = max;
+			else if (value < -scale)
+				value = -scale;
+			writeSample(target, offset, Math.round(value));
+		}
+		return offset;
+	}
+
+	private int readSample(final byte[] data, final int offset) {
+		switch (bytesPerSample) {
+		case 1:
+			return unsigned ? (data[offset] & 0xFF) - 128 : data[offset];
+		case 2:
+			return bigEndian ? (data[offset] << 8) | (data[offset + 1] & 0xFF)
+					: (data[offset + 1] << 8) | (data[offset] & 0xFF);
+		case 3:
+			return bigEndian ? (data[offset] << 16) | ((data[offset + 1] & 0xFF) << 8) | (data[offset + 2] & 0xFF)
+					: (data[offset + 2] << 16) | ((data[offset + 1] & 0xFF) << 8) | (data[offset] & 0xFF);
+		default:
+			return bigEndian
+					? (data[offset] << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8)
+							| (data[offset + 3] & 0xFF)
+					: (data[offset + 3] << 24) | ((data[offset + 2] & 0xFF) << 16) | ((data[offset + 1] & 0xFF) << 8)
+							| (data[offset] & 0xFF);
+		}
+	}
+
+	private void writeSample(final byte[] data, final int offset, final int value) {
+		if (bytesPerSample == 1) {
+			data[offset] = (byte) (unsigned ? value + 128 : value);
+			return;
+		}
+		for (int i = 0; i < bytesPerSample; i++) {
+			final int shift = 8 * (bigEndian ? bytesPerSample - 1 - i : i);
+			data[offset + i] = (byte) (value >> shift);
+		}
+	}
+}
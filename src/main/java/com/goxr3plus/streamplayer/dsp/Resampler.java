@@ -0,0 +1,307 @@
+package com.goxr3plus.streamplayer.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Streaming sample rate converter with a variable ratio, used to change the playback speed live.
+ * <p>
+ * The ratio is the number of input frames consumed per output frame: 2.0 plays twice as fast, 0.5 half as fast.
+ * It can be changed from any thread; the kernel for the new ratio is computed by the caller and published to the
+ * processing thread, which picks it up at the next buffer without locking nor allocating.
+ * <p>
+ * Except for {@link Quality#LOW}, which interpolates linearly, the kernel is a polyphase Blackman windowed sinc,
+ * interpolated linearly between phases. When speeding up, its cutoff is lowered to avoid aliasing.
+ *
+ * @author GOXR3PLUS
+ */
+public final class Resampler {
+
+	/**
+	 * Quality tiers, trading CPU for fidelity.
+	 */
+	public enum Quality {
+
+		/** Linear interpolation, cheapest, audible aliasing */
+		LOW(2),
+
+		/** 16 taps windowed sinc */
+		MEDIUM(16),
+
+		/** 64 taps windowed sinc */
+		HIGH(64);
+
+		private final int taps;
+
+		Quality(int taps) {
+			this.taps = taps;
+		}
+
+		/**
+		 * @return the number of input frames each output frame is computed from
+		 */
+		public int getTaps() {
+			return taps;
+		}
+	}
+
+	/** Number of kernel phases between two input frames */
+	private static final int PHASES = 256;
+
+	/**
+	 * Immutable kernel for one ratio and quality, published to the processing thread.
+	 */
+	private static final class Kernel {
+		final double ratio;
+		final int taps;
+		final int half;
+		/** (PHASES + 1) rows of taps weights, null for linear interpolation */
+		final float[] table;
+
+		Kernel(final double ratio, final Quality quality) {
+			this.ratio = ratio;
+			taps = quality.getTaps();
+			half = taps / 2;
+			table = quality == Quality.LOW ? null : buildTable(ratio, taps);
+		}
+
+		private static float[] buildTable(final double ratio, final int taps) {
+			final int half = taps / 2;
+			final double cutoff = Math.min(1.0, 1.0 / ratio) * 0.95;
+			final float[] table = new float[(PHASES + 1) * taps];
+			for (int phase = 0; phase <= PHASES; phase++) {
+				final double frac = (double) phase / PHASES;
+				double sum = 0;
+				for (int k = 0; k < taps; k++) {
+					// Distance between the input frame of this tap and the output position
+					final double t = k - (half - 1) - frac;
+					final double weight = cutoff * sinc(cutoff * t) * blackman(t / half);
+					table[phase * taps + k] = (float) weight;
+					sum += weight;
+				}
+				// Unity gain at DC for every phase
+				for (int k = 0; k < taps; k++)
+					table[phase * taps + k] /= sum;
+			}
+			return table;
+		}
+
+		private static double sinc(final double x) {
+			return x == 0 ? 1 : Math.sin(Math.PI * x) / (Math.PI * x);
+		}
+
+		private static double blackman(final double x) {
+			if (x <= -1 || x >= 1)
+				return 0;
+			final double n = (x + 1) / 2;
+			return 0.42 - 0.5 * Math.cos(2 * Math.PI * n) + 0.08 * Math.cos(4 * Math.PI * n);
+		}
+	}
+
+	private final int channels;
+	private final double minimumRatio;
+	private final double maximumRatio;
+
+	private volatile Kernel kernel;
+	private volatile Quality quality;
+
+	// ----------Only touched by the processing thread----------
+
+	/** Input frames not consumed yet, preceded by the history needed by the kernel */
+	private final float[] buffer;
+	private int bufferedFrames;
+
+	/** Position of the next output frame, in input frames relative to the start of {@link #buffer} */
+	private double position;
+
+	/** Number of taps the buffer is currently aligned for */
+	private int alignedTaps;
+
+	/**
+	 * @param channels       the number of interleaved channels
+	 * @param maxInputFrames the most frames given to one call of {@link #process(float[], int, float[])}
+	 * @param minimumRatio   the lowest ratio that will be used, it bounds the size of the output
+	 * @param maximumRatio   the highest ratio that will be used
+	 * @param quality        the initial quality
+	 */
+	public Resampler(final int channels, final int maxInputFrames, final double minimumRatio, final double maximumRatio,
+			final Quality quality) {
+		if (channels <= 0 || maxInputFrames <= 0 || minimumRatio <= 0 || maximumRatio < minimumRatio)
+			throw new IllegalArgumentException("Invalid resampler configuration");
+		this.channels = channels;
+		this.minimumRatio = minimumRatio;
+		this.maximumRatio = maximumRatio;
+		this.quality = quality;
+		this.kernel = new Kernel(1.0, quality);
+		buffer = new float[(maxInputFrames + Quality.HIGH.getTaps() + 2) * channels];
+		reset();
+	}
+
+	/**
+	 * @param maxInputFrames the most frames given to one call of {@link #process(float[], int, float[])}
+	 * @return the size of the output array needed for that input, in frames
+	 */
+	public int getMaxOutputFrames(final int maxInputFrames) {
+		return (int) Math.ceil((maxInputFrames + Quality.HIGH.getTaps()) / minimumRatio) + 1;
+	}
+
+	/**
+	 * Set the ratio. Computes the new kernel on the calling thread.
+	 *
+	 * @param ratio input frames consumed per output frame
+	 */
+	public synchronized void setRatio(final double ratio) {
+		if (ratio < minimumRatio || ratio > maximumRatio)
+			throw new IllegalArgumentException("Ratio " + ratio + " is outside of " + minimumRatio + " ... " + maximumRatio);
+		kernel = new Kernel(ratio, quality);
+	}
+
+	/**
+	 * @return the ratio
+	 */
+	public double getRatio() {
+		return kernel.ratio;
+	}
+
+	/**
+	 * Set the quality. Computes the new kernel on the calling thread.
+	 *
+	 * @param quality the quality
+	 */
+	public synchronized void setQuality(final Quality quality) {
+		this.quality = quality;
+		kernel = new Kernel(kernel.ratio, quality);
+	}
+
+	/**
+	 * @return the quality
+	 */
+	public Quality getQuality() {
+		return quality;
+	}
+
+	/**
+	 * @return true if the ratio is 1.0, so that the audio can bypass the resampler, see {@link #skip(float[], int)}
+	 */
+	public boolean isBypassed() {
+		return kernel.ratio == 1.0;
+	}
+
+	/**
+	 * @return the most input frames {@link #skip(float[], int)} keeps, the ones before the skipped buffer are forgotten
+	 */
+	public int getHistoryFrames() {
+		return kernel.half - 1;
+	}
+
+	/**
+	 * Forget the buffered input.
+	 */
+	public void reset() {
+		align(kernel.taps, 0);
+	}
+
+	/**
+	 * Resample a buffer. Input frames which can't be used yet, because the kernel needs frames after them,
+	 * are kept for the next call.
+	 *
+	 * @param input       interleaved input samples
+	 * @param inputFrames the number of input frames
+	 * @param output      receives the interleaved output samples, see {@link #getMaxOutputFrames(int)}
+	 * @return the number of output frames
+	 */
+	public int process(final float[] input, final int inputFrames, final float[] output) {
+		final Kernel k = kernel;
+		if (k.taps != alignedTaps)
+			align(k.taps, Integer.MAX_VALUE);
+
+		System.arraycopy(input, 0, buffer, bufferedFrames * channels, inputFrames * channels);
+		bufferedFrames += inputFrames;
+
+		final int half = k.half;
+		final double ratio = k.ratio;
+		final int maxOutputFrames = output.length / channels;
+		int outputFrames = 0;
+		double pos = position;
+
+		if (k.table == null) {
+			// Linear interpolation between frames i and i + 1
+			while (outputFrames < maxOutputFrames) {
+				final int i = (int) pos;
+				if (i + 1 >= bufferedFrames)
+					break;
+				final float frac = (float) (pos - i);
+				final int a = i * channels;
+				final int b = a + channels;
+				final int o = outputFrames * channels;
+				for (int c = 0; c < channels; c++)
+					output[o + c] = buffer[a + c] + (buffer[b + c] - buffer[a + c]) * frac;
+				outputFrames++;
+				pos += ratio;
+			}
+		} else {
+			final float[] table = k.table;
+			final int taps = k.taps;
+			while (outputFrames < maxOutputFrames) {
+				final int i = (int) pos;
+				if (i + half >= bufferedFrames)
+					break;
+				final double phasePosition = (pos - i) * PHASES;
+				final int phase = (int) phasePosition;
+				final float phaseFrac = (float) (phasePosition - phase);
+				final int row0 = phase * taps;
+				final int row1 = row0 + taps;
+				final int first = (i - half + 1) * channels;
+				final int o = outputFrames * channels;
+				for (int c = 0; c < channels; c++) {
+					float sum = 0;
+					for (int t = 0, s = first + c; t < taps; t++, s += channels) {
+						final float w0 = table[row0 + t];
+						sum += buffer[s] * (w0 + (table[row1 + t] - w0) * phaseFrac);
+					}
+					output[o + c] = sum;
+				}
+				outputFrames++;
+				pos += ratio;
+			}
+		}
+
+		// Keep only the frames still needed
+		final int discard = Math.max(0, Math.min((int) pos - half + 1, bufferedFrames));
+		if (discard > 0) {
+			System.arraycopy(buffer, discard * channels, buffer, 0, (bufferedFrames - discard) * channels);
+			bufferedFrames -= discard;
+			pos -= discard;
+		}
+		position = pos;
+		return outputFrames;
+	}
+
+	/**
+	 * Feed a buffer which bypassed the resampler, so that the history stays continuous if the ratio changes later.
+	 *
+	 * @param input       interleaved input samples
+	 * @param inputFrames the number of input frames
+	 */
+	public void skip(final float[] input, final int inputFrames) {
+		final int history = Math.min(kernel.half - 1, inputFrames);
+		align(kernel.taps, 0);
+		final int start = bufferedFrames - history;
+		System.arraycopy(input, (inputFrames - history) * channels, buffer, start * channels, history * channels);
+	}
+
+	/**
+	 * Lay out the buffer for a number of taps: half - 1 frames of history, which are zeros except for the last
+	 * keptFrames of the buffered input. The next output frame is the first frame after the history.
+	 */
+	private void align(final int taps, final int keptFrames) {
+		final int history = taps / 2 - 1;
+		final int kept = Math.max(0, Math.min(keptFrames, Math.min(history, bufferedFrames)));
+		if (kept > 0)
+			System.arraycopy(buffer, (bufferedFrames - kept) * channels, buffer, (history - kept) * channels,
+					kept * channels);
+		Arrays.fill(buffer, 0, (history - kept) * channels, 0f);
+		bufferedFrames = history;
+		position = history;
+		alignedTaps = taps;
+	}
+}
@@ -0,0 +1,402 @@
+package com.goxr3plus.streamplayer.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Streaming time-stretch which changes the playback speed without changing the pitch, using WSOLA
+ * (waveform similarity overlap-add).
+ * <p>
+ * The output is made of Hann windowed segments of the input overlapping by half. The next segment is taken
+ * around the input position advanced by the ratio, at the offset within the seek range whose waveform best
+ * continues the previous segment, so that the overlap doesn't cancel out. The ratio is the number of input
+ * frames consumed per output frame: 2.0 plays twice as fast, 0.5 half as fast.
+ * <p>
+ * The ratio and the quality can be changed from any thread, the processing thread picks them up at the next
+ * segment. All the working buffers are allocated up front, processing doesn't allocate.
+ *
+ * @author GOXR3PLUS
+ */
+public final class TimeStretcher {
+
+	/**
+	 * Quality tiers, trading CPU for fidelity. The best offset is searched coarsely every few frames with a
+	 * decimated correlation, then refined around the best coarse offset.
+	 */
+	public enum Quality {
+
+		/** 30 ms segments, 8 ms seek range, coarse search every 8 frames on every 4th frame */
+		LOW(30, 8, 8, 4),
+
+		/** 30 ms segments, 12 ms seek range, coarse search every 4 frames on every 2nd frame */
+		MEDIUM(30, 12, 4, 2),
+
+		/** 40 ms segments, 15 ms seek range, coarse search every 4 frames on every frame */
+		HIGH(40, 15, 4, 1);
+
+		private final int windowMillis;
+		private final int seekMillis;
+		private final int lagStep;
+		private final int sampleStep;
+
+		Quality(int windowMillis, int seekMillis, int lagStep, int sampleStep) {
+			this.windowMillis = windowMillis;
+			this.seekMillis = seekMillis;
+			this.lagStep = lagStep;
+			this.sampleStep = sampleStep;
+		}
+
+		/**
+		 * @return the length of the overlapping segments, in milliseconds
+		 */
+		public int getWindowMillis() {
+			return windowMillis;
+		}
+
+		/**
+		 * @return how far from its nominal position a segment may be taken, in milliseconds
+		 */
+		public int getSeekMillis() {
+			return seekMillis;
+		}
+	}
+
+	/**
+	 * The frame counts and window of one quality at the sample rate of the stretcher.
+	 */
+	private static final class Setting {
+		final Quality quality;
+		final int window;
+		final int hop;
+		final int seek;
+		final float[] hann;
+
+		Setting(final Quality quality, final float sampleRate) {
+			this.quality = quality;
+			hop = Math.max(1, Math.round(sampleRate * quality.windowMillis / 2000f));
+			window = hop * 2;
+			seek = Math.max(1, Math.round(sampleRate * quality.seekMillis / 1000f));
+			hann = new float[window];
+			// Periodic, so that two windows overlapping by half sum to one
+			for (int n = 0; n < window; n++)
+				hann[n] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * n / window));
+		}
+	}
+
+	private final int channels;
+	private final double minimumRatio;
+	private final double maximumRatio;
+	private final Setting[] settings;
+
+	private volatile double ratio = 1.0;
+	private volatile Quality quality;
+
+	// ----------Only touched by the processing thread----------
+
+	private Setting applied;
+
+	/** Input frames, starting with the history the seek range may reach back to */
+	private final float[] buffer;
+
+	/** Channels of {@link #buffer} mixed down, to compare waveforms */
+	private final float[] mono;
+	private int bufferedFrames;
+
+	/** Nominal start of the next segment, in input frames relative to the start of {@link #buffer} */
+	private double position;
+
+	/** Start of the previous segment, relative to the start of {@link #buffer} */
+	private int previous;
+
+	/** False until the first segment after a reset, which has nothing to overlap with */
+	private boolean primed;
+
+	/** Windowed second half of the previous segment, added to the first half of the next one */
+	private final float[] overlap;
+
+	/**
+	 * @param channels       the number of interleaved channels
+	 * @param sampleRate     the sample rate, in Hz
+	 * @param maxInputFrames the most frames given to one call of {@link #process(float[], int, float[])}
+	 * @param minimumRatio   the lowest ratio that will be used, it bounds the size of the output
+	 * @param maximumRatio   the highest ratio that will be used
+	 * @param quality        the initial quality
+	 */
+	public TimeStretcher(final int channels, final float sampleRate, final int maxInputFrames,
+			final double minimumRatio, final double maximumRatio, final Quality quality) {
+		if (channels <= 0 || sampleRate <= 0 || maxInputFrames <= 0 || minimumRatio <= 0
+				|| maximumRatio < minimumRatio)
+			throw new IllegalArgumentException("Invalid time stretcher configuration");
+		this.channels = channels;
+		this.minimumRatio = minimumRatio;
+		this.maximumRatio = maximumRatio;
+		this.quality = quality;
+
+		settings = new Setting[Quality.values().length];
+		int capacity = 0;
+		int overlapFrames = 0;
+		for (final Quality q : Quality.values()) {
+			final Setting setting = new Setting(q, sampleRate);
+			settings[q.ordinal()] = setting;
+			capacity = Math.max(capacity,
+					2 * setting.window + 2 * setting.seek + (int) Math.ceil(setting.hop * maximumRatio) + 2);
+			overlapFrames = Math.max(overlapFrames, setting.hop);
+		}
+		buffer = new float[(maxInputFrames + capacity) * channels];
+		mono = new float[maxInputFrames + capacity];
+		overlap = new float[overlapFrames * channels];
+		applied = settings[quality.ordinal()];
+		reset();
+	}
+
+	/**
+	 * @param maxInputFrames the most frames given to one call of {@link #process(float[], int, float[])}
+	 * @return the size of the output array needed for that input, in frames
+	 */
+	public int getMaxOutputFrames(final int maxInputFrames) {
+		int frames = 0;
+		for (final Setting setting : settings) {
+			final int range = maxInputFrames + setting.window + 2 * setting.seek;
+			frames = Math.max(frames, (int) Math.ceil(range / minimumRatio) + setting.hop);
+		}
+		return frames;
+	}
+
+	/**
+	 * @param ratio input frames consumed per output frame
+	 */
+	public void setRatio(final double ratio) {
+		if (ratio < minimumRatio || ratio > maximumRatio)
+			throw new IllegalArgumentException("Ratio " + ratio + " is outside of " + minimumRatio + " ... " + maximumRatio);
+		this.ratio = ratio;
+	}
+
+	/**
+	 * @return the ratio
+	 */
+	public double getRatio() {
+		return ratio;
+	}
+
+	/**
+	 * @param quality the quality
+	 */
+	public void setQuality(final Quality quality) {
+		this.quality = quality;
+	}
+
+	/**
+	 * @return the quality
+	 */
+	public Quality getQuality() {
+		return quality;
+	}
+
+	/**
+	 * @return true if the ratio is 1.0, so that the audio can bypass the stretcher, see {@link #skip(float[], int)}
+	 */
+	public boolean isBypassed() {
+		return ratio == 1.0;
+	}
+
+	/**
+	 * Forget the buffered input.
+	 */
+	public void reset() {
+		applied = settings[quality.ordinal()];
+		bufferedFrames = 0;
+		position = 0;
+		restart();
+	}
+
+	/**
+	 * Stretch a buffer. Input frames which can't be used yet are kept for the next call.
+	 *
+	 * @param input       interleaved input samples
+	 * @param inputFrames the number of input frames
+	 * @param output      receives the interleaved output samples, see {@link #getMaxOutputFrames(int)}
+	 * @return the number of output frames
+	 */
+	public int process(final float[] input, final int inputFrames, final float[] output) {
+		if (applied.quality != quality) {
+			applied = settings[quality.ordinal()];
+			restart();
+		}
+		append(input, inputFrames);
+
+		final Setting s = applied;
+		final int hop = s.hop;
+		final float[] hann = s.hann;
+		final double advance = hop * ratio;
+		final int maxOutputFrames = output.length / channels;
+		int outputFrames = 0;
+
+		while (outputFrames + hop <= maxOutputFrames) {
+			final int nominal = (int) Math.round(position);
+			if (nominal + s.seek + s.window > bufferedFrames)
+				break;
+
+			final int start = primed ? bestMatch(s, nominal, previous + hop) : nominal;
+			final int in = start * channels;
+			final int out = outputFrames * channels;
+			final int half = hop * channels;
+			if (primed) {
+				for (int n = 0, i = 0; n < hop; n++) {
+					final float fadeIn = hann[n];
+					final float fadeOut = hann[hop + n];
+					for (int c = 0; c < channels; c++, i++) {
+						output[out + i] = overlap[i] + buffer[in + i] * fadeIn;
+						overlap[i] = buffer[in + half + i] * fadeOut;
+					}
+				}
+			} else {
+				// Nothing to overlap with, start at full level
+				System.arraycopy(buffer, in, output, out, half);
+				for (int n = 0, i = 0; n < hop; n++) {
+					final float fadeOut = hann[hop + n];
+					for (int c = 0; c < channels; c++, i++)
+						overlap[i] = buffer[in + half + i] * fadeOut;
+				}
+				primed = true;
+			}
+
+			previous = start;
+			position += advance;
+			outputFrames += hop;
+		}
+
+		// Keep the seek range of the next segment and the continuation of the previous one
+		int keep = (int) Math.round(position) - s.seek;
+		if (primed)
+			keep = Math.min(keep, previous + hop);
+		discard(Math.max(0, Math.min(keep, bufferedFrames)));
+		return outputFrames;
+	}
+
+	/**
+	 * @return the most input frames {@link #skip(float[], int)} keeps, the ones before the skipped buffer are forgotten
+	 */
+	public int getHistoryFrames() {
+		return settings[quality.ordinal()].seek;
+	}
+
+	/**
+	 * Feed a buffer which bypassed the stretcher, so that stretching starts right after it if the ratio changes.
+	 *
+	 * @param input       interleaved input samples
+	 * @param inputFrames the number of input frames
+	 */
+	public void skip(final float[] input, final int inputFrames) {
+		applied = settings[quality.ordinal()];
+		final int history = Math.min(applied.seek, inputFrames);
+		bufferedFrames = 0;
+		System.arraycopy(input, (inputFrames - history) * channels, buffer, 0, history * channels);
+		mixDown(0, history);
+		bufferedFrames = history;
+		position = history;
+		restart();
+	}
+
+	/**
+	 * Start over from the nominal position, with the seek range of the applied quality before it.
+	 */
+	private void restart() {
+		final int from = (int) Math.round(position) - applied.seek;
+		if (from >= 0) {
+			discard(from);
+		} else {
+			// Pad the missing history with silence
+			final int pad = -from;
+			System.arraycopy(buffer, 0, buffer, pad * channels, bufferedFrames * channels);
+			System.arraycopy(mono, 0, mono, pad, bufferedFrames);
+			Arrays.fill(buffer, 0, pad * channels, 0f);
+			Arrays.fill(mono, 0, pad, 0f);
+			bufferedFrames += pad;
+			position += pad;
+		}
+		primed = false;
+	}
+
+	private void append(final float[] input, final int inputFrames) {
+		System.arraycopy(input, 0, buffer, bufferedFrames * channels, inputFrames * channels);
+		mixDown(bufferedFrames, inputFrames);
+		bufferedFrames += inputFrames;
+	}
+
+	private void mixDown(final int first, final int frames) {
+		for (int f = first, i = first * channels; f < first + frames; f++) {
+			float sum = 0;
+			for (int c = 0; c < channels; c++, i++)
+				sum += buffer[i];
+			mono[f] = sum;
+		}
+	}
+
+	private void discard(final int frames) {
+		if (frames <= 0)
+			return;
+		System.arraycopy(buffer, frames * channels, buffer, 0, (bufferedFrames - frames) * channels);
+		System.arraycopy(mono, frames, mono, 0, bufferedFrames - frames);
+		bufferedFrames -= frames;
+		position -= frames;
+		previous -= frames;
+	}
+
+	/**
+	 * Find the start of the segment around nominal whose first half best matches the natural continuation of the
+	 * previous segment, which starts at target.
+	 */
+	private int bestMatch(final Setting s, final int nominal, final int target) {
+		final int length = s.hop;
+		final int lagStep = s.quality.lagStep;
+		int best = nominal;
+		double bestScore = Double.NEGATIVE_INFINITY;
+		for (int start = nominal - s.seek; start <= nominal + s.seek; start += lagStep) {
+			final double score = similarity(start, target, length, s.quality.sampleStep);
+			if (score > bestScore) {
+				bestScore = score;
+				best = start;
+			}
+		}
+		if (lagStep == 1)
+			return best;
+
+		// Refine between the neighbours of the best coarse offset, on every frame
+		final int coarse = best;
+		bestScore = Double.NEGATIVE_INFINITY;
+		final int from = Math.max(nominal - s.seek, coarse - lagStep + 1);
+		final int to = Math.min(nominal + s.seek, coarse + lagStep - 1);
+		for (int start = from; start <= to; start++) {
+			final double score = similarity(start, target, length, 1);
+			if (score > bestScore) {
+				bestScore = score;
+				best = start;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Normalized cross-correlation of two stretches of {@link #mono}, keeping its sign.
+	 */
+	private double similarity(final int start, final int target, final int length, final int step) {
+		// Two independent sums, so that the additions don't wait for each other
+		float correlation0 = 0, correlation1 = 0;
+		float energy0 = 0, energy1 = 0;
+		int n = 0;
+		for (final int stride = step * 2; n + step < length; n += stride) {
+			final float x0 = mono[start + n];
+			final float x1 = mono[start + n + step];
+			correlation0 += x0 * mono[target + n];
+			correlation1 += x1 * mono[target + n + step];
+			energy0 += x0 * x0;
+			energy1 += x1 * x1;
+		}
+		for (; n < length; n += step) {
+			final float x = mono[start + n];
+			correlation0 += x * mono[target + n];
+			energy0 += x * x;
+		}
+		final float correlation = correlation0 + correlation1;
+		return correlation * Math.abs(correlation) / (energy0 + energy1 + 1e-9);
+	}
+}
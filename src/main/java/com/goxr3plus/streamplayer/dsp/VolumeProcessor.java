@@ -0,0 +1,130 @@
+package com.goxr3plus.streamplayer.dsp;
+
+/**
+ * Software gain, balance and mute.
+ * <p>
+ * New values are published from any thread and picked up by the next buffer. The gain of every channel
+ * ramps linearly over one buffer towards its new value, so changes don't click.
+ *
+ * @author GOXR3PLUS
+ */
+public final class VolumeProcessor implements AudioProcessor {
+
+	/** The lowest gain in dB, anything lower is silence */
+	public static final float MINIMUM_GAIN_DB = -80f;
+
+	/** The highest gain in dB, which is a linear gain of 2.0 */
+	public static final float MAXIMUM_GAIN_DB = 6.0206f;
+
+	private volatile float gain = 1f;
+	private volatile float balance = 0f;
+	private volatile boolean mute;
+
+	/** Gains applied at the end of the previous buffer, only touched by the processing thread */
+	private float currentLeft = 1f;
+	private float currentRight = 1f;
+
+	/**
+	 * @param gain linear gain, 0.0 ... 2.0
+	 */
+	public void setGain(final float gain) {
+		this.gain = Math.max(0f, Math.min(gain, 2f));
+	}
+
+	/**
+	 * @return the linear gain
+	 */
+	public float getGain() {
+		return gain;
+	}
+
+	/**
+	 * @param gainDb gain in dB, {@link #MINIMUM_GAIN_DB} ... {@link #MAXIMUM_GAIN_DB}
+	 */
+	public void setGainDb(final float gainDb) {
+		setGain(gainDb <= MINIMUM_GAIN_DB ? 0f : (float) Math.pow(10, gainDb / 20));
+	}
+
+	/**
+	 * @return the gain in dB
+	 */
+	public float getGainDb() {
+		final float linear = gain;
+		return linear <= 0f ? MINIMUM_GAIN_DB : Math.max(MINIMUM_GAIN_DB, (float) (20 * Math.log10(linear)));
+	}
+
+	/**
+	 * @param balance -1.0 (left channel only) ... 1.0 (right channel only). Only affects stereo audio.
+	 */
+	public void setBalance(final float balance) {
+		this.balance = Math.max(-1f, Math.min(balance, 1f));
+	}
+
+	/**
+	 * @return the balance
+	 */
+	public float getBalance() {
+		return balance;
+	}
+
+	/**
+	 * @param mute true to silence the audio without changing the gain
+	 */
+	public void setMute(final boolean mute) {
+		this.mute = mute;
+	}
+
+	/**
+	 * @return true if muted
+	 */
+	public boolean isMute() {
+		return mute;
+	}
+
+	/**
+	 * @return true if processing would leave the audio untouched, so it can be skipped
+	 */
+	public boolean isNeutral() {
+		return !mute && gain == 1f && balance == 0f && currentLeft == 1f && currentRight == 1f;
+	}
+
+	@Override
+	public void process(final float[] samples, final int frames, final int channels) {
+		final float target = mute ? 0f : gain;
+		final float b = channels == 2 ? balance : 0f;
+		final float targetLeft = b > 0 ? target * (1 - b) : target;
+		final float targetRight = b < 0 ? target * (1 + b) : target;
+
+		if (frames <= 0)
+			return;
+
+		final float stepLeft = (targetLeft - currentLeft) / frames;
+		final float stepRight = (targetRight - currentRight) / frames;
+		float left = currentLeft;
+		float right = currentRight;
+
+		if (channels == 2) {
+			for (int i = 0, index = 0; i < frames; i++, index += 2) {
+				left += stepLeft;
+				right += stepRight;
+				samples[index] *= left;
+				samples[index + 1] *= right;
+			}
+		} else {
+			for (int i = 0, index = 0; i < frames; i++) {
+				left += stepLeft;
+				for (int c = 0; c < channels; c++, index++)
+					samples[index] *= left;
+			}
+		}
+
+		currentLeft = targetLeft;
+		currentRight = targetRight;
+	}
+
+	@Override
+	public void reset() {
+		currentLeft = mute ? 0f : gain;
+		currentRight = currentLeft;
+	}
+}
@@ -0,0 +1,52 @@
+package com.goxr3plus.streamplayer.enums;
+
+/**
+ * How the gains of two consecutive tracks change while they overlap in a crossfade. The outgoing track follows the
+ * fade-in curve backwards.
+ *
+ * @author GOXR3PLUS
+ */
+public enum CrossfadeCurve {
+
+	/**
+	 * Quarter sine and cosine waves, the power of the mix stays constant for unrelated songs
+	 */
+	EQUAL_POWER {
+		@Override
+		public double fadeIn(final double position) {
+			return Math.sin(position * Math.PI / 2);
+		}
+	},
+	/**
+	 * Square roots of linear ramps, the power stays constant too but the outgoing track holds on longer
+	 */
+	SQUARE_ROOT {
+		@Override
+		public double fadeIn(final double position) {
+			return Math.sqrt(position);
+		}
+	},
+	/**
+	 * Linear ramps, the amplitude of the mix stays constant for alike audio, such as two takes of a song
+	 */
+	LINEAR {
+		@Override
+		public double fadeIn(final double position) {
+			return position;
+		}
+	};
+
+	/**
+	 * @param position how far the crossfade is, 0.0 ... 1.0
+	 * @return the gain of the incoming track, 0.0 ... 1.0
+	 */
+	public abstract double fadeIn(double position);
+
+	/**
+	 * @param position how far the crossfade is, 0.0 ... 1.0
+	 * @return the gain of the outgoing track, 1.0 ... 0.0
+	 */
+	public double fadeOut(final double position) {
+		return fadeIn(1 - position);
+	}
+}
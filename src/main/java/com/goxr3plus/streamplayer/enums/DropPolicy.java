@@ -0,0 +1,22 @@
+package com.goxr3plus.streamplayer.enums;
+
+/**
+ * What happens to the progress of a listener which can't keep up with the playback.
+ *
+ * @author GOXR3PLUS
+ */
+public enum DropPolicy {
+
+	/**
+	 * Drop the oldest buffer waiting for the listener
+	 */
+	DROP_OLDEST,
+	/**
+	 * Only keep the newest buffer, for listeners which only show the current state such as a visualizer
+	 */
+	COALESCE,
+	/**
+	 * Make the playback wait for the listener, which never misses a buffer but can stall the audio
+	 */
+	BLOCK
+}
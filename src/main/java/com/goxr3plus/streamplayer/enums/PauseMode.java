@@ -0,0 +1,18 @@
+package com.goxr3plus.streamplayer.enums;
+
+/**
+ * What the player does with the audio already written to the line when it pauses.
+ *
+ * @author GOXR3PLUS
+ */
+public enum PauseMode {
+
+	/**
+	 * Flush the line, the audio it held is skipped and the resume waits for the line to be filled again
+	 */
+	FLUSH,
+	/**
+	 * Stop the line and keep its audio, the resume continues at the exact sample where the pause stopped
+	 */
+	KEEP_BUFFERED
+}
@@ -0,0 +1,18 @@
+package com.goxr3plus.streamplayer.enums;
+
+/**
+ * How the speed factor of the player changes the speed of the audio.
+ *
+ * @author GOXR3PLUS
+ */
+public enum SpeedMode {
+
+	/**
+	 * Resample the audio, the pitch changes with the speed
+	 */
+	RESAMPLE,
+	/**
+	 * Time-stretch the audio, the pitch stays the same
+	 */
+	TIME_STRETCH
+}
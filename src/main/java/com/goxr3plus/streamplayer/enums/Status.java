@@ -72,6 +72,9 @@ public enum Status {
     /** EOM stands for "END OF MEDIA". */
     EOM,
 
+    /** the next track of the queue took over from the previous one. */
+    TRACK_CHANGED,
+
     /** player pan has changed. */
     PAN,
 
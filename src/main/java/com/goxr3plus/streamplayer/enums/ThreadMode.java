@@ -0,0 +1,19 @@
+package com.goxr3plus.streamplayer.enums;
+
+/**
+ * The kind of threads running the playback, the events and the decode-ahead of a player.
+ *
+ * @author GOXR3PLUS
+ */
+public enum ThreadMode {
+
+	/**
+	 * Platform threads, one per playing player, ended after a while without work
+	 */
+	PLATFORM,
+	/**
+	 * Virtual threads, which need Java 21 or later and the multi-release jar, so that thousands of players don't
+	 * hold thousands of platform threads
+	 */
+	VIRTUAL
+}
@@ -0,0 +1,327 @@
+package com.goxr3plus.streamplayer.stream;
+
+import com.goxr3plus.streamplayer.enums.Status;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.URL;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Drives a player without blocking the calling thread: every operation returns a {@link CompletableFuture} right
+ * away, so that request threads and UI threads don't wait for the probing of a file, the creation of a line or a
+ * seek.
+ * <p>
+ * The operations of a player run one after the other, in the order they were called, each once the previous one has
+ * completed. What blocks, such as an open, runs on a shared executor which keeps its threads between calls, see
+ * {@link StreamPlayerRegistry}; seeks and stops are handed to the playback thread, see
+ * {@link StreamPlayer#submitSeek(Duration)}.
+ * <p>
+ * Cancelling the future of an operation which hasn't started yet skips it, an operation which has started finishes
+ * anyway. Every operation can be given a timeout, which cancels it the same way. The listeners of the player are
+ * notified as usual, and {@link #statusAsync(Status)} turns their events into futures.
+ *
+ * @author GOXR3PLUS
+ */
+public final class AsyncStreamPlayer {
+
+	/**
+	 * An operation of the player, started on the executor.
+	 */
+	private interface Operation<T> {
+
+		/**
+		 * @return completed once the operation is done
+		 */
+		CompletableFuture<T> start() throws StreamPlayerException;
+	}
+
+	private final StreamPlayerInterface player;
+	private final Executor executor;
+
+	/** Completed once the last operation handed over is done, the next one starts then */
+	private CompletableFuture<Void> last = CompletableFuture.completedFuture(null);
+
+	/** The futures of {@link #statusAsync(Status)} waiting for their event */
+	private final Queue<StatusWaiter> statusWaiters = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Drive a player, running what blocks on the shared executor.
+	 *
+	 * @param player the player
+	 */
+	public AsyncStreamPlayer(final StreamPlayerInterface player) {
+		this(player, StreamPlayerRegistry.getControlExecutor());
+	}
+
+	/**
+	 * Drive a player, running what blocks on an executor.
+	 *
+	 * @param player   the player
+	 * @param executor runs the operations which block, such as an open
+	 */
+	public AsyncStreamPlayer(final StreamPlayerInterface player, final Executor executor) {
+		this.player = player;
+		this.executor = executor;
+		// Only the status events are of interest, the progress isn't copied for them
+		player.addStreamPlayerListener(new StatusListener());
+	}
+
+	/**
+	 * @return the player
+	 */
+	public StreamPlayerInterface getPlayer() {
+		return player;
+	}
+
+	/**
+	 * Open a file, see {@link StreamPlayerInterface#open(File)}.
+	 *
+	 * @param file the file
+	 * @return completed once the stream is opened, exceptionally with a {@link StreamPlayerException} if it couldn't be
+	 */
+	public CompletableFuture<Void> openAsync(final File file) {
+		return enqueue(() -> {
+			player.open(file);
+			return CompletableFuture.completedFuture(null);
+		});
+	}
+
+	/**
+	 * Open a URL, see {@link StreamPlayerInterface#open(URL)}.
+	 *
+	 * @param url the URL
+	 * @return completed once the stream is opened, exceptionally with a {@link StreamPlayerException} if it couldn't be
+	 */
+	public CompletableFuture<Void> openAsync(final URL url) {
+		return enqueue(() -> {
+			player.open(url);
+			return CompletableFuture.completedFuture(null);
+		});
+	}
+
+	/**
+	 * Open an InputStream, see {@link StreamPlayerInterface#open(InputStream)}.
+	 *
+	 * @param stream the stream
+	 * @return completed once the stream is opened, exceptionally with a {@link StreamPlayerException} if it couldn't be
+	 */
+	public CompletableFuture<Void> openAsync(final InputStream stream) {
+		return enqueue(() -> {
+			player.open(stream);
+			return CompletableFuture.completedFuture(null);
+		});
+	}
+
+	/**
+	 * See {@link #openAsync(File)}
+	 *
+	 * @param file    the file
+	 * @param timeout cancels the open if it hasn't started in time, and completes the future exceptionally
+	 * @return completed once the stream is opened
+	 */
+	public CompletableFuture<Void> openAsync(final File file, final Duration timeout) {
+		return withTimeout(openAsync(file), timeout);
+	}
+
+	/**
+	 * See {@link #openAsync(URL)}
+	 *
+	 * @param url     the URL
+	 * @param timeout cancels the open if it hasn't started in time, and completes the future exceptionally
+	 * @return completed once the stream is opened
+	 */
+	public CompletableFuture<Void> openAsync(final URL url, final Duration timeout) {
+		return withTimeout(openAsync(url), timeout);
+	}
+
+	/**
+	 * See {@link #openAsync(InputStream)}
+	 *
+	 * @param stream  the stream
+	 * @param timeout cancels the open if it hasn't started in time, and completes the future exceptionally
+	 * @return completed once the stream is opened
+	 */
+	public CompletableFuture<Void> openAsync(final InputStream stream, final Duration timeout) {
+		return withTimeout(openAsync(stream), timeout);
+	}
+
+	/**
+	 * Start the playback, see {@link StreamPlayerInterface#play()}.
+	 *
+	 * @return completed once the player plays
+	 */
+	public CompletableFuture<Void> playAsync() {
+		return enqueue(() -> {
+			player.play();
+			return CompletableFuture.completedFuture(null);
+		});
+	}
+
+	/**
+	 * See {@link #playAsync()}
+	 *
+	 * @param timeout cancels the play if it hasn't started in time, and completes the future exceptionally
+	 * @return completed once the player plays
+	 */
+	public CompletableFuture<Void> playAsync(final Duration timeout) {
+		return withTimeout(playAsync(), timeout);
+	}
+
+	/**
+	 * Go to a time of the audio, see {@link StreamPlayerInterface#submitSeek(Duration)}.
+	 *
+	 * @param position the time from the start of the audio
+	 * @return completed once audio from the new position reaches the line, with null if the stream couldn't be
+	 * positioned
+	 */
+	public CompletableFuture<SeekReport> seekAsync(final Duration position) {
+		if (position.isNegative())
+			throw new IllegalArgumentException("Trying to seek to a negative time " + position);
+		return enqueue(() -> player.submitSeek(position));
+	}
+
+	/**
+	 * See {@link #seekAsync(Duration)}
+	 *
+	 * @param position the time from the start of the audio
+	 * @param timeout  cancels the seek if it hasn't started in time, and completes the future exceptionally
+	 * @return completed once audio from the new position reaches the line
+	 */
+	public CompletableFuture<SeekReport> seekAsync(final Duration position, final Duration timeout) {
+		return withTimeout(seekAsync(position), timeout);
+	}
+
+	/**
+	 * Stop the playback, see {@link StreamPlayerInterface#submitStop()}.
+	 *
+	 * @return completed once the player is stopped and the line released
+	 */
+	public CompletableFuture<Void> stopAsync() {
+		return enqueue(player::submitStop);
+	}
+
+	/**
+	 * See {@link #stopAsync()}
+	 *
+	 * @param timeout cancels the stop if it hasn't started in time, and completes the future exceptionally
+	 * @return completed once the player is stopped and the line released
+	 */
+	public CompletableFuture<Void> stopAsync(final Duration timeout) {
+		return withTimeout(stopAsync(), timeout);
+	}
+
+	/**
+	 * Wait for the next event of a status, such as {@link Status#EOM}, without a thread.
+	 *
+	 * @param status the status of the event
+	 * @return completed with the event, cancel it to stop waiting
+	 */
+	public CompletableFuture<StreamPlayerEvent> statusAsync(final Status status) {
+		final StatusWaiter waiter = new StatusWaiter(status);
+		statusWaiters.add(waiter);
+		waiter.event.whenComplete((event, ex) -> statusWaiters.remove(waiter));
+		return waiter.event;
+	}
+
+	/**
+	 * Complete a future exceptionally with a {@link TimeoutException} if it isn't done in time. An operation of this
+	 * class which hasn't started yet is skipped then.
+	 *
+	 * @param future  the future
+	 * @param timeout how long it may take
+	 * @param <T>     the type of its result
+	 * @return the future
+	 */
+	public static <T> CompletableFuture<T> withTimeout(final CompletableFuture<T> future, final Duration timeout) {
+		if (future.isDone())
+			return future;
+		final ScheduledFuture<?> timer = StreamPlayerRegistry.getTimer().schedule(
+			() -> future.completeExceptionally(new TimeoutException("Not done after " + timeout)), timeout.toNanos(),
+			TimeUnit.NANOSECONDS);
+		future.whenComplete((result, ex) -> timer.cancel(false));
+		return future;
+	}
+
+	/**
+	 * Start an operation once the previous one is done.
+	 */
+	private <T> CompletableFuture<T> enqueue(final Operation<T> operation) {
+		final CompletableFuture<T> result = new CompletableFuture<>();
+		final CompletableFuture<Void> done = new CompletableFuture<>();
+		final CompletableFuture<Void> previous;
+		synchronized (this) {
+			previous = last;
+			last = done;
+		}
+		previous.whenComplete((ignored, ex) -> {
+			try {
+				executor.execute(() -> run(operation, result, done));
+			} catch (final RejectedExecutionException rejected) {
+				result.completeExceptionally(rejected);
+				done.complete(null);
+			}
+		});
+		return result;
+	}
+
+	private <T> void run(final Operation<T> operation, final CompletableFuture<T> result,
+		final CompletableFuture<Void> done) {
+		// Cancelled or timed out before it started
+		if (result.isDone()) {
+			done.complete(null);
+			return;
+		}
+		try {
+			operation.start().whenComplete((value, ex) -> {
+				if (ex != null)
+					result.completeExceptionally(ex);
+				else
+					result.complete(value);
+				done.complete(null);
+			});
+		} catch (final StreamPlayerException | RuntimeException ex) {
+			result.completeExceptionally(ex);
+			done.complete(null);
+		}
+	}
+
+	/**
+	 * A future of {@link #statusAsync(Status)}.
+	 */
+	private static final class StatusWaiter {
+		final Status status;
+		final CompletableFuture<StreamPlayerEvent> event = new CompletableFuture<>();
+
+		StatusWaiter(final Status status) {
+			this.status = status;
+		}
+	}
+
+	/**
+	 * Completes the futures of {@link #statusAsync(Status)}, on the events executor of the player.
+	 */
+	private final class StatusListener implements StreamPlayerStatusListener {
+
+		@Override
+		public void opened(final Object dataSource, final Map<String, Object> properties) {
+			// Nothing to do
+		}
+
+		@Override
+		public void statusUpdated(final StreamPlayerEvent event) {
+			for (final StatusWaiter waiter : statusWaiters)
+				if (waiter.status == event.getPlayerStatus())
+					waiter.event.complete(event);
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package com.goxr3plus.streamplayer.stream;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The control operations of a player, such as seeks and gain changes, handed to its playback thread, which applies
+ * them between two buffers. Any number of threads add commands and none of them takes a lock: the queue is a
+ * {@link ConcurrentLinkedQueue}. The playback thread drains it at the top of its loop, and whoever finds no playback
+ * thread drains it on its own.
+ * <p>
+ * The queue measures the latency of the commands, from when they are added until they are applied.
+ *
+ * @author GOXR3PLUS
+ */
+final class CommandQueue {
+
+	/**
+	 * A control operation and its result.
+	 *
+	 * @param <T> the type of the result
+	 */
+	abstract static class Command<T> {
+
+		/** Completed once the command is applied, or later when the command says so */
+		final CompletableFuture<T> result = new CompletableFuture<>();
+
+		/** When the command was added, in {@link System#nanoTime()} */
+		private long added;
+
+		/**
+		 * Apply the command on the playback thread, between two buffers.
+		 */
+		abstract void apply();
+
+		/**
+		 * Apply the command while nothing plays, on the thread which drains the queue.
+		 */
+		void applyIdle() {
+			apply();
+		}
+	}
+
+	private final Queue<Command<?>> queue = new ConcurrentLinkedQueue<>();
+	private final LongAdder applied = new LongAdder();
+	private final LongAdder totalLatencyNanos = new LongAdder();
+	private final AtomicLong maximumLatencyNanos = new AtomicLong();
+
+	/**
+	 * Create a command which runs an action and completes once it has.
+	 *
+	 * @param action the action
+	 * @return the command
+	 */
+	static Command<Void> of(final Runnable action) {
+		return new Command<Void>() {
+			@Override
+			void apply() {
+				action.run();
+				result.complete(null);
+			}
+		};
+	}
+
+	/**
+	 * Add a command at the end of the queue.
+	 *
+	 * @param command the command
+	 * @param <T>     the type of its result
+	 * @return the result of the command
+	 */
+	<T> CompletableFuture<T> add(final Command<T> command) {
+		command.added = System.nanoTime();
+		queue.add(command);
+		return command.result;
+	}
+
+	/**
+	 * Take a command back before it is applied.
+	 *
+	 * @param command the command
+	 * @return false if the command was applied already, or is being applied
+	 */
+	boolean withdraw(final Command<?> command) {
+		return queue.remove(command);
+	}
+
+	/**
+	 * @return true if there is no command to apply
+	 */
+	boolean isEmpty() {
+		return queue.isEmpty();
+	}
+
+	/**
+	 * Apply the commands in the order they were added, including the ones added meanwhile. A command which fails
+	 * completes its result exceptionally, the others are applied anyway.
+	 *
+	 * @param idle true if nothing plays, see {@link Command#applyIdle()}
+	 * @return the number of commands applied
+	 */
+	int drain(final boolean idle) {
+		int count = 0;
+		Command<?> command;
+		while ((command = queue.poll()) != null) {
+			final long latency = System.nanoTime() - command.added;
+			applied.increment();
+			totalLatencyNanos.add(latency);
+			maximumLatencyNanos.accumulateAndGet(latency, Math::max);
+			try {
+				if (idle)
+					command.applyIdle();
+				else
+					command.apply();
+			} catch (final RuntimeException ex) {
+				command.result.completeExceptionally(ex);
+			}
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of commands applied so far
+	 */
+	long getAppliedCount() {
+		return applied.sum();
+	}
+
+	/**
+	 * @return the longest time a command waited to be applied, in nanoseconds
+	 */
+	long getMaximumLatencyNanos() {
+		return maximumLatencyNanos.get();
+	}
+
+	/**
+	 * @return the average time the commands waited to be applied, in nanoseconds, 0 before the first one
+	 */
+	long getAverageLatencyNanos() {
+		final long count = applied.sum();
+		return count == 0 ? 0 : totalLatencyNanos.sum() / count;
+	}
+}
@@ -0,0 +1,133 @@
+package com.goxr3plus.streamplayer.stream;
+
+import com.goxr3plus.streamplayer.dsp.PcmConverter;
+import com.goxr3plus.streamplayer.enums.CrossfadeCurve;
+
+/**
+ * Mixes the end of the previous track under the start of the current one.
+ * <p>
+ * The decoder of the previous track has already reached its end when a crossfade starts, so what is left of that
+ * track is in its decode-ahead ring. Every block of the current track is mixed with as many frames of that ring,
+ * until the ring is drained. The gains come from a table of the curve, so the mix loop neither computes a sine nor
+ * allocates anything.
+ *
+ * @author GOXR3PLUS
+ */
+final class Crossfade {
+
+	/** Points of the gain table, the gains between them are interpolated. */
+	private static final int TABLE_SIZE = 1024;
+
+	private final PcmConverter converter;
+	private final int frameSize;
+	private final int channels;
+	private final byte[] outgoingBytes;
+	private final float[] outgoingSamples;
+	private final float[] gains = new float[TABLE_SIZE + 1];
+
+	/** The ring of the previous track, null when no crossfade is running */
+	private PcmRingBuffer outgoing;
+	/** Bytes of the oldest block of {@link #outgoing} which have been mixed already */
+	private int offset;
+	private long position;
+	private long fadeFrames;
+
+	/**
+	 * @param converter the converter of the format both tracks are decoded to
+	 * @param blockSize the largest number of bytes of one block
+	 */
+	Crossfade(final PcmConverter converter, final int blockSize) {
+		this.converter = converter;
+		this.channels = converter.getChannels();
+		this.frameSize = converter.getBytesPerSample() * channels;
+		this.outgoingBytes = new byte[blockSize];
+		this.outgoingSamples = new float[blockSize / converter.getBytesPerSample()];
+	}
+
+	/**
+	 * Start a crossfade over everything the ring of the previous track still holds.
+	 *
+	 * @param outgoing the ring of the previous track, whose decoder has reached its end
+	 * @param curve how the gains change during the crossfade
+	 */
+	void start(final PcmRingBuffer outgoing, final CrossfadeCurve curve) {
+		for (int i = 0; i <= TABLE_SIZE; i++)
+			gains[i] = (float) curve.fadeIn((double) i / TABLE_SIZE);
+		this.fadeFrames = outgoing.publishedBytes() / frameSize;
+		this.outgoing = fadeFrames == 0 ? null : outgoing;
+		this.offset = 0;
+		this.position = 0;
+	}
+
+	/**
+	 * @return true while the previous track is fading out
+	 */
+	boolean isActive() {
+		return outgoing != null;
+	}
+
+	/**
+	 * @return the length of the last crossfade, in frames
+	 */
+	long getFadeFrames() {
+		return fadeFrames;
+	}
+
+	/**
+	 * Stop the crossfade, dropping what is left of the previous track.
+	 */
+	void cancel() {
+		outgoing = null;
+	}
+
+	/**
+	 * Mix the previous track into a block of the current one. The crossfade ends once the ring of the previous track
+	 * is drained; the frames after that are left as they are.
+	 *
+	 * @param samples the interleaved samples of the current track, mixed in place
+	 * @param frames the number of frames in {@code samples}
+	 */
+	void mix(final float[] samples, final int frames) {
+		int frame = 0;
+		while (frame < frames && outgoing != null) {
+			final byte[] block = outgoing.peek();
+			if (block == null) {
+				outgoing = null;
+				break;
+			}
+			final int length = outgoing.peekLength();
+			if (length - offset < frameSize) {
+				outgoing.release();
+				offset = 0;
+				continue;
+			}
+			final int count = Math.min(frames - frame, (length - offset) / frameSize);
+			System.arraycopy(block, offset, outgoingBytes, 0, count * frameSize);
+			converter.toFloat(outgoingBytes, count * frameSize, outgoingSamples);
+			for (int i = 0; i < count; i++, position++) {
+				final double t = (double) position / fadeFrames;
+				final float in = gainAt(t);
+				final float out = gainAt(1 - t);
+				final int target = (frame + i) * channels;
+				final int source = i * channels;
+				for (int c = 0; c < channels; c++)
+					samples[target + c] = samples[target + c] * in + outgoingSamples[source + c] * out;
+			}
+			frame += count;
+			offset += count * frameSize;
+			// The last frame of the previous track has been mixed
+			if (position >= fadeFrames) {
+				outgoing.release();
+				outgoing = null;
+			}
+		}
+	}
+
+	private float gainAt(final double t) {
+		final double x = Math.max(0, Math.min(1, t)) * TABLE_SIZE;
+		final int i = (int) x;
+		if (i >= TABLE_SIZE)
+			return gains[TABLE_SIZE];
+		return gains[i] + (gains[i + 1] - gains[i]) * (float) (x - i);
+	}
+}
@@ -0,0 +1,102 @@
+package com.goxr3plus.streamplayer.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.IntSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decodes the audio stream ahead of the {@link StreamPlayer} writer thread.
+ * <p>
+ * The task fills the blocks of a {@link PcmRingBuffer} with decoded PCM data until the stream ends,
+ * the decoder fails, or {@link #cancel()} is called. When the ring is full it parks until the writer
+ * has released a block, so a slow decode only shrinks the buffered audio instead of starving the line.
+ * <p>
+ * The head and the tail of the stream can be left out of the ring, such as the silence an MP3 encoder adds around
+ * the audio, see {@link Mp3SeekIndex#getGaplessStart()}.
+ */
+final class DecodeAheadTask implements Runnable {
+
+	private final Logger logger;
+	private final InputStream decodedStream;
+	private final PcmRingBuffer ring;
+	private final IntSupplier encodedPosition;
+	private final long skipBytes;
+	private final long limitBytes;
+
+	private volatile boolean cancelled;
+
+	/**
+	 * @param logger          used to log messages
+	 * @param decodedStream   the decoded PCM stream to read from
+	 * @param ring            the ring to be filled
+	 * @param encodedPosition supplies the position in the encoded stream after each read
+	 */
+	DecodeAheadTask(Logger logger, InputStream decodedStream, PcmRingBuffer ring, IntSupplier encodedPosition) {
+		this(logger, decodedStream, ring, encodedPosition, 0, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @param logger          used to log messages
+	 * @param decodedStream   the decoded PCM stream to read from
+	 * @param ring            the ring to be filled
+	 * @param encodedPosition supplies the position in the encoded stream after each read
+	 * @param skipBytes       the bytes at the head of the stream thrown away, a whole number of PCM frames
+	 * @param limitBytes      the most bytes published after those, a whole number of PCM frames
+	 */
+	DecodeAheadTask(Logger logger, InputStream decodedStream, PcmRingBuffer ring, IntSupplier encodedPosition,
+			long skipBytes, long limitBytes) {
+		this.logger = logger;
+		this.decodedStream = decodedStream;
+		this.ring = ring;
+		this.encodedPosition = encodedPosition;
+		this.skipBytes = skipBytes;
+		this.limitBytes = limitBytes;
+	}
+
+	@Override
+	public void run() {
+		try {
+			int nBytesRead = 0;
+			long skipped = skipBytes;
+			long remaining = limitBytes;
+			while (!cancelled && nBytesRead != -1 && remaining > 0) {
+				final byte[] block = ring.claim();
+				if (block == null) {
+					ring.awaitSpace();
+					continue;
+				}
+
+				final int wanted = (int) Math.min(block.length, skipped > 0 ? skipped : remaining);
+				int totalRead = 0;
+				while (totalRead < wanted
+						&& (nBytesRead = decodedStream.read(block, totalRead, wanted - totalRead)) != -1)
+					totalRead += nBytesRead;
+
+				// The skipped head is read into the claimed block, which is never published
+				if (skipped > 0) {
+					skipped -= totalRead;
+					continue;
+				}
+				remaining -= totalRead;
+				if (totalRead > 0)
+					ring.publish(totalRead, encodedPosition.getAsInt());
+			}
+			ring.markEndOfStream();
+		} catch (final IOException ex) {
+			if (!cancelled)
+				logger.log(Level.WARNING, "\"Decoder Exception: \" ", ex);
+			ring.fail(ex);
+		}
+		logger.info("Decode-ahead thread completed");
+	}
+
+	/**
+	 * Ask the task to stop after the block it is currently decoding.
+	 */
+	void cancel() {
+		cancelled = true;
+		ring.markEndOfStream();
+	}
+}
@@ -7,8 +7,12 @@ import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 
 public class FileDataSource implements DataSource {
@@ -29,6 +33,44 @@ public class FileDataSource implements DataSource {
         return AudioSystem.getAudioInputStream(source);
     }
 
+    /**
+     * @param offset the offset in the file of the first byte of the stream, which must be the start of a frame
+     * @return a stream reading the file from the offset on
+     * @throws UnsupportedAudioFileException if the data at the offset isn't a supported format
+     * @throws IOException if there is a runtime problem with IO.
+     */
+    AudioInputStream getAudioInputStream(long offset) throws UnsupportedAudioFileException, IOException {
+        final FileInputStream stream = new FileInputStream(source);
+        try {
+            stream.getChannel().position(offset);
+            return AudioSystem.getAudioInputStream(new BufferedInputStream(stream));
+        } catch (UnsupportedAudioFileException | IOException | RuntimeException e) {
+            stream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param cache the cache to consult before scanning the file, null to always build the index
+     * @param exact true for an index built by a scan of the file, see {@link Mp3SeekIndex#build(File, boolean)}
+     * @return the seek index of the file, which must be an MP3 file
+     * @throws IOException if the file can't be indexed
+     */
+    Mp3SeekIndex getSeekIndex(SeekIndexCache cache, boolean exact) throws IOException {
+        return cache == null ? Mp3SeekIndex.build(source, exact) : cache.get(source, exact);
+    }
+
+    /**
+     * @return the approximate index read from the first frame of the file, which must be an MP3 file, null if it has
+     * no table of contents
+     * @throws IOException if the file can't be read
+     */
+    Mp3SeekIndex getTableOfContents() throws IOException {
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            return Mp3SeekIndex.readTableOfContents(channel);
+        }
+    }
+
     @Override
     public int getDurationInSeconds() {
         return TimeTool.durationInSeconds(source.getAbsolutePath(), AudioType.FILE);
@@ -0,0 +1,686 @@
+package com.goxr3plus.streamplayer.stream;
+
+import javax.sound.sampled.AudioFileFormat;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Index of the frames of an MP3 file, to seek without decoding nor scanning from the start of the file.
+ * <p>
+ * An exact index comes from a single scan of the frame headers and keeps the position of one frame out of
+ * {@link #POINT_INTERVAL}. An approximate index comes from the Xing or VBRI table of contents of the first frame,
+ * which costs nothing to read but doesn't give the exact number of the frames it points to.
+ * <p>
+ * Frames are numbered from the first frame of the file, including the Xing or VBRI frame which decodes to silence,
+ * so that frame n decodes to the PCM frames n * {@link #getSamplesPerFrame()} onwards.
+ * <p>
+ * The LAME tag which follows the Xing header gives the silence the encoder added before and after the audio, so
+ * that a track can follow the previous one without a gap, see {@link #getGaplessStart()}.
+ *
+ * @author GOXR3PLUS
+ */
+public final class Mp3SeekIndex {
+
+	/** An exact index keeps the position of one frame out of this many */
+	static final int POINT_INTERVAL = 16;
+
+	/** The most frames decoded ahead of a seek target to refill the bit reservoir */
+	static final int MAX_PREROLL_FRAMES = 32;
+
+	/** Frames decoded before the target which must decode exactly, for the overlap of the filter banks */
+	private static final int WARM_UP_FRAMES = 2;
+
+	private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+	/** The PCM frames the synthesis filter bank of the decoder delays its output by, on top of the encoder delay */
+	static final int DECODER_DELAY = 529;
+
+	private static final int[][] BITRATES = {
+			// MPEG 1 layer I, II, III
+			{ 0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448 },
+			{ 0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384 },
+			{ 0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320 },
+			// MPEG 2 and 2.5 layer I, II and III
+			{ 0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256 },
+			{ 0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160 } };
+
+	private static final int[] SAMPLE_RATES = { 44100, 48000, 32000 };
+
+	/**
+	 * Where to start decoding to reach a frame.
+	 */
+	public static final class Position {
+		private final long frame;
+		private final long offset;
+		private final long skippedFrames;
+		private final long targetOffset;
+
+		Position(final long frame, final long offset, final long skippedFrames, final long targetOffset) {
+			this.frame = frame;
+			this.offset = offset;
+			this.skippedFrames = skippedFrames;
+			this.targetOffset = targetOffset;
+		}
+
+		/**
+		 * @return the number of the frame to start decoding at
+		 */
+		public long getFrame() {
+			return frame;
+		}
+
+		/**
+		 * @return the offset in the file of the frame to start decoding at
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		/**
+		 * @return the number of frames which decode to PCM before the target frame, and must be discarded
+		 */
+		public long getSkippedFrames() {
+			return skippedFrames;
+		}
+
+		/**
+		 * @return the offset in the file of the target frame
+		 */
+		public long getTargetOffset() {
+			return targetOffset;
+		}
+	}
+
+	private final int sampleRate;
+	private final int samplesPerFrame;
+	private final long frameCount;
+	private final long[] pointFrames;
+	private final long[] pointOffsets;
+	private final boolean exact;
+	private final int encoderDelay;
+	private final int encoderPadding;
+
+	Mp3SeekIndex(final int sampleRate, final int samplesPerFrame, final long frameCount, final long[] pointFrames,
+			final long[] pointOffsets, final boolean exact, final int encoderDelay, final int encoderPadding) {
+		this.sampleRate = sampleRate;
+		this.samplesPerFrame = samplesPerFrame;
+		this.frameCount = frameCount;
+		this.pointFrames = pointFrames;
+		this.pointOffsets = pointOffsets;
+		this.exact = exact;
+		this.encoderDelay = encoderDelay;
+		this.encoderPadding = encoderPadding;
+	}
+
+	/**
+	 * @param format the format of a file, null if it isn't known
+	 * @return true for an MP3 file, which can be indexed
+	 */
+	static boolean isMp3(final AudioFileFormat format) {
+		return format != null && format.getType() != null
+				&& "mp3".equalsIgnoreCase(format.getType().getExtension());
+	}
+
+	/**
+	 * Build the index of a file.
+	 *
+	 * @param file  an MP3 file
+	 * @param exact true to scan the frame headers, false to use the table of contents of the file if it has one
+	 * @return the index
+	 * @throws IOException if the file can't be read or isn't an MP3 file
+	 */
+	public static Mp3SeekIndex build(final File file, final boolean exact) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (!exact) {
+				final Mp3SeekIndex index = readTableOfContents(channel);
+				if (index != null)
+					return index;
+			}
+			return scan(channel);
+		}
+	}
+
+	/**
+	 * @return the sample rate, in Hz
+	 */
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * @return the number of PCM frames every MP3 frame decodes to
+	 */
+	public int getSamplesPerFrame() {
+		return samplesPerFrame;
+	}
+
+	/**
+	 * @return the number of MP3 frames
+	 */
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * @return the number of PCM frames of the whole file
+	 */
+	public long getSampleCount() {
+		return frameCount * samplesPerFrame;
+	}
+
+	/**
+	 * @return the PCM frames of silence the encoder added before the audio, from the LAME tag, 0 without one
+	 */
+	public int getEncoderDelay() {
+		return encoderDelay;
+	}
+
+	/**
+	 * @return the PCM frames of silence the encoder added after the audio, from the LAME tag, 0 without one
+	 */
+	public int getEncoderPadding() {
+		return encoderPadding;
+	}
+
+	/**
+	 * @return true if the file has a LAME tag, which tells where its audio starts and ends
+	 */
+	public boolean isGapless() {
+		return encoderDelay > 0 || encoderPadding > 0;
+	}
+
+	/**
+	 * @return the first decoded PCM frame of the audio, after the Xing frame, the encoder delay and the delay of the
+	 *         decoder, 0 if the file isn't {@link #isGapless()}
+	 */
+	public long getGaplessStart() {
+		return isGapless() ? samplesPerFrame + encoderDelay + DECODER_DELAY : 0;
+	}
+
+	/**
+	 * @return the decoded PCM frame following the audio, before the padding of the encoder, the number of decoded
+	 *         PCM frames if the file isn't {@link #isGapless()}
+	 */
+	public long getGaplessEnd() {
+		return getSampleCount() - (isGapless() ? Math.max(0, encoderPadding - DECODER_DELAY) : 0);
+	}
+
+	/**
+	 * @return true if the frame numbers are exact, false if they are estimated from a table of contents
+	 */
+	public boolean isExact() {
+		return exact;
+	}
+
+	/**
+	 * Find the frame which contains an offset of the file.
+	 *
+	 * @param channel the file
+	 * @param offset  an offset in the file
+	 * @return the number of the frame
+	 * @throws IOException if the file can't be read
+	 */
+	public long getFrameAt(final FileChannel channel, final long offset) throws IOException {
+		int point = Arrays.binarySearch(pointOffsets, offset);
+		if (point < 0)
+			point = Math.max(0, -point - 2);
+
+		final FrameReader reader = new FrameReader(channel);
+		long frame = pointFrames[point];
+		long position = reader.sync(pointOffsets[point]);
+		while (position >= 0 && frame < frameCount - 1) {
+			final int size = reader.frameSize(position);
+			if (size <= 0 || position + size > offset)
+				break;
+			position += size;
+			frame++;
+		}
+		return frame;
+	}
+
+	/**
+	 * Find where to start decoding to reach a frame. Layer III frames may keep their data in the previous frames
+	 * (the bit reservoir), decoding starts early enough for the target frame to decode exactly.
+	 *
+	 * @param channel the file
+	 * @param target  the number of the frame to reach
+	 * @return where to start decoding
+	 * @throws IOException if the file can't be read
+	 */
+	public Position locate(final FileChannel channel, final long target) throws IOException {
+		final long frame = Math.max(0, Math.min(target, frameCount - 1));
+		final long first = Math.max(0, frame - MAX_PREROLL_FRAMES);
+		int point = Arrays.binarySearch(pointFrames, first);
+		if (point < 0)
+			point = Math.max(0, -point - 2);
+
+		// Walk to the target, remembering the frames which may be decoded before it
+		final FrameReader reader = new FrameReader(channel);
+		final int window = MAX_PREROLL_FRAMES + 1;
+		final long[] offsets = new long[window];
+		final int[] mainDataSizes = new int[window];
+		final int[] mainDataBegins = new int[window];
+		long current = pointFrames[point];
+		long position = reader.sync(pointOffsets[point]);
+		if (position < 0)
+			throw new IOException("No MP3 frame after offset " + pointOffsets[point]);
+		while (true) {
+			final int size = reader.frameSize(position);
+			if (size <= 0)
+				break;
+			final int slot = (int) (current % window);
+			offsets[slot] = position;
+			mainDataSizes[slot] = reader.mainDataSize(position, size);
+			mainDataBegins[slot] = reader.mainDataBegin(position);
+			if (current == frame)
+				break;
+			position += size;
+			current++;
+		}
+		final long reached = current;
+
+		// Start at the latest frame from which every frame from the warm up on has its bit reservoir
+		long start = reached;
+		final long lowest = Math.max(0, Math.max(reached - MAX_PREROLL_FRAMES, pointFrames[point]));
+		for (long candidate = reached; candidate >= lowest; candidate--) {
+			start = candidate;
+			if (firstDecodedFrame(candidate, reached, mainDataSizes, mainDataBegins) <= reached - WARM_UP_FRAMES
+					|| candidate == 0)
+				break;
+		}
+		final long decoded = start == 0 ? 0 : firstDecodedFrame(start, reached, mainDataSizes, mainDataBegins);
+		return new Position(start, offsets[(int) (start % window)], reached - Math.min(decoded, reached),
+				offsets[(int) (reached % window)]);
+	}
+
+	/**
+	 * The first frame the decoder outputs when it starts at a frame, since frames whose bit reservoir isn't
+	 * available are dropped.
+	 */
+	private static long firstDecodedFrame(final long start, final long last, final int[] mainDataSizes,
+			final int[] mainDataBegins) {
+		final int window = mainDataSizes.length;
+		long available = 0;
+		for (long frame = start; frame <= last; frame++) {
+			final int slot = (int) (frame % window);
+			if (mainDataBegins[slot] <= available)
+				return frame;
+			available += mainDataSizes[slot];
+		}
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * Exact index from the frame headers.
+	 */
+	static Mp3SeekIndex scan(final FileChannel channel) throws IOException {
+		final FrameReader reader = new FrameReader(channel);
+		long position = reader.sync(reader.skipId3v2());
+		if (position < 0)
+			throw new IOException("No MP3 frame found");
+
+		final int header = reader.header(position);
+		final int samplesPerFrame = samplesPerFrame(header);
+		final int sampleRate = sampleRate(header);
+		final int firstSize = reader.frameSize(position);
+		final int lame = firstSize <= 0 ? 0 : readLameDelays(reader.read(position, firstSize), header, firstSize);
+		long[] frames = new long[1024];
+		long[] offsets = new long[1024];
+		int points = 0;
+		long frame = 0;
+		while (position >= 0) {
+			final int size = reader.frameSize(position);
+			if (size <= 0) {
+				// Lost sync, or reached the tags at the end of the file
+				position = reader.sync(position + 1);
+				continue;
+			}
+			if (frame % POINT_INTERVAL == 0) {
+				if (points == frames.length) {
+					frames = Arrays.copyOf(frames, points * 2);
+					offsets = Arrays.copyOf(offsets, points * 2);
+				}
+				frames[points] = frame;
+				offsets[points] = position;
+				points++;
+			}
+			frame++;
+			position += size;
+		}
+		return new Mp3SeekIndex(sampleRate, samplesPerFrame, frame, Arrays.copyOf(frames, points),
+				Arrays.copyOf(offsets, points), true, lame >>> 12, lame & 0xFFF);
+	}
+
+	/**
+	 * Write the index in a compact form: the points are stored as variable length deltas.
+	 *
+	 * @param out the output
+	 * @throws IOException if the output fails
+	 * @see #read(DataInput)
+	 */
+	void write(final DataOutput out) throws IOException {
+		out.writeInt(sampleRate);
+		out.writeShort(samplesPerFrame);
+		out.writeLong(frameCount);
+		out.writeBoolean(exact);
+		out.writeShort(encoderDelay);
+		out.writeShort(encoderPadding);
+		out.writeInt(pointFrames.length);
+		for (int i = 0; i < pointFrames.length; i++) {
+			writeVarLong(out, i == 0 ? pointFrames[0] : pointFrames[i] - pointFrames[i - 1]);
+			writeVarLong(out, i == 0 ? pointOffsets[0] : pointOffsets[i] - pointOffsets[i - 1]);
+		}
+	}
+
+	/**
+	 * Read an index written by {@link #write(DataOutput)}.
+	 *
+	 * @param in the input
+	 * @return the index
+	 * @throws IOException if the input fails or doesn't hold a valid index
+	 */
+	static Mp3SeekIndex read(final DataInput in) throws IOException {
+		final int sampleRate = in.readInt();
+		final int samplesPerFrame = in.readUnsignedShort();
+		final long frameCount = in.readLong();
+		final boolean exact = in.readBoolean();
+		final int encoderDelay = in.readUnsignedShort();
+		final int encoderPadding = in.readUnsignedShort();
+		final int points = in.readInt();
+		if (sampleRate <= 0 || samplesPerFrame <= 0 || frameCount <= 0 || points <= 0 || points > frameCount + 1)
+			throw new IOException("Invalid seek index");
+		final long[] pointFrames = new long[points];
+		final long[] pointOffsets = new long[points];
+		for (int i = 0; i < points; i++) {
+			final long frame = readVarLong(in);
+			final long offset = readVarLong(in);
+			pointFrames[i] = i == 0 ? frame : pointFrames[i - 1] + frame;
+			pointOffsets[i] = i == 0 ? offset : pointOffsets[i - 1] + offset;
+			if (frame < 0 || offset < 0 || pointFrames[i] > frameCount)
+				throw new IOException("Invalid seek index");
+		}
+		return new Mp3SeekIndex(sampleRate, samplesPerFrame, frameCount, pointFrames, pointOffsets, exact,
+				encoderDelay, encoderPadding);
+	}
+
+	private static void writeVarLong(final DataOutput out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) (value & 0x7F | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	private static long readVarLong(final DataInput in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			final int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Invalid seek index");
+	}
+
+	/**
+	 * Approximate index from the Xing or VBRI header of the first frame.
+	 *
+	 * @return null if the file has no table of contents
+	 */
+	static Mp3SeekIndex readTableOfContents(final FileChannel channel) throws IOException {
+		final FrameReader reader = new FrameReader(channel);
+		final long first = reader.sync(reader.skipId3v2());
+		if (first < 0)
+			return null;
+		final int header = reader.header(first);
+		final int size = reader.frameSize(first);
+		final int samplesPerFrame = samplesPerFrame(header);
+		final int sampleRate = sampleRate(header);
+		final ByteBuffer frame = reader.read(first, size);
+
+		// Xing or Info, right after the side information
+		final int xing = 4 + sideInformationSize(header);
+		final int tag = xing + 116 <= size ? frame.getInt(xing) : 0;
+		if (tag == 0x58696E67 || tag == 0x496E666F) {
+			final int flags = frame.getInt(xing + 4);
+			if ((flags & 0x7) != 0x7)
+				return null;
+			final long frames = frame.getInt(xing + 8) & 0xFFFFFFFFL;
+			final long bytes = frame.getInt(xing + 12) & 0xFFFFFFFFL;
+			final long[] pointFrames = new long[101];
+			final long[] pointOffsets = new long[101];
+			pointOffsets[0] = first;
+			for (int i = 0; i < 100; i++) {
+				// The Xing frame is frame 0, the table covers the frames after it
+				pointFrames[i + 1] = 1 + Math.round(frames * i / 100.0);
+				pointOffsets[i + 1] = first + (frame.get(xing + 16 + i) & 0xFF) * bytes / 256;
+			}
+			final int lame = readLameDelays(frame, header, size);
+			return new Mp3SeekIndex(sampleRate, samplesPerFrame, frames + 1, pointFrames, pointOffsets, false,
+					lame >>> 12, lame & 0xFFF);
+		}
+
+		// VBRI, 32 bytes after the header
+		if (size > 62 && frame.getInt(36) == 0x56425249) {
+			final long frames = frame.getInt(50) & 0xFFFFFFFFL;
+			final int entries = frame.getShort(54) & 0xFFFF;
+			final int scale = frame.getShort(56) & 0xFFFF;
+			final int entrySize = frame.getShort(58) & 0xFFFF;
+			final int framesPerEntry = frame.getShort(60) & 0xFFFF;
+			if (entrySize < 1 || entrySize > 4 || 62 + entries * entrySize > size)
+				return null;
+			final long[] pointFrames = new long[entries + 2];
+			final long[] pointOffsets = new long[entries + 2];
+			pointOffsets[0] = first;
+			pointFrames[1] = 1;
+			pointOffsets[1] = first + size;
+			for (int i = 0; i < entries; i++) {
+				long entry = 0;
+				for (int b = 0; b < entrySize; b++)
+					entry = entry << 8 | frame.get(62 + i * entrySize + b) & 0xFF;
+				pointFrames[i + 2] = Math.min(frames, pointFrames[i + 1] + framesPerEntry);
+				pointOffsets[i + 2] = pointOffsets[i + 1] + entry * scale;
+			}
+			return new Mp3SeekIndex(sampleRate, samplesPerFrame, frames + 1, pointFrames, pointOffsets, false, 0, 0);
+		}
+		return null;
+	}
+
+	/**
+	 * Read the encoder delay and padding of the LAME tag, which follows the Xing or Info header of the first frame.
+	 * LAME and the encoders of FFmpeg write the same tag.
+	 *
+	 * @return the 12 bits delay followed by the 12 bits padding, as in the tag, 0 if the frame has no LAME tag
+	 */
+	private static int readLameDelays(final ByteBuffer frame, final int header, final int size) {
+		final int xing = 4 + sideInformationSize(header);
+		if (xing + 8 > size)
+			return 0;
+		final int tag = frame.getInt(xing);
+		if (tag != 0x58696E67 && tag != 0x496E666F)
+			return 0;
+		// The optional fields of the Xing header: frames, bytes, table of contents and quality
+		final int flags = frame.getInt(xing + 4);
+		final int lame = xing + 8 + ((flags & 0x1) != 0 ? 4 : 0) + ((flags & 0x2) != 0 ? 4 : 0)
+				+ ((flags & 0x4) != 0 ? 100 : 0) + ((flags & 0x8) != 0 ? 4 : 0);
+		if (lame + 24 > size)
+			return 0;
+		final int encoder = frame.getInt(lame);
+		// "LAME", "Lavc" or "Lavf"
+		if (encoder != 0x4C414D45 && encoder != 0x4C617663 && encoder != 0x4C617666)
+			return 0;
+		return (frame.get(lame + 21) & 0xFF) << 16 | (frame.get(lame + 22) & 0xFF) << 8 | frame.get(lame + 23) & 0xFF;
+	}
+
+	// -------------------HEADERS---------------------
+
+	private static int version(final int header) {
+		// 0 = MPEG 2.5, 2 = MPEG 2, 3 = MPEG 1
+		return header >>> 19 & 0x3;
+	}
+
+	private static int layer(final int header) {
+		// 1 = layer III, 2 = layer II, 3 = layer I
+		return header >>> 17 & 0x3;
+	}
+
+	private static boolean isValid(final int header) {
+		return (header & 0xFFE00000) == 0xFFE00000 && version(header) != 1 && layer(header) != 0
+				&& (header >>> 12 & 0xF) != 0xF && (header >>> 12 & 0xF) != 0 && (header >>> 10 & 0x3) != 3;
+	}
+
+	/**
+	 * Two headers belong to the same stream if they have the same version, layer and sample rate.
+	 */
+	private static boolean isSameStream(final int header, final int other) {
+		return (header & 0xFFFE0C00) == (other & 0xFFFE0C00);
+	}
+
+	private static int sampleRate(final int header) {
+		final int rate = SAMPLE_RATES[header >>> 10 & 0x3];
+		return version(header) == 3 ? rate : version(header) == 2 ? rate / 2 : rate / 4;
+	}
+
+	private static int samplesPerFrame(final int header) {
+		if (layer(header) == 3)
+			return 384;
+		return layer(header) == 1 && version(header) != 3 ? 576 : 1152;
+	}
+
+	private static int frameLength(final int header) {
+		final int layer = layer(header);
+		final boolean mpeg1 = version(header) == 3;
+		final int table = mpeg1 ? 3 - layer : layer == 3 ? 3 : 4;
+		final int bitrate = BITRATES[table][header >>> 12 & 0xF] * 1000;
+		final int padding = header >>> 9 & 0x1;
+		final int sampleRate = sampleRate(header);
+		if (layer == 3)
+			return (12 * bitrate / sampleRate + padding) * 4;
+		if (layer == 1 && !mpeg1)
+			return 72 * bitrate / sampleRate + padding;
+		return 144 * bitrate / sampleRate + padding;
+	}
+
+	private static int sideInformationSize(final int header) {
+		final boolean mono = (header >>> 6 & 0x3) == 3;
+		if (version(header) == 3)
+			return mono ? 17 : 32;
+		return mono ? 9 : 17;
+	}
+
+	/**
+	 * Reads frame headers through a window of the file.
+	 */
+	private static final class FrameReader {
+		private final FileChannel channel;
+		private final long length;
+		private final ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+		private long bufferStart = -1;
+		private int reference;
+
+		FrameReader(final FileChannel channel) throws IOException {
+			this.channel = channel;
+			this.length = channel.size();
+		}
+
+		/**
+		 * @return the offset of the first byte after the ID3v2 tag, 0 if the file doesn't start with one
+		 */
+		long skipId3v2() throws IOException {
+			if (length < 10 || byteAt(0) != 'I' || byteAt(1) != 'D' || byteAt(2) != '3')
+				return 0;
+			final int size = (byteAt(6) & 0x7F) << 21 | (byteAt(7) & 0x7F) << 14 | (byteAt(8) & 0x7F) << 7
+					| byteAt(9) & 0x7F;
+			final boolean footer = (byteAt(5) & 0x10) != 0;
+			return 10 + size + (footer ? 10 : 0);
+		}
+
+		/**
+		 * @return the offset of the first frame at or after position, followed by another frame of the same stream
+		 *         or by the end of the file, -1 if there is none
+		 */
+		long sync(final long position) throws IOException {
+			for (long offset = position; offset + 4 <= length; offset++) {
+				if (byteAt(offset) != 0xFF)
+					continue;
+				final int header = header(offset);
+				if (!isValid(header) || reference != 0 && !isSameStream(header, reference))
+					continue;
+				final long next = offset + frameLength(header);
+				if (next + 4 > length || isValid(header(next)) && isSameStream(header, header(next))) {
+					if (reference == 0)
+						reference = header;
+					return offset;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * @return the size of the frame at position, 0 if there is no frame of the stream there
+		 */
+		int frameSize(final long position) throws IOException {
+			if (position + 4 > length)
+				return 0;
+			final int header = header(position);
+			if (!isValid(header) || reference != 0 && !isSameStream(header, reference))
+				return 0;
+			final int size = frameLength(header);
+			return position + size <= length ? size : 0;
+		}
+
+		/**
+		 * @return the number of bytes of main data of the Layer III frame at position
+		 */
+		int mainDataSize(final long position, final int size) throws IOException {
+			final int header = header(position);
+			final int crc = (header >>> 16 & 0x1) == 0 ? 2 : 0;
+			return Math.max(0, size - 4 - crc - sideInformationSize(header));
+		}
+
+		/**
+		 * @return how many bytes before the frame at position its Layer III main data begins
+		 */
+		int mainDataBegin(final long position) throws IOException {
+			final int header = header(position);
+			if (layer(header) != 1)
+				return 0;
+			final long sideInformation = position + 4 + ((header >>> 16 & 0x1) == 0 ? 2 : 0);
+			final int bits = byteAt(sideInformation) << 8 | byteAt(sideInformation + 1);
+			return version(header) == 3 ? bits >>> 7 : bits >>> 8;
+		}
+
+		int header(final long position) throws IOException {
+			return byteAt(position) << 24 | byteAt(position + 1) << 16 | byteAt(position + 2) << 8
+					| byteAt(position + 3);
+		}
+
+		ByteBuffer read(final long position, final int size) throws IOException {
+			final ByteBuffer frame = ByteBuffer.allocate(size);
+			for (int i = 0; i < size && position + i < length; i++)
+				frame.put(i, (byte) byteAt(position + i));
+			return frame;
+		}
+
+		private int byteAt(final long position) throws IOException {
+			if (bufferStart < 0 || position < bufferStart || position >= bufferStart + buffer.limit()) {
+				((Buffer) buffer).clear();
+				bufferStart = position;
+				while (buffer.hasRemaining() && channel.read(buffer, bufferStart + buffer.position()) > 0) {
+					// Fill the window
+				}
+				((Buffer) buffer).flip();
+				if (!buffer.hasRemaining())
+					throw new IOException("Unexpected end of file at " + position);
+			}
+			return buffer.get((int) (position - bufferStart)) & 0xFF;
+		}
+	}
+}
@@ -134,7 +134,11 @@ public class Outlet {
     void drainStopAndFreeDataLine() {
         // Free audio resources.
         if (sourceDataLine != null) {
-            sourceDataLine.drain();
+            // A stopped line, paused without flush, would never drain
+            if (sourceDataLine.isRunning())
+                sourceDataLine.drain();
+            else
+                sourceDataLine.flush();
             sourceDataLine.stop();
             sourceDataLine.close();
             this.sourceDataLine = null;  // TODO: Is this necessary? Will it not be garbage collected?
@@ -153,6 +157,33 @@ public class Outlet {
         }
     }
 
+    /**
+     * Play the audio the {@link #sourceDataLine} holds, then open it again in another format and start it. The line
+     * is kept, only its controls are created again.
+     *
+     * @param format The new audio format.
+     * @param bufferSize the desired buffer size for the {@link #sourceDataLine}
+     * @throws LineUnavailableException
+     */
+    void reopen(AudioFormat format, int bufferSize) throws LineUnavailableException {
+        if (sourceDataLine.isRunning())
+            sourceDataLine.drain();
+        sourceDataLine.stop();
+        sourceDataLine.close();
+        open(format, bufferSize);
+        sourceDataLine.start();
+    }
+
+    /**
+     * Flush the {@link #sourceDataLine}, discarding the audio it holds without stopping nor closing it.
+     */
+    void flush() {
+        // Called from other threads than the playback thread, which may free the line meanwhile
+        final SourceDataLine line = sourceDataLine;
+        if (line != null)
+            line.flush();
+    }
+
     /**
      * Flush and stop the {@link #sourceDataLine}, if it's running.
      */
@@ -164,6 +195,14 @@ public class Outlet {
         }
     }
 
+    /**
+     * Stop the {@link #sourceDataLine}, if it's running, keeping the audio it holds.
+     */
+    void stop() {
+        if (sourceDataLine != null && sourceDataLine.isRunning())
+            sourceDataLine.stop();
+    }
+
     /**
      * @return true if the {@link #sourceDataLine} is startable.
      */
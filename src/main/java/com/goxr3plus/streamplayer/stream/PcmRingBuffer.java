@@ -0,0 +1,265 @@
+package com.goxr3plus.streamplayer.stream;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free single-producer/single-consumer ring of preallocated PCM blocks.
+ * <p>
+ * The decoder thread claims a free block with {@link #claim()}, fills it and hands it over with
+ * {@link #publish(int, int)}. The writer thread looks at the oldest block with {@link #peek()} and
+ * gives it back with {@link #release()}. No block is ever allocated after construction.
+ * <p>
+ * The ring also keeps the high and low watermarks of its fill level, as seen by the consumer,
+ * so that the depth of the decode-ahead buffer can be tuned.
+ */
+final class PcmRingBuffer {
+
+	/** How long a waiting thread parks before re-checking the ring, in nanoseconds. */
+	private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+	private final byte[][] blocks;
+	private final int[] lengths;
+	private final int[] encodedPositions;
+	private final int mask;
+
+	/** Sequence of the next block to be read by the consumer. */
+	private final AtomicLong head = new AtomicLong();
+
+	/** Sequence of the next block to be written by the producer. */
+	private final AtomicLong tail = new AtomicLong();
+
+	private volatile Thread producer;
+	private volatile Thread consumer;
+
+	private volatile boolean endOfStream;
+	private volatile IOException failure;
+
+	private volatile int highWatermark;
+	private volatile int lowWatermark;
+	private volatile long underruns;
+
+	/** Consumer side. True once a block has been delivered, the ring being empty before that is no underrun. */
+	private boolean delivered;
+	/** Consumer side. True while the ring is empty, so that a starvation is counted once. */
+	private boolean starving;
+
+	/**
+	 * @param capacity  the minimum number of blocks; it is rounded up to a power of two
+	 * @param blockSize the size of each block in bytes
+	 */
+	PcmRingBuffer(int capacity, int blockSize) {
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		blocks = new byte[size][blockSize];
+		lengths = new int[size];
+		encodedPositions = new int[size];
+		mask = size - 1;
+		resetWatermarks();
+	}
+
+	/**
+	 * @return the number of blocks the ring can hold
+	 */
+	int capacity() {
+		return blocks.length;
+	}
+
+	/**
+	 * @return the size of one block in bytes
+	 */
+	int blockSize() {
+		return blocks[0].length;
+	}
+
+	/**
+	 * @return the number of published blocks which have not been released yet
+	 */
+	int size() {
+		return (int) (tail.get() - head.get());
+	}
+
+	// ----------------------------PRODUCER----------------------------
+
+	/**
+	 * Producer side. Returns the next free block, or null if the ring is full.
+	 *
+	 * @return a block to be filled with PCM data, or null
+	 */
+	byte[] claim() {
+		final long t = tail.get();
+		return t - head.get() >= blocks.length ? null : blocks[(int) t & mask];
+	}
+
+	/**
+	 * Producer side. Publishes the block returned by the last {@link #claim()}.
+	 *
+	 * @param length          the number of valid bytes in the block
+	 * @param encodedPosition the position in the encoded stream after the block was decoded
+	 */
+	void publish(int length, int encodedPosition) {
+		final long t = tail.get();
+		final int index = (int) t & mask;
+		lengths[index] = length;
+		encodedPositions[index] = encodedPosition;
+		tail.lazySet(t + 1);
+		LockSupport.unpark(consumer);
+	}
+
+	/**
+	 * Producer side. No more blocks will be published.
+	 */
+	void markEndOfStream() {
+		endOfStream = true;
+		LockSupport.unpark(consumer);
+	}
+
+	/**
+	 * Producer side. The decoder failed, no more blocks will be published.
+	 *
+	 * @param ex the cause
+	 */
+	void fail(IOException ex) {
+		failure = ex;
+		markEndOfStream();
+	}
+
+	/**
+	 * Producer side. Parks the calling thread until the consumer releases a block, or a short timeout elapses.
+	 */
+	void awaitSpace() {
+		producer = Thread.currentThread();
+		if (size() >= blocks.length)
+			LockSupport.parkNanos(this, PARK_NANOS);
+	}
+
+	// ----------------------------CONSUMER----------------------------
+
+	/**
+	 * Consumer side. Returns the oldest published block without removing it, or null if the ring is empty.
+	 * The number of valid bytes is given by {@link #peekLength()}.
+	 *
+	 * @return the oldest published block, or null
+	 */
+	byte[] peek() {
+		final long h = head.get();
+		final int filled = (int) (tail.get() - h);
+		// Running dry shows in the low watermark, unless it is the start or the end of the stream
+		if (filled < lowWatermark && (filled > 0 || delivered && !endOfStream))
+			lowWatermark = filled;
+		if (filled == 0)
+			return null;
+		if (filled > highWatermark)
+			highWatermark = filled;
+		delivered = true;
+		starving = false;
+		return blocks[(int) h & mask];
+	}
+
+	/**
+	 * @return the number of valid bytes in the block returned by {@link #peek()}
+	 */
+	int peekLength() {
+		return lengths[(int) head.get() & mask];
+	}
+
+	/**
+	 * @return the encoded stream position that belongs to the block returned by {@link #peek()}
+	 */
+	int peekEncodedPosition() {
+		return encodedPositions[(int) head.get() & mask];
+	}
+
+	/**
+	 * Consumer side. Gives the block returned by {@link #peek()} back to the producer.
+	 */
+	void release() {
+		head.lazySet(head.get() + 1);
+		LockSupport.unpark(producer);
+	}
+
+	/**
+	 * Consumer side. Parks the calling thread until the producer publishes a block, or a short timeout elapses.
+	 * The ring running dry after the first block and before the end of the stream counts as one underrun, however
+	 * many times the consumer waits for the next block.
+	 */
+	void awaitData() {
+		consumer = Thread.currentThread();
+		if (size() == 0 && !endOfStream) {
+			if (delivered && !starving) {
+				starving = true;
+				underruns++;
+			}
+			LockSupport.parkNanos(this, PARK_NANOS);
+		}
+	}
+
+	/**
+	 * @return true once the producer has finished, the published blocks may not be released yet
+	 */
+	boolean isEndOfStream() {
+		return endOfStream;
+	}
+
+	/**
+	 * Consumer side. Counts the bytes of the published blocks which have not been released yet.
+	 *
+	 * @return the number of valid bytes waiting for the consumer
+	 */
+	long publishedBytes() {
+		long bytes = 0;
+		for (long sequence = head.get(), t = tail.get(); sequence < t; sequence++)
+			bytes += lengths[(int) sequence & mask];
+		return bytes;
+	}
+
+	/**
+	 * @return true if the producer has finished and every published block has been released
+	 */
+	boolean isDrained() {
+		return endOfStream && size() == 0;
+	}
+
+	/**
+	 * @return the exception which stopped the producer, or null
+	 */
+	IOException getFailure() {
+		return failure;
+	}
+
+	// ----------------------------STATISTICS----------------------------
+
+	/**
+	 * @return the highest number of filled blocks seen by the consumer
+	 */
+	int getHighWatermark() {
+		return highWatermark;
+	}
+
+	/**
+	 * @return the lowest number of filled blocks seen by the consumer, or 0 if nothing has been consumed yet
+	 */
+	int getLowWatermark() {
+		final int low = lowWatermark;
+		return low == Integer.MAX_VALUE ? 0 : low;
+	}
+
+	/**
+	 * @return how many times the ring ran dry between the first block and the end of the stream
+	 */
+	long getUnderruns() {
+		return underruns;
+	}
+
+	/**
+	 * Forget the watermarks and the underrun count.
+	 */
+	void resetWatermarks() {
+		highWatermark = 0;
+		lowWatermark = Integer.MAX_VALUE;
+		underruns = 0;
+		delivered = false;
+		starving = false;
+	}
+}
@@ -0,0 +1,180 @@
+package com.goxr3plus.streamplayer.stream;
+
+import java.util.Arrays;
+
+/**
+ * Per channel summary of the audio played since the previous one, passed to
+ * {@link StreamPlayerSummaryListener#summary(PcmSummary)} instead of the PCM data.
+ * <p>
+ * Samples are normalized to [-1, 1]. Every listener has a few instances which the player refills, so the summary is
+ * only valid for the duration of the callback; copy whatever has to be kept.
+ *
+ * @author GOXR3PLUS
+ */
+public final class PcmSummary {
+
+	private final StreamPlayer source;
+
+	private int channels;
+	private long frames;
+	private float[] min = new float[0];
+	private float[] max = new float[0];
+	private double[] sumOfSquares = new double[0];
+	private int encodedBytes = -1;
+	private long microsecondPosition = -1;
+
+	/** When the summary was handed to the listener, see {@link System#nanoTime()} */
+	long publishedNanos;
+
+	PcmSummary(final StreamPlayer source, final int channels) {
+		this.source = source;
+		reset(channels);
+	}
+
+	/**
+	 * Start a new summary.
+	 *
+	 * @param channels the number of channels of the audio
+	 */
+	void reset(final int channels) {
+		if (this.channels != channels) {
+			this.channels = channels;
+			min = new float[channels];
+			max = new float[channels];
+			sumOfSquares = new double[channels];
+		}
+		frames = 0;
+		Arrays.fill(min, 0f);
+		Arrays.fill(max, 0f);
+		Arrays.fill(sumOfSquares, 0.0);
+	}
+
+	/**
+	 * Add interleaved samples to the summary.
+	 *
+	 * @param samples     the samples, normalized to [-1, 1]
+	 * @param firstFrame  the first frame to add
+	 * @param frameCount  the number of frames to add
+	 */
+	void accumulate(final float[] samples, final int firstFrame, final int frameCount) {
+		for (int channel = 0; channel < channels; channel++) {
+			float channelMin = min[channel];
+			float channelMax = max[channel];
+			double squares = sumOfSquares[channel];
+			final int end = (firstFrame + frameCount) * channels;
+			for (int i = firstFrame * channels + channel; i < end; i += channels) {
+				final float sample = samples[i];
+				if (sample < channelMin)
+					channelMin = sample;
+				else if (sample > channelMax)
+					channelMax = sample;
+				squares += sample * sample;
+			}
+			min[channel] = channelMin;
+			max[channel] = channelMax;
+			sumOfSquares[channel] = squares;
+		}
+		frames += frameCount;
+	}
+
+	/**
+	 * Add a later summary of the same audio to this one, when the listener didn't take this one in time.
+	 *
+	 * @param later the later summary, with the same number of channels
+	 */
+	void merge(final PcmSummary later) {
+		for (int channel = 0; channel < channels; channel++) {
+			min[channel] = Math.min(min[channel], later.min[channel]);
+			max[channel] = Math.max(max[channel], later.max[channel]);
+			sumOfSquares[channel] += later.sumOfSquares[channel];
+		}
+		frames += later.frames;
+		encodedBytes = later.encodedBytes;
+		microsecondPosition = later.microsecondPosition;
+	}
+
+	/**
+	 * @param encodedBytes        the position in the encoded stream at the end of the summary
+	 * @param microsecondPosition the microsecond position of the line at the end of the summary
+	 */
+	void setPosition(final int encodedBytes, final long microsecondPosition) {
+		this.encodedBytes = encodedBytes;
+		this.microsecondPosition = microsecondPosition;
+	}
+
+	/**
+	 * @return the number of channels
+	 */
+	public int getChannels() {
+		return channels;
+	}
+
+	/**
+	 * @return the number of frames summarized
+	 */
+	public long getFrames() {
+		return frames;
+	}
+
+	/**
+	 * @param channel the channel
+	 * @return the lowest sample of the channel, 0 or less
+	 */
+	public float getMin(final int channel) {
+		return min[channel];
+	}
+
+	/**
+	 * @param channel the channel
+	 * @return the highest sample of the channel, 0 or more
+	 */
+	public float getMax(final int channel) {
+		return max[channel];
+	}
+
+	/**
+	 * @param channel the channel
+	 * @return the highest absolute sample of the channel
+	 */
+	public float getPeak(final int channel) {
+		return Math.max(-min[channel], max[channel]);
+	}
+
+	/**
+	 * @param channel the channel
+	 * @return the root mean square of the channel
+	 */
+	public float getRms(final int channel) {
+		return frames == 0 ? 0f : (float) Math.sqrt(sumOfSquares[channel] / frames);
+	}
+
+	/**
+	 * @return the position in the encoded stream at the end of the summary, in bytes
+	 */
+	public int getEncodedBytes() {
+		return encodedBytes;
+	}
+
+	/**
+	 * @return the microsecond position of the line at the end of the summary
+	 */
+	public long getMicrosecondPosition() {
+		return microsecondPosition;
+	}
+
+	/**
+	 * @return the player which is playing
+	 */
+	public StreamPlayer getSource() {
+		return source;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder("Frames :=").append(frames);
+		for (int channel = 0; channel < channels; channel++)
+			builder.append(" , Channel ").append(channel).append(" peak :=").append(getPeak(channel))
+					.append(" rms :=").append(getRms(channel));
+		return builder.toString();
+	}
+}
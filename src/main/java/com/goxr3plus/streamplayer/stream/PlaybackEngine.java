@@ -0,0 +1,252 @@
+package com.goxr3plus.streamplayer.stream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the playback of many players on a small fixed set of loop threads, instead of a playback thread per player.
+ * <p>
+ * Every loop thread services its players in turn: a player writes to its line only as many bytes as
+ * {@link javax.sound.sampled.SourceDataLine#available()} allows and hands the thread over, so no player blocks the
+ * others in a write. A loop thread sleeps for the idle time when none of its players could do anything, and is woken
+ * up by a status change of one of them.
+ * <p>
+ * Decoding still happens on the loop thread, unless the player decodes ahead. A stream which blocks on read, such as
+ * a slow URL, holds up the other players of its loop thread, so such streams are better played with a decode-ahead
+ * buffer, see {@link StreamPlayer#setDecodeAheadMillis(int)}, or by the executor model. A seek positions the stream
+ * on the decoder executor, so neither building the frame index of an MP3 file nor decoding up to the target holds
+ * up the loop thread, and a player whose lock is taken by another thread, such as while it is opened, is skipped.
+ * <p>
+ * The loop threads are not daemon threads. Close the engine once its players are done with, see {@link #close()}.
+ *
+ * @author GOXR3PLUS
+ */
+public final class PlaybackEngine implements AutoCloseable {
+
+	/** How long a loop thread sleeps when none of its players could do anything, in microseconds */
+	public static final long DEFAULT_IDLE_MICROS = 2000;
+
+	/**
+	 * What a player did when it was serviced.
+	 */
+	enum Step {
+		/** Wrote or decoded audio, or changed its state, and may have more to do right away */
+		WORKED,
+		/** Couldn't do anything, such as while its line is full or while paused */
+		WAITING,
+		/** Released its resources, it is no longer serviced */
+		FINISHED
+	}
+
+	/**
+	 * The playback of a player, serviced by a loop thread until it finishes.
+	 */
+	interface Session {
+
+		/**
+		 * Do what can be done without blocking. Called again and again by the same loop thread, and once more after
+		 * the future returned by {@link PlaybackEngine#attach(Session)} is cancelled, so that it can release its
+		 * resources.
+		 *
+		 * @param done the future of the session, cancelled when the session must end
+		 * @return what the session did
+		 */
+		Step service(CompletableFuture<Void> done);
+	}
+
+	private final Logger logger;
+	private final long idleNanos;
+	private final Loop[] loops;
+	private volatile boolean closed;
+
+	/**
+	 * Create an engine with the default logger and idle time, and start its loop threads.
+	 *
+	 * @param threads the number of loop threads
+	 */
+	public PlaybackEngine(final int threads) {
+		this(Logger.getLogger(PlaybackEngine.class.getName()), threads, DEFAULT_IDLE_MICROS);
+	}
+
+	/**
+	 * Create an engine and start its loop threads.
+	 *
+	 * @param logger     the logger that will be used by the engine
+	 * @param threads    the number of loop threads
+	 * @param idleMicros how long a loop thread sleeps when none of its players could do anything, in microseconds
+	 */
+	public PlaybackEngine(final Logger logger, final int threads, final long idleMicros) {
+		if (threads < 1)
+			throw new IllegalArgumentException("The engine needs at least one thread: " + threads);
+		if (idleMicros < 1)
+			throw new IllegalArgumentException("The idle time must be positive: " + idleMicros);
+		this.logger = logger;
+		idleNanos = TimeUnit.MICROSECONDS.toNanos(idleMicros);
+		loops = new Loop[threads];
+		final ThreadFactoryWithNamePrefix threadFactory = new ThreadFactoryWithNamePrefix("StreamPlayerEngine");
+		for (int i = 0; i < threads; i++) {
+			loops[i] = new Loop();
+			loops[i].thread = threadFactory.newThread(loops[i]);
+		}
+		for (final Loop loop : loops)
+			loop.thread.start();
+	}
+
+	/**
+	 * Hand a session to the loop thread with the fewest sessions.
+	 *
+	 * @param session the session
+	 * @return completed when the session has finished
+	 * @throws IllegalStateException if the engine is closed
+	 */
+	CompletableFuture<Void> attach(final Session session) {
+		if (closed)
+			throw new IllegalStateException("The playback engine is closed");
+		Loop loop = loops[0];
+		for (final Loop candidate : loops)
+			if (candidate.load.get() < loop.load.get())
+				loop = candidate;
+
+		final Attached attached = new Attached(session);
+		loop.load.incrementAndGet();
+		loop.incoming.add(attached);
+		LockSupport.unpark(loop.thread);
+		return attached.done;
+	}
+
+	/**
+	 * @return the number of loop threads
+	 */
+	public int getThreadCount() {
+		return loops.length;
+	}
+
+	/**
+	 * @return the number of players being serviced
+	 */
+	public int getSessionCount() {
+		int sessions = 0;
+		for (final Loop loop : loops)
+			sessions += loop.load.get();
+		return sessions;
+	}
+
+	/**
+	 * @return true once {@link #close()} was called
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Stop the players still attached, as {@link StreamPlayer#stop()} would, and end the loop threads before
+	 * returning. The players can't play on this engine afterwards.
+	 */
+	@Override
+	public void close() {
+		if (closed)
+			return;
+		closed = true;
+		for (final Loop loop : loops)
+			LockSupport.unpark(loop.thread);
+		for (final Loop loop : loops) {
+			if (loop.thread == Thread.currentThread())
+				continue;
+			try {
+				loop.thread.join();
+			} catch (final InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				logger.log(Level.WARNING, ex.getMessage(), ex);
+				return;
+			}
+		}
+		logger.info("Playback engine closed");
+	}
+
+	/**
+	 * A session and its future.
+	 */
+	private static final class Attached {
+		final Session session;
+		final CompletableFuture<Void> done = new CompletableFuture<>();
+
+		Attached(final Session session) {
+			this.session = session;
+		}
+	}
+
+	/**
+	 * A loop thread and its sessions.
+	 */
+	private final class Loop implements Runnable {
+
+		/** Sessions handed over by {@link #attach(Session)}, not serviced yet */
+		final Queue<Attached> incoming = new ConcurrentLinkedQueue<>();
+
+		/** The number of sessions of this loop, incoming or serviced */
+		final AtomicInteger load = new AtomicInteger();
+
+		/** Only touched by the loop thread */
+		private final List<Attached> sessions = new ArrayList<>();
+
+		Thread thread;
+
+		@Override
+		public void run() {
+			while (!closed) {
+				Attached attached;
+				while ((attached = incoming.poll()) != null)
+					sessions.add(attached);
+
+				boolean worked = false;
+				for (int i = 0; i < sessions.size(); i++) {
+					final Step step = service(sessions.get(i));
+					if (step == Step.FINISHED)
+						sessions.remove(i--);
+					else if (step == Step.WORKED)
+						worked = true;
+				}
+
+				if (!worked && incoming.isEmpty())
+					LockSupport.parkNanos(this, idleNanos);
+			}
+
+			// Let the sessions left release their resources
+			Attached attached;
+			while ((attached = incoming.poll()) != null)
+				sessions.add(attached);
+			for (final Attached left : sessions) {
+				left.done.cancel(false);
+				service(left);
+			}
+			sessions.clear();
+		}
+
+		/**
+		 * Service a session, and complete its future once it has finished.
+		 */
+		private Step service(final Attached attached) {
+			Step step;
+			try {
+				step = attached.session.service(attached.done);
+			} catch (final RuntimeException ex) {
+				logger.log(Level.WARNING, "A player failed on the playback engine", ex);
+				attached.done.completeExceptionally(ex);
+				step = Step.FINISHED;
+			}
+			if (step == Step.FINISHED) {
+				load.decrementAndGet();
+				attached.done.complete(null);
+			}
+			return step;
+		}
+	}
+}
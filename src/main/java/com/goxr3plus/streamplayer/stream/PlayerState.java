@@ -0,0 +1,211 @@
+package com.goxr3plus.streamplayer.stream;
+
+import com.goxr3plus.streamplayer.enums.Status;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The status of a player, which only changes through the legal transitions, by compare-and-set, without locks.
+ * <p>
+ * The status is packed with an epoch, which every transition increments, in a single long: the stamp. A command
+ * which read the stamp before doing its work changes the status only if no other transition happened in between, see
+ * {@link #move(long, Status)}, so a stale command can't overwrite a newer status, such as a seek reopening the stream
+ * of a player stopped meanwhile.
+ * <p>
+ * Threads can wait for a status without polling, see {@link #await(Status, long, TimeUnit)}: every transition unparks
+ * them.
+ *
+ * @author GOXR3PLUS
+ */
+final class PlayerState {
+
+	/** The low bits of a stamp hold the ordinal of the status, the high bits the epoch */
+	private static final int STATUS_BITS = 8;
+	private static final long STATUS_MASK = (1L << STATUS_BITS) - 1;
+	private static final Status[] STATUSES = Status.values();
+
+	/** The statuses a player can go to from each status. Every status can go back to NOT_SPECIFIED, by a reset */
+	private static final Map<Status, Set<Status>> TRANSITIONS = new EnumMap<>(Status.class);
+
+	static {
+		allow(Status.NOT_SPECIFIED, Status.OPENING, Status.SEEKING, Status.STOPPED);
+		allow(Status.OPENING, Status.OPENED, Status.STOPPED);
+		allow(Status.OPENED, Status.PLAYING, Status.SEEKING, Status.STOPPED);
+		allow(Status.PLAYING, Status.PAUSED, Status.SEEKING, Status.STOPPED);
+		allow(Status.PAUSED, Status.PLAYING, Status.SEEKING, Status.STOPPED);
+		allow(Status.SEEKING, Status.OPENED, Status.STOPPED);
+		allow(Status.STOPPED, Status.SEEKING);
+	}
+
+	private final AtomicLong stamp = new AtomicLong(Status.NOT_SPECIFIED.ordinal());
+
+	/** The threads in {@link #await(Status, long, TimeUnit)} */
+	private final Queue<Thread> waiters = new ConcurrentLinkedQueue<>();
+
+	private static void allow(final Status from, final Status... to) {
+		TRANSITIONS.put(from, EnumSet.of(Status.NOT_SPECIFIED, to));
+	}
+
+	/**
+	 * @param from the status of the player
+	 * @param to   the next status
+	 * @return true if the player can go from one status to the other
+	 */
+	static boolean isLegal(final Status from, final Status to) {
+		final Set<Status> next = TRANSITIONS.get(from);
+		return next != null && next.contains(to);
+	}
+
+	/**
+	 * @param stamp a stamp, see {@link #stamp()}
+	 * @return the status of the stamp
+	 */
+	static Status statusOf(final long stamp) {
+		return STATUSES[(int) (stamp & STATUS_MASK)];
+	}
+
+	/**
+	 * @param stamp a stamp, see {@link #stamp()}
+	 * @return the number of transitions before the stamp
+	 */
+	static long epochOf(final long stamp) {
+		return stamp >>> STATUS_BITS;
+	}
+
+	/**
+	 * @return the status and the epoch, to be compared with later stamps or passed to {@link #move(long, Status)}
+	 */
+	long stamp() {
+		return stamp.get();
+	}
+
+	/**
+	 * @return the status
+	 */
+	Status get() {
+		return statusOf(stamp.get());
+	}
+
+	/**
+	 * @return the number of transitions so far
+	 */
+	long getEpoch() {
+		return epochOf(stamp.get());
+	}
+
+	/**
+	 * Go to a status if there was no transition since the stamp was read.
+	 *
+	 * @param expected the stamp read before
+	 * @param to       the next status
+	 * @return false if there was a transition in between, or if the status of the stamp can't go to the next one
+	 */
+	boolean move(final long expected, final Status to) {
+		if (!isLegal(statusOf(expected), to) || !stamp.compareAndSet(expected, next(expected, to)))
+			return false;
+		signalWaiters();
+		return true;
+	}
+
+	/**
+	 * Go from a status to another.
+	 *
+	 * @param from the status the player must be in
+	 * @param to   the next status
+	 * @return false if the player is in another status
+	 * @throws IllegalArgumentException if the transition isn't legal
+	 */
+	boolean move(final Status from, final Status to) {
+		return move(EnumSet.of(from), to);
+	}
+
+	/**
+	 * Go from any of some statuses to another.
+	 *
+	 * @param from the statuses the player must be in one of
+	 * @param to   the next status
+	 * @return false if the player is in another status
+	 * @throws IllegalArgumentException if one of the transitions isn't legal
+	 */
+	boolean move(final Set<Status> from, final Status to) {
+		for (final Status status : from)
+			if (!isLegal(status, to))
+				throw new IllegalArgumentException("Illegal transition: " + status + " -> " + to);
+		while (true) {
+			final long current = stamp.get();
+			if (!from.contains(statusOf(current)))
+				return false;
+			if (stamp.compareAndSet(current, next(current, to))) {
+				signalWaiters();
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Go back to NOT_SPECIFIED, from any status.
+	 */
+	void reset() {
+		stamp.getAndUpdate(current -> next(current, Status.NOT_SPECIFIED));
+		signalWaiters();
+	}
+
+	/**
+	 * Wait until the player is in a status. A status the player only passes through while the thread is waking up may
+	 * be missed, compare the epochs to tell whether there were transitions in between.
+	 *
+	 * @param status  the status to wait for
+	 * @param timeout the maximum time to wait
+	 * @param unit    the unit of the timeout
+	 * @return false if the time elapsed first
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	boolean await(final Status status, final long timeout, final TimeUnit unit) throws InterruptedException {
+		if (get() == status)
+			return true;
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		final Thread current = Thread.currentThread();
+		// Registered before looking at the status, so a transition in between unparks the thread
+		waiters.add(current);
+		try {
+			while (get() != status) {
+				final long left = deadline - System.nanoTime();
+				if (left <= 0)
+					return false;
+				LockSupport.parkNanos(this, left);
+				if (Thread.interrupted())
+					throw new InterruptedException();
+			}
+			return true;
+		} finally {
+			waiters.remove(current);
+		}
+	}
+
+	/**
+	 * @param stamp a stamp, see {@link #stamp()}
+	 * @param to    the next status
+	 * @return the stamp a successful {@link #move(long, Status)} from the stamp to the status leaves
+	 */
+	static long next(final long stamp, final Status to) {
+		return (epochOf(stamp) + 1) << STATUS_BITS | to.ordinal();
+	}
+
+	private void signalWaiters() {
+		for (final Thread waiter : waiters)
+			LockSupport.unpark(waiter);
+	}
+
+	@Override
+	public String toString() {
+		return get() + "#" + getEpoch();
+	}
+}
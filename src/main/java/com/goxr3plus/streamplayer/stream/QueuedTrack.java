@@ -0,0 +1,255 @@
+package com.goxr3plus.streamplayer.stream;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * A track waiting in the queue of a {@link StreamPlayer}, opened and decoded ahead while the previous track plays.
+ * <p>
+ * Once {@link #prepare(ExecutorService)} is called, a decoder thread probes the source, opens its streams and fills
+ * a {@link PcmRingBuffer} with the head of the decoded audio, then keeps it filled until the playback thread takes
+ * the track over. The player then plays the ring as its decode-ahead buffer, see
+ * {@link StreamPlayer#setDecodeAheadMillis(int)}, so that the first block of the track is ready the moment the
+ * previous track ends.
+ *
+ * @author GOXR3PLUS
+ */
+final class QueuedTrack implements Runnable {
+
+	private final Logger logger;
+	private final DataSource source;
+	private final int preloadMillis;
+	private final int blockSize;
+
+	/** Set once the decoder thread is asked for, or once the track is cancelled before */
+	private final AtomicBoolean started = new AtomicBoolean();
+
+	/** Completed once the streams are opened, exceptionally if they couldn't be */
+	private final CompletableFuture<Void> opened = new CompletableFuture<>();
+
+	private AudioFileFormat audioFileFormat;
+	private AudioInputStream encodedStream;
+	private AudioInputStream decodedStream;
+	private int encodedLength = -1;
+	private PcmRingBuffer ring;
+	private volatile DecodeAheadTask decoder;
+
+	/** Completed once the decoder thread is done */
+	private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+	private volatile boolean cancelled;
+
+	/** Guarded by this, set once {@link #run()} is over */
+	private boolean finished;
+	private boolean closed;
+
+	/**
+	 * @param logger        used to log messages
+	 * @param source        the source of the track
+	 * @param preloadMillis how many milliseconds of decoded audio to keep ready
+	 * @param blockSize     the size of the blocks of the ring, in bytes
+	 */
+	QueuedTrack(final Logger logger, final DataSource source, final int preloadMillis, final int blockSize) {
+		this.logger = logger;
+		this.source = source;
+		this.preloadMillis = preloadMillis;
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Start opening and decoding the track on a decoder thread, unless it is started or cancelled already.
+	 *
+	 * @param executor runs the decoder thread
+	 */
+	void prepare(final ExecutorService executor) {
+		if (started.compareAndSet(false, true))
+			executor.execute(this);
+	}
+
+	@Override
+	public void run() {
+		try {
+			encodedStream = source.getAudioInputStream();
+			audioFileFormat = source.getAudioFileFormat();
+			encodedLength = encodedStream.available();
+			decodedStream = AudioSystem.getAudioInputStream(StreamPlayer.getDecodedFormat(encodedStream.getFormat()),
+				encodedStream);
+			final AudioFormat format = decodedStream.getFormat();
+			final float bytesPerSecond = format.getFrameRate() * format.getFrameSize();
+			final int blocks = bytesPerSecond <= 0 ? 2
+				: (int) Math.ceil(preloadMillis * bytesPerSecond / 1000 / blockSize);
+			ring = new PcmRingBuffer(blocks, blockSize);
+			// Without the silence the encoder added around the audio, so that the track follows without a gap
+			final Mp3SeekIndex contents = readTableOfContents();
+			if (contents != null && contents.isGapless()) {
+				final long start = contents.getGaplessStart();
+				decoder = new DecodeAheadTask(logger, decodedStream, ring, this::getEncodedPosition,
+					start * format.getFrameSize(), (contents.getGaplessEnd() - start) * format.getFrameSize());
+			} else
+				decoder = new DecodeAheadTask(logger, decodedStream, ring, this::getEncodedPosition);
+		} catch (final IOException | UnsupportedAudioFileException | IllegalArgumentException ex) {
+			logger.log(Level.WARNING, "Cannot open the queued track " + source, ex);
+			synchronized (this) {
+				close();
+			}
+			opened.completeExceptionally(ex);
+			finish();
+			return;
+		}
+
+		opened.complete(null);
+		logger.info(() -> "Queued track opened: " + source);
+		// A cancel which didn't see the decoder yet
+		if (cancelled)
+			decoder.cancel();
+		decoder.run();
+		finish();
+	}
+
+	/**
+	 * @return the table of contents of an MP3 file, which tells where its audio starts and ends, null if there is none
+	 */
+	private Mp3SeekIndex readTableOfContents() {
+		if (!(source instanceof FileDataSource) || !Mp3SeekIndex.isMp3(audioFileFormat))
+			return null;
+		try {
+			return ((FileDataSource) source).getTableOfContents();
+		} catch (final IOException ex) {
+			logger.log(Level.INFO, "Cannot read the table of contents of " + source, ex);
+			return null;
+		}
+	}
+
+	private void finish() {
+		synchronized (this) {
+			finished = true;
+			if (cancelled)
+				close();
+		}
+		done.complete(null);
+	}
+
+	/**
+	 * Give the track up, releasing its streams once the decoder thread is done with them. Doesn't wait.
+	 */
+	void cancel() {
+		cancelled = true;
+		final DecodeAheadTask task = decoder;
+		if (task != null)
+			task.cancel();
+		synchronized (this) {
+			// Never started, or done already
+			if (started.compareAndSet(false, true) || finished)
+				close();
+		}
+	}
+
+	/**
+	 * Guarded by this.
+	 */
+	private void close() {
+		if (closed)
+			return;
+		closed = true;
+		try {
+			if (decodedStream != null)
+				decodedStream.close();
+			if (encodedStream != null)
+				encodedStream.close();
+		} catch (final IOException ex) {
+			logger.warning("Cannot close the queued track\n" + ex);
+		}
+	}
+
+	/**
+	 * Wait for the streams to be opened.
+	 *
+	 * @param timeout how long to wait, in milliseconds
+	 */
+	void awaitOpened(final long timeout) {
+		try {
+			opened.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (final InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} catch (final ExecutionException | TimeoutException ex) {
+			// Looked at by the caller
+		}
+	}
+
+	/**
+	 * @return true once the streams are opened
+	 */
+	boolean isOpened() {
+		return opened.isDone() && !opened.isCompletedExceptionally();
+	}
+
+	/**
+	 * @return true if the streams couldn't be opened
+	 */
+	boolean isFailed() {
+		return opened.isCompletedExceptionally();
+	}
+
+	/**
+	 * @return the position in the encoded stream, counted from the start of the source
+	 */
+	int getEncodedPosition() {
+		try {
+			return encodedLength - encodedStream.available();
+		} catch (final IOException ex) {
+			return -1;
+		}
+	}
+
+	DataSource getSource() {
+		return source;
+	}
+
+	/**
+	 * @return the format of the source, as the streams and the ring only valid once {@link #isOpened()} is true
+	 */
+	AudioFileFormat getAudioFileFormat() {
+		return audioFileFormat;
+	}
+
+	AudioInputStream getEncodedStream() {
+		return encodedStream;
+	}
+
+	AudioInputStream getDecodedStream() {
+		return decodedStream;
+	}
+
+	int getEncodedLength() {
+		return encodedLength;
+	}
+
+	PcmRingBuffer getRing() {
+		return ring;
+	}
+
+	DecodeAheadTask getDecoder() {
+		return decoder;
+	}
+
+	/**
+	 * @return completed once the decoder thread is done
+	 */
+	Future<?> getFuture() {
+		return done;
+	}
+}
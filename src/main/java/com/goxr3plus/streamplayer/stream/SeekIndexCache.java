@@ -0,0 +1,388 @@
+package com.goxr3plus.streamplayer.stream;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Directory of {@link Mp3SeekIndex} files, so that a file is scanned once and not every time it is opened.
+ * <p>
+ * Every media file has one entry, named after a digest of its absolute path. The entry records the path, size and
+ * modification time of the file, and optionally a hash of its first and last bytes; an entry which doesn't match
+ * the file anymore is rebuilt. Entries are written to a temporary file and moved in place, and an entry which can't
+ * be read is deleted and rebuilt, so a crash or another process never makes seeking fail.
+ * <p>
+ * The total size of the entries is bounded: the least recently used entries are deleted first. Using an entry
+ * updates its modification time, which is what the eviction sorts by.
+ *
+ * @author GOXR3PLUS
+ */
+public final class SeekIndexCache {
+
+	/** System property overriding the directory of the default cache */
+	public static final String DIRECTORY_PROPERTY = "streamplayer.seekIndexCache";
+
+	/** Total size of the default cache, in bytes */
+	public static final long DEFAULT_MAXIMUM_SIZE = 32L * 1024 * 1024;
+
+	private static final int MAGIC = 0x53504958;
+
+	private static final int VERSION = 2;
+
+	private static final String EXTENSION = ".idx";
+
+	/** Bytes hashed at each end of the file by {@link #contentHash(File)} */
+	private static final int HASHED_BYTES = 64 * 1024;
+
+	private static final Logger logger = Logger.getLogger(SeekIndexCache.class.getName());
+
+	private static volatile SeekIndexCache defaultCache;
+
+	private final Path directory;
+	private final long maximumSize;
+	private final boolean hashContent;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param directory   the directory of the entries, created when needed
+	 * @param maximumSize the most bytes taken by the entries
+	 * @param hashContent true to also check a hash of the start and the end of the files, for files whose
+	 *                    modification time isn't reliable
+	 */
+	public SeekIndexCache(final Path directory, final long maximumSize, final boolean hashContent) {
+		if (maximumSize <= 0)
+			throw new IllegalArgumentException("Maximum size must be positive: " + maximumSize);
+		this.directory = directory;
+		this.maximumSize = maximumSize;
+		this.hashContent = hashContent;
+	}
+
+	/**
+	 * The cache shared by the players, in the directory named by the {@value #DIRECTORY_PROPERTY} system property,
+	 * or in .streamplayer/seek-index in the home directory of the user. A player only uses it once it is given to
+	 * {@link StreamPlayer#setSeekIndexCache(SeekIndexCache)}.
+	 *
+	 * @return the default cache
+	 */
+	public static SeekIndexCache getDefault() {
+		SeekIndexCache cache = defaultCache;
+		if (cache == null) {
+			synchronized (SeekIndexCache.class) {
+				cache = defaultCache;
+				if (cache == null) {
+					final String property = System.getProperty(DIRECTORY_PROPERTY);
+					final Path path = property != null ? Paths.get(property)
+							: Paths.get(System.getProperty("user.home"), ".streamplayer", "seek-index");
+					cache = defaultCache = new SeekIndexCache(path, DEFAULT_MAXIMUM_SIZE, false);
+				}
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * @return the directory of the entries
+	 */
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return the number of indexes read from the cache
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of indexes which had to be built
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * Get the index of a file from the cache, or build and store it.
+	 *
+	 * @param file  an MP3 file
+	 * @param exact true for an index built by a scan of the file, see {@link Mp3SeekIndex#build(File, boolean)}
+	 * @return the index
+	 * @throws IOException if the file can't be indexed. Failures of the cache itself are only logged.
+	 */
+	public Mp3SeekIndex get(final File file, final boolean exact) throws IOException {
+		final File absolute = file.getAbsoluteFile();
+		final Path entry = directory.resolve(entryName(absolute));
+		final Key key = Key.of(absolute, hashContent);
+
+		final Mp3SeekIndex cached = load(entry, key);
+		// An exact index also serves approximate seeking
+		if (cached != null && (cached.isExact() || !exact)) {
+			hits.incrementAndGet();
+			return cached;
+		}
+
+		misses.incrementAndGet();
+		final Mp3SeekIndex index = Mp3SeekIndex.build(absolute, exact);
+		try {
+			store(entry, key, index);
+			evict();
+		} catch (final IOException ex) {
+			logger.log(Level.WARNING, "Cannot cache the seek index of " + absolute, ex);
+		}
+		return index;
+	}
+
+	/**
+	 * Delete every entry.
+	 *
+	 * @throws IOException if the directory can't be listed
+	 */
+	public void clear() throws IOException {
+		for (final Path entry : entries())
+			Files.deleteIfExists(entry);
+	}
+
+	/**
+	 * @return the total size of the entries, in bytes
+	 * @throws IOException if the directory can't be listed
+	 */
+	public long size() throws IOException {
+		long size = 0;
+		for (final Path entry : entries())
+			size += Files.size(entry);
+		return size;
+	}
+
+	/**
+	 * @return the index of the entry, null if there is none or it doesn't match the file anymore
+	 */
+	private Mp3SeekIndex load(final Path entry, final Key key) {
+		if (!Files.isRegularFile(entry))
+			return null;
+		try (InputStream in = Files.newInputStream(entry)) {
+			final byte[] content = readFully(in);
+			if (content.length < 4)
+				throw new IOException("Truncated entry");
+			final CRC32 crc = new CRC32();
+			crc.update(content, 0, content.length - 4);
+			if ((int) crc.getValue() != ByteBuffer.wrap(content, content.length - 4, 4).getInt())
+				throw new IOException("Corrupt entry");
+
+			final DataInputStream data = new DataInputStream(
+					new ByteArrayInputStream(content, 0, content.length - 4));
+			if (data.readInt() != MAGIC || data.readUnsignedShort() != VERSION)
+				throw new IOException("Unknown entry format");
+			if (!key.equals(Key.read(data)))
+				return null;
+			final Mp3SeekIndex index = Mp3SeekIndex.read(data);
+			touch(entry);
+			return index;
+		} catch (final IOException | RuntimeException ex) {
+			logger.log(Level.FINE, "Dropping the seek index entry " + entry, ex);
+			try {
+				Files.deleteIfExists(entry);
+			} catch (final IOException e) {
+				logger.log(Level.FINE, "Cannot delete " + entry, e);
+			}
+			return null;
+		}
+	}
+
+	private void store(final Path entry, final Key key, final Mp3SeekIndex index) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+		final DataOutputStream data = new DataOutputStream(bytes);
+		data.writeInt(MAGIC);
+		data.writeShort(VERSION);
+		key.write(data);
+		index.write(data);
+		data.flush();
+		final CRC32 crc = new CRC32();
+		crc.update(bytes.toByteArray());
+		data.writeInt((int) crc.getValue());
+
+		Files.createDirectories(directory);
+		final Path temporary = Files.createTempFile(directory, "entry", ".tmp");
+		try {
+			try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporary))) {
+				bytes.writeTo(out);
+			}
+			try {
+				Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (final AtomicMoveNotSupportedException ex) {
+				Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Delete the least recently used entries until the cache fits its maximum size.
+	 */
+	private void evict() throws IOException {
+		final List<Path> entries = entries();
+		final List<long[]> stats = new ArrayList<>(entries.size());
+		long total = 0;
+		for (int i = 0; i < entries.size(); i++) {
+			final Path entry = entries.get(i);
+			try {
+				final long size = Files.size(entry);
+				stats.add(new long[] { Files.getLastModifiedTime(entry).toMillis(), size, i });
+				total += size;
+			} catch (final IOException ex) {
+				// Deleted meanwhile
+			}
+		}
+		if (total <= maximumSize)
+			return;
+		stats.sort((a, b) -> Long.compare(a[0], b[0]));
+		for (final long[] stat : stats) {
+			if (total <= maximumSize)
+				break;
+			Files.deleteIfExists(entries.get((int) stat[2]));
+			total -= stat[1];
+		}
+	}
+
+	private List<Path> entries() throws IOException {
+		final List<Path> entries = new ArrayList<>();
+		if (!Files.isDirectory(directory))
+			return entries;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+			for (final Path entry : stream)
+				entries.add(entry);
+		}
+		return entries;
+	}
+
+	private static void touch(final Path entry) {
+		try {
+			Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (final IOException ex) {
+			// Only makes the entry look older to the eviction
+		}
+	}
+
+	private static String entryName(final File file) {
+		try {
+			final byte[] digest = MessageDigest.getInstance("SHA-1")
+					.digest(file.getPath().getBytes(StandardCharsets.UTF_8));
+			final StringBuilder name = new StringBuilder(digest.length * 2 + EXTENSION.length());
+			for (final byte b : digest)
+				name.append(Character.forDigit(b >>> 4 & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			return name.append(EXTENSION).toString();
+		} catch (final NoSuchAlgorithmException ex) {
+			// Every Java platform has SHA-1
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private static byte[] readFully(final InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+		final byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) != -1)
+			out.write(buffer, 0, read);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Hash of the first and last {@link #HASHED_BYTES} of a file.
+	 */
+	private static long contentHash(final File file) throws IOException {
+		final CRC32 crc = new CRC32();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			final long size = channel.size();
+			final ByteBuffer buffer = ByteBuffer.allocate(HASHED_BYTES);
+			for (final long start : new long[] { 0, Math.max(HASHED_BYTES, size - HASHED_BYTES) }) {
+				((Buffer) buffer).clear();
+				long position = start;
+				while (buffer.hasRemaining() && position < size) {
+					final int read = channel.read(buffer, position);
+					if (read < 0)
+						break;
+					position += read;
+				}
+				((Buffer) buffer).flip();
+				crc.update(buffer);
+			}
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Identity of a media file.
+	 */
+	private static final class Key {
+		private final String path;
+		private final long size;
+		private final long modified;
+		/** -1 when the content isn't hashed */
+		private final long hash;
+
+		private Key(final String path, final long size, final long modified, final long hash) {
+			this.path = path;
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+		}
+
+		static Key of(final File file, final boolean hashContent) throws IOException {
+			if (!file.isFile())
+				throw new IOException("Not a file: " + file);
+			return new Key(file.getPath(), file.length(), file.lastModified(), hashContent ? contentHash(file) : -1);
+		}
+
+		static Key read(final DataInputStream in) throws IOException {
+			return new Key(in.readUTF(), in.readLong(), in.readLong(), in.readLong());
+		}
+
+		void write(final DataOutputStream out) throws IOException {
+			out.writeUTF(path);
+			out.writeLong(size);
+			out.writeLong(modified);
+			out.writeLong(hash);
+		}
+
+		@Override
+		public boolean equals(final Object object) {
+			if (!(object instanceof Key))
+				return false;
+			final Key other = (Key) object;
+			return path.equals(other.path) && size == other.size && modified == other.modified && hash == other.hash;
+		}
+
+		@Override
+		public int hashCode() {
+			return path.hashCode() ^ Long.hashCode(size) ^ Long.hashCode(modified) ^ Long.hashCode(hash);
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package com.goxr3plus.streamplayer.stream;
+
+import java.time.Duration;
+
+/**
+ * What a seek did, given as the description of the {@link com.goxr3plus.streamplayer.enums.Status#SEEKED} event.
+ *
+ * @author GOXR3PLUS
+ */
+public final class SeekReport {
+
+	private final long frame;
+	private final long encodedPosition;
+	private final long discardedFrames;
+	private final boolean sampleAccurate;
+	private final long latencyNanos;
+
+	SeekReport(final long frame, final long encodedPosition, final long discardedFrames, final boolean sampleAccurate,
+			final long latencyNanos) {
+		this.frame = frame;
+		this.encodedPosition = encodedPosition;
+		this.discardedFrames = discardedFrames;
+		this.sampleAccurate = sampleAccurate;
+		this.latencyNanos = latencyNanos;
+	}
+
+	/**
+	 * @param latencyNanos the latency of the seek, in nanoseconds
+	 * @return the same report with another latency
+	 */
+	SeekReport withLatency(final long latencyNanos) {
+		return new SeekReport(frame, encodedPosition, discardedFrames, sampleAccurate, latencyNanos);
+	}
+
+	/**
+	 * @return the PCM frame played next, -1 if it isn't known, as after a seek in bytes of a format without index
+	 */
+	public long getFrame() {
+		return frame;
+	}
+
+	/**
+	 * @return the position in the encoded stream where decoding resumed, in bytes
+	 */
+	public long getEncodedPosition() {
+		return encodedPosition;
+	}
+
+	/**
+	 * @return the number of PCM frames decoded and thrown away to reach the target
+	 */
+	public long getDiscardedFrames() {
+		return discardedFrames;
+	}
+
+	/**
+	 * @return true if playback resumes exactly at {@link #getFrame()}
+	 */
+	public boolean isSampleAccurate() {
+		return sampleAccurate;
+	}
+
+	/**
+	 * @return the time from the seek request to the stream being positioned, or while playing to the first audio
+	 *         from the new position being written to the line
+	 */
+	public Duration getLatency() {
+		return Duration.ofNanos(latencyNanos);
+	}
+
+	@Override
+	public String toString() {
+		return "Seek to frame " + frame + " at byte " + encodedPosition + ", " + discardedFrames
+				+ " frames discarded, " + (sampleAccurate ? "sample accurate" : "approximate") + ", "
+				+ latencyNanos / 1000 + " us";
+	}
+}
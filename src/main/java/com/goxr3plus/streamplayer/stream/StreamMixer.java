@@ -0,0 +1,510 @@
+package com.goxr3plus.streamplayer.stream;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import com.goxr3plus.streamplayer.dsp.PcmConverter;
+import com.goxr3plus.streamplayer.dsp.Resampler;
+
+/**
+ * Plays many streams at once through a single {@link SourceDataLine}, instead of a line per {@link StreamPlayer}.
+ * <p>
+ * Every input is decoded ahead on the decoder executor shared with the players, into a {@link PcmRingBuffer}. The mix thread then builds blocks of
+ * a fixed number of frames: it takes as many frames from every input, converts the inputs of another sample rate with
+ * a {@link Resampler}, applies the gain and the pan of the input and sums them. The block is written to the line of
+ * the {@link Outlet}, whose blocking write paces the mix thread. An input whose decoder is behind leaves silence in
+ * the block instead of holding up the others, see {@link Input#getUnderruns()}.
+ * <p>
+ * The mix of a block doesn't allocate, so dozens of inputs can play without garbage collection pauses. Inputs are
+ * added and removed while playing, an input is dropped once it has played to its end. Its stream is closed on the
+ * decoder executor, so that the mix thread doesn't wait for the decoder thread of the input. A failure of the mix
+ * thread closes the mixer.
+ *
+ * @author GOXR3PLUS
+ */
+public final class StreamMixer implements AutoCloseable {
+
+	/** Frames of a block, 11.6 ms at 44.1 kHz */
+	public static final int DEFAULT_BLOCK_FRAMES = 512;
+
+	/** How many milliseconds of every input are decoded ahead */
+	private static final int DECODE_AHEAD_MILLIS = 250;
+
+	/** Bytes of the blocks decoded ahead, rounded down to whole frames */
+	private static final int DECODE_BLOCK_SIZE = 4096;
+
+	/** How many blocks the line holds */
+	private static final int LINE_BLOCKS = 4;
+
+	/** How long to wait for the mix thread or a decoder thread to finish, in milliseconds */
+	private static final long JOIN_MILLIS = 1000;
+
+	private final Logger logger;
+	private final AudioFormat format;
+	private final int blockFrames;
+	private final Outlet outlet;
+	private final ExecutorService decoderExecutorService;
+
+	/** The inputs being mixed, replaced as a whole when one is added or dropped */
+	private volatile Input[] inputs = new Input[0];
+
+	private volatile boolean running;
+	private volatile boolean closed;
+	private Thread mixThread;
+
+	// ----------Only touched by the mix thread----------
+
+	private final PcmConverter converter;
+	private final float[] mixBuffer;
+	private final byte[] outputBuffer;
+	private volatile long mixedBlocks;
+
+	/**
+	 * Create a mixer with the default logger and block size.
+	 *
+	 * @param format the format of the line, signed or unsigned PCM in stereo
+	 */
+	public StreamMixer(final AudioFormat format) {
+		this(Logger.getLogger(StreamMixer.class.getName()), format, DEFAULT_BLOCK_FRAMES);
+	}
+
+	/**
+	 * Create a mixer. It plays once started, see {@link #start()}.
+	 *
+	 * @param logger      the logger that will be used by the mixer
+	 * @param format      the format of the line, signed or unsigned PCM in stereo
+	 * @param blockFrames the number of frames mixed at a time
+	 */
+	public StreamMixer(final Logger logger, final AudioFormat format, final int blockFrames) {
+		if (!PcmConverter.isSupported(format) || format.getChannels() != 2)
+			throw new IllegalArgumentException("The mixer plays PCM in stereo, not " + format);
+		if (blockFrames <= 0)
+			throw new IllegalArgumentException("Invalid block size: " + blockFrames);
+		this.logger = logger;
+		this.format = format;
+		this.blockFrames = blockFrames;
+		this.outlet = new Outlet(logger);
+		this.converter = new PcmConverter(format);
+		this.mixBuffer = new float[blockFrames * 2];
+		this.outputBuffer = new byte[blockFrames * format.getFrameSize()];
+		this.decoderExecutorService = StreamPlayerRegistry.getDecoderExecutor();
+	}
+
+	/**
+	 * Open a line in the format of the mixer and start the mix thread.
+	 *
+	 * @throws LineUnavailableException if there is no such line
+	 */
+	public synchronized void start() throws LineUnavailableException {
+		if (closed)
+			throw new IllegalStateException("The mixer is closed");
+		if (running)
+			return;
+
+		final DataLine.Info lineInfo = new DataLine.Info(SourceDataLine.class, format, AudioSystem.NOT_SPECIFIED);
+		outlet.setSourceDataLine((SourceDataLine) AudioSystem.getLine(lineInfo));
+		outlet.open(format, LINE_BLOCKS * outputBuffer.length);
+		outlet.start();
+
+		running = true;
+		mixThread = new ThreadFactoryWithNamePrefix("StreamMixer").newThread(this::mix);
+		mixThread.start();
+		logger.info(() -> "Mixer started: " + format + ", blocks of " + blockFrames + " frames");
+	}
+
+	/**
+	 * Add a stream to the mix. A stream which isn't PCM is decoded as by a {@link StreamPlayer}, a stream of another
+	 * sample rate is converted to the rate of the mixer.
+	 *
+	 * @param stream a mono or stereo stream
+	 * @return the input, through which its gain and its pan are set
+	 */
+	public Input add(final AudioInputStream stream) {
+		if (closed)
+			throw new IllegalStateException("The mixer is closed");
+		final AudioInputStream decoded = PcmConverter.isSupported(stream.getFormat()) ? stream
+			: AudioSystem.getAudioInputStream(StreamPlayer.getDecodedFormat(stream.getFormat()), stream);
+		final Input input = new Input(decoded);
+		synchronized (this) {
+			if (closed)
+				throw new IllegalStateException("The mixer is closed");
+			input.future = decoderExecutorService.submit(input.decoder);
+			final Input[] current = inputs;
+			final Input[] next = Arrays.copyOf(current, current.length + 1);
+			next[current.length] = input;
+			inputs = next;
+		}
+		logger.info(() -> "Mixer input added: " + decoded.getFormat());
+		return input;
+	}
+
+	/**
+	 * Add a file to the mix, see {@link #add(AudioInputStream)}.
+	 *
+	 * @param file an audio file
+	 * @return the input, through which its gain and its pan are set
+	 * @throws IOException                   if the file cannot be read
+	 * @throws UnsupportedAudioFileException if the file is not audio
+	 */
+	public Input add(final File file) throws IOException, UnsupportedAudioFileException {
+		return add(AudioSystem.getAudioInputStream(file));
+	}
+
+	/**
+	 * @return the number of inputs being mixed
+	 */
+	public int getInputCount() {
+		return inputs.length;
+	}
+
+	/**
+	 * @return the format of the line
+	 */
+	public AudioFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * @return the number of frames mixed at a time
+	 */
+	public int getBlockFrames() {
+		return blockFrames;
+	}
+
+	/**
+	 * @return the number of blocks mixed since the mixer was created
+	 */
+	public long getMixedBlocks() {
+		return mixedBlocks;
+	}
+
+	/**
+	 * @return the line of the mixer, null before it is started or once it is closed
+	 */
+	public SourceDataLine getSourceDataLine() {
+		return outlet.getSourceDataLine();
+	}
+
+	/**
+	 * Stop the mix thread, release every input and close the line. The decoder executor is shared, it is left
+	 * running.
+	 */
+	@Override
+	public void close() {
+		final Thread thread;
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+			running = false;
+			thread = mixThread;
+		}
+		if (thread != null && thread != Thread.currentThread())
+			try {
+				thread.join(JOIN_MILLIS);
+			} catch (final InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+
+		final Input[] current;
+		synchronized (this) {
+			current = inputs;
+			inputs = new Input[0];
+		}
+		for (final Input input : current)
+			input.release();
+		outlet.flushAndFreeDataLine();
+		logger.info("Mixer closed");
+	}
+
+	/**
+	 * The loop of the mix thread.
+	 */
+	private void mix() {
+		final SourceDataLine line = outlet.getSourceDataLine();
+		try {
+			while (running) {
+				final int length = mixBlock();
+				line.write(outputBuffer, 0, length);
+			}
+		} catch (final RuntimeException ex) {
+			// Nothing would play anymore, free the line and the inputs
+			logger.log(Level.WARNING, "The mix thread failed, closing the mixer", ex);
+			close();
+		}
+	}
+
+	/**
+	 * Mix a block of every input into {@link #outputBuffer}, on the mix thread. The inputs which have played to
+	 * their end, or have been removed, are dropped.
+	 *
+	 * @return the number of bytes of the block
+	 */
+	int mixBlock() {
+		Arrays.fill(mixBuffer, 0f);
+		final Input[] current = inputs;
+		for (final Input input : current) {
+			if (!input.removed) {
+				input.fill();
+				input.mixInto(mixBuffer);
+			}
+			if (input.removed || input.isFinished())
+				drop(input);
+		}
+		mixedBlocks++;
+		return converter.toBytes(mixBuffer, mixBuffer.length, outputBuffer);
+	}
+
+	/**
+	 * @return the last block mixed by {@link #mixBlock()}
+	 */
+	byte[] getOutputBuffer() {
+		return outputBuffer;
+	}
+
+	private void drop(final Input input) {
+		synchronized (this) {
+			final Input[] current = inputs;
+			int index = 0;
+			while (index < current.length && current[index] != input)
+				index++;
+			if (index == current.length)
+				return;
+			final Input[] next = new Input[current.length - 1];
+			System.arraycopy(current, 0, next, 0, index);
+			System.arraycopy(current, index + 1, next, index, next.length - index);
+			inputs = next;
+		}
+		// Waits for the decoder thread of the input, which the mix thread doesn't
+		try {
+			decoderExecutorService.execute(input::release);
+		} catch (final RejectedExecutionException ex) {
+			input.release();
+		}
+		logger.info(() -> "Mixer input dropped, " + input.getUnderruns() + " underruns");
+	}
+
+	/**
+	 * A stream played by the mixer.
+	 */
+	public final class Input {
+
+		private final AudioInputStream stream;
+		private final PcmRingBuffer ring;
+		private final DecodeAheadTask decoder;
+		private Future<?> future;
+
+		private volatile float gain = 1f;
+		private volatile float pan = 0f;
+		private volatile boolean removed;
+		private volatile boolean finished;
+		private volatile long underruns;
+
+		// ----------Only touched by the mix thread----------
+
+		private final PcmConverter inputConverter;
+		private final int channels;
+		/** Converts the input to the sample rate of the mixer, null if it has the same rate */
+		private final Resampler resampler;
+		/** One block decoded ahead, as samples */
+		private final float[] samples;
+		/** One block converted to the sample rate of the mixer */
+		private final float[] resampled;
+		/** Frames of the rate of the mixer waiting to be mixed */
+		private final float[] pending;
+		private int pendingFrames;
+		private boolean endOfStream;
+		private float currentLeft = Float.NaN;
+		private float currentRight;
+
+		private Input(final AudioInputStream stream) {
+			final AudioFormat inputFormat = stream.getFormat();
+			if (!PcmConverter.isSupported(inputFormat) || inputFormat.getChannels() > 2)
+				throw new IllegalArgumentException("The mixer plays PCM in mono or stereo, not " + inputFormat);
+			this.stream = stream;
+			this.inputConverter = new PcmConverter(inputFormat);
+			this.channels = inputFormat.getChannels();
+
+			final int frameSize = inputFormat.getFrameSize();
+			final int blockSize = DECODE_BLOCK_SIZE / frameSize * frameSize;
+			final int blockInputFrames = blockSize / frameSize;
+			final float bytesPerSecond = inputFormat.getFrameRate() * frameSize;
+			ring = new PcmRingBuffer((int) Math.ceil(DECODE_AHEAD_MILLIS * bytesPerSecond / 1000 / blockSize), blockSize);
+			decoder = new DecodeAheadTask(logger, stream, ring, () -> 0);
+
+			final double ratio = inputFormat.getSampleRate() / format.getSampleRate();
+			resampler = ratio == 1.0 ? null
+				: new Resampler(channels, blockInputFrames, ratio, ratio, Resampler.Quality.MEDIUM);
+			if (resampler != null)
+				resampler.setRatio(ratio);
+			final int blockOutputFrames = resampler == null ? blockInputFrames
+				: resampler.getMaxOutputFrames(blockInputFrames);
+			samples = new float[blockInputFrames * channels];
+			resampled = resampler == null ? null : new float[blockOutputFrames * channels];
+			pending = new float[(blockFrames + blockOutputFrames) * channels];
+		}
+
+		/**
+		 * @param gain the linear gain of the input, 1.0 plays it as it is
+		 */
+		public void setGain(final float gain) {
+			if (gain < 0 || Float.isNaN(gain))
+				throw new IllegalArgumentException("Invalid gain: " + gain);
+			this.gain = gain;
+		}
+
+		/**
+		 * @return the linear gain of the input
+		 */
+		public float getGain() {
+			return gain;
+		}
+
+		/**
+		 * Place the input between the speakers. As the balance of {@link com.goxr3plus.streamplayer.dsp.VolumeProcessor},
+		 * the side away from the pan is attenuated, a mono input plays on both sides.
+		 *
+		 * @param pan -1.0 for the left speaker, 0.0 for the centre, 1.0 for the right speaker
+		 */
+		public void setPan(final float pan) {
+			if (!(pan >= -1 && pan <= 1))
+				throw new IllegalArgumentException("Pan must be between -1.0 and 1.0: " + pan);
+			this.pan = pan;
+		}
+
+		/**
+		 * @return the place of the input between the speakers
+		 */
+		public float getPan() {
+			return pan;
+		}
+
+		/**
+		 * Remove the input from the mix, from the next block on.
+		 */
+		public void remove() {
+			removed = true;
+		}
+
+		/**
+		 * @return true once the input has played to its end, or has been removed
+		 */
+		public boolean isFinished() {
+			return finished || removed;
+		}
+
+		/**
+		 * @return how many blocks got silence from the input because its decoder was behind
+		 */
+		public long getUnderruns() {
+			return underruns;
+		}
+
+		/**
+		 * @return true once the whole input is decoded, or its decoder has stopped
+		 */
+		boolean isDecoded() {
+			return ring.isEndOfStream();
+		}
+
+		/**
+		 * Take blocks decoded ahead until a block of the mixer is pending, or none is ready.
+		 */
+		private void fill() {
+			while (pendingFrames < blockFrames && !endOfStream) {
+				final byte[] block = ring.peek();
+				if (block == null) {
+					if (ring.isDrained()) {
+						if (ring.getFailure() != null)
+							logger.log(Level.WARNING, "Mixer input failed", ring.getFailure());
+						endOfStream = true;
+					} else
+						underruns++;
+					return;
+				}
+				final int frames = inputConverter.toFloat(block, ring.peekLength(), samples) / channels;
+				ring.release();
+				if (resampler == null) {
+					System.arraycopy(samples, 0, pending, pendingFrames * channels, frames * channels);
+					pendingFrames += frames;
+				} else {
+					final int resampledFrames = resampler.process(samples, frames, resampled);
+					System.arraycopy(resampled, 0, pending, pendingFrames * channels, resampledFrames * channels);
+					pendingFrames += resampledFrames;
+				}
+			}
+		}
+
+		/**
+		 * Add a block of the input to the mix, gliding from the gains of the previous block to avoid clicks.
+		 */
+		private void mixInto(final float[] mix) {
+			final float g = gain;
+			final float p = pan;
+			final float targetLeft = p > 0 ? g * (1 - p) : g;
+			final float targetRight = p < 0 ? g * (1 + p) : g;
+			if (Float.isNaN(currentLeft)) {
+				currentLeft = targetLeft;
+				currentRight = targetRight;
+			}
+			final float stepLeft = (targetLeft - currentLeft) / blockFrames;
+			final float stepRight = (targetRight - currentRight) / blockFrames;
+			float left = currentLeft;
+			float right = currentRight;
+
+			final int frames = Math.min(pendingFrames, blockFrames);
+			for (int frame = 0; frame < frames; frame++) {
+				left += stepLeft;
+				right += stepRight;
+				final int source = frame * channels;
+				mix[frame * 2] += pending[source] * left;
+				mix[frame * 2 + 1] += pending[source + channels - 1] * right;
+			}
+			currentLeft = targetLeft;
+			currentRight = targetRight;
+
+			pendingFrames -= frames;
+			System.arraycopy(pending, frames * channels, pending, 0, pendingFrames * channels);
+			if (endOfStream && pendingFrames == 0)
+				finished = true;
+		}
+
+		/**
+		 * Stop the decoder and close the stream.
+		 */
+		private void release() {
+			decoder.cancel();
+			if (future != null)
+				try {
+					future.get(JOIN_MILLIS, TimeUnit.MILLISECONDS);
+				} catch (final InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				} catch (final ExecutionException | TimeoutException ex) {
+					logger.log(Level.WARNING, "Mixer decoder thread did not finish in time", ex);
+					future.cancel(true);
+				}
+			try {
+				stream.close();
+			} catch (final IOException ex) {
+				logger.warning("Cannot close stream\n" + ex);
+			}
+		}
+	}
+}
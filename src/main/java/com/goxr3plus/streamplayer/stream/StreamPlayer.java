@@ -16,18 +16,29 @@ import java.io.InputStream;
 import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -37,6 +48,7 @@ import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.BooleanControl;
+import javax.sound.sampled.Control;
 import javax.sound.sampled.DataLine;
 import javax.sound.sampled.FloatControl;
 import javax.sound.sampled.Line;
@@ -48,7 +60,20 @@ import javax.sound.sampled.UnsupportedAudioFileException;
 import org.tritonus.share.sampled.TAudioFormat;
 import org.tritonus.share.sampled.file.TAudioFileFormat;
 
+import com.goxr3plus.streamplayer.dsp.AudioProcessor;
+import com.goxr3plus.streamplayer.dsp.AudioProcessorChain;
+import com.goxr3plus.streamplayer.dsp.Equalizer;
+import com.goxr3plus.streamplayer.dsp.PcmConverter;
+import com.goxr3plus.streamplayer.dsp.Resampler;
+import com.goxr3plus.streamplayer.dsp.TimeStretcher;
+import com.goxr3plus.streamplayer.dsp.VolumeProcessor;
+import com.goxr3plus.streamplayer.enums.CrossfadeCurve;
+import com.goxr3plus.streamplayer.enums.DropPolicy;
+import com.goxr3plus.streamplayer.enums.PauseMode;
+import com.goxr3plus.streamplayer.enums.SpeedMode;
 import com.goxr3plus.streamplayer.enums.Status;
+import com.goxr3plus.streamplayer.enums.ThreadMode;
+import com.goxr3plus.streamplayer.stream.PlaybackEngine.Step;
 import com.goxr3plus.streamplayer.stream.StreamPlayerException.PlayerException;
 
 import javazoom.spi.PropertiesContainer;
@@ -68,7 +93,15 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 
 	// -------------------AUDIO----------------,-----
 
-	private volatile Status status = Status.NOT_SPECIFIED;
+	/** The statuses in which the playback thread runs */
+	private static final Set<Status> RUNNING = EnumSet.of(Status.PLAYING, Status.PAUSED);
+
+	/** The statuses {@link #stop()} leaves */
+	private static final Set<Status> STOPPABLE = EnumSet.of(Status.NOT_SPECIFIED, Status.OPENING, Status.OPENED,
+		Status.PLAYING, Status.PAUSED, Status.SEEKING);
+
+	/** The status, changed by compare-and-set through the legal transitions only */
+	private final PlayerState state = new PlayerState();
 
 	/**
 	 * The data source
@@ -84,12 +117,50 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	/** The audio file format. */
 	private AudioFileFormat audioFileFormat;
 
+	/** Frame index of the MP3 file being played, built at the first seek, null if not built yet */
+	private Mp3SeekIndex seekIndex;
+
+	/** The data source {@link #seekIndex} belongs to */
+	private DataSource seekIndexSource;
+
+	/** Whether {@link #seekIndex} is built by a scan of the file instead of its table of contents */
+	private volatile boolean sampleAccurateSeek = true;
+
+	/** Where seek indexes are kept between two openings of a file, null to scan the file every time */
+	private volatile SeekIndexCache seekIndexCache;
+
+	/** Control operations handed to the playback thread, which applies them between two buffers */
+	private final CommandQueue commands = new CommandQueue();
+
+	/** Seek done by the playback thread, completed when its first block reaches the line */
+	private PendingSeek completingSeek;
+
+	/** True once {@link #close()} released the resources for good */
+	private volatile boolean closed;
+
+	/** What the pause does with the audio held by the line */
+	private volatile PauseMode pauseMode = PauseMode.FLUSH;
+
+	/**
+	 * The thread running {@link #call()}, parked while paused, or the loop thread of the {@link #engine} servicing
+	 * the player, null when not playing
+	 */
+	private volatile Thread playbackThread;
+
 	// -------------------LOCKS---------------------
 
 	/**
-	 * It is used for synchronization in place of audioInputStream
+	 * It is used for synchronization in place of audioInputStream. Held by the playback thread for the whole loop,
+	 * through blocking writes and the pause, so it is a lock rather than a monitor, which would pin a virtual thread
+	 * to its carrier.
+	 */
+	private final ReentrantLock audioLock = new ReentrantLock();
+
+	/**
+	 * Guards the subbands of the equalizer and the gains computed from them. Taken by the playback thread too, through
+	 * {@link #submitEqualizer(float[], int)}, so it is a lock for the same reason.
 	 */
-	private final Object audioLock = new Object();
+	private final ReentrantLock equalizerLock = new ReentrantLock();
 
 	// -------------------VARIABLES---------------------
 	/** Name of the mixer to use */
@@ -110,15 +181,131 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	/**
 	 * Speed Factor of the Audio
 	 */
-	private double speedFactor = 1;
+	private volatile double speedFactor = 1;
+
+	/** The slowest speed factor, see {@link #setSpeedFactor(double)} */
+	public static final double MINIMUM_SPEED_FACTOR = 0.25;
+
+	/** The fastest speed factor, see {@link #setSpeedFactor(double)} */
+	public static final double MAXIMUM_SPEED_FACTOR = 4.0;
 
 	/** The Constant EXTERNAL_BUFFER_SIZE. */
 	private static final int EXTERNAL_BUFFER_SIZE = 4096;
 
+	/** How long the writer waits for the decode-ahead thread to finish, in milliseconds. */
+	private static final long DECODE_AHEAD_JOIN_MILLIS = 1000;
+
+	/** How long stopping waits for the playback thread to end before interrupting it, in milliseconds */
+	private static final long STOP_TIMEOUT_MILLIS = 1000;
+
+	/** How long a seek waits for the playback thread, in milliseconds. The first seek in an MP3 file scans it */
+	private static final long SEEK_TIMEOUT_MILLIS = 5000;
+
+	/** How long the delivery of the events to a listener waits for the next buffer, a few buffers of CD audio */
+	private static final Duration EVENTS_LINGER = Duration.ofMillis(100);
+
 	/** The Constant SKIP_INACCURACY_SIZE. */
 	// private static final int SKIP_INACCURACY_SIZE = 1200
 
-	byte[] trimBuffer;
+	/** Refilled for every buffer written to the line, so that progress notification doesn't allocate */
+	private final StreamPlayerProgress progress = new StreamPlayerProgress(this);
+
+	/**
+	 * How many milliseconds of PCM the decode-ahead thread keeps ready for the line, 0 to decode on the writer thread
+	 */
+	private int decodeAheadMillis = 0;
+
+	/** Ring of decoded blocks between the decode-ahead thread and the writer, null when decoding inline */
+	private PcmRingBuffer decodeAheadRing;
+
+	/** Bytes per second of the decoded stream which fills {@link #decodeAheadRing} */
+	private float decodeAheadBytesPerSecond;
+
+	private DecodeAheadTask decodeAheadTask;
+	private Future<?> decodeAheadFuture;
+
+	/**
+	 * The bytes of {@link #audioInputStream} left before the silence an MP3 encoder adds after the audio, so that the
+	 * next track of the queue follows without a gap, {@link Long#MAX_VALUE} if they aren't known
+	 */
+	private long decodedLimit = Long.MAX_VALUE;
+
+	/** The tracks played after the current one, the first one is opened and decoded ahead, see {@link #enqueue(File)} */
+	private final Queue<QueuedTrack> queue = new ConcurrentLinkedQueue<>();
+
+	/** How many milliseconds of a queued track are decoded before the previous track ends, at least */
+	private static final int QUEUE_PRELOAD_MILLIS = 500;
+
+	/** How long the playback thread waits at a time for a queued track still opening, in milliseconds */
+	private static final long QUEUE_POLL_MILLIS = 10;
+
+	/** How many milliseconds consecutive tracks of the queue overlap, 0 to follow without a gap */
+	private volatile int crossfadeMillis = 0;
+
+	/** How the gains change while consecutive tracks overlap */
+	private volatile CrossfadeCurve crossfadeCurve = CrossfadeCurve.EQUAL_POWER;
+
+	/** Mixes the end of the previous track under the current one, null if the format isn't supported */
+	private Crossfade crossfade;
+
+	/** The decoded stream of the previous track while it fades out, null otherwise */
+	private AudioInputStream fadingStream;
+
+	// -------------------PROCESSING---------------------
+
+	/** Software processors run between the decoder and the line */
+	private final AudioProcessorChain audioProcessors = new AudioProcessorChain();
+
+	/** Software equalizer, works for every codec */
+	private final Equalizer equalizer = new Equalizer();
+
+	/** The gain in dB of an equalizer band set to 1.0 through {@link #setEqualizer(float[], int)} */
+	private static final float EQUALIZER_RANGE_DB = 12f;
+
+	/** The gains handed to the {@link #equalizer} by {@link #setEqualizer(float[], int)}, reused for every call */
+	private final float[] equalizerGains = new float[equalizer.getBandCount()];
+
+	/** The equal-width subbands of the MP3 decoder, which {@link #setEqualizer(float[], int)} used to set */
+	private static final int EQUALIZER_SUBBANDS = 32;
+
+	/** The width of a subband of the MP3 decoder at 44.1 kHz, in Hz */
+	private static final float EQUALIZER_SUBBAND_HZ = 44100f / 2 / EQUALIZER_SUBBANDS;
+
+	/** How far the edges of an octave band are from its center frequency, as a ratio */
+	private static final double OCTAVE_HALF_WIDTH = Math.sqrt(2);
+
+	/** The values of the subbands given to {@link #setEqualizer(float[], int)}, guarded by {@link #equalizerLock} */
+	private final float[] equalizerSubbands = new float[EQUALIZER_SUBBANDS];
+
+	/** Software gain, balance and mute, used when the line doesn't provide the controls */
+	private final VolumeProcessor softwareVolume = new VolumeProcessor();
+
+	/** Converts the decoded audio to {@link #processingBuffer} and back, null if the format isn't supported */
+	private PcmConverter pcmConverter;
+
+	/** Samples of the buffer being processed */
+	private float[] processingBuffer;
+
+	/** Changes the speed of the decoded audio, null if the format isn't supported */
+	private Resampler resampler;
+
+	/** The quality of {@link #resampler} */
+	private volatile Resampler.Quality resamplerQuality = Resampler.Quality.MEDIUM;
+
+	/** Changes the speed of the decoded audio without changing the pitch, null if the format isn't supported */
+	private TimeStretcher timeStretcher;
+
+	/** The quality of {@link #timeStretcher} */
+	private volatile TimeStretcher.Quality timeStretchQuality = TimeStretcher.Quality.MEDIUM;
+
+	/** Whether the speed factor resamples or time-stretches the audio */
+	private volatile SpeedMode speedMode = SpeedMode.RESAMPLE;
+
+	/** Samples of the buffer being processed, after the speed change */
+	private float[] resampledBuffer;
+
+	/** The processed audio written to the line */
+	private byte[] outputBuffer;
 
 	// -------------------CLASSES---------------------
 
@@ -128,14 +315,28 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	private final ExecutorService streamPlayerExecutorService;
 	private Future<Void> future;
 
+	/** Completed once the playback started last has released the line */
+	private volatile CompletableFuture<Void> playbackEnd = CompletableFuture.completedFuture(null);
+
+	/** The session playing on the {@link #engine}, null when not playing there */
+	private volatile EngineSession engineSession;
+
+	/** Runs the playback among the playbacks of other players, null to run it on {@link #streamPlayerExecutorService} */
+	private final PlaybackEngine engine;
+
 	/**
 	 * This executor service is used in order the playerState events to be executed
 	 * in an order
 	 */
 	private final ExecutorService eventsExecutorService;
 
-	/** Holds a list of Linteners to be notified about Stream PlayerEvents */
-	private final ArrayList<StreamPlayerListener> listeners;
+	/** Delivers the status events on {@link #eventsExecutorService} */
+	private final StreamPlayerEventBus eventBus;
+
+	/**
+	 * This executor service runs the decode-ahead thread, see {@link #setDecodeAheadMillis(int)}
+	 */
+	private final ExecutorService decoderExecutorService;
 
 	/** The empty map. */
 	private final Map<String, Object> emptyMap = new HashMap<>();
@@ -149,7 +350,8 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	private final Outlet outlet;
 
 	/**
-	 * Default parameter less Constructor. A default logger will be used.
+	 * Default parameter less Constructor. A default logger and the executors shared by the players will be used,
+	 * see {@link StreamPlayerRegistry}.
 	 */
 	public StreamPlayer() {
 		this(Logger.getLogger(StreamPlayer.class.getName()));
@@ -157,28 +359,89 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	}
 
 	/**
-	 * Constructor with a logger.
+	 * Constructor with a logger. The executors shared by the players will be used.
 	 * @param logger The logger that will be used by the player
 	 */
 	public StreamPlayer(Logger logger) {
-		this(logger,
-				Executors.newSingleThreadExecutor(new ThreadFactoryWithNamePrefix("StreamPlayer")),
-				Executors.newSingleThreadExecutor(new ThreadFactoryWithNamePrefix("StreamPlayerEvent")));
+		this(logger, StreamPlayerRegistry.getPlaybackExecutor(), StreamPlayerRegistry.getEventsExecutor());
+	}
+
+	/**
+	 * Constructor with a logger, running on the executors shared by the players of the given kind of threads. On
+	 * virtual threads the blocking writes and the pause don't hold a platform thread each.
+	 * @param logger The logger that will be used by the player
+	 * @param threadMode Platform or virtual threads
+	 * @throws UnsupportedOperationException for virtual threads, before Java 21 or outside of the multi-release jar
+	 */
+	public StreamPlayer(Logger logger, ThreadMode threadMode) {
+		this(logger, StreamPlayerRegistry.getPlaybackExecutor(threadMode),
+			StreamPlayerRegistry.getEventsExecutor(threadMode), StreamPlayerRegistry.getDecoderExecutor(threadMode));
 	}
 
 	/**
-	 * Constructor with settable logger and executor services.
+	 * Constructor with settable logger and executor services. The decode-ahead thread runs on the executor shared by
+	 * the players. The player doesn't shut the given executors down.
 	 * @param logger The logger that will be used by the player
 	 * @param streamPlayerExecutorService Executor service for the stream player
 	 * @param eventsExecutorService Executor service for events.
 	 */
 	public StreamPlayer(Logger logger, ExecutorService streamPlayerExecutorService, ExecutorService eventsExecutorService) {
+		this(logger, streamPlayerExecutorService, eventsExecutorService, StreamPlayerRegistry.getDecoderExecutor());
+	}
+
+	/**
+	 * Constructor with settable logger and executor services. The player doesn't shut the given executors down.
+	 * @param logger The logger that will be used by the player
+	 * @param streamPlayerExecutorService Executor service for the stream player
+	 * @param eventsExecutorService Executor service for events.
+	 * @param decoderExecutorService Executor service for the decode-ahead thread.
+	 */
+	public StreamPlayer(Logger logger, ExecutorService streamPlayerExecutorService, ExecutorService eventsExecutorService,
+						ExecutorService decoderExecutorService) {
+		this(logger, streamPlayerExecutorService, eventsExecutorService, decoderExecutorService, null);
+	}
+
+	/**
+	 * Constructor for a player whose playback is run by an engine, which services many players on a few threads
+	 * instead of a playback thread per player, see {@link PlaybackEngine}. The events and the decode-ahead thread run
+	 * on the executors shared by the players.
+	 * @param logger The logger that will be used by the player
+	 * @param engine The engine running the playback, closed by its owner
+	 */
+	public StreamPlayer(Logger logger, PlaybackEngine engine) {
+		this(logger, null, StreamPlayerRegistry.getEventsExecutor(), StreamPlayerRegistry.getDecoderExecutor(),
+			Objects.requireNonNull(engine));
+	}
+
+	private StreamPlayer(Logger logger, ExecutorService streamPlayerExecutorService, ExecutorService eventsExecutorService,
+						ExecutorService decoderExecutorService, PlaybackEngine engine) {
 		this.logger = logger;
 		this.streamPlayerExecutorService = streamPlayerExecutorService;
+		this.engine = engine;
 		this.eventsExecutorService = eventsExecutorService;
-		listeners = new ArrayList<>();
+		this.decoderExecutorService = decoderExecutorService;
+		eventBus = new StreamPlayerEventBus(logger, eventsExecutorService, StreamPlayerEventBus.DEFAULT_CAPACITY);
+		// A thread for every listener anyway, which waits for the next buffer rather than ending after each one
+		if (StreamPlayerRegistry.isSharedEventsExecutor(eventsExecutorService))
+			eventBus.setLinger(EVENTS_LINGER);
 		outlet = new Outlet(logger);
 		reset();
+		StreamPlayerRegistry.register(this);
+	}
+
+	/**
+	 * Stop the playback and release the line and the streams, before returning. The player can't be opened again.
+	 * The executors are left running, they are shared or belong to whoever gave them to the constructor.
+	 */
+	@Override
+	public void close() {
+		if (closed)
+			return;
+		closed = true;
+		reset();
+		clearQueue();
+		StreamPlayerRegistry.unregister(this);
+		logger.info("StreamPlayer closed");
 	}
 
 	/**
@@ -186,10 +449,44 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	 */
 	@Override
 	public void reset() {
+		freeResources();
+
+		// Notify the Status
+		state.reset();
+		wakePlayback();
+		generateEvent(Status.NOT_SPECIFIED, AudioSystem.NOT_SPECIFIED, null);
+
+	}
+
+	/**
+	 * Free the resources as {@link #reset()} does, then go back to NOT_SPECIFIED unless the status changed since a
+	 * stamp was read, such as by a stop.
+	 *
+	 * @param expected the stamp read before
+	 * @return false if there was a transition in between, the player then stays in its status
+	 */
+	private boolean reset(final long expected) {
+		freeResources();
+		if (!state.move(expected, Status.NOT_SPECIFIED))
+			return false;
+		wakePlayback();
+		generateEvent(Status.NOT_SPECIFIED, AudioSystem.NOT_SPECIFIED, null);
+		return true;
+	}
+
+	/**
+	 * End the playback and release the line and the streams, leaving the status as it is.
+	 */
+	private void freeResources() {
+		// End the playback, which holds the stream
+		endPlayback();
 
 		// Close the stream
-		synchronized (audioLock) {
+		audioLock.lock();
+		try {
 			closeStream();
+		} finally {
+			audioLock.unlock();
 		}
 
 		outlet.flushAndFreeDataLine();
@@ -204,45 +501,70 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 		outlet.setGainControl(null);
 		outlet.setPanControl(null);
 		outlet.setBalanceControl(null);
-
-		// Notify the Status
-		status = Status.NOT_SPECIFIED;
-		generateEvent(Status.NOT_SPECIFIED, AudioSystem.NOT_SPECIFIED, null);
-
 	}
 
 	/**
-	 * Notify listeners about a BasicPlayerEvent.
+	 * Notify listeners about a BasicPlayerEvent. Doesn't wait for the listeners, see {@link StreamPlayerEventBus}.
 	 *
 	 * @param status event code.
 	 * @param encodedStreamPosition in the stream when the event occurs.
 	 * @param description the description
+	 */
+	private void generateEvent(final Status status, final int encodedStreamPosition, final Object description) {
+		logger.log(Level.FINE, () -> "Stream player Status -> " + status);
+		eventBus.publish(new StreamPlayerEvent(this, status, encodedStreamPosition, description));
+	}
+
+	/**
+	 * @return the bus delivering the status events to the listeners
+	 */
+	@Override
+	public StreamPlayerEventBus getEventBus() {
+		return eventBus;
+	}
+
+	/**
+	 * Add a listener to be notified. Its progress buffers are dropped, oldest first, when it falls behind.
 	 *
-	 * @return A String Describing if any problem occurred
+	 * @param streamPlayerListener the listener
 	 */
-	private String generateEvent(final Status status, final int encodedStreamPosition, final Object description) {
-		try {
-			return eventsExecutorService
-				.submit(new StreamPlayerEventLauncher(this, status, encodedStreamPosition, description, listeners))
-				.get();
-		} catch (InterruptedException | ExecutionException ex) {
-			logger.log(Level.WARNING, "Problem in StreamPlayer generateEvent() method", ex);
-		}
-		return "Problem in StreamPlayer generateEvent() method";
+	@Override
+	public void addStreamPlayerListener(final StreamPlayerListener streamPlayerListener) {
+		addStreamPlayerListener(streamPlayerListener, DropPolicy.DROP_OLDEST,
+				StreamPlayerEventBus.DEFAULT_PROGRESS_CAPACITY);
 	}
 
 	/**
 	 * Add a listener to be notified.
 	 *
 	 * @param streamPlayerListener the listener
+	 * @param dropPolicy           what to do with the progress when the listener falls behind
+	 * @param progressCapacity     the most progress buffers waiting for the listener
 	 */
 	@Override
-	public void addStreamPlayerListener(final StreamPlayerListener streamPlayerListener) {
+	public void addStreamPlayerListener(final StreamPlayerListener streamPlayerListener, final DropPolicy dropPolicy,
+			final int progressCapacity) {
+
+		Objects.requireNonNull(streamPlayerListener,
+				"null is not allowed as StreamPlayerListener value.");
+
+		eventBus.addListener(streamPlayerListener, dropPolicy, progressCapacity);
+	}
+
+	/**
+	 * Add a listener to be notified, which gets a summary of the audio rather than every buffer written to the line.
+	 *
+	 * @param streamPlayerListener the listener
+	 * @param summaryRate          how many summaries per second, such as the refresh rate of a level meter
+	 */
+	@Override
+	public void addStreamPlayerListener(final StreamPlayerSummaryListener streamPlayerListener,
+			final double summaryRate) {
 
 		Objects.requireNonNull(streamPlayerListener,
 				"null is not allowed as StreamPlayerListener value.");
 
-		listeners.add(streamPlayerListener);
+		eventBus.addListener(streamPlayerListener, summaryRate);
 	}
 
 	/**
@@ -252,9 +574,7 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	 */
 	@Override
 	public void removeStreamPlayerListener(final StreamPlayerListener streamPlayerListener) {
-		if (listeners != null)
-			listeners.remove(streamPlayerListener);
-
+		eventBus.removeListener(streamPlayerListener);
 	}
 
 	/**
@@ -322,21 +642,167 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 		initAudioInputStream();
 	}
 
+	/**
+	 * Add a file at the end of the queue of tracks played after the current one. The first track of the queue is
+	 * opened and decoded on the decoder thread while the current one plays, at least {@link #QUEUE_PRELOAD_MILLIS}
+	 * ahead, and plays through that decode-ahead buffer. At the end of the current track its audio follows on the
+	 * same line, without a gap nor a frame lost, if it is decoded to the same format; otherwise the line plays the
+	 * end of the current track and is opened again in the new format. A {@link Status#TRACK_CHANGED} event tells
+	 * the listeners, which are also notified as for an open. The silence the encoder of an MP3 file added around the
+	 * audio, as told by its LAME tag, is left out between the tracks.
+	 * <p>
+	 * The queue only goes on from a track played to its end: it doesn't start a stopped player.
+	 *
+	 * @param file the file to be played
+	 */
+	@Override
+	public void enqueue(final File file) {
+		enqueue(new FileDataSource(file));
+	}
+
+	/**
+	 * Add a location at the end of the queue of tracks played after the current one. See {@link #enqueue(File)}
+	 *
+	 * @param url the location to be played
+	 */
+	@Override
+	public void enqueue(final URL url) {
+		enqueue(new UrlDataSource(url));
+	}
+
+	/**
+	 * Add a stream at the end of the queue of tracks played after the current one. See {@link #enqueue(File)}
+	 *
+	 * @param stream the stream to be played
+	 */
+	@Override
+	public void enqueue(final InputStream stream) {
+		enqueue(new StreamDataSource(stream));
+	}
+
+	private void enqueue(final DataSource dataSource) {
+		if (closed)
+			throw new IllegalStateException("The player is closed");
+		logger.info(() -> "enqueue(" + dataSource + ")\n");
+		queue.add(new QueuedTrack(logger, dataSource, Math.max(getDecodeAheadTargetMillis(), QUEUE_PRELOAD_MILLIS),
+			EXTERNAL_BUFFER_SIZE));
+		prepareNextTrack();
+	}
+
+	/**
+	 * @return the number of tracks waiting in the queue
+	 */
+	@Override
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	/**
+	 * Remove the tracks waiting in the queue, releasing the one opened ahead. The current track plays on.
+	 */
+	@Override
+	public void clearQueue() {
+		QueuedTrack track;
+		while ((track = queue.poll()) != null)
+			track.cancel();
+	}
+
+	/**
+	 * Overlap consecutive tracks of the queue. Once the decoder of the current track has reached its end and what is
+	 * left of the track fits in the crossfade, the next track takes over and fades in while the rest of the current
+	 * one fades out, mixed into the same line. The decode-ahead buffer then holds the crossfade and
+	 * {@link #QUEUE_PRELOAD_MILLIS} more, at least, so that both tracks are decoded in time. Tracks decoded to
+	 * different formats, or without software processing, follow each other as without a crossfade, and so does a
+	 * track started before the crossfade was set unless it is decoded ahead.
+	 *
+	 * @param length how long the tracks overlap, {@link Duration#ZERO} to follow without a gap
+	 */
+	@Override
+	public void setCrossfade(final Duration length) {
+		if (length.isNegative())
+			throw new IllegalArgumentException("Crossfade can't be negative: " + length);
+		this.crossfadeMillis = (int) Math.min(Integer.MAX_VALUE - QUEUE_PRELOAD_MILLIS, length.toMillis());
+	}
+
+	/**
+	 * @return how long consecutive tracks of the queue overlap
+	 */
+	@Override
+	public Duration getCrossfade() {
+		return Duration.ofMillis(crossfadeMillis);
+	}
+
+	/**
+	 * @param curve how the gains change while consecutive tracks overlap, {@link CrossfadeCurve#EQUAL_POWER} by
+	 *              default
+	 */
+	@Override
+	public void setCrossfadeCurve(final CrossfadeCurve curve) {
+		this.crossfadeCurve = Objects.requireNonNull(curve);
+	}
+
+	/**
+	 * @return how the gains change while consecutive tracks overlap
+	 */
+	@Override
+	public CrossfadeCurve getCrossfadeCurve() {
+		return crossfadeCurve;
+	}
+
+	/**
+	 * Start opening and decoding the first track of the queue, if it isn't already.
+	 */
+	private void prepareNextTrack() {
+		final QueuedTrack next = queue.peek();
+		if (next != null)
+			next.prepare(decoderExecutorService);
+	}
+
 	/**
 	 * Create AudioInputStream and AudioFileFormat from the data source.
 	 *
 	 * @throws StreamPlayerException the stream player exception
 	 */
 	private void initAudioInputStream() throws StreamPlayerException {
-		try {
+		logger.info("Entered initAudioInputStream\n");
+		if (closed)
+			throw new IllegalStateException("The player is closed");
+
+		// Reset
+		reset();
+		openAudioInputStream();
+	}
 
-			logger.info("Entered initAudioInputStream\n");
+	/**
+	 * Create the streams again for a seek, unless the status changed since the seek went to SEEKING: a stop in
+	 * between leaves the player stopped.
+	 *
+	 * @param seeking the stamp of the seek, in SEEKING
+	 * @throws StreamPlayerException the stream player exception
+	 */
+	private void reinitAudioInputStream(final long seeking) throws StreamPlayerException {
+		logger.info("Entered reinitAudioInputStream\n");
+		if (closed)
+			throw new IllegalStateException("The player is closed");
+
+		if (!reset(seeking)) {
+			logger.info("The player was stopped while seeking");
+			return;
+		}
+		openAudioInputStream();
+	}
 
-			// Reset
-			reset();
+	/**
+	 * Create AudioInputStream and AudioFileFormat from the data source, once the player is reset.
+	 *
+	 * @throws StreamPlayerException the stream player exception
+	 */
+	private void openAudioInputStream() throws StreamPlayerException {
+		try {
 
-			// Notify Status
-			status = Status.OPENING;
+			// Notify Status, unless a stop came in between
+			if (!state.move(Status.NOT_SPECIFIED, Status.OPENING))
+				return;
 			generateEvent(Status.OPENING, getEncodedStreamPosition(), source);
 
 			// Audio resources from file||URL||inputStream.
@@ -350,9 +816,13 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 
 			// Determine Properties
 			determineProperties();
+			decodedLimit = readDecodedLimit();
 
-			// Generate Open Event
-			status = Status.OPENED;
+			// Generate Open Event, unless the player was stopped while opening
+			if (!state.move(Status.OPENING, Status.OPENED)) {
+				logger.info("The player was stopped while opening");
+				return;
+			}
 			generateEvent(Status.OPENED, getEncodedStreamPosition(), null);
 
 		} catch (LineUnavailableException | UnsupportedAudioFileException | IOException e) {
@@ -364,6 +834,23 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	}
 
 
+	/**
+	 * @return the bytes of the opened MP3 file before the padding of the encoder, given by its LAME tag,
+	 *         {@link Long#MAX_VALUE} for other sources
+	 */
+	private long readDecodedLimit() {
+		if (!(source instanceof FileDataSource) || !Mp3SeekIndex.isMp3(audioFileFormat))
+			return Long.MAX_VALUE;
+		try {
+			final Mp3SeekIndex contents = ((FileDataSource) source).getTableOfContents();
+			return contents == null || !contents.isGapless() ? Long.MAX_VALUE
+				: contents.getGaplessEnd() * audioInputStream.getFormat().getFrameSize();
+		} catch (final IOException ex) {
+			logger.log(Level.INFO, "Cannot read the table of contents of " + source, ex);
+			return Long.MAX_VALUE;
+		}
+	}
+
 	/**
 	 * Determines Properties when the File/URL/InputStream is opened.
 	 */
@@ -413,11 +900,8 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 		// Add SourceDataLine
 		audioProperties.put("basicplayer.sourcedataline", outlet.getSourceDataLine());
 
-		// Keep this final reference for the lambda expression
-		final Map<String, Object> audioPropertiesCopy = audioProperties; // TODO: Remove, it's meaningless.
-
-		// Notify all registered StreamPlayerListeners
-		listeners.forEach(listener -> listener.opened(source.getSource(), audioPropertiesCopy));
+		// Notify all registered StreamPlayerListeners, on the events executor like the status events
+		eventBus.publishOpened(this, source.getSource(), audioProperties);
 
 		logger.info("Exited determineProperties()!\n");
 
@@ -452,55 +936,266 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	// private int frameSize
 
 	/**
-	 * Change the Speed Rate of the Audio , this variable affects the Sample Rate ,
-	 * for example 1.0 is normal , 0.5 is half the speed and 2.0 is double the speed
-	 * Note that you have to restart the audio for this to take effect
+	 * Change the Speed Rate of the Audio , for example 1.0 is normal , 0.5 is half the speed and 2.0 is double the
+	 * speed. Depending on the {@link SpeedMode} the pitch changes with the speed or stays the same.
+	 * The change applies to the next buffer written to the line , even while playing.
 	 *
-	 * @param speedFactor speedFactor
+	 * @param speedFactor {@link #MINIMUM_SPEED_FACTOR} ... {@link #MAXIMUM_SPEED_FACTOR}
 	 */
 	@Override
 	public void setSpeedFactor(final double speedFactor) {
+		checkSpeedFactor(speedFactor);
 		this.speedFactor = speedFactor;
 
+		final Resampler current = resampler;
+		if (current != null)
+			current.setRatio(speedFactor);
+		final TimeStretcher stretcher = timeStretcher;
+		if (stretcher != null)
+			stretcher.setRatio(speedFactor);
+	}
+
+	private static void checkSpeedFactor(final double speedFactor) {
+		if (speedFactor < MINIMUM_SPEED_FACTOR || speedFactor > MAXIMUM_SPEED_FACTOR)
+			throw new IllegalArgumentException("The speed factor must be between " + MINIMUM_SPEED_FACTOR + " and "
+				+ MAXIMUM_SPEED_FACTOR + ": " + speedFactor);
 	}
 
 	/**
-	 * Inits a DateLine.<br>
-	 * <p>
-	 * From the AudioInputStream, i.e. from the sound file, we fetch information
-	 * about the format of the audio data. These information include the sampling
-	 * frequency, the number of channels and the size of the samples. There
-	 * information are needed to ask JavaSound for a suitable output line for this
-	 * audio file. Furthermore, we have to give JavaSound a hint about how big the
-	 * internal buffer for the line should be. Here, we say
-	 * AudioSystem.NOT_SPECIFIED, signaling that we don't care about the exact size.
-	 * JavaSound will use some default value for the buffer size.
+	 * Choose whether the speed factor resamples the audio, changing the pitch, or time-stretches it, keeping the
+	 * pitch. Applies to the next buffer written to the line , even while playing.
 	 *
-	 * @throws LineUnavailableException the line unavailable exception
-	 * @throws StreamPlayerException
+	 * @param speedMode the speed mode
 	 */
-	private void createLine() throws LineUnavailableException, StreamPlayerException {
-
-		logger.info("Entered CreateLine()!:\n");
-
-		if (outlet.getSourceDataLine() != null)
-			logger.warning("Warning Source DataLine is not null!\n");
-		else {
-			final AudioFormat sourceFormat = audioInputStream.getFormat();
+	@Override
+	public void setSpeedMode(final SpeedMode speedMode) {
+		this.speedMode = Objects.requireNonNull(speedMode);
+	}
 
-			logger.info(() -> "Create Line : Source format : " + sourceFormat + "\n");
+	/**
+	 * @return Whether the speed factor resamples or time-stretches the audio
+	 */
+	@Override
+	public SpeedMode getSpeedMode() {
+		return speedMode;
+	}
 
-			// Calculate the Sample Size in bits
-			int nSampleSizeInBits = sourceFormat.getSampleSizeInBits();
-			if (sourceFormat.getEncoding() == AudioFormat.Encoding.ULAW || sourceFormat.getEncoding() == AudioFormat.Encoding.ALAW
-                    || nSampleSizeInBits != 8)
-				nSampleSizeInBits = 16;
+	/**
+	 * Choose whether the pause flushes the line or keeps its audio for the resume. Applies to the next pause.
+	 *
+	 * @param pauseMode the pause mode
+	 */
+	@Override
+	public void setPauseMode(final PauseMode pauseMode) {
+		this.pauseMode = Objects.requireNonNull(pauseMode);
+	}
 
-			final AudioFormat targetFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED,
-				(float) (sourceFormat.getSampleRate() * speedFactor), nSampleSizeInBits, sourceFormat.getChannels(),
-				nSampleSizeInBits / 8 * sourceFormat.getChannels(), sourceFormat.getSampleRate(), false);
+	/**
+	 * @return Whether the pause flushes the line or keeps its audio
+	 */
+	@Override
+	public PauseMode getPauseMode() {
+		return pauseMode;
+	}
+
+	/**
+	 * Set the quality of the resampler which changes the speed, see {@link #setSpeedFactor(double)}.
+	 *
+	 * @param quality the quality, higher costs more CPU
+	 */
+	@Override
+	public void setSpeedQuality(final Resampler.Quality quality) {
+		this.resamplerQuality = Objects.requireNonNull(quality);
+
+		final Resampler current = resampler;
+		if (current != null)
+			current.setQuality(quality);
+	}
 
-			// int frameSize = sourceFormat.getChannels() * (nSampleSizeInBits / 8)
+	/**
+	 * @return The quality of the resampler which changes the speed
+	 */
+	@Override
+	public Resampler.Quality getSpeedQuality() {
+		return resamplerQuality;
+	}
+
+	/**
+	 * Set the quality of the time-stretch which changes the speed in {@link SpeedMode#TIME_STRETCH}.
+	 *
+	 * @param quality the quality, higher costs more CPU
+	 */
+	@Override
+	public void setTimeStretchQuality(final TimeStretcher.Quality quality) {
+		this.timeStretchQuality = Objects.requireNonNull(quality);
+
+		final TimeStretcher current = timeStretcher;
+		if (current != null)
+			current.setQuality(quality);
+	}
+
+	/**
+	 * @return The quality of the time-stretch which changes the speed
+	 */
+	@Override
+	public TimeStretcher.Quality getTimeStretchQuality() {
+		return timeStretchQuality;
+	}
+
+	/**
+	 * Set how many milliseconds of decoded audio are kept ready ahead of the line. When it is bigger than 0
+	 * the decoder runs on its own thread and fills a ring buffer, so that decoder hiccups don't become line
+	 * underruns. Note that you have to restart the audio for this to take effect
+	 *
+	 * @param millis 0 to decode on the playback thread
+	 */
+	@Override
+	public void setDecodeAheadMillis(final int millis) {
+		if (millis < 0)
+			throw new IllegalArgumentException("Decode-ahead can't be negative: " + millis);
+		this.decodeAheadMillis = millis;
+	}
+
+	/**
+	 * @return The milliseconds of decoded audio kept ready ahead of the line, 0 if disabled
+	 */
+	@Override
+	public int getDecodeAheadMillis() {
+		return decodeAheadMillis;
+	}
+
+	/**
+	 * @return The most decoded audio ever waiting in the decode-ahead buffer during the last playback, in milliseconds
+	 */
+	@Override
+	public int getDecodeAheadHighWatermarkMillis() {
+		final PcmRingBuffer ring = decodeAheadRing;
+		return ring == null ? 0 : blocksToMillis(ring.getHighWatermark());
+	}
+
+	/**
+	 * @return The least decoded audio ever waiting in the decode-ahead buffer during the last playback, in milliseconds
+	 */
+	@Override
+	public int getDecodeAheadLowWatermarkMillis() {
+		final PcmRingBuffer ring = decodeAheadRing;
+		return ring == null ? 0 : blocksToMillis(ring.getLowWatermark());
+	}
+
+	/**
+	 * @return How many times the line was ready for data the decode-ahead thread had not decoded yet
+	 */
+	@Override
+	public long getDecodeAheadUnderruns() {
+		final PcmRingBuffer ring = decodeAheadRing;
+		return ring == null ? 0 : ring.getUnderruns();
+	}
+
+	private int blocksToMillis(final int blocks) {
+		return decodeAheadBytesPerSecond <= 0 ? 0
+				: (int) (blocks * (long) EXTERNAL_BUFFER_SIZE * 1000 / decodeAheadBytesPerSecond);
+	}
+
+	/**
+	 * @return how many milliseconds of decoded audio are kept ready: enough for the crossfade, if there is one
+	 */
+	private int getDecodeAheadTargetMillis() {
+		final int fade = crossfadeMillis;
+		return fade == 0 ? decodeAheadMillis : Math.max(decodeAheadMillis, fade + QUEUE_PRELOAD_MILLIS);
+	}
+
+	/**
+	 * Start the decode-ahead thread on the current {@link #audioInputStream}, if it is enabled.
+	 */
+	private void startDecodeAhead() {
+		final int millis = getDecodeAheadTargetMillis();
+		if (millis <= 0) {
+			decodeAheadRing = null;
+			return;
+		}
+
+		final AudioFormat format = audioInputStream.getFormat();
+		decodeAheadBytesPerSecond = format.getFrameRate() * format.getFrameSize();
+		final int blocks = decodeAheadBytesPerSecond <= 0 ? 2
+				: (int) Math.ceil(millis * decodeAheadBytesPerSecond / 1000 / EXTERNAL_BUFFER_SIZE);
+
+		decodeAheadRing = new PcmRingBuffer(blocks, EXTERNAL_BUFFER_SIZE);
+		decodeAheadTask = new DecodeAheadTask(logger, audioInputStream, decodeAheadRing, this::getEncodedStreamPosition,
+			0, decodedLimit);
+		logger.info(() -> "Decode-ahead: " + decodeAheadRing.capacity() + " blocks of " + EXTERNAL_BUFFER_SIZE + " bytes");
+		decodeAheadFuture = decoderExecutorService.submit(decodeAheadTask);
+	}
+
+	/**
+	 * Stop the decode-ahead thread and wait for it, so that the stream can be closed safely.
+	 */
+	private void stopDecodeAhead() {
+		awaitDecodeAhead(cancelDecodeAhead());
+	}
+
+	/**
+	 * Stop the decode-ahead thread without waiting for it. The stream can't be closed or read before the thread is
+	 * done, see {@link #awaitDecodeAhead(Future)}.
+	 *
+	 * @return the future of the thread, null if there is none
+	 */
+	private Future<?> cancelDecodeAhead() {
+		if (decodeAheadTask == null)
+			return null;
+		decodeAheadTask.cancel();
+		final Future<?> decodeAhead = decodeAheadFuture;
+		decodeAheadTask = null;
+		decodeAheadFuture = null;
+		return decodeAhead;
+	}
+
+	/**
+	 * Wait for a decode-ahead thread stopped by {@link #cancelDecodeAhead()}, interrupting it if it takes longer
+	 * than {@link #DECODE_AHEAD_JOIN_MILLIS}.
+	 *
+	 * @param decodeAhead the future of the thread, null if there is none
+	 */
+	private void awaitDecodeAhead(final Future<?> decodeAhead) {
+		if (decodeAhead == null)
+			return;
+		try {
+			decodeAhead.get(DECODE_AHEAD_JOIN_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (final InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			logger.log(Level.WARNING, ex.getMessage(), ex);
+		} catch (final ExecutionException | TimeoutException ex) {
+			logger.log(Level.WARNING, "Decode-ahead thread did not finish in time", ex);
+			decodeAhead.cancel(true);
+		}
+	}
+
+	/**
+	 * Inits a DateLine.<br>
+	 * <p>
+	 * From the AudioInputStream, i.e. from the sound file, we fetch information
+	 * about the format of the audio data. These information include the sampling
+	 * frequency, the number of channels and the size of the samples. There
+	 * information are needed to ask JavaSound for a suitable output line for this
+	 * audio file. Furthermore, we have to give JavaSound a hint about how big the
+	 * internal buffer for the line should be. Here, we say
+	 * AudioSystem.NOT_SPECIFIED, signaling that we don't care about the exact size.
+	 * JavaSound will use some default value for the buffer size.
+	 *
+	 * @throws LineUnavailableException the line unavailable exception
+	 * @throws StreamPlayerException
+	 */
+	private void createLine() throws LineUnavailableException, StreamPlayerException {
+
+		logger.info("Entered CreateLine()!:\n");
+
+		if (outlet.getSourceDataLine() != null)
+			logger.warning("Warning Source DataLine is not null!\n");
+		else {
+			final AudioFormat sourceFormat = audioInputStream.getFormat();
+
+			logger.info(() -> "Create Line : Source format : " + sourceFormat + "\n");
+
+			final AudioFormat targetFormat = getDecodedFormat(sourceFormat);
 
 			logger.info(() -> "Sample Rate =" + targetFormat.getSampleRate() + ",Frame Rate="
 				+ targetFormat.getFrameRate() + ",Bit Rate=" + targetFormat.getSampleSizeInBits()
@@ -545,6 +1240,25 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 		}
 	}
 
+	/**
+	 * The PCM format a source is decoded to before it is written to the line.
+	 *
+	 * @param sourceFormat the format of the source
+	 * @return signed little-endian PCM of the same rate and channels, in 8 bits if the source is, else in 16
+	 */
+	static AudioFormat getDecodedFormat(final AudioFormat sourceFormat) {
+		// Calculate the Sample Size in bits
+		int nSampleSizeInBits = sourceFormat.getSampleSizeInBits();
+		if (sourceFormat.getEncoding() == AudioFormat.Encoding.ULAW || sourceFormat.getEncoding() == AudioFormat.Encoding.ALAW
+                || nSampleSizeInBits != 8)
+			nSampleSizeInBits = 16;
+
+		// int frameSize = sourceFormat.getChannels() * (nSampleSizeInBits / 8)
+		return new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, sourceFormat.getSampleRate(), nSampleSizeInBits,
+			sourceFormat.getChannels(), nSampleSizeInBits / 8 * sourceFormat.getChannels(),
+			sourceFormat.getSampleRate(), false);
+	}
+
 	/**
 	 * Open the line.
 	 *
@@ -563,13 +1277,22 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	 */
 	@Override
 	public void play() throws StreamPlayerException {
-		if (status == Status.STOPPED)
+		if (state.get() == Status.STOPPED)
 			initAudioInputStream();
-		if (status != Status.OPENED)
+		startPlayback(state.stamp());
+	}
+
+	/**
+	 * Start the playback of the opened stream, unless the status changed since the stamp was read.
+	 *
+	 * @param opened the stamp of the status, see {@link PlayerState#stamp()}
+	 */
+	private void startPlayback(final long opened) throws StreamPlayerException {
+		if (PlayerState.statusOf(opened) != Status.OPENED)
 			return;
 
-		// Shutdown previous Thread Running
-		awaitTermination();
+		// Wait for the previous playback thread to release the line
+		awaitPlaybackEnd();
 
 		// Open SourceDataLine.
 		try {
@@ -578,16 +1301,31 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 			throw new StreamPlayerException(PlayerException.CAN_NOT_INIT_LINE, ex);
 		}
 
-		// Open the sourceDataLine
-		if (outlet.isStartable()) {
+		// Open the sourceDataLine, unless a stop or another open came in between
+		if (outlet.isStartable() && state.move(opened, Status.PLAYING)) {
 			outlet.start();
 
 			// Proceed only if we have not problems
-			logger.info("Submitting new StreamPlayer Thread");
-			streamPlayerExecutorService.submit(this);
+			configureProcessing(audioInputStream.getFormat());
+			startDecodeAhead();
+			playbackEnd = new CompletableFuture<>();
+			try {
+				if (engine != null) {
+					logger.info("Attaching the StreamPlayer to the playback engine");
+					engineSession = new EngineSession();
+					future = engine.attach(engineSession);
+				} else {
+					logger.info("Submitting new StreamPlayer Thread");
+					future = streamPlayerExecutorService.submit(this);
+				}
+			} catch (final RuntimeException ex) {
+				// Nothing plays, such as on a closed engine
+				state.move(RUNNING, Status.STOPPED);
+				endPlaybackCommands();
+				throw ex;
+			}
 
 			// Update the status
-			status = Status.PLAYING;
 			generateEvent(Status.PLAYING, getEncodedStreamPosition(), null);
 		}
 	}
@@ -596,14 +1334,15 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	 * Pauses the play back.<br>
 	 * <p>
 	 * Player Status = PAUSED. * @return False if failed(so simple...)
+	 * <p>
+	 * The line is flushed or keeps its audio for the resume, see {@link #setPauseMode(PauseMode)}.
 	 *
 	 * @return true, if successful
 	 */
 	@Override
 	public boolean pause() {
-		if (outlet.getSourceDataLine() == null || status != Status.PLAYING)
+		if (outlet.getSourceDataLine() == null || !state.move(Status.PLAYING, Status.PAUSED))
 			return false;
-		status = Status.PAUSED;
 		logger.info("pausePlayback() completed");
 		generateEvent(Status.PAUSED, getEncodedStreamPosition(), null);
 		return true;
@@ -613,19 +1352,33 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	 * Stops the play back.<br>
 	 * <p>
 	 * Player Status = STOPPED.<br>
-	 * Thread should free Audio resources.
+	 * The playback thread frees the audio resources before this method returns, or is interrupted after
+	 * {@link #STOP_TIMEOUT_MILLIS}. See {@link #submitStop()}
 	 */
 	@Override
 	public void stop() {
-		if (status == Status.STOPPED)
+		if (state.get() == Status.STOPPED)
 			return;
-		if (isPlaying())
-			pause();
-		status = Status.STOPPED;
+		submitStop();
+		awaitPlaybackEnd();
 		// generateEvent(Status.STOPPED, getEncodedStreamPosition(), null);
 		logger.info("StreamPlayer stopPlayback() completed");
 	}
 
+	/**
+	 * Hand a stop to the playback thread, which applies it at the end of the buffer it is writing, without waiting.
+	 * The audio left in the line is dropped.
+	 *
+	 * @return completed once the player is stopped and the line released
+	 */
+	@Override
+	public CompletableFuture<Void> submitStop() {
+		final CompletableFuture<Void> stopped = submit(new StopCommand());
+		// Returns a write blocked on a full line
+		outlet.flush();
+		return stopped;
+	}
+
 	/**
 	 * Resumes the play back.<br>
 	 * <p>
@@ -635,10 +1388,10 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	 */
 	@Override
 	public boolean resume() {
-		if (outlet.getSourceDataLine() == null || status != Status.PAUSED)
+		if (outlet.getSourceDataLine() == null || !state.move(Status.PAUSED, Status.PLAYING))
 			return false;
 		outlet.start();
-		status = Status.PLAYING;
+		wakePlayback();
 		generateEvent(Status.RESUMED, getEncodedStreamPosition(), null);
 		logger.info("resumePlayback() completed");
 		return true;
@@ -646,48 +1399,134 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	}
 
 	/**
-	 * Await for the termination of StreamPlayerExecutorService Thread
+	 * Hand a gain change to the playback thread, which applies it between two buffers. See {@link #setGain(double)}
+	 *
+	 * @param fGain the new gain value, linear scale 0.0 ... 1.0
+	 * @return completed once the gain is applied
 	 */
-	private void awaitTermination() {
-		if (future != null && !future.isDone()) {
-			try {
-				// future.get() [Don't use this cause it may hang forever and ever...]
-
-				// Wait ~1 second and then cancel the future
-				final Thread delay = new Thread(() -> {
-					try {
-						for (int i = 0; i < 50; i++) {
-							if (!future.isDone())
-								Thread.sleep(20);
-							else
-								break;
-							logger.log(Level.INFO, "StreamPlayer Future is not yet done...");
-						}
+	@Override
+	public CompletableFuture<Void> submitGain(final double fGain) {
+		return submit(CommandQueue.of(() -> setGain(fGain)));
+	}
 
-					} catch (final InterruptedException ex) {
-						Thread.currentThread().interrupt();
-						logger.log(Level.INFO, ex.getMessage(), ex);
-					}
-				});
+	/**
+	 * Hand a change of the equalizer to the playback thread, which applies it between two buffers. See
+	 * {@link #setEqualizer(float[], int)}
+	 *
+	 * @param array the values of the subbands of the MP3 decoder, from -1.0 to 1.0, copied before this method returns
+	 * @param stop  the number of subbands to change
+	 * @return completed once the equalizer is changed
+	 */
+	@Override
+	public CompletableFuture<Void> submitEqualizer(final float[] array, final int stop) {
+		final float[] values = array == null ? null : array.clone();
+		return submit(CommandQueue.of(() -> setEqualizer(values, stop)));
+	}
 
-				// Start the delay Thread
-				delay.start();
-				// Join until delay Thread is finished
-				delay.join();
+	/**
+	 * Hand a change of speed to the playback thread, which applies it between two buffers. See
+	 * {@link #setSpeedFactor(double)}
+	 *
+	 * @param speedFactor {@link #MINIMUM_SPEED_FACTOR} ... {@link #MAXIMUM_SPEED_FACTOR}
+	 * @return completed once the speed is changed
+	 */
+	@Override
+	public CompletableFuture<Void> submitSpeedFactor(final double speedFactor) {
+		checkSpeedFactor(speedFactor);
+		return submit(CommandQueue.of(() -> setSpeedFactor(speedFactor)));
+	}
 
-			} catch (final InterruptedException ex) {
-				Thread.currentThread().interrupt();
-				logger.log(Level.WARNING, ex.getMessage(), ex);
-			} finally {
-				// Harmless if task already completed
-				future.cancel(true); // interrupt if running
-			}
+	/**
+	 * Hand a seek to the playback thread, without waiting for it. While nothing plays the stream is reopened and
+	 * positioned before this method returns. See {@link #seek(Duration)}
+	 *
+	 * @param position the time from the start of the audio
+	 * @return completed once audio from the new position reaches the line, with null if the stream couldn't be
+	 * positioned or if the playback ended before the seek
+	 */
+	@Override
+	public CompletableFuture<SeekReport> submitSeek(final Duration position) {
+		if (position.isNegative())
+			throw new IllegalArgumentException("Trying to seek to a negative time " + position);
+		final AudioInputStream stream = audioInputStream;
+		if (stream == null || !source.isFile())
+			return CompletableFuture.completedFuture(null);
+		final long frame = Math.round((position.getSeconds() + position.getNano() / 1e9)
+			* stream.getFormat().getSampleRate());
+
+		final PendingSeek request = handSeek(-1, frame, System.nanoTime(), false);
+		if (request != null)
+			return request.result.thenApply(report -> {
+				if (report != null)
+					generateEvent(Status.SEEKED, getEncodedStreamPosition(), report);
+				return report;
+			});
+		final CompletableFuture<SeekReport> reopened = new CompletableFuture<>();
+		try {
+			reopened.complete(seek(-1, frame));
+		} catch (final StreamPlayerException | RuntimeException ex) {
+			reopened.completeExceptionally(ex);
+		}
+		return reopened;
+	}
+
+	/**
+	 * @return the longest time a control operation waited for the playback thread to apply it
+	 */
+	@Override
+	public Duration getMaximumCommandLatency() {
+		return Duration.ofNanos(commands.getMaximumLatencyNanos());
+	}
+
+	/**
+	 * @return the average time the control operations waited for the playback thread to apply them
+	 */
+	@Override
+	public Duration getAverageCommandLatency() {
+		return Duration.ofNanos(commands.getAverageLatencyNanos());
+	}
+
+	/**
+	 * Make the playback thread leave its loop, release the line and end, without draining the line.
+	 */
+	private void endPlayback() {
+		final Future<Void> playback = future;
+		if (playback == null || playback.isDone())
+			return;
+		state.move(RUNNING, Status.STOPPED);
+		wakePlayback();
+		// Returns a write blocked on a full line
+		outlet.flush();
+		awaitPlaybackEnd();
+	}
+
+	/**
+	 * Wait for the playback thread to end, at most {@link #STOP_TIMEOUT_MILLIS} before interrupting it. Returns
+	 * right away on the playback thread itself, as from a synchronous listener.
+	 */
+	private void awaitPlaybackEnd() {
+		final Future<Void> playback = future;
+		if (playback == null || playback.isDone() || Thread.currentThread() == playbackThread)
+			return;
+		try {
+			playback.get(STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (final TimeoutException ex) {
+			logger.warning("The playback thread did not end in time, interrupting it");
+			playback.cancel(true);
+		} catch (final InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			logger.log(Level.WARNING, ex.getMessage(), ex);
+		} catch (final ExecutionException ex) {
+			logger.log(Level.WARNING, "The playback thread failed", ex.getCause());
+		} catch (final CancellationException ex) {
+			// Ended by an earlier timeout
 		}
 	}
 
 	/**
 	 * Skip bytes in the File input stream. It will skip N frames matching to bytes,
-	 * so it will never skip given bytes len
+	 * so it will never skip given bytes len. In MP3 files it jumps straight to the
+	 * frame which contains the given byte, through a frame index of the file
 	 *
 	 * @param bytes the bytes
 	 *
@@ -697,59 +1536,467 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	 */
 	@Override
 	public long seekBytes(final long bytes) throws StreamPlayerException {
-		long totalSkipped = 0;
-
 		// If it is File
-		if (source.isFile()) {
-
-			// Check if the requested bytes are more than totalBytes of Audio
-			final long bytesLength = getTotalBytes();
-			logger.log(Level.INFO, "Bytes: " + bytes + " BytesLength: " + bytesLength);
-			if ((bytesLength <= 0) || (bytes >= bytesLength)) {
-				generateEvent(Status.EOM, getEncodedStreamPosition(), null);
-				return totalSkipped;
-			}
+		if (!source.isFile())
+			return 0;
+
+		// Check if the requested bytes are more than totalBytes of Audio
+		final long bytesLength = getTotalBytes();
+		logger.log(Level.INFO, "Bytes: " + bytes + " BytesLength: " + bytesLength);
+		if ((bytesLength <= 0) || (bytes >= bytesLength)) {
+			generateEvent(Status.EOM, getEncodedStreamPosition(), null);
+			return 0;
+		}
+
+		logger.info(() -> "Bytes to skip : " + bytes);
+		final SeekReport report = seek(bytes, -1);
+		return report == null ? 0 : report.getEncodedPosition();
+	}
+
+	/**
+	 * Go to a time of the audio, sample accurately: the stream is positioned on the PCM frame of that time.
+	 * See {@link #seekToFrame(long)}
+	 *
+	 * @param position the time from the start of the audio
+	 *
+	 * @return the PCM frame played next, -1 for URL and InputStream
+	 *
+	 * @throws StreamPlayerException the stream player exception
+	 */
+	@Override
+	public long seek(final Duration position) throws StreamPlayerException {
+		if (position.isNegative())
+			throw new IllegalArgumentException("Trying to seek to a negative time " + position);
+		if (audioInputStream == null)
+			return -1;
+		final double sampleRate = audioInputStream.getFormat().getSampleRate();
+		final long seconds = position.getSeconds();
+		return seekToFrame(Math.round((seconds + position.getNano() / 1e9) * sampleRate));
+	}
+
+	/**
+	 * Go to a PCM frame of the audio. In MP3 files decoding starts at the closest frame of the frame index which
+	 * refills the bit reservoir, in other compressed formats at the start of the file, and what is decoded before
+	 * the target frame is thrown away. The {@link Status#SEEKED} event describes the seek with a
+	 * {@link SeekReport}, which gives its latency.
+	 *
+	 * @param frame the PCM frame to play next, counted from the start of the audio
+	 *
+	 * @return the PCM frame played next, -1 for URL and InputStream
+	 *
+	 * @throws StreamPlayerException the stream player exception
+	 */
+	@Override
+	public long seekToFrame(final long frame) throws StreamPlayerException {
+		if (frame < 0)
+			throw new IllegalArgumentException("Trying to seek to a negative frame " + frame);
+		if (!source.isFile())
+			return -1;
+		final SeekReport report = seek(-1, frame);
+		return report == null ? -1 : report.getFrame();
+	}
+
+	/**
+	 * Reopen the stream and position it, then resume in the previous status.
+	 *
+	 * @param bytes the byte to go to, when frame is -1
+	 * @param frame the PCM frame to go to, -1 to go to a byte
+	 * @return what the seek did, null if the stream couldn't be positioned
+	 */
+	private SeekReport seek(final long bytes, final long frame) throws StreamPlayerException {
+		final long start = System.nanoTime();
+		if (RUNNING.contains(state.get())) {
+			final SeekReport report = seekInPlace(bytes, frame, start);
+			if (report != null)
+				return report;
+		}
 
-			logger.info(() -> "Bytes to skip : " + bytes);
-			final Status previousStatus = status;
-			status = Status.SEEKING;
+		final long previous = state.stamp();
+		final Status previousStatus = PlayerState.statusOf(previous);
+		// Another seek reopening the stream, or an open, is under way
+		if (!state.move(previous, Status.SEEKING))
+			return null;
+		// Only this seek moves the player on from there, a stop meanwhile wins
+		final long seeking = PlayerState.next(previous, Status.SEEKING);
+		wakePlayback();
 
+		SeekReport report = null;
+		try {
+			final long opened;
+			audioLock.lock();
 			try {
-				synchronized (audioLock) {
-					generateEvent(Status.SEEKING, AudioSystem.NOT_SPECIFIED, null);
-					initAudioInputStream();
-					if (audioInputStream != null) {
-
-						long skipped;
-						// Loop until bytes are really skipped.
-						while (totalSkipped < bytes) { // totalSkipped < (bytes-SKIP_INACCURACY_SIZE)))
-							skipped = audioInputStream.skip(bytes - totalSkipped);
-							if (skipped == 0)
-								break;
-							totalSkipped += skipped;
-							logger.info("Skipped : " + totalSkipped + "/" + bytes);
-							if (totalSkipped == -1)
-								throw new StreamPlayerException(
-									PlayerException.SKIP_NOT_SUPPORTED);
-
-							logger.info("Skeeping:" + totalSkipped);
-						}
-					}
-				}
-				generateEvent(Status.SEEKED, getEncodedStreamPosition(), null);
-				status = Status.OPENED;
-				if (previousStatus == Status.PLAYING)
-					play();
-				else if (previousStatus == Status.PAUSED) {
-					play();
-					pause();
+				generateEvent(Status.SEEKING, AudioSystem.NOT_SPECIFIED, null);
+				reinitAudioInputStream(seeking);
+				opened = state.stamp();
+				if (audioInputStream != null && PlayerState.statusOf(opened) == Status.OPENED)
+					report = frame >= 0 ? positionOnFrame(frame, start) : positionOnByte(bytes, start);
+			} finally {
+				audioLock.unlock();
+			}
+			generateEvent(Status.SEEKED, getEncodedStreamPosition(), report);
+			// Resume the previous status, unless the player was stopped or reopened meanwhile
+			if (previousStatus == Status.PLAYING)
+				startPlayback(opened);
+			else if (previousStatus == Status.PAUSED) {
+				startPlayback(opened);
+				pause();
+			}
+
+		} catch (final IOException ex) {
+			logger.log(Level.WARNING, ex.getMessage(), ex);
+		}
+		return report;
+	}
+
+	/**
+	 * Hand a seek to the playback thread, which repositions the stream and flushes the line without closing it,
+	 * and wait until audio from the new position reaches the line. On the playback thread itself, from a synchronous
+	 * listener, the seek is applied right away and reported once the stream is positioned. Elsewhere the wait is
+	 * bounded by {@link #SEEK_TIMEOUT_MILLIS}, after which a seek the playback thread hasn't taken yet is withdrawn.
+	 *
+	 * @return what the seek did, null if the playback thread ended before doing it
+	 */
+	private SeekReport seekInPlace(final long bytes, final long frame, final long start) throws StreamPlayerException {
+		final boolean inline = playbackThread == Thread.currentThread();
+		final PendingSeek request = handSeek(bytes, frame, start, inline);
+		if (request == null)
+			return null;
+		try {
+			final SeekReport report;
+			// Audio from the new position can't reach the line while the playback thread is here
+			if (inline && !request.result.isDone())
+				report = request.report();
+			else
+				report = request.result.get(SEEK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			if (report != null) {
+				logger.info(() -> report.toString());
+				generateEvent(Status.SEEKED, getEncodedStreamPosition(), report);
+			}
+			return report;
+		} catch (final InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			commands.withdraw(request);
+			return null;
+		} catch (final TimeoutException ex) {
+			if (commands.withdraw(request)) {
+				logger.warning(() -> "The playback thread didn't take the seek within " + SEEK_TIMEOUT_MILLIS
+					+ " ms, reopening the stream");
+				return null;
+			}
+			// Taken meanwhile: the stream is positioned, unless the positioning itself is that slow
+			final SeekReport report = request.report();
+			if (report != null)
+				generateEvent(Status.SEEKED, getEncodedStreamPosition(), report);
+			return report;
+		} catch (final ExecutionException ex) {
+			if (ex.getCause() instanceof StreamPlayerException)
+				throw (StreamPlayerException) ex.getCause();
+			logger.log(Level.WARNING, "Seek failed, reopening the stream", ex.getCause());
+			return null;
+		}
+	}
+
+	/**
+	 * Hand a seek to the playback thread, without waiting for it.
+	 *
+	 * @param inline true if the caller is the playback thread, which then positions the stream before going on
+	 * @return the seek, which completes with null if the playback thread ends before doing it, null if nothing plays
+	 */
+	private PendingSeek handSeek(final long bytes, final long frame, final long start, final boolean inline) {
+		final Future<Void> playback = future;
+		if (playback == null || playback.isDone())
+			return null;
+
+		final PendingSeek request = new PendingSeek(bytes, frame, start, inline);
+		generateEvent(Status.SEEKING, getEncodedStreamPosition(), null);
+		submit(request);
+		// Drops the audio of the old position right away, and returns a write blocked on a full line
+		outlet.flush();
+		return request;
+	}
+
+	/**
+	 * Do a seek handed by {@link #seekInPlace(long, long, long)}, on the playback thread. On the {@link #engine} the
+	 * stream is positioned on the decoder executor, so that the loop thread goes on with the other players, unless
+	 * the seek comes from the loop thread itself, which waits for the stream to be positioned.
+	 */
+	private void repositionInPlace(final PendingSeek request) {
+		final EngineSession session = engineSession;
+		if (session != null)
+			session.dropStaged();
+		// A seek coming before the previous one reached the line replaces it
+		if (completingSeek != null) {
+			completingSeek.complete();
+			completingSeek = null;
+		}
+		final Future<?> decodeAhead = cancelDecodeAhead();
+		endCrossfade();
+		if (session != null && !request.inline) {
+			session.reposition(request, decoderExecutorService.submit(() -> {
+				try {
+					awaitDecodeAhead(decodeAhead);
+					return reposition(request);
+				} finally {
+					wakePlayback();
 				}
+			}));
+			return;
+		}
+
+		awaitDecodeAhead(decodeAhead);
+		try {
+			request.positioned = reposition(request);
+		} catch (final IOException | StreamPlayerException | RuntimeException ex) {
+			completeReposition(request, ex);
+			return;
+		}
+		completeReposition(request, null);
+	}
+
+	/**
+	 * Position the stream of a running playback, once its decode-ahead thread is done. The first seek in an MP3
+	 * file builds its frame index.
+	 */
+	private SeekReport reposition(final PendingSeek request) throws IOException, StreamPlayerException {
+		if (getSeekIndex() == null)
+			reopenStreams();
+		return request.frame >= 0 ? positionOnFrame(request.frame, request.start)
+			: positionOnByte(request.bytes, request.start);
+	}
 
+	/**
+	 * Go on playing from the position of a seek, on the playback thread.
+	 *
+	 * @param request the seek, positioned unless it failed
+	 * @param failure why the stream couldn't be positioned, null if it was
+	 */
+	private void completeReposition(final PendingSeek request, final Throwable failure) {
+		if (failure != null) {
+			state.move(RUNNING, Status.STOPPED);
+			request.result.completeExceptionally(failure);
+			return;
+		}
+
+		outlet.flush();
+		resetProcessing();
+		if (state.get() == Status.PLAYING)
+			completingSeek = request;
+		else
+			request.complete();
+		startDecodeAhead();
+	}
+
+	/**
+	 * Replace the streams by new ones reading the source from the start, in the same decoded format.
+	 */
+	private void reopenStreams() throws IOException, StreamPlayerException {
+		try {
+			replaceStreams(source.getAudioInputStream());
+		} catch (final UnsupportedAudioFileException ex) {
+			throw new StreamPlayerException(ex);
+		}
+	}
+
+	/**
+	 * Replace the streams by a new encoded stream, decoded to the same format as before.
+	 */
+	private void replaceStreams(final AudioInputStream encoded) throws IOException {
+		final AudioInputStream previousEncoded = encodedAudioInputStream;
+		final AudioInputStream previousDecoded = audioInputStream;
+		// Swapped before closing, as other threads may ask for the encoded position meanwhile
+		encodedAudioInputStream = encoded;
+		audioInputStream = AudioSystem.getAudioInputStream(previousDecoded.getFormat(), encoded);
+		previousDecoded.close();
+		previousEncoded.close();
+	}
+
+	/**
+	 * Forget the audio of the previous position kept by the processors.
+	 */
+	private void resetProcessing() {
+		if (pcmConverter == null)
+			return;
+		resampler.reset();
+		timeStretcher.reset();
+		audioProcessors.reset();
+		equalizer.reset();
+	}
+
+	/**
+	 * Position the stream opened by {@link #initAudioInputStream()} on a byte.
+	 */
+	private SeekReport positionOnByte(final long bytes, final long start) throws IOException, StreamPlayerException {
+		final Mp3SeekIndex index = getSeekIndex();
+		if (index != null) {
+			// Jump straight to the frame instead of skipping from the start of the file
+			try (FileChannel channel = FileChannel.open(((File) source.getSource()).toPath(),
+				StandardOpenOption.READ)) {
+				final long sample = index.getFrameAt(channel, bytes) * index.getSamplesPerFrame();
+				return seekToSample(index, channel, sample, start);
+			}
+		}
+
+		decodedLimit = Long.MAX_VALUE;
+		long totalSkipped = 0;
+		long skipped;
+		// Loop until bytes are really skipped.
+		while (totalSkipped < bytes) { // totalSkipped < (bytes-SKIP_INACCURACY_SIZE)))
+			skipped = audioInputStream.skip(bytes - totalSkipped);
+			if (skipped == 0)
+				break;
+			totalSkipped += skipped;
+			logger.info("Skipped : " + totalSkipped + "/" + bytes);
+			if (totalSkipped == -1)
+				throw new StreamPlayerException(
+					PlayerException.SKIP_NOT_SUPPORTED);
+
+			logger.info("Skeeping:" + totalSkipped);
+		}
+		return new SeekReport(-1, totalSkipped, 0, false, System.nanoTime() - start);
+	}
+
+	/**
+	 * Position the stream opened by {@link #initAudioInputStream()} on a PCM frame.
+	 */
+	private SeekReport positionOnFrame(final long frame, final long start) throws IOException, StreamPlayerException {
+		final Mp3SeekIndex index = getSeekIndex();
+		if (index != null) {
+			try (FileChannel channel = FileChannel.open(((File) source.getSource()).toPath(),
+				StandardOpenOption.READ)) {
+				return seekToSample(index, channel, Math.min(frame, index.getSampleCount()), start);
+			}
+		}
+
+		// PCM skips exactly, other formats are decoded from the start
+		decodedLimit = Long.MAX_VALUE;
+		final int frameSize = audioInputStream.getFormat().getFrameSize();
+		final AudioFormat.Encoding encoding = encodedAudioInputStream.getFormat().getEncoding();
+		long remaining = frame * frameSize;
+		if (AudioFormat.Encoding.PCM_SIGNED.equals(encoding) || AudioFormat.Encoding.PCM_UNSIGNED.equals(encoding)) {
+			long skipped;
+			while (remaining > 0 && (skipped = audioInputStream.skip(remaining)) > 0)
+				remaining -= skipped;
+		}
+		final long discarded = discard(remaining);
+		final long reached = frame - (remaining - discarded) / frameSize;
+		return new SeekReport(reached, getEncodedStreamPosition(), discarded / frameSize, true,
+			System.nanoTime() - start);
+	}
+
+	/**
+	 * Decode and throw away bytes of {@link #audioInputStream}.
+	 *
+	 * @return the number of bytes thrown away, less than asked at the end of the stream
+	 */
+	private long discard(final long bytes) throws IOException {
+		final byte[] discarded = new byte[EXTERNAL_BUFFER_SIZE];
+		long remaining = bytes;
+		while (remaining > 0) {
+			// Decoders may return 0 for frames without output, only -1 is the end
+			final int read = audioInputStream.read(discarded, 0, (int) Math.min(remaining, discarded.length));
+			if (read == -1)
+				break;
+			remaining -= read;
+		}
+		return bytes - remaining;
+	}
+
+	/**
+	 * Get the frame index of the MP3 file being played, building it if needed.
+	 *
+	 * @return the index, or null if the source isn't an MP3 file
+	 */
+	private Mp3SeekIndex getSeekIndex() {
+		if (!source.isFile() || !Mp3SeekIndex.isMp3(audioFileFormat))
+			return null;
+
+		final boolean exact = sampleAccurateSeek;
+		if (seekIndex == null || seekIndexSource != source || exact && !seekIndex.isExact()) {
+			final File file = (File) source.getSource();
+			try {
+				final long start = System.nanoTime();
+				seekIndex = ((FileDataSource) source).getSeekIndex(seekIndexCache, exact);
+				seekIndexSource = source;
+				logger.info(() -> "Seek index of " + file + ": " + seekIndex.getFrameCount() + " frames in "
+					+ (System.nanoTime() - start) / 1_000_000 + " ms");
 			} catch (final IOException ex) {
-				logger.log(Level.WARNING, ex.getMessage(), ex);
+				logger.log(Level.WARNING, "Cannot index " + file + ", seeking from the start of the file", ex);
+				return null;
 			}
 		}
-		return totalSkipped;
+		return seekIndex;
+	}
+
+	/**
+	 * Reopen the stream at the frame before a sample which refills the bit reservoir, then decode and discard up to
+	 * the sample. Replaces the streams opened by {@link #initAudioInputStream()}, which keeps the length of the
+	 * encoded stream so that its position is still counted from the start of the file.
+	 *
+	 * @param index   the frame index of the file
+	 * @param channel the file
+	 * @param sample  the PCM frame to play next
+	 * @param start   when the seek was asked, from {@link System#nanoTime()}
+	 * @return what the seek did, positioned on the MP3 frame which contains the sample
+	 */
+	private SeekReport seekToSample(final Mp3SeekIndex index, final FileChannel channel, final long sample,
+		final long start) throws IOException, StreamPlayerException {
+		final int samplesPerFrame = index.getSamplesPerFrame();
+		final Mp3SeekIndex.Position position = index.locate(channel, sample / samplesPerFrame);
+		try {
+			replaceStreams(((FileDataSource) source).getAudioInputStream(position.getOffset()));
+		} catch (final UnsupportedAudioFileException ex) {
+			throw new StreamPlayerException(ex);
+		}
+
+		// Frames refilling the bit reservoir, then the start of the target frame
+		final int frameSize = audioInputStream.getFormat().getFrameSize();
+		final long discarded = discard((position.getSkippedFrames() * samplesPerFrame + sample % samplesPerFrame)
+			* frameSize) / frameSize;
+		logger.info(() -> "Seeked to frame " + sample / samplesPerFrame + " from frame " + position.getFrame());
+		decodedLimit = index.isGapless() ? Math.max(0, index.getGaplessEnd() - sample) * frameSize : Long.MAX_VALUE;
+		// Frame numbers from a table of contents are estimates
+		return new SeekReport(sample, position.getTargetOffset(), discarded, index.isExact(),
+			System.nanoTime() - start);
+	}
+
+	/**
+	 * Choose how the frame index used to seek in MP3 files is built. When true, the default, the index comes from
+	 * a scan of the frame headers at the first seek and seeking is sample accurate. When false, the table of
+	 * contents of VBR files is used if they have one, which costs nothing but only seeks approximately.
+	 *
+	 * @param sampleAccurateSeek true to scan MP3 files to seek accurately
+	 */
+	@Override
+	public void setSampleAccurateSeek(final boolean sampleAccurateSeek) {
+		this.sampleAccurateSeek = sampleAccurateSeek;
+	}
+
+	/**
+	 * @return true if seeking in MP3 files is sample accurate, see {@link #setSampleAccurateSeek(boolean)}
+	 */
+	@Override
+	public boolean isSampleAccurateSeek() {
+		return sampleAccurateSeek;
+	}
+
+	/**
+	 * Set where the frame indexes of MP3 files are kept, so that a file is only scanned the first time it is
+	 * played. There is none by default: {@link SeekIndexCache#getDefault()} writes to the home directory of the user,
+	 * so it is only used once it is set here.
+	 *
+	 * @param seekIndexCache the cache, null to index the files every time they are opened
+	 */
+	@Override
+	public void setSeekIndexCache(final SeekIndexCache seekIndexCache) {
+		this.seekIndexCache = seekIndexCache;
+	}
+
+	/**
+	 * @return the cache of the frame indexes, null if there is none
+	 */
+	@Override
+	public SeekIndexCache getSeekIndexCache() {
+		return seekIndexCache;
 	}
 
 	/**
@@ -768,7 +2015,7 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 
 		//Calculate Bytes
 		long totalBytes = getTotalBytes();
-		double percentage = (seconds * 100) / durationInSeconds;
+		double percentage = (seconds * 100.0) / durationInSeconds;
 		long bytes = (long) (totalBytes * (percentage / 100));
 
 		return seekBytes(this.getEncodedStreamPosition() + bytes);
@@ -799,162 +2046,593 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 		//Validate
 		validateSeconds(seconds, durationInSeconds);
 
-		//Calculate Bytes
-		long totalBytes = getTotalBytes();
-		double percentage = (seconds * 100) / durationInSeconds;
-		long bytes = (long) (totalBytes * (percentage / 100));
+		//Calculate Bytes
+		long totalBytes = getTotalBytes();
+		double percentage = (seconds * 100.0) / durationInSeconds;
+		long bytes = (long) (totalBytes * (percentage / 100));
+
+		return seekBytes(bytes);
+	}
+
+
+	private void validateSeconds(int seconds, int durationInSeconds) {
+		if (seconds < 0) {
+			throw new UnsupportedOperationException("Trying to skip negative seconds ");
+		} else if (seconds >= durationInSeconds) {
+			throw new UnsupportedOperationException("Trying to skip with seconds {" + seconds + "} > maximum {" + durationInSeconds + "}");
+		}
+	}
+
+
+
+    /**
+     * @return The duration of the source data in seconds, or -1 if duration is unavailable.
+     */
+	@Override
+	public int getDurationInSeconds() {
+		return source.getDurationInSeconds();
+	}
+	
+    /**
+     * @return The duration of the source data in milliseconds, or -1 if duration is unavailable.
+     */
+	@Override
+	public long getDurationInMilliseconds() {
+		return source.getDurationInMilliseconds();
+	}
+	
+    /**
+     * @return The duration of the source data in a {@code java.time.Duration} instance, or null if unavailable
+     */
+	@Override
+	public Duration getDuration() {
+		return source.getDuration();
+	}
+
+	/**
+	 * Main loop.
+	 * <p>
+	 * Player Status == STOPPED || SEEKING = End of Thread + Freeing Audio
+	 * Resources.<br>
+	 * Player Status == PLAYING = Audio stream data sent to Audio line.<br>
+	 * Player Status == PAUSED = Waiting for another status.
+	 */
+	@Override
+	public Void call() {
+		int nBytesRead = 0;
+		final int audioDataLength = EXTERNAL_BUFFER_SIZE;
+		final ByteBuffer audioDataBuffer = ByteBuffer.allocate(audioDataLength);
+		audioDataBuffer.order(ByteOrder.LITTLE_ENDIAN);
+
+		playbackThread = Thread.currentThread();
+		// Lock stream while playing.
+		audioLock.lock();
+		try {
+			// Main play/pause loop.
+			while (nBytesRead != -1 && RUNNING.contains(state.get())) {
+
+				try {
+					// Apply the control operations, such as a seek, between two buffers
+					if (!commands.isEmpty()) {
+						commands.drain(false);
+						continue;
+					}
+
+					// Playing?
+					final Status status = state.get();
+					if (status == Status.PLAYING) {
+
+						// The next track of the queue may fade in over the end of this one
+						if (crossfadeToNextTrack()) {
+							// The loop applies the commands meanwhile
+							awaitNextTrack();
+							continue;
+						}
+						if (decodeAheadRing != null)
+							nBytesRead = writeDecodedAhead(decodeAheadRing);
+						else
+							nBytesRead = decodeAndWrite(audioDataBuffer.array());
+						// The next track of the queue goes on from there
+						if (nBytesRead == -1 && followWithNextTrack())
+							nBytesRead = 0;
+
+					} else if (status == Status.PAUSED) {
+						// Stop the source data line, its audio is kept for the resume unless the pause flushes it
+						if (pauseMode == PauseMode.KEEP_BUFFERED)
+							outlet.stop();
+						else
+							outlet.flushAndStop();
+						goOutOfPause();
+
+					}
+				} catch (final IOException ex) {
+					logger.log(Level.WARNING, "\"Decoder Exception: \" ", ex);
+					state.move(RUNNING, Status.STOPPED);
+					generateEvent(Status.STOPPED, getEncodedStreamPosition(), null);
+				}
+			}
+			// Stop decoding before the stream gets closed.
+			stopDecodeAhead();
+			endCrossfade();
+			if (completingSeek != null) {
+				completingSeek.complete();
+				completingSeek = null;
+			}
+
+			// Free audio resources, playing the end of the media but not what a stop cut short
+			if (nBytesRead == -1)
+				outlet.drainStopAndFreeDataLine();
+			else
+				outlet.flushAndFreeDataLine();
+
+			// Close stream.
+			closeStream();
+
+			// Notification of "End Of Media"
+			if (nBytesRead == -1)
+				generateEvent(Status.EOM, AudioSystem.NOT_SPECIFIED, null);
+
+		} finally {
+			audioLock.unlock();
+		}
+		// Generate Event
+		playbackThread = null;
+		// A seek reopening the stream or a reset goes on from its own status
+		state.move(RUNNING, Status.STOPPED);
+		endPlaybackCommands();
+		generateEvent(Status.STOPPED, AudioSystem.NOT_SPECIFIED, null);
+
+		// Log
+		logger.info("Decoding thread completed");
+
+		return null;
+	}
+
+	/**
+	 * Reads one buffer from the decoded stream on the current thread and writes it to the line.
+	 *
+	 * @param audioData the buffer to read into
+	 * @return -1 at the end of the stream
+	 * @throws IOException if the decoder fails
+	 */
+	private int decodeAndWrite(final byte[] audioData) throws IOException {
+		int nBytesRead = 0;
+		// Up to the padding of the encoder, if it is known
+		int toRead = (int) Math.min(audioData.length, decodedLimit);
+		if (toRead == 0)
+			return -1;
+		int totalRead = 0;
+
+		// Reads up a specified maximum number of bytes from audio stream
+		for (; toRead > 0 && (nBytesRead = audioInputStream.read(audioData, totalRead,
+			toRead)) != -1; toRead -= nBytesRead, totalRead += nBytesRead)
+
+			// Check for under run
+			if (outlet.getSourceDataLine().available() >= outlet.getSourceDataLine().getBufferSize())
+				logger.info(() -> "Underrun> Available=" + outlet.getSourceDataLine().available()
+					+ " , SourceDataLineBuffer=" + outlet.getSourceDataLine().getBufferSize());
+
+		if (decodedLimit != Long.MAX_VALUE)
+			decodedLimit -= totalRead;
+
+		// Check if anything has been read
+		if (totalRead > 0)
+			writeAndNotify(audioData, totalRead, getEncodedStreamPosition());
+
+		return nBytesRead;
+	}
+
+	/**
+	 * Writes the oldest block of the decode-ahead ring to the line, or waits for the decoder to provide one.
+	 *
+	 * @param ring the ring filled by the decode-ahead thread
+	 * @return -1 when the decoder has finished and the ring is empty
+	 * @throws IOException if the decoder failed
+	 */
+	int writeDecodedAhead(final PcmRingBuffer ring) throws IOException {
+		final byte[] block = ring.peek();
+		if (block == null) {
+			if (!ring.isDrained()) {
+				ring.awaitData();
+				return 0;
+			}
+			if (ring.getFailure() != null)
+				throw ring.getFailure();
+			return -1;
+		}
+
+		writeAndNotify(block, ring.peekLength(), ring.peekEncodedPosition());
+		ring.release();
+		return 0;
+	}
+
+	/**
+	 * Writes decoded audio to the line and publishes the progress to the listeners.
+	 *
+	 * @param audioData     the decoded audio
+	 * @param length        the number of valid bytes in audioData
+	 * @param nEncodedBytes the position in the encoded stream
+	 */
+	private void writeAndNotify(final byte[] audioData, final int length, final int nEncodedBytes) {
+		final int processedLength = processAudio(audioData, length);
+		final byte[] data = processedLength < 0 ? audioData : outputBuffer;
+		final int dataLength = processedLength < 0 ? length : processedLength;
+
+		// Writes audio data to the mixer via this source data line
+		outlet.getSourceDataLine().write(data, 0, dataLength);
+		notifyWritten(data, dataLength, nEncodedBytes);
+	}
+
+	/**
+	 * Completes the seek waiting for audio to reach the line, and publishes the progress to the listeners.
+	 *
+	 * @param data          the audio written to the line
+	 * @param dataLength    the number of bytes written
+	 * @param nEncodedBytes the position in the encoded stream
+	 */
+	private void notifyWritten(final byte[] data, final int dataLength, final int nEncodedBytes) {
+		// The first audio after a seek is on its way to the speakers
+		if (completingSeek != null) {
+			completingSeek.complete();
+			completingSeek = null;
+		}
+
+		progress.update(nEncodedBytes, outlet.getSourceDataLine().getMicrosecondPosition(), data, dataLength);
+		// The properties describe this buffer, and are read here rather than by the events executor
+		progress.setProperties(eventBus.isPropertiesWanted() ? getProgressProperties() : null);
+		// The listeners get a copy on the events executor, so that they don't hold up the line
+		eventBus.publishProgress(progress);
+	}
+
+	/**
+	 * At the end of a track, play the next track of the queue, see {@link #playNextTrack(QueuedTrack)}. Waits for a
+	 * track still opening, unless a command comes or the playback is paused or stopped meanwhile.
+	 *
+	 * @return false if the playback ends with the track, true if it goes on
+	 */
+	private boolean followWithNextTrack() {
+		QueuedTrack next;
+		while ((next = peekNextTrack()) != null && !next.isOpened()) {
+			// The loop applies the command, then comes back to the end of the track
+			if (!commands.isEmpty() || state.get() != Status.PLAYING)
+				return true;
+			next.awaitOpened(QUEUE_POLL_MILLIS);
+		}
+		if (next == null)
+			return false;
+		playNextTrack(next);
+		return true;
+	}
+
+	/**
+	 * @return the first track of the queue, null if there is none, after dropping the tracks which couldn't be opened
+	 */
+	private QueuedTrack peekNextTrack() {
+		QueuedTrack next;
+		while ((next = queue.peek()) != null && next.isFailed()) {
+			final DataSource failed = next.getSource();
+			if (queue.remove(next))
+				logger.warning(() -> "Skipping the queued track " + failed + ", it cannot be opened");
+			prepareNextTrack();
+		}
+		return next;
+	}
+
+	/**
+	 * @param next an opened track of the queue
+	 * @return true if its decoded audio can follow the current track on the line as it is
+	 */
+	private boolean isGapless(final QueuedTrack next) {
+		return next.getDecodedStream().getFormat().matches(audioInputStream.getFormat());
+	}
+
+	/**
+	 * Play an opened track of the queue in place of the track which ended, on the playback thread. The streams and
+	 * the decode-ahead buffer of the track replace those of the player, the line and the software processing are
+	 * kept, so that the first frame of the track follows the last frame of the previous one. A track of another
+	 * format opens the line again, after it has played the previous track.
+	 *
+	 * @param next the track, taken from the queue unless it was cleared meanwhile
+	 */
+	private void playNextTrack(final QueuedTrack next) {
+		if (!queue.remove(next))
+			return;
+		// The track which followed by a crossfade ended before the previous one faded out
+		endCrossfade();
+		final AudioFormat format = next.getDecodedStream().getFormat();
+		final boolean gapless = isGapless(next);
+		if (!gapless)
+			try {
+				outlet.reopen(format, currentLineBufferSize);
+			} catch (final LineUnavailableException | IllegalArgumentException ex) {
+				logger.log(Level.WARNING, "Cannot play the queued track " + next.getSource() + " on the line", ex);
+				next.cancel();
+				state.move(RUNNING, Status.STOPPED);
+				return;
+			}
+
+		// The decoder of the previous track is done, its ring is drained
+		stopDecodeAhead();
+		closeStream();
+		if (!gapless)
+			configureProcessing(format);
+		adoptTrack(next);
+		logger.info(() -> (gapless ? "Gapless" : "Line reopened") + " to the queued track " + source);
+	}
+
+	/**
+	 * Start a crossfade to the first track of the queue, on the playback thread, once the decoder of the current
+	 * track has reached its end and what is left of the track in {@link #decodeAheadRing} fits in the crossfade. The
+	 * next track must be decoded to the same format, otherwise it follows at the end of the track, see
+	 * {@link #playNextTrack(QueuedTrack)}. The ring of the current track is handed over to {@link #crossfade}, and
+	 * the next track becomes the current one.
+	 *
+	 * @return true if the next track is still opening, the playback waits for it instead of shortening the crossfade
+	 */
+	private boolean crossfadeToNextTrack() {
+		final PcmRingBuffer ring = decodeAheadRing;
+		final int millis = crossfadeMillis;
+		if (millis == 0 || ring == null || crossfade == null || crossfade.isActive() || !ring.isEndOfStream()
+				|| ring.getFailure() != null)
+			return false;
+		final AudioFormat format = audioInputStream.getFormat();
+		if (ring.publishedBytes() > (long) (millis * format.getFrameRate() / 1000) * format.getFrameSize())
+			return false;
+		final QueuedTrack next = peekNextTrack();
+		if (next != null && !next.isOpened())
+			return true;
+		if (next == null || !isGapless(next) || !queue.remove(next))
+			return false;
 
-		return seekBytes(bytes);
+		// The decoder of the current track is done, the rest of the track fades out from its ring
+		endCrossfade();
+		crossfade.start(ring, crossfadeCurve);
+		fadingStream = audioInputStream;
+		decodeAheadTask = null;
+		decodeAheadFuture = null;
+		adoptTrack(next);
+		logger.info(() -> "Crossfade of " + crossfade.getFadeFrames() + " frames to the queued track " + source);
+		return false;
 	}
 
+	/**
+	 * Wait a little for the first track of the queue to be opened, see {@link #crossfadeToNextTrack()}.
+	 */
+	private void awaitNextTrack() {
+		final QueuedTrack next = queue.peek();
+		if (next != null)
+			next.awaitOpened(QUEUE_POLL_MILLIS);
+	}
 
-	private void validateSeconds(int seconds, int durationInSeconds) {
-		if (seconds < 0) {
-			throw new UnsupportedOperationException("Trying to skip negative seconds ");
-		} else if (seconds >= durationInSeconds) {
-			throw new UnsupportedOperationException("Trying to skip with seconds {" + seconds + "} > maximum {" + durationInSeconds + "}");
+	/**
+	 * End the crossfade, if there is one, and close the stream of the previous track.
+	 */
+	private void endCrossfade() {
+		if (crossfade != null)
+			crossfade.cancel();
+		if (fadingStream == null)
+			return;
+		try {
+			fadingStream.close();
+		} catch (final IOException ex) {
+			logger.warning("Cannot close stream\n" + ex);
 		}
+		fadingStream = null;
 	}
 
+	/**
+	 * Make a track of the queue the current one: its streams and its decode-ahead buffer replace those of the player.
+	 *
+	 * @param next the opened track, taken from the queue
+	 */
+	private void adoptTrack(final QueuedTrack next) {
+		final AudioFormat format = next.getDecodedStream().getFormat();
+		source = next.getSource();
+		audioFileFormat = next.getAudioFileFormat();
+		encodedAudioInputStream = next.getEncodedStream();
+		encodedAudioLength = next.getEncodedLength();
+		audioInputStream = next.getDecodedStream();
+		decodeAheadBytesPerSecond = format.getFrameRate() * format.getFrameSize();
+		decodeAheadRing = next.getRing();
+		decodeAheadTask = next.getDecoder();
+		decodeAheadFuture = next.getFuture();
+		// The ring of the track ends before the padding of the encoder already
+		decodedLimit = Long.MAX_VALUE;
 
+		determineProperties();
+		generateEvent(Status.TRACK_CHANGED, getEncodedStreamPosition(), source);
+		prepareNextTrack();
+	}
 
-    /**
-     * @return The duration of the source data in seconds, or -1 if duration is unavailable.
-     */
-	@Override
-	public int getDurationInSeconds() {
-		return source.getDurationInSeconds();
+	/**
+	 * Prepare the software processing for the decoded audio format.
+	 *
+	 * @param format the format of the decoded audio written to the line
+	 */
+	void configureProcessing(final AudioFormat format) {
+		progress.setFormat(format);
+		if (!PcmConverter.isSupported(format)) {
+			logger.info(() -> "Software processing is not supported for " + format);
+			pcmConverter = null;
+			crossfade = null;
+			return;
+		}
+		final PcmConverter converter = new PcmConverter(format);
+		final int channels = format.getChannels();
+		final int maxFrames = EXTERNAL_BUFFER_SIZE / (converter.getBytesPerSample() * channels);
+		processingBuffer = new float[maxFrames * channels];
+
+		final Resampler newResampler = new Resampler(channels, maxFrames, MINIMUM_SPEED_FACTOR, MAXIMUM_SPEED_FACTOR,
+			resamplerQuality);
+		final TimeStretcher newTimeStretcher = new TimeStretcher(channels, format.getFrameRate(), maxFrames,
+			MINIMUM_SPEED_FACTOR, MAXIMUM_SPEED_FACTOR, timeStretchQuality);
+		resampledBuffer = new float[Math.max(newResampler.getMaxOutputFrames(maxFrames),
+			newTimeStretcher.getMaxOutputFrames(maxFrames)) * channels];
+		outputBuffer = new byte[resampledBuffer.length * converter.getBytesPerSample()];
+		crossfade = new Crossfade(converter, EXTERNAL_BUFFER_SIZE);
+		resampler = newResampler;
+		timeStretcher = newTimeStretcher;
+		pcmConverter = converter;
+		// After publishing, so that a concurrent speed change isn't lost
+		newResampler.setRatio(speedFactor);
+		newTimeStretcher.setRatio(speedFactor);
+
+		audioProcessors.configure(format.getFrameRate(), format.getChannels());
+		equalizer.configure(format.getFrameRate(), format.getChannels());
+		softwareVolume.configure(format.getFrameRate(), format.getChannels());
+		audioProcessors.reset();
+		equalizer.reset();
+		softwareVolume.reset();
+	}
+
+	/**
+	 * Mixes the previous track in during a crossfade, changes the speed and runs the software processors over a buffer
+	 * of decoded audio, into {@link #outputBuffer}.
+	 *
+	 * @param audioData the decoded audio
+	 * @param length    the number of valid bytes in audioData
+	 * @return the number of bytes in {@link #outputBuffer}, or -1 if the audio is left untouched in audioData
+	 */
+	private int processAudio(final byte[] audioData, final int length) {
+		final PcmConverter converter = pcmConverter;
+		if (converter == null)
+			return -1;
+		final boolean fading = crossfade != null && crossfade.isActive();
+		if (!fading && resampler.isBypassed() && audioProcessors.isEmpty() && equalizer.isFlat()
+				&& softwareVolume.isNeutral()) {
+			skipSpeedChangers(converter, audioData, length);
+			return -1;
+		}
+
+		final int channels = converter.getChannels();
+		final int inputFrames = converter.toFloat(audioData, length, processingBuffer) / channels;
+		if (fading) {
+			crossfade.mix(processingBuffer, inputFrames);
+			if (!crossfade.isActive())
+				endCrossfade();
+		}
+		float[] samples = processingBuffer;
+		int frames = inputFrames;
+		// The unused speed changer is fed too, so that it continues seamlessly if the mode changes
+		final boolean stretch = speedMode == SpeedMode.TIME_STRETCH;
+		if (resampler.isBypassed() || stretch) {
+			resampler.skip(processingBuffer, inputFrames);
+		} else {
+			frames = resampler.process(processingBuffer, inputFrames, resampledBuffer);
+			samples = resampledBuffer;
+		}
+		if (timeStretcher.isBypassed() || !stretch) {
+			timeStretcher.skip(processingBuffer, inputFrames);
+		} else {
+			frames = timeStretcher.process(processingBuffer, inputFrames, resampledBuffer);
+			samples = resampledBuffer;
+		}
+
+		audioProcessors.process(samples, frames, channels);
+		if (!equalizer.isFlat())
+			equalizer.process(samples, frames, channels);
+		softwareVolume.process(samples, frames, channels);
+		return converter.toBytes(samples, frames * channels, outputBuffer);
 	}
-	
-    /**
-     * @return The duration of the source data in milliseconds, or -1 if duration is unavailable.
-     */
-	@Override
-	public long getDurationInMilliseconds() {
-		return source.getDurationInMilliseconds();
+
+	/**
+	 * Feed the speed changers with the end of a buffer left untouched, all they keep of it, so that they continue
+	 * seamlessly once the speed changes. Only the kept frames are converted.
+	 */
+	private void skipSpeedChangers(final PcmConverter converter, final byte[] audioData, final int length) {
+		final int frameBytes = converter.getBytesPerSample() * converter.getChannels();
+		final int end = length - length % frameBytes;
+		final int frames = Math.min(end / frameBytes,
+			Math.max(resampler.getHistoryFrames(), timeStretcher.getHistoryFrames()));
+		converter.toFloat(audioData, end - frames * frameBytes, frames * frameBytes, processingBuffer);
+		resampler.skip(processingBuffer, frames);
+		timeStretcher.skip(processingBuffer, frames);
 	}
-	
-    /**
-     * @return The duration of the source data in a {@code java.time.Duration} instance, or null if unavailable
-     */
+
+	/**
+	 * Append a processor to the software processing chain, which runs between the decoder and the line.
+	 *
+	 * @param audioProcessor the processor
+	 */
 	@Override
-	public Duration getDuration() {
-		return source.getDuration();
+	public void addAudioProcessor(final AudioProcessor audioProcessor) {
+		audioProcessors.add(audioProcessor);
 	}
 
 	/**
-	 * Main loop.
-	 * <p>
-	 * Player Status == STOPPED || SEEKING = End of Thread + Freeing Audio
-	 * Resources.<br>
-	 * Player Status == PLAYING = Audio stream data sent to Audio line.<br>
-	 * Player Status == PAUSED = Waiting for another status.
+	 * Remove a processor from the software processing chain.
+	 *
+	 * @param audioProcessor the processor
+	 * @return true if the processor was in the chain
 	 */
 	@Override
-	public Void call() {
-		int nBytesRead = 0;
-		final int audioDataLength = EXTERNAL_BUFFER_SIZE;
-		final ByteBuffer audioDataBuffer = ByteBuffer.allocate(audioDataLength);
-		audioDataBuffer.order(ByteOrder.LITTLE_ENDIAN);
-
-		// Lock stream while playing.
-		synchronized (audioLock) {
-			// Main play/pause loop.
-			while ((nBytesRead != -1) && status != Status.STOPPED && status != Status.NOT_SPECIFIED
-				&& status != Status.SEEKING) {
-
-				try {
-					// Playing?
-					if (status == Status.PLAYING) {
-
-						// System.out.println("Inside Stream Player Run method")
-						int toRead = audioDataLength;
-						int totalRead = 0;
-
-						// Reads up a specified maximum number of bytes from audio stream
-						// wtf i have written here omg //to fix! cause it is complicated
-						for (; toRead > 0 && (nBytesRead = audioInputStream.read(audioDataBuffer.array(), totalRead,
-							toRead)) != -1; toRead -= nBytesRead, totalRead += nBytesRead)
-
-							// Check for under run
-							if (outlet.getSourceDataLine().available() >= outlet.getSourceDataLine().getBufferSize())
-								logger.info(() -> "Underrun> Available=" + outlet.getSourceDataLine().available()
-									+ " , SourceDataLineBuffer=" + outlet.getSourceDataLine().getBufferSize());
-
-						// Check if anything has been read
-						if (totalRead > 0) {
-							trimBuffer = audioDataBuffer.array();
-							if (totalRead < trimBuffer.length) {
-								trimBuffer = new byte[totalRead];
-								// Copies an array from the specified source array, beginning at the specified
-								// position, to the specified position of the destination array
-								// The number of components copied is equal to the length argument.
-								System.arraycopy(audioDataBuffer.array(), 0, trimBuffer, 0, totalRead);
-							}
-
-							// Writes audio data to the mixer via this source data line
-							outlet.getSourceDataLine().write(trimBuffer, 0, totalRead);
-
-							// Compute position in bytes in encoded stream.
-							final int nEncodedBytes = getEncodedStreamPosition();
-
-							// Notify all registered Listeners
-							listeners.forEach(listener -> {
-								if (audioInputStream instanceof PropertiesContainer) {
-									// Pass audio parameters such as instant
-									// bit rate, ...
-									listener.progress(nEncodedBytes, outlet.getSourceDataLine().getMicrosecondPosition(),
-										trimBuffer, ((PropertiesContainer) audioInputStream).properties());
-								} else
-									// Pass audio parameters
-									listener.progress(nEncodedBytes, outlet.getSourceDataLine().getMicrosecondPosition(),
-										trimBuffer, emptyMap);
-							});
+	public boolean removeAudioProcessor(final AudioProcessor audioProcessor) {
+		return audioProcessors.remove(audioProcessor);
+	}
 
-						}
+	/**
+	 * @param type    the type of control
+	 * @param control the control of the line
+	 * @return true if there is a line but it doesn't provide the control, so software processing is used instead
+	 */
+	private boolean isSoftwareControl(final Control.Type type, final Control control) {
+		return outlet.getSourceDataLine() != null && !outlet.hasControl(type, control);
+	}
 
-					} else if (status == Status.PAUSED) {
-						// Flush and stop the source data line
-						outlet.flushAndStop();
-						goOutOfPause();
+	/**
+	 * Only called by the playback thread: the decoder refills its map on every call, which isn't thread safe.
+	 *
+	 * @return The properties of the decoded stream if it provides them, such as the instant bit rate, else an empty map
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> getProgressProperties() {
+		final AudioInputStream stream = audioInputStream;
+		return stream instanceof PropertiesContainer ? ((PropertiesContainer) stream).properties() : emptyMap;
+	}
 
-					}
-				} catch (final IOException ex) {
-					logger.log(Level.WARNING, "\"Decoder Exception: \" ", ex);
-					status = Status.STOPPED;
-					generateEvent(Status.STOPPED, getEncodedStreamPosition(), null);
-				}
+	/**
+	 * Park the playback thread until the player leaves the pause or a command is handed to it. Whatever changes the
+	 * status or hands a command over calls {@link #wakePlayback()}, so the thread doesn't wake up while paused.
+	 */
+	private void goOutOfPause() {
+		while (state.get() == Status.PAUSED && commands.isEmpty()) {
+			LockSupport.park(this);
+			if (Thread.interrupted()) {
+				logger.warning("Playback thread interrupted while paused");
+				state.move(Status.PAUSED, Status.STOPPED);
 			}
-			// Free audio resources.
-			outlet.drainStopAndFreeDataLine();
-
-			// Close stream.
-			closeStream();
-
-			// Notification of "End Of Media"
-			if (nBytesRead == -1)
-				generateEvent(Status.EOM, AudioSystem.NOT_SPECIFIED, null);
-
 		}
-		// Generate Event
-		status = Status.STOPPED;
-		generateEvent(Status.STOPPED, AudioSystem.NOT_SPECIFIED, null);
+	}
 
-		// Log
-		logger.info("Decoding thread completed");
+	/**
+	 * Unpark the playback thread if it is waiting in {@link #goOutOfPause()}, after a change of the status.
+	 */
+	private void wakePlayback() {
+		LockSupport.unpark(playbackThread);
+	}
 
-		return null;
+	/**
+	 * Hand a command to the playback thread, or apply it right away when nothing plays or on the playback thread.
+	 */
+	private <T> CompletableFuture<T> submit(final CommandQueue.Command<T> command) {
+		final CompletableFuture<T> result = commands.add(command);
+		// Added before looking at the playback, which drains the queue once more after completing playbackEnd
+		if (playbackEnd.isDone())
+			commands.drain(true);
+		else if (playbackThread == Thread.currentThread())
+			commands.drain(false);
+		else
+			wakePlayback();
+		return result;
 	}
 
-	private void goOutOfPause() {
-		try {
-			while (status == Status.PAUSED) {
-				Thread.sleep(50);
-			}
-		} catch (final InterruptedException ex) {
-			Thread.currentThread().interrupt();
-			logger.warning("Thread cannot sleep.\n" + ex);
-		}
+	/**
+	 * Complete the stops waiting for the end of the playback, and apply the commands which came too late for the
+	 * playback thread.
+	 */
+	private void endPlaybackCommands() {
+		playbackEnd.complete(null);
+		commands.drain(true);
 	}
 
 	/**
@@ -1095,6 +2773,8 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	 */
 	@Override
 	public float getGainValue() {
+		if (isSoftwareControl(FloatControl.Type.MASTER_GAIN, outlet.getGainControl()))
+			return softwareVolume.getGainDb();
 		return outlet.getGainValue();
     }
 
@@ -1105,6 +2785,8 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	 */
 	@Override
 	public float getMaximumGain() {
+		if (isSoftwareControl(FloatControl.Type.MASTER_GAIN, outlet.getGainControl()))
+			return VolumeProcessor.MAXIMUM_GAIN_DB;
 		return !outlet.hasControl(FloatControl.Type.MASTER_GAIN, outlet.getGainControl()) ? 0.0F : outlet.getGainControl().getMaximum();
 
 	}
@@ -1116,7 +2798,8 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	 */
 	@Override
 	public float getMinimumGain() {
-
+		if (isSoftwareControl(FloatControl.Type.MASTER_GAIN, outlet.getGainControl()))
+			return VolumeProcessor.MINIMUM_GAIN_DB;
 		return !outlet.hasControl(FloatControl.Type.MASTER_GAIN, outlet.getGainControl()) ? 0.0F : outlet.getGainControl().getMinimum();
 
 	}
@@ -1145,6 +2828,8 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	 */
 	@Override
 	public float getPan() {
+		if (isSoftwareControl(FloatControl.Type.PAN, outlet.getPanControl()))
+			return softwareVolume.getBalance();
 		return !outlet.hasControl(FloatControl.Type.PAN, outlet.getPanControl()) ? 0.0F : outlet.getPanControl().getValue();
 
 	}
@@ -1156,6 +2841,8 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	 */
 	@Override
 	public boolean getMute() {
+		if (isSoftwareControl(BooleanControl.Type.MUTE, outlet.getMuteControl()))
+			return softwareVolume.isMute();
 		return outlet.hasControl(BooleanControl.Type.MUTE, outlet.getMuteControl()) && outlet.getMuteControl().getValue();
 	}
 
@@ -1166,6 +2853,8 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	 */
 	@Override
 	public float getBalance() {
+		if (isSoftwareControl(FloatControl.Type.BALANCE, outlet.getBalanceControl()))
+			return softwareVolume.getBalance();
 		return !outlet.hasControl(FloatControl.Type.BALANCE, outlet.getBalanceControl()) ? 0f : outlet.getBalanceControl().getValue();
 	}
 
@@ -1206,7 +2895,12 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	 */
 	@Override
 	public Status getStatus() {
-		return status;
+		return state.get();
+	}
+
+	@Override
+	public boolean awaitStatus(final Status status, final Duration timeout) throws InterruptedException {
+		return state.await(status, timeout.toNanos(), TimeUnit.NANOSECONDS);
 	}
 
 	/**
@@ -1243,10 +2937,15 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	@Override
 	public void setPan(final double fPan) {
 
-		if (!outlet.hasControl(FloatControl.Type.PAN, outlet.getPanControl()) || fPan < -1.0 || fPan > 1.0)
+		if (fPan < -1.0 || fPan > 1.0)
+			return;
+		if (isSoftwareControl(FloatControl.Type.PAN, outlet.getPanControl()))
+			softwareVolume.setBalance((float) fPan);
+		else if (outlet.hasControl(FloatControl.Type.PAN, outlet.getPanControl()))
+			outlet.getPanControl().setValue((float) fPan);
+		else
 			return;
 		logger.info(() -> "Pan : " + fPan);
-		outlet.getPanControl().setValue((float) fPan);
 		generateEvent(Status.PAN, getEncodedStreamPosition(), null);
 
 	}
@@ -1259,7 +2958,9 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	 */
 	@Override
 	public void setGain(final double fGain) {
-		if (isPlaying() || isPaused() && outlet.hasControl(FloatControl.Type.MASTER_GAIN, outlet.getGainControl())) {
+		if (isSoftwareControl(FloatControl.Type.MASTER_GAIN, outlet.getGainControl()))
+			softwareVolume.setGain((float) fGain);
+		else if (isPlaying() || isPaused() && outlet.hasControl(FloatControl.Type.MASTER_GAIN, outlet.getGainControl())) {
             final double logScaleGain = 20 * Math.log10(fGain);
 			outlet.getGainControl().setValue((float) logScaleGain);
         }
@@ -1267,7 +2968,9 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 
 	@Override
 	public void setLogScaleGain(final double logScaleGain) {
-		if (isPlaying() || isPaused() && outlet.hasControl(FloatControl.Type.MASTER_GAIN, outlet.getGainControl())) {
+		if (isSoftwareControl(FloatControl.Type.MASTER_GAIN, outlet.getGainControl()))
+			softwareVolume.setGainDb((float) logScaleGain);
+		else if (isPlaying() || isPaused() && outlet.hasControl(FloatControl.Type.MASTER_GAIN, outlet.getGainControl())) {
 			outlet.getGainControl().setValue((float) logScaleGain);
 		}
 	}
@@ -1279,7 +2982,9 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	 */
 	@Override
 	public void setMute(final boolean mute) {
-		if (outlet.hasControl(BooleanControl.Type.MUTE, outlet.getMuteControl()) && outlet.getMuteControl().getValue() != mute)
+		if (isSoftwareControl(BooleanControl.Type.MUTE, outlet.getMuteControl()))
+			softwareVolume.setMute(mute);
+		else if (outlet.hasControl(BooleanControl.Type.MUTE, outlet.getMuteControl()) && outlet.getMuteControl().getValue() != mute)
 			outlet.getMuteControl().setValue(mute);
 	}
 
@@ -1292,7 +2997,9 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	 */
 	@Override
 	public void setBalance(final float fBalance) {
-		if (outlet.hasControl(FloatControl.Type.BALANCE, outlet.getBalanceControl()) && fBalance >= -1.0 && fBalance <= 1.0)
+		if (isSoftwareControl(FloatControl.Type.BALANCE, outlet.getBalanceControl()) && fBalance >= -1.0 && fBalance <= 1.0)
+			softwareVolume.setBalance(fBalance);
+		else if (outlet.hasControl(FloatControl.Type.BALANCE, outlet.getBalanceControl()) && fBalance >= -1.0 && fBalance <= 1.0)
 			outlet.getBalanceControl().setValue(fBalance);
 		else
 			try {
@@ -1303,35 +3010,101 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	}
 
 	/**
-	 * Changes specific values from equalizer.
+	 * Changes specific values from equalizer. Each value goes from -1.0 to 1.0 and is given to the subband with the
+	 * same index of the MP3 decoder, which the software {@link #getEqualizer() equalizer} maps onto its octave bands.
+	 * See {@link StreamPlayerInterface#setEqualizer(float[], int)}.
 	 *
 	 * @param array the array
 	 * @param stop the stop
+	 * @deprecated use {@link #setEqualizerBand(int, float)}
 	 */
+	@Deprecated
 	@Override
 	public void setEqualizer(final float[] array, final int stop) {
-		if (!isPausedOrPlaying() || !(audioInputStream instanceof PropertiesContainer))
+		if (array == null)
 			return;
-		// Map<?, ?> map = ((PropertiesContainer) audioInputStream).properties()
-		final float[] equalizer = (float[]) ((PropertiesContainer) audioInputStream).properties().get("mp3.equalizer");
-        if (stop >= 0) System.arraycopy(array, 0, equalizer, 0, stop);
-
+		final int count = Math.max(0, Math.min(Math.min(stop, array.length), EQUALIZER_SUBBANDS));
+		equalizerLock.lock();
+		try {
+			System.arraycopy(array, 0, equalizerSubbands, 0, count);
+			applyEqualizerSubbands(0, count);
+		} finally {
+			equalizerLock.unlock();
+		}
 	}
 
 	/**
-	 * Changes a value from equalizer.
+	 * Changes a value from equalizer. The value goes from -1.0 to 1.0 and is given to the subband with the same index
+	 * of the MP3 decoder, see {@link #setEqualizer(float[], int)}.
 	 *
 	 * @param value the value
 	 * @param key the key
+	 * @throws IllegalArgumentException if the key is not a subband of the MP3 decoder
+	 * @deprecated use {@link #setEqualizerBand(int, float)}
 	 */
+	@Deprecated
 	@Override
 	public void setEqualizerKey(final float value, final int key) {
-		if (!isPausedOrPlaying() || !(audioInputStream instanceof PropertiesContainer))
+		if (key < 0 || key >= EQUALIZER_SUBBANDS)
+			throw new IllegalArgumentException(
+				"The MP3 decoder has " + EQUALIZER_SUBBANDS + " subbands, there is no subband " + key);
+		equalizerLock.lock();
+		try {
+			equalizerSubbands[key] = value;
+			applyEqualizerSubbands(key, key + 1);
+		} finally {
+			equalizerLock.unlock();
+		}
+	}
+
+	/**
+	 * Set every octave band which overlaps a changed subband to the average of the subbands it overlaps, at 44.1 kHz.
+	 * The bands below the first subband all fall onto it. Called with {@link #equalizerLock} held.
+	 *
+	 * @param from the first changed subband
+	 * @param to   the subband after the last changed one
+	 */
+	private void applyEqualizerSubbands(final int from, final int to) {
+		if (from >= to)
 			return;
-		// Map<?, ?> map = ((PropertiesContainer) audioInputStream).properties()
-		final float[] equalizer = (float[]) ((PropertiesContainer) audioInputStream).properties().get("mp3.equalizer");
-		equalizer[key] = value;
+		for (int band = 0; band < equalizerGains.length; band++) {
+			final float frequency = equalizer.getBandFrequency(band);
+			final int first = Math.min(EQUALIZER_SUBBANDS - 1, (int) (frequency / OCTAVE_HALF_WIDTH / EQUALIZER_SUBBAND_HZ));
+			final int last = Math.min(EQUALIZER_SUBBANDS - 1,
+				(int) Math.ceil(frequency * OCTAVE_HALF_WIDTH / EQUALIZER_SUBBAND_HZ) - 1);
+			if (last < from || first >= to) {
+				equalizerGains[band] = equalizer.getBandGain(band);
+				continue;
+			}
+			float sum = 0;
+			for (int subband = first; subband <= last; subband++)
+				sum += equalizerSubbands[subband];
+			equalizerGains[band] = sum / (last - first + 1) * EQUALIZER_RANGE_DB;
+		}
+		equalizer.setBandGains(equalizerGains);
+	}
+
+	/**
+	 * Set the gain of a band of the software {@link #getEqualizer() equalizer}.
+	 *
+	 * @param band   the band, see {@link Equalizer#getBandFrequency(int)}
+	 * @param gainDb the gain in dB, clamped to +/- {@link Equalizer#MAXIMUM_GAIN_DB}
+	 * @throws IllegalArgumentException if the band is not a band of the software equalizer
+	 */
+	@Override
+	public void setEqualizerBand(final int band, final float gainDb) {
+		if (band < 0 || band >= equalizer.getBandCount())
+			throw new IllegalArgumentException(
+				"The equalizer has " + equalizer.getBandCount() + " bands, there is no band " + band);
+		equalizer.setBandGain(band, gainDb);
+	}
 
+	/**
+	 * @return The software equalizer, which is applied to every codec
+	 */
+	@Override
+	public Equalizer getEqualizer() {
+		return equalizer;
 	}
 
 	/**
@@ -1349,7 +3122,7 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	 */
 	@Override
 	public boolean isUnknown() {
-		return status == Status.NOT_SPECIFIED;
+		return state.get() == Status.NOT_SPECIFIED;
 	}
 
 	/**
@@ -1359,7 +3132,7 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	 */
 	@Override
 	public boolean isPlaying() {
-		return status == Status.PLAYING;
+		return state.get() == Status.PLAYING;
 	}
 
 	/**
@@ -1369,7 +3142,7 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	 */
 	@Override
 	public boolean isPaused() {
-		return status == Status.PAUSED;
+		return state.get() == Status.PAUSED;
 	}
 
 	/**
@@ -1389,7 +3162,7 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	 */
 	@Override
 	public boolean isStopped() {
-		return status == Status.STOPPED;
+		return state.get() == Status.STOPPED;
 	}
 
 	/**
@@ -1399,7 +3172,7 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	 */
 	@Override
 	public boolean isOpened() {
-		return status == Status.OPENED;
+		return state.get() == Status.OPENED;
 	}
 
 	/**
@@ -1409,7 +3182,7 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	 */
 	@Override
 	public boolean isSeeking() {
-		return status == Status.SEEKING;
+		return state.get() == Status.SEEKING;
 	}
 
 	Logger getLogger() {
@@ -1420,4 +3193,368 @@ public class StreamPlayer implements StreamPlayerInterface, Callable<Void> {
 	public SourceDataLine getSourceDataLine() {
 		return outlet.getSourceDataLine();
 	}
+
+	/**
+	 * A seek handed to the playback thread.
+	 */
+	private final class PendingSeek extends CommandQueue.Command<SeekReport> {
+		final long bytes;
+		final long frame;
+		final long start;
+		/** True if the seek comes from the playback thread, which positions the stream before going on */
+		final boolean inline;
+
+		/** Set by the playback thread once the stream is positioned */
+		volatile SeekReport positioned;
+
+		PendingSeek(final long bytes, final long frame, final long start, final boolean inline) {
+			this.bytes = bytes;
+			this.frame = frame;
+			this.start = start;
+			this.inline = inline;
+		}
+
+		@Override
+		void apply() {
+			repositionInPlace(this);
+		}
+
+		/**
+		 * The playback ended before the seek, which is left to reopening the stream.
+		 */
+		@Override
+		void applyIdle() {
+			result.complete(null);
+		}
+
+		/**
+		 * Report the seek, with its latency up to now.
+		 */
+		void complete() {
+			result.complete(report());
+		}
+
+		/**
+		 * @return the seek with its latency up to now, null if the stream isn't positioned yet
+		 */
+		SeekReport report() {
+			final SeekReport report = positioned;
+			return report == null ? null : report.withLatency(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * A stop handed to the playback thread, completed once the line is released.
+	 */
+	private final class StopCommand extends CommandQueue.Command<Void> {
+
+		@Override
+		void apply() {
+			state.move(STOPPABLE, Status.STOPPED);
+			playbackEnd.whenComplete((ignored, ex) -> result.complete(null));
+		}
+
+		@Override
+		void applyIdle() {
+			state.move(STOPPABLE, Status.STOPPED);
+			result.complete(null);
+		}
+	}
+
+	/**
+	 * The playback of the player on the {@link #engine}: the loop of {@link #call()}, cut into steps which don't
+	 * block, so that the loop thread can service other players in between.
+	 */
+	private final class EngineSession implements PlaybackEngine.Session {
+
+		private final byte[] audioData = new byte[EXTERNAL_BUFFER_SIZE];
+
+		/** Processed audio not fully written to the line yet */
+		private byte[] pending;
+		private int pendingOffset;
+		private int pendingLength;
+		private int pendingEncodedBytes;
+
+		/** Whether {@link #pending} is the oldest block of the decode-ahead ring, released once written */
+		private boolean pendingInRing;
+
+		/** Set once the decoder reached the end of the stream */
+		private boolean endOfStream;
+
+		/** When the line has to be done playing its last audio, in {@link System#nanoTime()}, 0 before the end */
+		private long drainDeadline;
+
+		/** A seek whose stream is positioned on the decoder executor, nothing is decoded until it is done */
+		private PendingSeek repositioning;
+		private Future<SeekReport> repositioned;
+
+		/** Set once the session is finishing, see {@link #finish(boolean, boolean)} */
+		private boolean finishing;
+		private boolean finishingEndOfMedia;
+
+		/** The decode-ahead thread which has to be done before the stream is closed, and until when it may take */
+		private Future<?> decodeAheadEnding;
+		private long decodeAheadDeadline;
+
+		@Override
+		public Step service(final CompletableFuture<Void> done) {
+			// The engine waits for the sessions left when it closes, other players don't wait for this one
+			if (done.isCancelled())
+				audioLock.lock();
+			else if (!audioLock.tryLock())
+				return Step.WAITING;
+			try {
+				playbackThread = Thread.currentThread();
+				try {
+					if (repositioning != null) {
+						if (!repositioned.isDone() && !done.isCancelled())
+							return Step.WAITING;
+						completeRepositioning();
+					}
+					if (finishing)
+						return finish(finishingEndOfMedia, done.isCancelled());
+					if (done.isCancelled() || !RUNNING.contains(state.get()))
+						return finish(false, done.isCancelled());
+					return step();
+				} catch (final IOException ex) {
+					logger.log(Level.WARNING, "\"Decoder Exception: \" ", ex);
+					state.move(RUNNING, Status.STOPPED);
+					generateEvent(Status.STOPPED, getEncodedStreamPosition(), null);
+					return finish(false, done.isCancelled());
+				} catch (final RuntimeException ex) {
+					// Don't leave the line open, the engine reports the failure
+					finish(false, true);
+					throw ex;
+				}
+			} finally {
+				audioLock.unlock();
+			}
+		}
+
+		/**
+		 * Wait for a seek positioned on the decoder executor, without decoding meanwhile.
+		 *
+		 * @param request     the seek
+		 * @param positioning the positioning of the stream
+		 */
+		void reposition(final PendingSeek request, final Future<SeekReport> positioning) {
+			repositioning = request;
+			repositioned = positioning;
+		}
+
+		/**
+		 * Go on playing from the position of {@link #repositioning}, once the decoder executor is done with it.
+		 */
+		private void completeRepositioning() {
+			final PendingSeek request = repositioning;
+			repositioning = null;
+			Throwable failure = null;
+			try {
+				request.positioned = repositioned.get();
+			} catch (final ExecutionException ex) {
+				failure = ex.getCause();
+			} catch (final InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				failure = ex;
+			}
+			repositioned = null;
+			completeReposition(request, failure);
+		}
+
+		/**
+		 * Drop the audio of the old position, before a seek replaces the decode-ahead ring.
+		 */
+		void dropStaged() {
+			if (pendingInRing)
+				decodeAheadRing.release();
+			pendingInRing = false;
+			pendingLength = 0;
+			endOfStream = false;
+			drainDeadline = 0;
+		}
+
+		private Step step() throws IOException {
+			// Apply the control operations, such as a seek, between two buffers
+			if (!commands.isEmpty()) {
+				commands.drain(false);
+				return Step.WORKED;
+			}
+
+			if (state.get() == Status.PAUSED) {
+				// Stop the source data line, its audio is kept for the resume unless the pause flushes it
+				if (pauseMode == PauseMode.KEEP_BUFFERED)
+					outlet.stop();
+				else
+					outlet.flushAndStop();
+				return Step.WAITING;
+			}
+
+			final SourceDataLine line = outlet.getSourceDataLine();
+			if (pendingLength == 0) {
+				if (endOfStream)
+					return endOfTrack(line);
+				if (!decode())
+					return endOfStream ? Step.WORKED : Step.WAITING;
+			}
+			return write(line);
+		}
+
+		/**
+		 * Take the next buffer of decoded audio and process it into {@link #pending}.
+		 *
+		 * @return false if there is none, at the end of the stream or while the decode-ahead thread is behind
+		 */
+		private boolean decode() throws IOException {
+			// The next track of the queue may fade in over the end of this one, once it is opened
+			if (crossfadeToNextTrack())
+				return false;
+			final PcmRingBuffer ring = decodeAheadRing;
+			if (ring != null) {
+				final byte[] block = ring.peek();
+				if (block == null) {
+					if (ring.isDrained()) {
+						if (ring.getFailure() != null)
+							throw ring.getFailure();
+						endOfStream = true;
+					}
+					return false;
+				}
+				stage(block, ring.peekLength(), ring.peekEncodedPosition());
+				// Processed audio is in the output buffer, the block isn't needed anymore
+				pendingInRing = pending == block;
+				if (!pendingInRing)
+					ring.release();
+				return true;
+			}
+
+			int nBytesRead = 0;
+			int totalRead = 0;
+			while (totalRead < audioData.length
+				&& (nBytesRead = audioInputStream.read(audioData, totalRead, audioData.length - totalRead)) != -1)
+				totalRead += nBytesRead;
+			if (nBytesRead == -1)
+				endOfStream = true;
+			if (totalRead == 0)
+				return false;
+			stage(audioData, totalRead, getEncodedStreamPosition());
+			return true;
+		}
+
+		private void stage(final byte[] decoded, final int length, final int nEncodedBytes) {
+			final int processedLength = processAudio(decoded, length);
+			pending = processedLength < 0 ? decoded : outputBuffer;
+			pendingLength = processedLength < 0 ? length : processedLength;
+			pendingOffset = 0;
+			pendingEncodedBytes = nEncodedBytes;
+		}
+
+		/**
+		 * Write as much of {@link #pending} as the line takes without blocking, whole frames only.
+		 */
+		private Step write(final SourceDataLine line) {
+			final int remaining = pendingLength - pendingOffset;
+			int length = Math.min(line.available(), remaining);
+			if (length < remaining)
+				length -= length % Math.max(1, line.getFormat().getFrameSize());
+			if (length <= 0 && remaining > 0)
+				return Step.WAITING;
+
+			if (length > 0)
+				line.write(pending, pendingOffset, length);
+			pendingOffset += length;
+			if (pendingOffset < pendingLength)
+				return Step.WORKED;
+
+			notifyWritten(pending, pendingLength, pendingEncodedBytes);
+			if (pendingInRing)
+				decodeAheadRing.release();
+			pendingInRing = false;
+			pendingLength = 0;
+			return Step.WORKED;
+		}
+
+		/**
+		 * At the end of a track, play the next track of the queue: right away if it follows on the line as it is,
+		 * once the line has played the previous track otherwise, see {@link #playNextTrack(QueuedTrack)}. Without a
+		 * next track, play the last audio and finish.
+		 */
+		private Step endOfTrack(final SourceDataLine line) {
+			final QueuedTrack next = peekNextTrack();
+			if (next == null) {
+				if (!isDrained(line))
+					return Step.WAITING;
+				return finish(true, false);
+			}
+			if (!next.isOpened() || !isGapless(next) && !isDrained(line))
+				return Step.WAITING;
+
+			playNextTrack(next);
+			endOfStream = false;
+			drainDeadline = 0;
+			return Step.WORKED;
+		}
+
+		/**
+		 * Look, without blocking, whether the line has played its last audio, waiting at most for the length of its
+		 * buffer and {@link #STOP_TIMEOUT_MILLIS}.
+		 */
+		private boolean isDrained(final SourceDataLine line) {
+			if (drainDeadline == 0) {
+				final AudioFormat format = line.getFormat();
+				final float bytesPerSecond = format.getFrameRate() * format.getFrameSize();
+				final long bufferNanos = bytesPerSecond <= 0 ? 0
+					: (long) (line.getBufferSize() / bytesPerSecond * TimeUnit.SECONDS.toNanos(1));
+				drainDeadline = System.nanoTime() + bufferNanos + TimeUnit.MILLISECONDS.toNanos(STOP_TIMEOUT_MILLIS);
+			}
+			return !line.isRunning() || line.available() >= line.getBufferSize() || System.nanoTime() - drainDeadline >= 0;
+		}
+
+		/**
+		 * Free the audio resources and notify the listeners, as at the end of {@link #call()}. The stream is closed
+		 * once the decode-ahead thread is done: until then the session waits, instead of holding up the loop thread.
+		 *
+		 * @param endOfMedia true at the end of the media
+		 * @param block      true to wait for the decode-ahead thread, when the session must finish right away
+		 * @return {@link Step#FINISHED}, or {@link Step#WAITING} while the decode-ahead thread is still running
+		 */
+		private Step finish(final boolean endOfMedia, final boolean block) {
+			if (!finishing) {
+				finishing = true;
+				finishingEndOfMedia = endOfMedia;
+				// Stop decoding before the stream gets closed.
+				decodeAheadEnding = cancelDecodeAhead();
+				decodeAheadDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DECODE_AHEAD_JOIN_MILLIS);
+			}
+			if (decodeAheadEnding != null && !decodeAheadEnding.isDone()) {
+				if (block)
+					awaitDecodeAhead(decodeAheadEnding);
+				else if (System.nanoTime() - decodeAheadDeadline < 0)
+					return Step.WAITING;
+				else {
+					logger.warning("Decode-ahead thread did not finish in time");
+					decodeAheadEnding.cancel(true);
+				}
+			}
+			decodeAheadEnding = null;
+			endCrossfade();
+			if (completingSeek != null) {
+				completingSeek.complete();
+				completingSeek = null;
+			}
+
+			// The line is empty already at the end of the media
+			outlet.flushAndFreeDataLine();
+			closeStream();
+			if (endOfMedia)
+				generateEvent(Status.EOM, AudioSystem.NOT_SPECIFIED, null);
+
+			playbackThread = null;
+			engineSession = null;
+			state.move(RUNNING, Status.STOPPED);
+			endPlaybackCommands();
+			generateEvent(Status.STOPPED, AudioSystem.NOT_SPECIFIED, null);
+			logger.info("Playback completed on the engine");
+			return Step.FINISHED;
+		}
+	}
 }
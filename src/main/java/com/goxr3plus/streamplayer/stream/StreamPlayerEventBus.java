@@ -0,0 +1,769 @@
+package com.goxr3plus.streamplayer.stream;
+
+import com.goxr3plus.streamplayer.dsp.PcmConverter;
+import com.goxr3plus.streamplayer.enums.DropPolicy;
+import com.goxr3plus.streamplayer.enums.Status;
+
+import javax.sound.sampled.AudioFormat;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delivers the status events and the progress of a {@link StreamPlayer} to its listeners without making the player
+ * wait for them.
+ * <p>
+ * Every listener has its own bounded mailbox, drained by one task at a time on the events executor, so a listener
+ * receives the events in the order they were published, and a slow listener only delays itself (given an executor
+ * with more than one thread) and never the player. {@link StreamPlayerListener#opened(Object, Map)} is delivered the
+ * same way, among the status events. An event replaces the previous one still waiting in a mailbox
+ * if both have the same status and the status only describes a value (gain, pan, seeking, buffering). When a
+ * mailbox is full, its oldest such event is dropped, or else its oldest event which a listener can miss. The opened
+ * stream, the track change, the end of media and the stop are never dropped, they are kept beyond the capacity.
+ * <p>
+ * The progress is copied into a ring of preallocated snapshots of the listener, delivered after the waiting status
+ * events. What happens when the ring is full depends on the {@link DropPolicy} of the listener. The lag and the
+ * dropped buffers of every listener are counted, to find the listeners which can't keep up.
+ * <p>
+ * A {@link StreamPlayerSummaryListener} gets a {@link PcmSummary} at the rate of its subscription instead. The
+ * summary is computed on the publishing thread, which is cheaper than copying the PCM data, and a listener which falls
+ * behind gets the missed summaries merged into the next one. A {@link StreamPlayerStatusListener} gets no progress at
+ * all.
+ * <p>
+ * A drain task can linger for the next events once the mailbox is empty, see {@link #setLinger(Duration)}. While it
+ * lingers, publishing only signals it, so that steady progress neither schedules a task per buffer nor allocates.
+ * <p>
+ * In synchronous mode, meant for tests, events and progress are delivered on the publishing thread before
+ * {@link #publish(StreamPlayerEvent)} and {@link #publishProgress(StreamPlayerProgress)} return.
+ *
+ * @author GOXR3PLUS
+ */
+public final class StreamPlayerEventBus {
+
+	/** The most events waiting for one listener */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	/** The most progress buffers waiting for one listener, about a third of a second of CD audio */
+	public static final int DEFAULT_PROGRESS_CAPACITY = 16;
+
+	/** The rate of the summaries of a {@link StreamPlayerSummaryListener} added without one, in Hz */
+	public static final double DEFAULT_SUMMARY_RATE = 30;
+
+	/** How many times publishing tries the lock of a mailbox before blocking on it */
+	private static final int PUBLISH_LOCK_TRIES = 64;
+
+	private final Logger logger;
+	private final Executor executor;
+	private final int capacity;
+	/** Replaced on every change, so that publishing neither locks nor allocates an iterator */
+	private volatile Mailbox[] mailboxes = new Mailbox[0];
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+
+	private volatile boolean synchronous;
+	private volatile long lingerNanos;
+
+	/**
+	 * @param logger   used to log the failures of the listeners
+	 * @param executor runs the delivery tasks
+	 * @param capacity the most events waiting for one listener
+	 */
+	public StreamPlayerEventBus(final Logger logger, final Executor executor, final int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		this.logger = logger;
+		this.executor = executor;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Deliver the next events to a listener, dropping its oldest progress buffers when it falls behind. A
+	 * {@link StreamPlayerSummaryListener} gets summaries at {@link #DEFAULT_SUMMARY_RATE}.
+	 *
+	 * @param listener the listener
+	 */
+	public void addListener(final StreamPlayerListener listener) {
+		addListener(listener, DropPolicy.DROP_OLDEST, DEFAULT_PROGRESS_CAPACITY);
+	}
+
+	/**
+	 * Deliver the next events to a listener.
+	 *
+	 * @param listener         the listener
+	 * @param dropPolicy       what to do with the progress when the listener falls behind
+	 * @param progressCapacity the most progress buffers waiting for the listener, ignored by
+	 *                         {@link DropPolicy#COALESCE} which keeps only one
+	 *                         <p>
+	 *                         Both are ignored for a {@link StreamPlayerSummaryListener}, which gets summaries at
+	 *                         {@link #DEFAULT_SUMMARY_RATE}.
+	 */
+	public void addListener(final StreamPlayerListener listener, final DropPolicy dropPolicy,
+			final int progressCapacity) {
+		Objects.requireNonNull(dropPolicy, "dropPolicy");
+		if (progressCapacity <= 0)
+			throw new IllegalArgumentException("Progress capacity must be positive: " + progressCapacity);
+		register(new Mailbox(listener, dropPolicy, dropPolicy == DropPolicy.COALESCE ? 1 : progressCapacity,
+				listener instanceof StreamPlayerSummaryListener ? DEFAULT_SUMMARY_RATE : 0));
+	}
+
+	/**
+	 * Deliver the next events to a listener, and a summary of the audio at most summaryRate times per second.
+	 *
+	 * @param listener    the listener
+	 * @param summaryRate the rate of the summaries, in Hz
+	 */
+	public void addListener(final StreamPlayerSummaryListener listener, final double summaryRate) {
+		if (!(summaryRate > 0) || Double.isInfinite(summaryRate))
+			throw new IllegalArgumentException("Summary rate must be positive: " + summaryRate);
+		register(new Mailbox(listener, DropPolicy.COALESCE, 1, summaryRate));
+	}
+
+	private void register(final Mailbox mailbox) {
+		synchronized (this) {
+			final Mailbox[] current = mailboxes;
+			final Mailbox[] updated = Arrays.copyOf(current, current.length + 1);
+			updated[current.length] = mailbox;
+			mailboxes = updated;
+		}
+	}
+
+	/**
+	 * Stop delivering events to a listener. Events already being delivered may still reach it.
+	 *
+	 * @param listener the listener
+	 */
+	public void removeListener(final StreamPlayerListener listener) {
+		final Mailbox mailbox;
+		synchronized (this) {
+			mailbox = mailboxOf(listener);
+			if (mailbox == null)
+				return;
+			final Mailbox[] current = mailboxes;
+			final Mailbox[] updated = new Mailbox[current.length - 1];
+			for (int i = 0, j = 0; i < current.length; i++) {
+				if (current[i] != mailbox)
+					updated[j++] = current[i];
+			}
+			mailboxes = updated;
+		}
+		mailbox.close();
+	}
+
+	private Mailbox mailboxOf(final StreamPlayerListener listener) {
+		for (final Mailbox mailbox : mailboxes) {
+			if (mailbox.listener == listener)
+				return mailbox;
+		}
+		return null;
+	}
+
+	/**
+	 * @param synchronous true to deliver the events on the publishing thread, for tests
+	 */
+	public void setSynchronous(final boolean synchronous) {
+		this.synchronous = synchronous;
+	}
+
+	/**
+	 * @return true if the events are delivered on the publishing thread
+	 */
+	public boolean isSynchronous() {
+		return synchronous;
+	}
+
+	/**
+	 * Let the drain task of a mailbox wait for the next events, on its executor thread, before it ends. Only worth it
+	 * on an executor with a thread for every busy mailbox, as a lingering task holds the other mailboxes back.
+	 *
+	 * @param linger how long a drain task waits for the next events, zero to end as soon as the mailbox is empty
+	 */
+	public void setLinger(final Duration linger) {
+		if (linger.isNegative())
+			throw new IllegalArgumentException("Linger must not be negative: " + linger);
+		lingerNanos = linger.toNanos();
+	}
+
+	/**
+	 * @return how long a drain task waits for the next events before it ends
+	 */
+	public Duration getLinger() {
+		return Duration.ofNanos(lingerNanos);
+	}
+
+	/**
+	 * @return the number of events dropped because a listener fell behind
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * @return the number of events replaced by a newer event with the same status
+	 */
+	public long getCoalescedCount() {
+		return coalesced.get();
+	}
+
+	/**
+	 * @param listener a listener
+	 * @return the number of progress buffers or summaries waiting for the listener, 0 if it isn't registered
+	 */
+	public int getProgressBacklog(final StreamPlayerListener listener) {
+		final Mailbox mailbox = mailboxOf(listener);
+		return mailbox == null ? 0 : mailbox.progressBacklog();
+	}
+
+	/**
+	 * @param listener a listener
+	 * @return how long ago the oldest progress buffer or summary not yet handled by the listener was published, zero if the
+	 *         listener is up to date or isn't registered
+	 */
+	public Duration getProgressLag(final StreamPlayerListener listener) {
+		final Mailbox mailbox = mailboxOf(listener);
+		return mailbox == null ? Duration.ZERO : Duration.ofNanos(mailbox.progressLagNanos(System.nanoTime()));
+	}
+
+	/**
+	 * @param listener a listener
+	 * @return the number of progress buffers never delivered to the listener because it fell behind, or of summaries
+	 *         merged into the next one, 0 if it isn't registered
+	 */
+	public long getDroppedProgressCount(final StreamPlayerListener listener) {
+		final Mailbox mailbox = mailboxOf(listener);
+		return mailbox == null ? 0 : mailbox.droppedProgress();
+	}
+
+	/**
+	 * Deliver an event to every listener. Returns without waiting for the listeners, unless synchronous.
+	 *
+	 * @param event the event
+	 */
+	public void publish(final StreamPlayerEvent event) {
+		final boolean direct = synchronous;
+		for (final Mailbox mailbox : mailboxes) {
+			if (direct)
+				mailbox.deliver(event);
+			else
+				mailbox.post(event);
+		}
+	}
+
+	/**
+	 * Tell every listener that a stream was opened, in order with the status events. Returns without waiting for the
+	 * listeners, unless synchronous.
+	 *
+	 * @param source     the player
+	 * @param dataSource the File, URL or InputStream opened
+	 * @param properties the properties of the stream, not changed once published
+	 */
+	public void publishOpened(final StreamPlayer source, final Object dataSource,
+			final Map<String, Object> properties) {
+		publish(new OpenedEvent(source, dataSource, properties));
+	}
+
+	/**
+	 * @return true if a listener gets the properties of the decoder with the progress, see
+	 * {@link StreamPlayerProgress#getProperties()}
+	 */
+	public boolean isPropertiesWanted() {
+		for (final Mailbox mailbox : mailboxes)
+			if (mailbox.propertiesWanted)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Deliver the progress to every listener. Unless synchronous, the snapshot is copied for every listener, and only
+	 * the listeners with {@link DropPolicy#BLOCK} can make this method wait.
+	 *
+	 * @param progress the progress, refilled by the caller once this method returns
+	 */
+	public void publishProgress(final StreamPlayerProgress progress) {
+		final boolean direct = synchronous;
+		for (final Mailbox mailbox : mailboxes) {
+			if (mailbox.statusOnly)
+				continue;
+			if (direct)
+				mailbox.deliver(progress);
+			else
+				mailbox.post(progress);
+		}
+	}
+
+	/**
+	 * @return true for the statuses which only describe a value, so that only the last one matters
+	 */
+	private static boolean isCoalescable(final Status status) {
+		return status == Status.GAIN || status == Status.PAN || status == Status.SEEKING
+				|| status == Status.BUFFERING;
+	}
+
+	/**
+	 * @return true for the statuses a listener can't miss, which a full mailbox keeps beyond its capacity
+	 */
+	private static boolean isKept(final Status status) {
+		return status == Status.OPENED || status == Status.TRACK_CHANGED || status == Status.EOM
+				|| status == Status.STOPPED;
+	}
+
+	/**
+	 * Carries {@link StreamPlayerListener#opened(Object, Map)} through the mailboxes, so that it keeps its place among
+	 * the status events.
+	 */
+	private static final class OpenedEvent extends StreamPlayerEvent {
+		final Object dataSource;
+		final Map<String, Object> properties;
+
+		OpenedEvent(final StreamPlayer source, final Object dataSource, final Map<String, Object> properties) {
+			super(source, Status.OPENED, -1, dataSource);
+			this.dataSource = dataSource;
+			this.properties = properties;
+		}
+	}
+
+	/**
+	 * The events and the progress waiting for one listener.
+	 */
+	private final class Mailbox implements Runnable {
+		final StreamPlayerListener listener;
+		/** True for a {@link StreamPlayerStatusListener}, which has no progress ring */
+		final boolean statusOnly;
+		/** True for a plain listener, which gets the properties of the decoder with the progress */
+		final boolean propertiesWanted;
+		private final DropPolicy dropPolicy;
+		private final ArrayDeque<StreamPlayerEvent> events = new ArrayDeque<>();
+		/** Ring of the progress waiting for the listener, the snapshots are preallocated and reused */
+		private final StreamPlayerProgress[] progress;
+		private int progressHead;
+		private int progressCount;
+		/** The snapshot which replaces the next one taken out of the ring, null while it is being delivered */
+		private StreamPlayerProgress spare;
+		/** The snapshot being delivered, null if none */
+		private StreamPlayerProgress delivering;
+		private long droppedProgress;
+
+		/** The rate of the summaries in Hz, 0 to deliver every buffer */
+		private final double summaryRate;
+		// Only used by the publishing thread
+		private AudioFormat summaryFormat;
+		private PcmConverter summaryConverter;
+		private float[] summarySamples;
+		/** The number of frames of one summary */
+		private long summaryFrames;
+		private PcmSummary filling;
+		// Guarded by the mailbox, like the progress ring
+		private PcmSummary readySummary;
+		private PcmSummary spareSummary;
+		private PcmSummary deliveringSummary;
+		/** True while a task is scheduled to drain the mailbox */
+		private boolean scheduled;
+		/** True while the drain task waits for {@link #workPosted} */
+		private boolean lingering;
+		private boolean closed;
+		/** Guards the mailbox, a lock rather than a monitor so that a blocked publisher doesn't pin a virtual thread */
+		private final ReentrantLock lock = new ReentrantLock();
+		/** Signalled when progress leaves the ring, for the publishers waiting with {@link DropPolicy#BLOCK} */
+		private final Condition progressTaken = lock.newCondition();
+		/** Signalled when events or progress come for a lingering drain task */
+		private final Condition workPosted = lock.newCondition();
+
+		Mailbox(final StreamPlayerListener listener, final DropPolicy dropPolicy, final int progressCapacity,
+				final double summaryRate) {
+			this.listener = listener;
+			statusOnly = listener instanceof StreamPlayerStatusListener;
+			propertiesWanted = !statusOnly && summaryRate == 0 && !(listener instanceof StreamPlayerProgressListener);
+			this.dropPolicy = dropPolicy;
+			this.summaryRate = summaryRate;
+			progress = new StreamPlayerProgress[statusOnly ? 0 : summaryRate > 0 ? 1 : progressCapacity];
+		}
+
+		void post(final StreamPlayerEvent event) {
+			lockToPublish();
+			try {
+				if (closed)
+					return;
+				final StreamPlayerEvent last = events.peekLast();
+				if (last != null && last.getPlayerStatus() == event.getPlayerStatus()
+						&& isCoalescable(event.getPlayerStatus())) {
+					events.pollLast();
+					coalesced.incrementAndGet();
+				} else if (events.size() >= capacity) {
+					dropOne();
+				}
+				events.addLast(event);
+				if (!schedule())
+					return;
+			} finally {
+				lock.unlock();
+			}
+			execute();
+		}
+
+		void post(final StreamPlayerProgress snapshot) {
+			if (summaryRate > 0) {
+				summarize(snapshot, false);
+				return;
+			}
+			lockToPublish();
+			try {
+				if (closed)
+					return;
+				if (progressCount == progress.length && !makeRoom())
+					return;
+				final int index = (progressHead + progressCount) % progress.length;
+				if (progress[index] == null)
+					progress[index] = new StreamPlayerProgress(snapshot.getSource());
+				progress[index].copy(snapshot, System.nanoTime());
+				progressCount++;
+				if (!schedule())
+					return;
+			} finally {
+				lock.unlock();
+			}
+			execute();
+		}
+
+		/**
+		 * Add the progress to the summary being filled, and hand the summary over each time it is complete.
+		 *
+		 * @param snapshot the progress
+		 * @param direct   true to deliver the complete summaries on this thread
+		 */
+		private void summarize(final StreamPlayerProgress snapshot, final boolean direct) {
+			final AudioFormat format = snapshot.getFormat();
+			if (format == null || !PcmConverter.isSupported(format))
+				return;
+			final int channels = format.getChannels();
+			if (summaryFormat == null || !format.matches(summaryFormat)) {
+				summaryFormat = format;
+				summaryConverter = new PcmConverter(format);
+				final float frameRate = format.getFrameRate() > 0 ? format.getFrameRate() : format.getSampleRate();
+				summaryFrames = Math.max(1, Math.round(frameRate / summaryRate));
+				filling = new PcmSummary(snapshot.getSource(), channels);
+			}
+			final int samples = snapshot.getPcmLength() / summaryConverter.getBytesPerSample();
+			if (summarySamples == null || summarySamples.length < samples)
+				summarySamples = new float[samples];
+			final int frames = summaryConverter.toFloat(snapshot.getPcmData(), snapshot.getPcmLength(), summarySamples)
+					/ channels;
+
+			for (int frame = 0; frame < frames;) {
+				final int count = (int) Math.min(frames - frame, summaryFrames - filling.getFrames());
+				filling.accumulate(summarySamples, frame, count);
+				frame += count;
+				if (filling.getFrames() == summaryFrames) {
+					filling.setPosition(snapshot.getEncodedBytes(), snapshot.getMicrosecondPosition());
+					if (direct)
+						deliver(filling);
+					else
+						handOff(channels);
+					filling.reset(channels);
+				}
+			}
+		}
+
+		/**
+		 * Make the complete summary ready for the listener, or merge it into the one still waiting.
+		 */
+		private void handOff(final int channels) {
+			lockToPublish();
+			try {
+				if (closed)
+					return;
+				filling.publishedNanos = System.nanoTime();
+				if (readySummary == null) {
+					readySummary = filling;
+					filling = spareSummary != null ? spareSummary : new PcmSummary(filling.getSource(), channels);
+					spareSummary = null;
+				} else if (readySummary.getChannels() == channels) {
+					readySummary.merge(filling);
+					droppedProgress++;
+				} else {
+					// The format changed, the waiting summary is dropped
+					final PcmSummary dropped = readySummary;
+					readySummary = filling;
+					filling = dropped;
+					droppedProgress++;
+				}
+				if (!schedule())
+					return;
+			} finally {
+				lock.unlock();
+			}
+			execute();
+		}
+
+		/**
+		 * Take the lock on the publishing thread. The drain task only holds it for a few fields, so trying a few
+		 * times first spares the queue node which blocking on it allocates.
+		 */
+		private void lockToPublish() {
+			for (int i = 0; i < PUBLISH_LOCK_TRIES; i++) {
+				if (lock.tryLock())
+					return;
+			}
+			lock.lock();
+		}
+
+		/**
+		 * Free a place in the full progress ring, as told by the drop policy.
+		 *
+		 * @return false if the new progress has to be dropped instead
+		 */
+		private boolean makeRoom() {
+			if (dropPolicy == DropPolicy.BLOCK) {
+				try {
+					while (progressCount == progress.length && !closed)
+						progressTaken.await();
+				} catch (final InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					droppedProgress++;
+					return false;
+				}
+				return !closed;
+			}
+			progressHead = (progressHead + 1) % progress.length;
+			progressCount--;
+			droppedProgress++;
+			return true;
+		}
+
+		/**
+		 * @return true if the caller has to submit the drain task, outside of the lock
+		 */
+		private boolean schedule() {
+			if (scheduled) {
+				if (lingering)
+					workPosted.signal();
+				return false;
+			}
+			scheduled = true;
+			return true;
+		}
+
+		private void execute() {
+			try {
+				executor.execute(this);
+			} catch (final RejectedExecutionException ex) {
+				// The player is being shut down
+				lock.lock();
+				try {
+					scheduled = false;
+					events.clear();
+					progressCount = 0;
+					readySummary = null;
+					progressTaken.signalAll();
+				} finally {
+					lock.unlock();
+				}
+			}
+		}
+
+		/**
+		 * Drop an event of the full mailbox, unless all the events waiting are kept, see {@link #isKept(Status)}.
+		 */
+		private void dropOne() {
+			for (final Iterator<StreamPlayerEvent> iterator = events.iterator(); iterator.hasNext();) {
+				if (isCoalescable(iterator.next().getPlayerStatus())) {
+					iterator.remove();
+					dropped.incrementAndGet();
+					return;
+				}
+			}
+			for (final Iterator<StreamPlayerEvent> iterator = events.iterator(); iterator.hasNext();) {
+				final StreamPlayerEvent oldest = iterator.next();
+				if (!isKept(oldest.getPlayerStatus())) {
+					iterator.remove();
+					dropped.incrementAndGet();
+					logger.warning(() -> "A listener fell behind, dropped " + oldest);
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Take the oldest progress out of the ring, leaving the spare snapshot in its place.
+		 */
+		private StreamPlayerProgress takeProgress() {
+			if (progressCount == 0)
+				return null;
+			final StreamPlayerProgress taken = progress[progressHead];
+			progress[progressHead] = spare;
+			spare = null;
+			progressHead = (progressHead + 1) % progress.length;
+			progressCount--;
+			delivering = taken;
+			progressTaken.signalAll();
+			return taken;
+		}
+
+		/**
+		 * Take the summary waiting for the listener, the spare summary replaces it once delivered.
+		 */
+		private PcmSummary takeSummary() {
+			final PcmSummary taken = readySummary;
+			readySummary = null;
+			deliveringSummary = taken;
+			return taken;
+		}
+
+		int progressBacklog() {
+			lock.lock();
+			try {
+				return progressCount + (delivering == null ? 0 : 1) + (readySummary == null ? 0 : 1)
+						+ (deliveringSummary == null ? 0 : 1);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		long progressLagNanos(final long now) {
+			lock.lock();
+			try {
+				final long published;
+				if (delivering != null)
+					published = delivering.publishedNanos;
+				else if (progressCount > 0)
+					published = progress[progressHead].publishedNanos;
+				else if (deliveringSummary != null)
+					published = deliveringSummary.publishedNanos;
+				else if (readySummary != null)
+					published = readySummary.publishedNanos;
+				else
+					return 0;
+				return now - published;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		long droppedProgress() {
+			lock.lock();
+			try {
+				return droppedProgress;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void close() {
+			lock.lock();
+			try {
+				closed = true;
+				events.clear();
+				progressCount = 0;
+				readySummary = null;
+				progressTaken.signalAll();
+				workPosted.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public void run() {
+			long linger = lingerNanos;
+			while (true) {
+				final StreamPlayerEvent event;
+				final StreamPlayerProgress snapshot;
+				final PcmSummary summary;
+				lock.lock();
+				try {
+					if (delivering != null) {
+						spare = delivering;
+						delivering = null;
+					}
+					if (deliveringSummary != null) {
+						// Kept unless the publisher made a new spare meanwhile, so that the summaries are reused
+						if (spareSummary == null)
+							spareSummary = deliveringSummary;
+						deliveringSummary = null;
+					}
+					event = events.pollFirst();
+					snapshot = event == null ? takeProgress() : null;
+					summary = event == null && snapshot == null ? takeSummary() : null;
+					if (event == null && snapshot == null && summary == null) {
+						if (linger > 0 && !closed) {
+							linger = awaitWork(linger);
+							continue;
+						}
+						scheduled = false;
+						return;
+					}
+				} finally {
+					lock.unlock();
+				}
+				if (event != null)
+					deliver(event);
+				else if (snapshot != null)
+					deliver(snapshot);
+				else
+					deliver(summary);
+				linger = lingerNanos;
+			}
+		}
+
+		/**
+		 * Wait for the next events, with the lock held.
+		 *
+		 * @return how much longer to linger, not positive once the time is up
+		 */
+		private long awaitWork(final long linger) {
+			lingering = true;
+			try {
+				return workPosted.awaitNanos(linger);
+			} catch (final InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return 0;
+			} finally {
+				lingering = false;
+			}
+		}
+
+		void deliver(final StreamPlayerEvent event) {
+			try {
+				if (event instanceof OpenedEvent)
+					listener.opened(((OpenedEvent) event).dataSource, ((OpenedEvent) event).properties);
+				else
+					listener.statusUpdated(event);
+			} catch (final RuntimeException ex) {
+				logger.log(Level.WARNING, "A StreamPlayerListener failed on " + event, ex);
+			}
+		}
+
+		void deliver(final StreamPlayerProgress snapshot) {
+			if (summaryRate > 0) {
+				summarize(snapshot, true);
+				return;
+			}
+			try {
+				if (listener instanceof StreamPlayerProgressListener)
+					((StreamPlayerProgressListener) listener).progress(snapshot);
+				else
+					// Pass a copy of the valid audio data and the audio parameters such as instant bit rate, ...
+					listener.progress(snapshot.getEncodedBytes(), snapshot.getMicrosecondPosition(),
+							snapshot.getTrimmedPcmData(), snapshot.getProperties());
+			} catch (final RuntimeException ex) {
+				logger.log(Level.WARNING, "A StreamPlayerListener failed on " + snapshot, ex);
+			}
+		}
+
+		void deliver(final PcmSummary summary) {
+			try {
+				((StreamPlayerSummaryListener) listener).summary(summary);
+			} catch (final RuntimeException ex) {
+				logger.log(Level.WARNING, "A StreamPlayerListener failed on " + summary, ex);
+			}
+		}
+	}
+}
@@ -33,7 +33,10 @@ import com.goxr3plus.streamplayer.enums.Status;
  * The Class StreamPlayerEventLauncher.
  *
  * @author GOXR3PLUS (www.goxr3plus.co.nf)
+ * @deprecated the player delivers its events through {@link StreamPlayerEventBus}, which doesn't wait for the
+ *             listeners
  */
+@Deprecated
 public class StreamPlayerEventLauncher implements Callable<String> {
 
     private final Logger logger;
@@ -1,5 +1,13 @@
 package com.goxr3plus.streamplayer.stream;
 
+import com.goxr3plus.streamplayer.dsp.AudioProcessor;
+import com.goxr3plus.streamplayer.dsp.Equalizer;
+import com.goxr3plus.streamplayer.dsp.Resampler;
+import com.goxr3plus.streamplayer.dsp.TimeStretcher;
+import com.goxr3plus.streamplayer.enums.CrossfadeCurve;
+import com.goxr3plus.streamplayer.enums.DropPolicy;
+import com.goxr3plus.streamplayer.enums.PauseMode;
+import com.goxr3plus.streamplayer.enums.SpeedMode;
 import com.goxr3plus.streamplayer.enums.Status;
 
 import javax.sound.sampled.SourceDataLine;
@@ -8,13 +16,28 @@ import java.io.InputStream;
 import java.net.URL;
 import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
-public interface StreamPlayerInterface {
+public interface StreamPlayerInterface extends AutoCloseable {
     /**
      * Freeing the resources.
      */
     void reset();
 
+    /**
+     * Stop the playback and release the line and the streams, before returning. The player can't be opened again.
+     */
+    @Override
+    void close();
+
+    /**
+     * The bus delivering the status events to the listeners, asynchronously by default. Tests which check the
+     * events right after calling the player can make it synchronous.
+     *
+     * @return the event bus
+     */
+    StreamPlayerEventBus getEventBus();
+
     /**
      * Add a listener to be notified.
      *
@@ -22,6 +45,24 @@ public interface StreamPlayerInterface {
      */
     void addStreamPlayerListener(StreamPlayerListener streamPlayerListener);
 
+    /**
+     * Add a listener to be notified, choosing what happens to its progress when it falls behind.
+     *
+     * @param streamPlayerListener the listener
+     * @param dropPolicy           what to do with the progress when the listener falls behind
+     * @param progressCapacity     the most progress buffers waiting for the listener
+     */
+    void addStreamPlayerListener(StreamPlayerListener streamPlayerListener, DropPolicy dropPolicy,
+                                 int progressCapacity);
+
+    /**
+     * Add a listener to be notified, which gets a summary of the audio rather than every buffer written to the line.
+     *
+     * @param streamPlayerListener the listener
+     * @param summaryRate          how many summaries per second
+     */
+    void addStreamPlayerListener(StreamPlayerSummaryListener streamPlayerListener, double summaryRate);
+
     /**
      * Remove registered listener.
      *
@@ -29,6 +70,21 @@ public interface StreamPlayerInterface {
      */
     void removeStreamPlayerListener(StreamPlayerListener streamPlayerListener);
 
+    /**
+     * Append a processor to the software processing chain, which runs between the decoder and the line.
+     *
+     * @param audioProcessor the processor
+     */
+    void addAudioProcessor(AudioProcessor audioProcessor);
+
+    /**
+     * Remove a processor from the software processing chain.
+     *
+     * @param audioProcessor the processor
+     * @return true if the processor was in the chain
+     */
+    boolean removeAudioProcessor(AudioProcessor audioProcessor);
+
     /**
      * Open the specified object which can be File,URL or InputStream.
      *
@@ -68,14 +124,146 @@ public interface StreamPlayerInterface {
     void open(InputStream stream) throws StreamPlayerException;
 
     /**
-     * Change the Speed Rate of the Audio , this variable affects the Sample Rate ,
-     * for example 1.0 is normal , 0.5 is half the speed and 2.0 is double the speed
-     * Note that you have to restart the audio for this to take effect
+     * Add a file at the end of the queue of tracks played after the current one. The first track of the queue is
+     * opened and decoded while the current one plays, and follows it on the same line without a gap.
+     *
+     * @param file the file to be played
+     */
+    void enqueue(File file);
+
+    /**
+     * Add a location at the end of the queue of tracks played after the current one. See {@link #enqueue(File)}
+     *
+     * @param url the location to be played
+     */
+    void enqueue(URL url);
+
+    /**
+     * Add a stream at the end of the queue of tracks played after the current one. See {@link #enqueue(File)}
+     *
+     * @param stream the stream to be played
+     */
+    void enqueue(InputStream stream);
+
+    /**
+     * @return the number of tracks waiting in the queue
+     */
+    int getQueueSize();
+
+    /**
+     * Remove the tracks waiting in the queue, releasing the one opened ahead.
+     */
+    void clearQueue();
+
+    /**
+     * Overlap consecutive tracks of the queue: the next track fades in while the current one fades out.
+     *
+     * @param length how long the tracks overlap, {@link Duration#ZERO} to follow without a gap
+     */
+    void setCrossfade(Duration length);
+
+    /**
+     * @return how long consecutive tracks of the queue overlap
+     */
+    Duration getCrossfade();
+
+    /**
+     * @param curve how the gains change while consecutive tracks overlap
+     */
+    void setCrossfadeCurve(CrossfadeCurve curve);
+
+    /**
+     * @return how the gains change while consecutive tracks overlap
+     */
+    CrossfadeCurve getCrossfadeCurve();
+
+    /**
+     * Change the Speed Rate of the Audio , for example 1.0 is normal , 0.5 is half the speed and 2.0 is double the
+     * speed. Depending on the {@link SpeedMode} the pitch changes with the speed or stays the same.
+     * The change applies to the next buffer written to the line , even while playing.
      *
-     * @param speedFactor speedFactor
+     * @param speedFactor {@link StreamPlayer#MINIMUM_SPEED_FACTOR} ... {@link StreamPlayer#MAXIMUM_SPEED_FACTOR}
      */
     void setSpeedFactor(double speedFactor);
 
+    /**
+     * Set the quality of the resampler which changes the speed, see {@link #setSpeedFactor(double)}.
+     *
+     * @param quality the quality, higher costs more CPU
+     */
+    void setSpeedQuality(Resampler.Quality quality);
+
+    /**
+     * @return The quality of the resampler which changes the speed
+     */
+    Resampler.Quality getSpeedQuality();
+
+    /**
+     * Choose whether the speed factor resamples the audio, changing the pitch, or time-stretches it, keeping the
+     * pitch. Applies to the next buffer written to the line , even while playing.
+     *
+     * @param speedMode the speed mode
+     */
+    void setSpeedMode(SpeedMode speedMode);
+
+    /**
+     * @return Whether the speed factor resamples or time-stretches the audio
+     */
+    SpeedMode getSpeedMode();
+
+    /**
+     * Choose whether the pause flushes the line or keeps its audio for the resume. Applies to the next pause.
+     *
+     * @param pauseMode the pause mode
+     */
+    void setPauseMode(PauseMode pauseMode);
+
+    /**
+     * @return Whether the pause flushes the line or keeps its audio
+     */
+    PauseMode getPauseMode();
+
+    /**
+     * Set the quality of the time-stretch which changes the speed in {@link SpeedMode#TIME_STRETCH}.
+     *
+     * @param quality the quality, higher costs more CPU
+     */
+    void setTimeStretchQuality(TimeStretcher.Quality quality);
+
+    /**
+     * @return The quality of the time-stretch which changes the speed
+     */
+    TimeStretcher.Quality getTimeStretchQuality();
+
+    /**
+     * Set how many milliseconds of decoded audio are kept ready ahead of the line. When it is bigger than 0
+     * the decoder runs on its own thread and fills a ring buffer, so that decoder hiccups don't become line
+     * underruns. Note that you have to restart the audio for this to take effect
+     *
+     * @param millis 0 to decode on the playback thread
+     */
+    void setDecodeAheadMillis(int millis);
+
+    /**
+     * @return The milliseconds of decoded audio kept ready ahead of the line, 0 if disabled
+     */
+    int getDecodeAheadMillis();
+
+    /**
+     * @return The most decoded audio ever waiting in the decode-ahead buffer during the last playback, in milliseconds
+     */
+    int getDecodeAheadHighWatermarkMillis();
+
+    /**
+     * @return The least decoded audio ever waiting in the decode-ahead buffer during the last playback, in milliseconds
+     */
+    int getDecodeAheadLowWatermarkMillis();
+
+    /**
+     * @return How many times the line was ready for data the decode-ahead thread had not decoded yet
+     */
+    long getDecodeAheadUnderruns();
+
     /**
      * Starts the play back.
      *
@@ -100,6 +288,13 @@ public interface StreamPlayerInterface {
      */
     void stop();
 
+    /**
+     * Hand a stop to the playback thread, which applies it at the end of the buffer it is writing, without waiting.
+     *
+     * @return completed once the player is stopped and the line released
+     */
+    CompletableFuture<Void> submitStop();
+
     /**
      * Resumes the play back.<br>
      * <p>
@@ -109,9 +304,55 @@ public interface StreamPlayerInterface {
      */
     boolean resume();
 
+    /**
+     * Hand a gain change to the playback thread, which applies it between two buffers.
+     *
+     * @param fGain the new gain value, linear scale 0.0 ... 1.0
+     * @return completed once the gain is applied
+     */
+    CompletableFuture<Void> submitGain(double fGain);
+
+    /**
+     * Hand a change of the equalizer to the playback thread, which applies it between two buffers. See
+     * {@link #setEqualizer(float[], int)}
+     *
+     * @param array the values of the subbands of the MP3 decoder, from -1.0 to 1.0
+     * @param stop  the number of subbands to change
+     * @return completed once the equalizer is changed
+     */
+    CompletableFuture<Void> submitEqualizer(float[] array, int stop);
+
+    /**
+     * Hand a change of speed to the playback thread, which applies it between two buffers.
+     *
+     * @param speedFactor the speed factor, 1.0 is the normal speed
+     * @return completed once the speed is changed
+     */
+    CompletableFuture<Void> submitSpeedFactor(double speedFactor);
+
+    /**
+     * Hand a seek to the playback thread, without waiting for it.
+     *
+     * @param position the time from the start of the audio
+     * @return completed once audio from the new position reaches the line, with null if the stream couldn't be
+     * positioned
+     */
+    CompletableFuture<SeekReport> submitSeek(Duration position);
+
+    /**
+     * @return the longest time a control operation waited for the playback thread to apply it
+     */
+    Duration getMaximumCommandLatency();
+
+    /**
+     * @return the average time a control operation waited for the playback thread to apply it
+     */
+    Duration getAverageCommandLatency();
+
     /**
      * Skip bytes in the File input stream. It will skip N frames matching to bytes,
-     * so it will never skip given bytes len
+     * so it will never skip given bytes len. In MP3 files it jumps straight to the
+     * frame which contains the given byte, through a frame index of the file
      *
      * @param bytes the bytes
      *
@@ -121,6 +362,60 @@ public interface StreamPlayerInterface {
      */
     long seekBytes(long bytes) throws StreamPlayerException;
 
+    /**
+     * Go to a time of the audio, sample accurately: the stream is positioned on the PCM frame of that time.
+     * See {@link #seekToFrame(long)}
+     *
+     * @param position the time from the start of the audio
+     *
+     * @return the PCM frame played next, -1 for URL and InputStream
+     *
+     * @throws StreamPlayerException the stream player exception
+     */
+    long seek(Duration position) throws StreamPlayerException;
+
+    /**
+     * Go to a PCM frame of the audio. In MP3 files decoding starts at the closest frame of the frame index which
+     * refills the bit reservoir, in other compressed formats at the start of the file, and what is decoded before
+     * the target frame is thrown away. The {@link Status#SEEKED} event describes the seek with a
+     * {@link SeekReport}, which gives its latency.
+     *
+     * @param frame the PCM frame to play next, counted from the start of the audio
+     *
+     * @return the PCM frame played next, -1 for URL and InputStream
+     *
+     * @throws StreamPlayerException the stream player exception
+     */
+    long seekToFrame(long frame) throws StreamPlayerException;
+
+    /**
+     * Choose how the frame index used to seek in MP3 files is built. When true, the default, the index comes from
+     * a scan of the frame headers at the first seek and seeking is sample accurate. When false, the table of
+     * contents of VBR files is used if they have one, which costs nothing but only seeks approximately.
+     *
+     * @param sampleAccurateSeek true to scan MP3 files to seek accurately
+     */
+    void setSampleAccurateSeek(boolean sampleAccurateSeek);
+
+    /**
+     * @return true if seeking in MP3 files is sample accurate, see {@link #setSampleAccurateSeek(boolean)}
+     */
+    boolean isSampleAccurateSeek();
+
+    /**
+     * Set where the frame indexes of MP3 files are kept, so that a file is only scanned the first time it is
+     * played. There is none by default: {@link SeekIndexCache#getDefault()} writes to the home directory of the user,
+     * so it is only used once it is set here.
+     *
+     * @param seekIndexCache the cache, null to index the files every time they are opened
+     */
+    void setSeekIndexCache(SeekIndexCache seekIndexCache);
+
+    /**
+     * @return the cache of the frame indexes, null if there is none
+     */
+    SeekIndexCache getSeekIndexCache();
+
     /**
      * Skip x seconds of audio
      * See  {@link #seekBytes(long)}
@@ -249,6 +544,17 @@ public interface StreamPlayerInterface {
      */
     Status getStatus();
 
+    /**
+     * Wait until the player is in a status, without polling: every change of the status wakes the waiting thread up.
+     * A status the player only passes through while the thread wakes up may be missed.
+     *
+     * @param status  the status to wait for, such as {@link Status#STOPPED} at the end of the playback
+     * @param timeout the maximum time to wait
+     * @return false if the time elapsed before the player got in the status
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    boolean awaitStatus(Status status, Duration timeout) throws InterruptedException;
+
     /**
      * Set SourceDataLine buffer size. It affects audio latency. (the delay between
      * line.write(data) and real sound). Minimum value should be over 10000 bytes.
@@ -299,21 +605,46 @@ public interface StreamPlayerInterface {
     void setBalance(float fBalance);
 
     /**
-     * Changes specific values from equalizer.
+     * Changes specific values from equalizer. Each value goes from -1.0 to 1.0, that is -12 dB to +12 dB, and is
+     * given to the subband with the same index of the MP3 decoder, 32 equal-width subbands of 689 Hz at 44.1 kHz.
+     * <p>
+     * The software {@link #getEqualizer() equalizer}, which works for every codec, has
+     * {@link Equalizer#OCTAVE_BANDS 10 octave bands} instead: every octave band the changed subbands overlap gets the
+     * average of the subbands it overlaps. The octave bands up to 500 Hz all fall within the first subband.
      *
      * @param array the array
-     * @param stop the stop
+     * @param stop the number of subbands to change, from the first one
+     * @deprecated the octave bands are set directly by {@link #setEqualizerBand(int, float)}
      */
+    @Deprecated
     void setEqualizer(float[] array, int stop);
 
     /**
-     * Changes a value from equalizer.
+     * Changes a value from equalizer. The value goes from -1.0 to 1.0 and is given to the subband with the same index
+     * of the MP3 decoder, see {@link #setEqualizer(float[], int)}.
      *
      * @param value the value
-     * @param key the key
+     * @param key the subband, 0 ... 31
+     * @throws IllegalArgumentException if the key is not a subband of the MP3 decoder
+     * @deprecated the octave bands are set directly by {@link #setEqualizerBand(int, float)}
      */
+    @Deprecated
     void setEqualizerKey(float value, int key);
 
+    /**
+     * Set the gain of a band of the software {@link #getEqualizer() equalizer}.
+     *
+     * @param band the band, 0 ... 9 for the {@link Equalizer#OCTAVE_BANDS octave bands} from 31.25 Hz to 16 kHz
+     * @param gainDb the gain in dB, clamped to +/- {@link Equalizer#MAXIMUM_GAIN_DB}
+     * @throws IllegalArgumentException if the band is not a band of the software equalizer
+     */
+    void setEqualizerBand(int band, float gainDb);
+
+    /**
+     * @return The software equalizer, which is applied to every codec
+     */
+    Equalizer getEqualizer();
+
     /**
      * @return The Speech Factor of the Audio
      */
@@ -41,7 +41,9 @@ public interface StreamPlayerListener {
 	
 	/**
 	 * Is called several times per second when StreamPlayer run method is
-	 * running.
+	 * running, on the events executor rather than on the playback thread.
+	 * Buffers may be dropped if the listener falls behind, see
+	 * {@link StreamPlayer#addStreamPlayerListener(StreamPlayerListener, com.goxr3plus.streamplayer.enums.DropPolicy, int)}.
 	 *
 	 * @param nEncodedBytes the n encoded bytes
 	 * @param microsecondPosition the microsecond position
@@ -0,0 +1,152 @@
+package com.goxr3plus.streamplayer.stream;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Snapshot of the playback progress, passed to {@link StreamPlayerProgressListener#progress(StreamPlayerProgress)}.
+ * <p>
+ * The player owns a single instance and refills it for every buffer written to the line, so that
+ * progress notification doesn't allocate. Every listener has a few more, which keep a copy of the
+ * buffers waiting to be delivered to it, see {@link StreamPlayerEventBus}. The snapshot and its PCM
+ * data are only valid for the duration of the callback; copy whatever has to be kept.
+ */
+public final class StreamPlayerProgress {
+
+	private final StreamPlayer source;
+
+	private int encodedBytes = -1;
+	private long microsecondPosition = -1;
+	private byte[] pcmData;
+	private int pcmLength;
+	private AudioFormat format;
+	/** The properties of the decoder when the buffer was written, owned by the snapshot and refilled */
+	private final Map<String, Object> properties = new HashMap<>();
+
+	/** When the snapshot was copied for a listener, see {@link System#nanoTime()} */
+	long publishedNanos;
+
+	StreamPlayerProgress(StreamPlayer source) {
+		this.source = source;
+	}
+
+	/**
+	 * Refill the snapshot.
+	 */
+	void update(int encodedBytes, long microsecondPosition, byte[] pcmData, int pcmLength) {
+		this.encodedBytes = encodedBytes;
+		this.microsecondPosition = microsecondPosition;
+		this.pcmData = pcmData;
+		this.pcmLength = pcmLength;
+	}
+
+	/**
+	 * Refill the snapshot with a copy of another one. The PCM array only grows, so that copying doesn't
+	 * allocate once it is large enough.
+	 *
+	 * @param other         the snapshot to copy
+	 * @param publishedNanos when the copy is made
+	 */
+	void copy(StreamPlayerProgress other, long publishedNanos) {
+		if (pcmData == null || pcmData.length < other.pcmLength)
+			pcmData = new byte[other.pcmLength];
+		System.arraycopy(other.pcmData, 0, pcmData, 0, other.pcmLength);
+		this.encodedBytes = other.encodedBytes;
+		this.microsecondPosition = other.microsecondPosition;
+		this.pcmLength = other.pcmLength;
+		this.format = other.format;
+		setProperties(other.properties);
+		this.publishedNanos = publishedNanos;
+	}
+
+	/**
+	 * Refill the properties of the decoder, on the thread which reads the decoder.
+	 *
+	 * @param decoderProperties the properties of the decoder, null if none are wanted
+	 */
+	void setProperties(Map<String, Object> decoderProperties) {
+		if (!properties.isEmpty())
+			properties.clear();
+		if (decoderProperties != null)
+			properties.putAll(decoderProperties);
+	}
+
+	/**
+	 * @param format the format of the PCM data written to the line
+	 */
+	void setFormat(AudioFormat format) {
+		this.format = format;
+	}
+
+	/**
+	 * @return the format of the PCM data, null if the line isn't open yet
+	 */
+	public AudioFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * @return the position in the encoded stream, in bytes
+	 */
+	public int getEncodedBytes() {
+		return encodedBytes;
+	}
+
+	/**
+	 * @return the microsecond position of the line
+	 */
+	public long getMicrosecondPosition() {
+		return microsecondPosition;
+	}
+
+	/**
+	 * Returns the buffer that has just been written to the line. Only the first {@link #getPcmLength()} bytes
+	 * are valid, the rest of the array is garbage. The array is reused for the next buffer.
+	 *
+	 * @return the pcm data
+	 */
+	public byte[] getPcmData() {
+		return pcmData;
+	}
+
+	/**
+	 * @return the number of valid bytes in {@link #getPcmData()}
+	 */
+	public int getPcmLength() {
+		return pcmLength;
+	}
+
+	/**
+	 * @return the valid pcm data, copied only if the buffer is not full
+	 */
+	byte[] getTrimmedPcmData() {
+		return pcmLength == pcmData.length ? pcmData : Arrays.copyOf(pcmData, pcmLength);
+	}
+
+	/**
+	 * Returns the properties of the decoder when the buffer was written, such as the instant bit rate. They are
+	 * copied by the playback thread, and only while a plain {@link StreamPlayerListener} is registered, which gets
+	 * them in {@link StreamPlayerListener#progress(int, long, byte[], Map)}: the map is empty otherwise. Like the PCM
+	 * data, the map is reused for the next buffer.
+	 *
+	 * @return the properties of the decoded stream, or an empty map
+	 */
+	public Map<String, Object> getProperties() {
+		return properties;
+	}
+
+	/**
+	 * @return the player which is playing
+	 */
+	public StreamPlayer getSource() {
+		return source;
+	}
+
+	@Override
+	public String toString() {
+		return "EncodedBytes :=" + encodedBytes + " , MicrosecondPosition :=" + microsecondPosition
+				+ " , PcmLength :=" + pcmLength;
+	}
+}
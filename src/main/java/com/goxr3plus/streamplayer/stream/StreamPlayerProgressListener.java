@@ -0,0 +1,26 @@
+package com.goxr3plus.streamplayer.stream;
+
+import java.util.Map;
+
+/**
+ * A {@link StreamPlayerListener} which receives the playback progress as a reusable {@link StreamPlayerProgress}
+ * snapshot. The player copies the PCM data into preallocated snapshots and doesn't fetch the decoder properties
+ * for these listeners, so when every registered listener is a StreamPlayerProgressListener the playback loop
+ * doesn't allocate, besides scheduling the delivery on the events executor.
+ */
+public interface StreamPlayerProgressListener extends StreamPlayerListener {
+
+	/**
+	 * Is called for every buffer written to the line, unless the listener fell behind.
+	 *
+	 * @param progress the progress, only valid during this call
+	 */
+	void progress(StreamPlayerProgress progress);
+
+	/**
+	 * Not called for StreamPlayerProgressListeners, see {@link #progress(StreamPlayerProgress)}.
+	 */
+	@Override
+	default void progress(int nEncodedBytes, long microsecondPosition, byte[] pcmData, Map<String, Object> properties) {
+	}
+}
@@ -0,0 +1,231 @@
+package com.goxr3plus.streamplayer.stream;
+
+import com.goxr3plus.streamplayer.enums.ThreadMode;
+
+import javax.sound.sampled.SourceDataLine;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps track of the players of the process and owns the executors they share by default.
+ * <p>
+ * The shared executors create a thread when no idle one is left, such as one playback thread per playing player, and
+ * let a thread end after {@link #KEEP_ALIVE_SECONDS} without work. So idle players hold no thread, and the process can
+ * exit once nothing plays. Players built with their own executors don't use them, and their owner shuts them down.
+ * <p>
+ * From Java 21, with the multi-release jar, there is a second set of shared executors running virtual threads, see
+ * {@link ThreadMode#VIRTUAL}. They start a virtual thread for every task and keep none alive.
+ *
+ * @author GOXR3PLUS
+ */
+public final class StreamPlayerRegistry {
+
+	/** How long a thread of the shared executors waits for work before it ends, in seconds */
+	public static final long KEEP_ALIVE_SECONDS = 5;
+
+	/** The players which are neither closed nor garbage collected */
+	private static final Set<StreamPlayer> players = Collections.newSetFromMap(new WeakHashMap<>());
+
+	private static final AtomicInteger liveThreads = new AtomicInteger();
+
+	private StreamPlayerRegistry() {
+	}
+
+	/**
+	 * The shared executors, created on first use.
+	 */
+	private static final class SharedExecutors {
+		static final ExecutorService PLAYBACK = newSharedExecutor(new ThreadFactoryWithNamePrefix("StreamPlayer"),
+				KEEP_ALIVE_SECONDS);
+		static final ExecutorService EVENTS = newSharedExecutor(new ThreadFactoryWithNamePrefix("StreamPlayerEvent"),
+				KEEP_ALIVE_SECONDS);
+		static final ExecutorService DECODER = newSharedExecutor(
+				new ThreadFactoryWithNamePrefix("StreamPlayerDecoder"), KEEP_ALIVE_SECONDS);
+		static final ExecutorService CONTROL = newSharedExecutor(
+				new ThreadFactoryWithNamePrefix("StreamPlayerControl"), KEEP_ALIVE_SECONDS);
+		static final ScheduledThreadPoolExecutor TIMER = newSharedTimer(
+				new ThreadFactoryWithNamePrefix("StreamPlayerTimer"));
+	}
+
+	/**
+	 * The shared executors of virtual threads, created on first use. Only touched when virtual threads are supported.
+	 */
+	private static final class VirtualExecutors {
+		static final ExecutorService PLAYBACK = newSharedExecutor(VirtualThreads.newThreadFactory("StreamPlayer"), 0);
+		static final ExecutorService EVENTS = newSharedExecutor(VirtualThreads.newThreadFactory("StreamPlayerEvent"),
+				0);
+		static final ExecutorService DECODER = newSharedExecutor(
+				VirtualThreads.newThreadFactory("StreamPlayerDecoder"), 0);
+	}
+
+	private static ExecutorService newSharedExecutor(final ThreadFactory threads, final long keepAliveSeconds) {
+		return new ThreadPoolExecutor(0, Integer.MAX_VALUE, keepAliveSeconds, TimeUnit.SECONDS,
+				new SynchronousQueue<>(), counting(threads));
+	}
+
+	/**
+	 * A single thread running the timeouts, which ends like the other shared threads when there is none.
+	 */
+	private static ScheduledThreadPoolExecutor newSharedTimer(final ThreadFactory threads) {
+		final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, counting(threads));
+		timer.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+		timer.allowCoreThreadTimeOut(true);
+		timer.setRemoveOnCancelPolicy(true);
+		return timer;
+	}
+
+	private static ThreadFactory counting(final ThreadFactory threads) {
+		return runnable -> threads.newThread(() -> {
+			liveThreads.incrementAndGet();
+			try {
+				runnable.run();
+			} finally {
+				liveThreads.decrementAndGet();
+			}
+		});
+	}
+
+	/**
+	 * @return true if players can run on virtual threads, from Java 21 with the multi-release jar
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return VirtualThreads.isSupported();
+	}
+
+	private static void requireVirtualThreads() {
+		if (!VirtualThreads.isSupported())
+			throw new UnsupportedOperationException("Virtual threads need Java 21 or later and the multi-release jar");
+	}
+
+	/**
+	 * @return the executor running the playback threads of the players
+	 */
+	static ExecutorService getPlaybackExecutor() {
+		return SharedExecutors.PLAYBACK;
+	}
+
+	/**
+	 * @param threadMode the kind of threads
+	 * @return the executor running the playback threads of the players
+	 * @throws UnsupportedOperationException for virtual threads where they aren't supported
+	 */
+	static ExecutorService getPlaybackExecutor(final ThreadMode threadMode) {
+		if (threadMode == ThreadMode.PLATFORM)
+			return SharedExecutors.PLAYBACK;
+		requireVirtualThreads();
+		return VirtualExecutors.PLAYBACK;
+	}
+
+	/**
+	 * @return the executor delivering the events of the players to their listeners
+	 */
+	static ExecutorService getEventsExecutor() {
+		return SharedExecutors.EVENTS;
+	}
+
+	/**
+	 * @param threadMode the kind of threads
+	 * @return the executor delivering the events of the players to their listeners
+	 * @throws UnsupportedOperationException for virtual threads where they aren't supported
+	 */
+	static ExecutorService getEventsExecutor(final ThreadMode threadMode) {
+		if (threadMode == ThreadMode.PLATFORM)
+			return SharedExecutors.EVENTS;
+		requireVirtualThreads();
+		return VirtualExecutors.EVENTS;
+	}
+
+	/**
+	 * @param executor an executor
+	 * @return true if it is one of the shared executors delivering the events, which have a thread for every task
+	 */
+	static boolean isSharedEventsExecutor(final ExecutorService executor) {
+		return executor == SharedExecutors.EVENTS
+				|| VirtualThreads.isSupported() && executor == VirtualExecutors.EVENTS;
+	}
+
+	/**
+	 * @return the executor running the decode-ahead threads of the players
+	 */
+	static ExecutorService getDecoderExecutor() {
+		return SharedExecutors.DECODER;
+	}
+
+	/**
+	 * @param threadMode the kind of threads
+	 * @return the executor running the decode-ahead threads of the players
+	 * @throws UnsupportedOperationException for virtual threads where they aren't supported
+	 */
+	static ExecutorService getDecoderExecutor(final ThreadMode threadMode) {
+		if (threadMode == ThreadMode.PLATFORM)
+			return SharedExecutors.DECODER;
+		requireVirtualThreads();
+		return VirtualExecutors.DECODER;
+	}
+
+	/**
+	 * @return the executor running the blocking operations of the {@link AsyncStreamPlayer}s, such as an open
+	 */
+	static ExecutorService getControlExecutor() {
+		return SharedExecutors.CONTROL;
+	}
+
+	/**
+	 * @return the timer ending the operations of the {@link AsyncStreamPlayer}s which take too long
+	 */
+	static ScheduledExecutorService getTimer() {
+		return SharedExecutors.TIMER;
+	}
+
+	static void register(final StreamPlayer player) {
+		synchronized (players) {
+			players.add(player);
+		}
+	}
+
+	static void unregister(final StreamPlayer player) {
+		synchronized (players) {
+			players.remove(player);
+		}
+	}
+
+	/**
+	 * @return the players which are neither closed nor garbage collected
+	 */
+	public static List<StreamPlayer> getLivePlayers() {
+		synchronized (players) {
+			return new ArrayList<>(players);
+		}
+	}
+
+	/**
+	 * @return the number of threads of the shared executors, busy or idle
+	 */
+	public static int getThreadCount() {
+		return liveThreads.get();
+	}
+
+	/**
+	 * @return the number of lines held open by the live players
+	 */
+	public static int getOpenLineCount() {
+		int lines = 0;
+		for (final StreamPlayer player : getLivePlayers()) {
+			final SourceDataLine line = player.getSourceDataLine();
+			if (line != null && line.isOpen())
+				lines++;
+		}
+		return lines;
+	}
+}
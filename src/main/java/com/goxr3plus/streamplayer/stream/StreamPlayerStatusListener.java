@@ -0,0 +1,19 @@
+package com.goxr3plus.streamplayer.stream;
+
+import java.util.Map;
+
+/**
+ * A {@link StreamPlayerListener} which only receives the status events, such as a controller waiting for the end of
+ * the media. The progress isn't copied for it, so it costs the playback nothing between two status changes.
+ *
+ * @author GOXR3PLUS
+ */
+public interface StreamPlayerStatusListener extends StreamPlayerListener {
+
+	/**
+	 * Not called for StreamPlayerStatusListeners, they get no progress.
+	 */
+	@Override
+	default void progress(int nEncodedBytes, long microsecondPosition, byte[] pcmData, Map<String, Object> properties) {
+	}
+}
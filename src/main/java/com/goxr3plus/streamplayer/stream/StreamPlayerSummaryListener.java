@@ -0,0 +1,28 @@
+package com.goxr3plus.streamplayer.stream;
+
+import java.util.Map;
+
+/**
+ * A {@link StreamPlayerListener} which receives a {@link PcmSummary} of the audio a few times per second, rather
+ * than every buffer written to the line. It suits level meters and waveform views, which don't need the PCM data.
+ *
+ * @author GOXR3PLUS
+ */
+public interface StreamPlayerSummaryListener extends StreamPlayerListener {
+
+	/**
+	 * Is called at most at the rate of the subscription, see
+	 * {@link StreamPlayer#addStreamPlayerListener(StreamPlayerSummaryListener, double)}. When the listener falls
+	 * behind, the next summary covers the audio of the missed ones.
+	 *
+	 * @param summary the summary of the audio played since the previous call, only valid during this call
+	 */
+	void summary(PcmSummary summary);
+
+	/**
+	 * Not called for StreamPlayerSummaryListeners, see {@link #summary(PcmSummary)}.
+	 */
+	@Override
+	default void progress(int nEncodedBytes, long microsecondPosition, byte[] pcmData, Map<String, Object> properties) {
+	}
+}
@@ -0,0 +1,31 @@
+package com.goxr3plus.streamplayer.stream;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual threads. This version is for Java 8 to 20, which have none; the multi-release jar holds the
+ * version for Java 21 and later, built from {@code src/main/java21}.
+ *
+ * @author GOXR3PLUS
+ */
+final class VirtualThreads {
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * @return true if the running Java has virtual threads
+	 */
+	static boolean isSupported() {
+		return false;
+	}
+
+	/**
+	 * @param prefix the prefix of the thread names
+	 * @return a factory of virtual threads
+	 * @throws UnsupportedOperationException before Java 21
+	 */
+	static ThreadFactory newThreadFactory(final String prefix) {
+		throw new UnsupportedOperationException("Virtual threads need Java 21 or later");
+	}
+}
@@ -0,0 +1,30 @@
+package com.goxr3plus.streamplayer.stream;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual threads. This version is for Java 21 and later, in {@code META-INF/versions/21} of the
+ * multi-release jar.
+ *
+ * @author GOXR3PLUS
+ */
+final class VirtualThreads {
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * @return true if the running Java has virtual threads
+	 */
+	static boolean isSupported() {
+		return true;
+	}
+
+	/**
+	 * @param prefix the prefix of the thread names
+	 * @return a factory of virtual threads
+	 */
+	static ThreadFactory newThreadFactory(final String prefix) {
+		return Thread.ofVirtual().name(prefix + "-virtual-", 1).factory();
+	}
+}
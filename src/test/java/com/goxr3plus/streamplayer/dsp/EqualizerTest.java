@@ -0,0 +1,85 @@
+package com.goxr3plus.streamplayer.dsp;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EqualizerTest {
+
+    private static final float SAMPLE_RATE = 48000;
+    private static final int FRAMES = 480;
+
+    private Equalizer equalizer;
+
+    @BeforeEach
+    void setUp() {
+        equalizer = new Equalizer();
+        equalizer.configure(SAMPLE_RATE, 2);
+    }
+
+    @Test
+    void isFlatUntilABandIsChanged() {
+        assertTrue(equalizer.isFlat());
+        equalizer.setBandGain(3, 6);
+        assertFalse(equalizer.isFlat());
+    }
+
+    @Test
+    void boostsTheCenterFrequencyOfABand() {
+        equalizer.setBandGain(5, 12); // 1 kHz
+
+        final double gainAtCenter = measureGain(1000);
+        final double gainFarAway = measureGain(62.5);
+
+        assertEquals(12, gainAtCenter, 0.5);
+        assertEquals(0, gainFarAway, 0.5);
+    }
+
+    @Test
+    void cutsTheCenterFrequencyOfABand() {
+        equalizer.setBandGain(2, -12); // 125 Hz
+
+        assertEquals(-12, measureGain(125), 0.5);
+    }
+
+    @Test
+    void gainsAreClamped() {
+        equalizer.setBandGain(0, 100);
+        assertEquals(Equalizer.MAXIMUM_GAIN_DB, equalizer.getBandGain(0));
+    }
+
+    @Test
+    void becomesFlatAgainAfterFlatten() {
+        equalizer.setBandGain(5, 12);
+        measureGain(1000);
+        equalizer.flatten();
+        measureGain(1000);
+
+        assertTrue(equalizer.isFlat());
+    }
+
+    /**
+     * Play a stereo sine through the equalizer until the gain glide has settled, then measure the gain in dB.
+     */
+    private double measureGain(double frequency) {
+        final float[] block = new float[FRAMES * 2];
+        double inputPeak = 0;
+        double outputPeak = 0;
+        long frame = 0;
+        for (int b = 0; b < 100; b++) {
+            for (int i = 0; i < FRAMES; i++, frame++) {
+                final float x = (float) (0.1 * Math.sin(2 * Math.PI * frequency * frame / SAMPLE_RATE));
+                block[2 * i] = x;
+                block[2 * i + 1] = x;
+                if (b >= 80)
+                    inputPeak = Math.max(inputPeak, Math.abs(x));
+            }
+            equalizer.process(block, FRAMES, 2);
+            if (b >= 80)
+                for (float sample : block)
+                    outputPeak = Math.max(outputPeak, Math.abs(sample));
+        }
+        return 20 * Math.log10(outputPeak / inputPeak);
+    }
+}
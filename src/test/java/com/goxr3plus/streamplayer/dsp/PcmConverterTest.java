@@ -0,0 +1,78 @@
+package com.goxr3plus.streamplayer.dsp;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PcmConverterTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "8, false",
+            "16, false",
+            "16, true",
+            "24, false",
+            "24, true",
+            "32, false"
+    })
+    void signedSamplesSurviveARoundTrip(int bits, boolean bigEndian) {
+        final AudioFormat format = new AudioFormat(44100, bits, 2, true, bigEndian);
+        final PcmConverter converter = new PcmConverter(format);
+        final float[] samples = {0f, 0.5f, -0.5f, 0.25f, -1f, 0.75f};
+        final byte[] bytes = new byte[samples.length * bits / 8];
+
+        assertEquals(bytes.length, converter.toBytes(samples, samples.length, bytes));
+        final float[] back = new float[samples.length];
+        assertEquals(samples.length, converter.toFloat(bytes, bytes.length, back));
+
+        assertArrayEquals(samples, back, Math.max(1f / (1L << (bits - 1)), 1e-6f));
+    }
+
+    @Test
+    void littleEndian16BitIsDecoded() {
+        final PcmConverter converter = new PcmConverter(new AudioFormat(44100, 16, 1, true, false));
+        final float[] samples = new float[2];
+        converter.toFloat(new byte[]{0x00, 0x40, 0x00, (byte) 0xC0}, 4, samples);
+
+        assertEquals(0.5f, samples[0]);
+        assertEquals(-0.5f, samples[1]);
+    }
+
+    @Test
+    void aPartOfTheBytesIsDecoded() {
+        final PcmConverter converter = new PcmConverter(new AudioFormat(44100, 16, 1, true, false));
+        final float[] samples = new float[1];
+        converter.toFloat(new byte[]{0x00, 0x40, 0x00, (byte) 0xC0}, 2, 2, samples);
+
+        assertEquals(-0.5f, samples[0]);
+    }
+
+    @Test
+    void unsigned8BitIsCentered() {
+        final PcmConverter converter = new PcmConverter(new AudioFormat(8000, 8, 1, false, false));
+        final float[] samples = new float[1];
+        converter.toFloat(new byte[]{(byte) 128}, 1, samples);
+
+        assertEquals(0f, samples[0]);
+    }
+
+    @Test
+    void samplesOutOfRangeAreClipped() {
+        final PcmConverter converter = new PcmConverter(new AudioFormat(44100, 16, 1, true, false));
+        final byte[] bytes = new byte[4];
+        converter.toBytes(new float[]{2f, -2f}, 2, bytes);
+
+        assertArrayEquals(new byte[]{(byte) 0xFF, 0x7F, 0x00, (byte) 0x80}, bytes);
+    }
+
+    @Test
+    void compressedFormatsAreNotSupported() {
+        final AudioFormat ulaw = new AudioFormat(AudioFormat.Encoding.ULAW, 8000, 8, 1, 1, 8000, false);
+        assertFalse(PcmConverter.isSupported(ulaw));
+        assertThrows(IllegalArgumentException.class, () -> new PcmConverter(ulaw));
+    }
+}
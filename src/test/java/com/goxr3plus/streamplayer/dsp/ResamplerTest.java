@@ -0,0 +1,165 @@
+package com.goxr3plus.streamplayer.dsp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResamplerTest {
+
+    private static final float SAMPLE_RATE = 48000;
+    private static final int BLOCK_FRAMES = 1024;
+    private static final int BLOCKS = 40;
+
+    @Test
+    void rejectsRatiosOutsideOfTheRange() {
+        final Resampler resampler = new Resampler(2, BLOCK_FRAMES, 0.5, 2, Resampler.Quality.MEDIUM);
+        assertThrows(IllegalArgumentException.class, () -> resampler.setRatio(0.25));
+        assertThrows(IllegalArgumentException.class, () -> resampler.setRatio(3));
+        resampler.setRatio(2);
+        assertEquals(2, resampler.getRatio());
+    }
+
+    @Test
+    void isBypassedAtNormalSpeed() {
+        final Resampler resampler = new Resampler(1, BLOCK_FRAMES, 0.5, 2, Resampler.Quality.MEDIUM);
+        assertTrue(resampler.isBypassed());
+        resampler.setRatio(1.5);
+        assertFalse(resampler.isBypassed());
+    }
+
+    @Test
+    void outputLengthFollowsTheRatio() {
+        for (final Resampler.Quality quality : Resampler.Quality.values()) {
+            for (final double ratio : new double[] { 0.5, 0.8, 1.25, 2 }) {
+                final float[] output = resample(ratio, quality, 1000);
+                final double expected = BLOCKS * BLOCK_FRAMES / ratio;
+                assertEquals(expected, output.length, quality.getTaps() + 2, quality + " at " + ratio);
+            }
+        }
+    }
+
+    @Test
+    void scalesTheFrequency() {
+        for (final Resampler.Quality quality : Resampler.Quality.values()) {
+            assertEquals(2000, frequency(resample(2, quality, 1000)), 20, quality.name());
+            assertEquals(750, frequency(resample(0.75, quality, 1000)), 20, quality.name());
+        }
+    }
+
+    @Test
+    void keepsTheAmplitudeOfThePassband() {
+        final float[] output = resample(0.5, Resampler.Quality.HIGH, 1000);
+        float peak = 0;
+        // Skip the start, where the kernel fills up
+        for (int i = 1000; i < output.length; i++)
+            peak = Math.max(peak, Math.abs(output[i]));
+        assertEquals(0.5f, peak, 0.01f);
+    }
+
+    @Test
+    void attenuatesFrequenciesAboveTheNewNyquist() {
+        // 18 kHz played twice as fast would alias down to 12 kHz
+        final float[] output = resample(2, Resampler.Quality.HIGH, 18000);
+        float peak = 0;
+        for (int i = 1000; i < output.length; i++)
+            peak = Math.max(peak, Math.abs(output[i]));
+        assertTrue(peak < 0.05f, "Aliasing peak " + peak);
+    }
+
+    @Test
+    void linearQualityInterpolatesBetweenFrames() {
+        final Resampler resampler = new Resampler(1, 4, 0.5, 2, Resampler.Quality.LOW);
+        resampler.setRatio(0.5);
+        final float[] output = new float[resampler.getMaxOutputFrames(4)];
+
+        final int frames = resampler.process(new float[] { 0, 1, 2, 3 }, 4, output);
+
+        assertEquals(6, frames);
+        assertArrayEquals(new float[] { 0, 0.5f, 1, 1.5f, 2, 2.5f }, Arrays.copyOf(output, frames));
+    }
+
+    @Test
+    void staysContinuousAcrossBlocksAndRatioChanges() {
+        final Resampler resampler = new Resampler(1, BLOCK_FRAMES, 0.5, 2, Resampler.Quality.MEDIUM);
+        final float[] input = new float[BLOCK_FRAMES];
+        final float[] output = new float[resampler.getMaxOutputFrames(BLOCK_FRAMES)];
+        float previous = 0;
+        long frame = 0;
+        for (int block = 0; block < BLOCKS; block++) {
+            resampler.setRatio(block % 2 == 0 ? 0.9 : 1.1);
+            for (int i = 0; i < BLOCK_FRAMES; i++, frame++)
+                input[i] = (float) (0.5 * Math.sin(2 * Math.PI * 200 * frame / SAMPLE_RATE));
+            final int frames = resampler.process(input, BLOCK_FRAMES, output);
+            for (int i = 0; i < frames; i++) {
+                // A 200 Hz sine at 0.5 moves less than 0.02 per frame, a discontinuity would jump
+                if (block > 0 || i > 0)
+                    assertEquals(previous, output[i], 0.02f, "Block " + block + " frame " + i);
+                previous = output[i];
+            }
+        }
+    }
+
+    @Test
+    void skippingKeepsOnlyTheHistoryFrames() {
+        final Resampler whole = new Resampler(1, BLOCK_FRAMES, 0.5, 2, Resampler.Quality.HIGH);
+        final Resampler tail = new Resampler(1, BLOCK_FRAMES, 0.5, 2, Resampler.Quality.HIGH);
+        final float[] input = new float[BLOCK_FRAMES];
+        for (int i = 0; i < BLOCK_FRAMES; i++)
+            input[i] = (float) (0.5 * Math.sin(2 * Math.PI * 200 * i / SAMPLE_RATE));
+        final int history = tail.getHistoryFrames();
+
+        whole.skip(input, BLOCK_FRAMES);
+        tail.skip(Arrays.copyOfRange(input, BLOCK_FRAMES - history, BLOCK_FRAMES), history);
+
+        // Verify: both go on the same way once the ratio changes
+        whole.setRatio(1.25);
+        tail.setRatio(1.25);
+        final float[] expected = new float[whole.getMaxOutputFrames(BLOCK_FRAMES)];
+        final float[] output = new float[tail.getMaxOutputFrames(BLOCK_FRAMES)];
+        final int frames = whole.process(input, BLOCK_FRAMES, expected);
+        assertEquals(frames, tail.process(input, BLOCK_FRAMES, output));
+        assertArrayEquals(Arrays.copyOf(expected, frames), Arrays.copyOf(output, frames));
+    }
+
+    /**
+     * Resample a mono 0.5 amplitude sine.
+     */
+    private static float[] resample(final double ratio, final Resampler.Quality quality, final double frequency) {
+        final Resampler resampler = new Resampler(1, BLOCK_FRAMES, 0.5, 2, quality);
+        resampler.setRatio(ratio);
+        final float[] input = new float[BLOCK_FRAMES];
+        final float[] output = new float[resampler.getMaxOutputFrames(BLOCK_FRAMES)];
+        final float[] all = new float[(int) (BLOCKS * BLOCK_FRAMES / ratio) + 1000];
+        int total = 0;
+        long frame = 0;
+        for (int block = 0; block < BLOCKS; block++) {
+            for (int i = 0; i < BLOCK_FRAMES; i++, frame++)
+                input[i] = (float) (0.5 * Math.sin(2 * Math.PI * frequency * frame / SAMPLE_RATE));
+            final int frames = resampler.process(input, BLOCK_FRAMES, output);
+            System.arraycopy(output, 0, all, total, frames);
+            total += frames;
+        }
+        return Arrays.copyOf(all, total);
+    }
+
+    /**
+     * Estimate the frequency of a sine from its rising zero crossings, at {@link #SAMPLE_RATE}.
+     */
+    private static double frequency(final float[] samples) {
+        int first = -1;
+        int last = -1;
+        int crossings = 0;
+        for (int i = 1000; i < samples.length; i++) {
+            if (samples[i - 1] < 0 && samples[i] >= 0) {
+                if (first < 0)
+                    first = i;
+                else
+                    crossings++;
+                last = i;
+            }
+        }
+        return crossings * SAMPLE_RATE / (last - first);
+    }
+}
@@ -0,0 +1,140 @@
+package com.goxr3plus.streamplayer.dsp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeStretcherTest {
+
+    private static final float SAMPLE_RATE = 48000;
+    private static final int BLOCK_FRAMES = 1024;
+    private static final int BLOCKS = 100;
+
+    @Test
+    void rejectsRatiosOutsideOfTheRange() {
+        final TimeStretcher stretcher = new TimeStretcher(2, SAMPLE_RATE, BLOCK_FRAMES, 0.5, 3, TimeStretcher.Quality.MEDIUM);
+        assertThrows(IllegalArgumentException.class, () -> stretcher.setRatio(0.25));
+        assertThrows(IllegalArgumentException.class, () -> stretcher.setRatio(4));
+        stretcher.setRatio(3);
+        assertEquals(3, stretcher.getRatio());
+        assertFalse(stretcher.isBypassed());
+    }
+
+    @Test
+    void outputLengthFollowsTheRatio() {
+        for (final TimeStretcher.Quality quality : TimeStretcher.Quality.values()) {
+            for (final double ratio : new double[] { 0.5, 0.8, 1.5, 3 }) {
+                final float[] output = stretch(ratio, quality, 440);
+                final double expected = BLOCKS * BLOCK_FRAMES / ratio;
+                // Up to a segment and a seek range stay buffered
+                final double latency = SAMPLE_RATE * (quality.getWindowMillis() + 2 * quality.getSeekMillis()) / 1000 / ratio;
+                assertTrue(output.length <= expected && output.length >= expected - latency,
+                    quality + " at " + ratio + ": " + output.length + " frames instead of " + expected);
+            }
+        }
+    }
+
+    @Test
+    void keepsThePitch() {
+        for (final TimeStretcher.Quality quality : TimeStretcher.Quality.values()) {
+            for (final double ratio : new double[] { 0.5, 2, 3 })
+                assertEquals(440, frequency(stretch(ratio, quality, 440)), 5, quality + " at " + ratio);
+        }
+    }
+
+    @Test
+    void keepsTheLevel() {
+        for (final TimeStretcher.Quality quality : TimeStretcher.Quality.values()) {
+            for (final double ratio : new double[] { 0.5, 1.5 }) {
+                final float[] output = stretch(ratio, quality, 440);
+                double energy = 0;
+                for (int i = 2000; i < output.length; i++)
+                    energy += output[i] * output[i];
+                final double rms = Math.sqrt(energy / (output.length - 2000));
+                // A 0.5 sine has a RMS of 0.354, segments that don't line up would cancel out
+                assertEquals(0.354, rms, 0.03, quality + " at " + ratio);
+            }
+        }
+    }
+
+    @Test
+    void startsRightAfterTheSkippedAudio() {
+        final TimeStretcher stretcher = new TimeStretcher(1, SAMPLE_RATE, BLOCK_FRAMES, 0.5, 3, TimeStretcher.Quality.LOW);
+        final float[] ramp = new float[BLOCK_FRAMES];
+        for (int i = 0; i < BLOCK_FRAMES; i++)
+            ramp[i] = i;
+        stretcher.skip(ramp, BLOCK_FRAMES);
+
+        stretcher.setRatio(1.5);
+        final float[] output = new float[stretcher.getMaxOutputFrames(BLOCK_FRAMES)];
+        int frames = 0;
+        // The first segment needs more than one block
+        for (int block = 1; frames == 0 && block < 4; block++) {
+            for (int i = 0; i < BLOCK_FRAMES; i++)
+                ramp[i] = block * BLOCK_FRAMES + i;
+            frames = stretcher.process(ramp, BLOCK_FRAMES, output);
+        }
+
+        assertTrue(frames > 0);
+        assertEquals(BLOCK_FRAMES, output[0]);
+        assertEquals(BLOCK_FRAMES + 1, output[1]);
+    }
+
+    @Test
+    void doesNotAllocateWhileProcessing() {
+        final TimeStretcher stretcher = new TimeStretcher(2, SAMPLE_RATE, BLOCK_FRAMES, 0.5, 3, TimeStretcher.Quality.HIGH);
+        stretcher.setRatio(1.25);
+        final float[] input = new float[BLOCK_FRAMES * 2];
+        final float[] output = new float[stretcher.getMaxOutputFrames(BLOCK_FRAMES) * 2];
+        // Changing the quality re-lays the buffers out, it must fit the preallocated arrays
+        for (int block = 0; block < BLOCKS; block++) {
+            if (block % 10 == 0)
+                stretcher.setQuality(TimeStretcher.Quality.values()[block / 10 % 3]);
+            stretcher.setRatio(block % 2 == 0 ? 0.5 : 3);
+            Arrays.fill(input, block % 7 / 7f);
+            stretcher.process(input, BLOCK_FRAMES, output);
+        }
+    }
+
+    /**
+     * Stretch a mono 0.5 amplitude sine.
+     */
+    private static float[] stretch(final double ratio, final TimeStretcher.Quality quality, final double frequency) {
+        final TimeStretcher stretcher = new TimeStretcher(1, SAMPLE_RATE, BLOCK_FRAMES, 0.5, 3, quality);
+        stretcher.setRatio(ratio);
+        final float[] input = new float[BLOCK_FRAMES];
+        final float[] output = new float[stretcher.getMaxOutputFrames(BLOCK_FRAMES)];
+        final float[] all = new float[(int) (BLOCKS * BLOCK_FRAMES / ratio) + output.length];
+        int total = 0;
+        long frame = 0;
+        for (int block = 0; block < BLOCKS; block++) {
+            for (int i = 0; i < BLOCK_FRAMES; i++, frame++)
+                input[i] = (float) (0.5 * Math.sin(2 * Math.PI * frequency * frame / SAMPLE_RATE));
+            final int frames = stretcher.process(input, BLOCK_FRAMES, output);
+            System.arraycopy(output, 0, all, total, frames);
+            total += frames;
+        }
+        return Arrays.copyOf(all, total);
+    }
+
+    /**
+     * Estimate the frequency of a sine from its rising zero crossings, at {@link #SAMPLE_RATE}.
+     */
+    private static double frequency(final float[] samples) {
+        int first = -1;
+        int last = -1;
+        int crossings = 0;
+        for (int i = 2000; i < samples.length; i++) {
+            if (samples[i - 1] < 0 && samples[i] >= 0) {
+                if (first < 0)
+                    first = i;
+                else
+                    crossings++;
+                last = i;
+            }
+        }
+        return crossings * SAMPLE_RATE / (last - first);
+    }
+}
@@ -0,0 +1,92 @@
+package com.goxr3plus.streamplayer.dsp;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VolumeProcessorTest {
+
+    private VolumeProcessor volume;
+
+    @BeforeEach
+    void setUp() {
+        volume = new VolumeProcessor();
+        volume.configure(44100, 2);
+    }
+
+    @Test
+    void isNeutralByDefault() {
+        assertTrue(volume.isNeutral());
+        assertEquals(0f, volume.getGainDb());
+    }
+
+    @Test
+    void gainRampsOverOneBufferAndThenHolds() {
+        volume.setGain(0.5f);
+        final float[] first = ones(100);
+        volume.process(first, 50, 2);
+        assertTrue(first[0] > 0.5f && first[0] < 1f, "The gain must ramp, not jump");
+        assertEquals(0.5f, first[98], 1e-5);
+
+        final float[] second = ones(100);
+        volume.process(second, 50, 2);
+        assertEquals(0.5f, second[0], 1e-5);
+        assertFalse(volume.isNeutral());
+    }
+
+    @Test
+    void balanceAttenuatesTheOtherChannel() {
+        volume.setBalance(1f);
+        volume.process(ones(100), 50, 2);
+
+        final float[] samples = ones(100);
+        volume.process(samples, 50, 2);
+        assertEquals(0f, samples[0], 1e-6);
+        assertEquals(1f, samples[1], 1e-6);
+    }
+
+    @Test
+    void muteSilencesWithoutChangingTheGain() {
+        volume.setGain(0.8f);
+        volume.setMute(true);
+        volume.process(ones(100), 50, 2);
+
+        final float[] samples = ones(100);
+        volume.process(samples, 50, 2);
+        assertEquals(0f, samples[10]);
+        assertEquals(0.8f, volume.getGain());
+    }
+
+    @Test
+    void chainRunsProcessorsInOrder() {
+        final AudioProcessorChain chain = new AudioProcessorChain();
+        final AudioProcessor addOne = (samples, frames, channels) -> {
+            for (int i = 0; i < frames * channels; i++)
+                samples[i] += 1;
+        };
+        final AudioProcessor twice = (samples, frames, channels) -> {
+            for (int i = 0; i < frames * channels; i++)
+                samples[i] *= 2;
+        };
+        chain.add(addOne);
+        chain.add(twice);
+
+        final float[] samples = new float[4];
+        chain.process(samples, 2, 2);
+        assertArrayEquals(new float[]{2, 2, 2, 2}, samples);
+
+        assertTrue(chain.remove(addOne));
+        assertFalse(chain.remove(addOne));
+        chain.process(samples, 2, 2);
+        assertArrayEquals(new float[]{4, 4, 4, 4}, samples);
+    }
+
+    private static float[] ones(int length) {
+        final float[] samples = new float[length];
+        Arrays.fill(samples, 1f);
+        return samples;
+    }
+}
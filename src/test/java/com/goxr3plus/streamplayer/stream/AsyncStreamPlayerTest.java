@@ -0,0 +1,145 @@
+package com.goxr3plus.streamplayer.stream;
+
+import com.goxr3plus.streamplayer.enums.Status;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.SourceDataLine;
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class AsyncStreamPlayerTest {
+
+    private final StreamPlayerInterface player = mock(StreamPlayerInterface.class);
+    private final AsyncStreamPlayer async = new AsyncStreamPlayer(player);
+    private final CountDownLatch openReleased = new CountDownLatch(1);
+
+    @BeforeEach
+    void stubTheStop() {
+        when(player.submitStop()).thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    private void blockTheOpen() throws StreamPlayerException {
+        doAnswer(invocation -> openReleased.await(5, TimeUnit.SECONDS)).when(player).open(any(File.class));
+    }
+
+    @Test
+    void operationsRunInOrderWithoutBlockingTheCaller() throws Exception {
+        blockTheOpen();
+
+        // Execute
+        final CompletableFuture<Void> opened = async.openAsync(new File("file"));
+        final CompletableFuture<Void> played = async.playAsync();
+
+        // Verify: the play waits for the open, which waits on another thread
+        assertFalse(opened.isDone());
+        assertFalse(played.isDone());
+        openReleased.countDown();
+        played.get(5, TimeUnit.SECONDS);
+        assertTrue(opened.isDone());
+        final InOrder inOrder = inOrder(player);
+        inOrder.verify(player).open(any(File.class));
+        inOrder.verify(player).play();
+    }
+
+    @Test
+    void aCancelledOperationIsSkipped() throws Exception {
+        blockTheOpen();
+        async.openAsync(new File("file"));
+        final CompletableFuture<Void> played = async.playAsync();
+        final CompletableFuture<Void> stopped = async.stopAsync();
+
+        // Execute
+        played.cancel(false);
+        openReleased.countDown();
+
+        // Verify
+        stopped.get(5, TimeUnit.SECONDS);
+        verify(player, never()).play();
+    }
+
+    @Test
+    void anOperationWhichTakesTooLongTimesOut() throws Exception {
+        blockTheOpen();
+        async.openAsync(new File("file"));
+
+        // Execute
+        final CompletableFuture<Void> played = async.playAsync(Duration.ofMillis(20));
+
+        // Verify: the play is skipped once the open is done
+        final ExecutionException ex = assertThrows(ExecutionException.class, () -> played.get(5, TimeUnit.SECONDS));
+        assertTrue(ex.getCause() instanceof TimeoutException);
+        openReleased.countDown();
+        async.stopAsync(Duration.ofSeconds(5)).get(5, TimeUnit.SECONDS);
+        verify(player, never()).play();
+    }
+
+    @Test
+    void aFailureDoesntStopTheNextOperations() throws Exception {
+        doThrow(new StreamPlayerException(new IOException("Unreadable"))).when(player).open(any(File.class));
+        when(player.submitSeek(any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        // Execute
+        final CompletableFuture<Void> opened = async.openAsync(new File("file"));
+        final CompletableFuture<SeekReport> seeked = async.seekAsync(Duration.ofSeconds(1));
+
+        // Verify
+        final ExecutionException ex = assertThrows(ExecutionException.class, () -> opened.get(5, TimeUnit.SECONDS));
+        assertTrue(ex.getCause() instanceof StreamPlayerException);
+        assertNull(seeked.get(5, TimeUnit.SECONDS));
+        verify(player).submitSeek(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void statusEventsCompleteTheFuturesWaitingForThem() throws Exception {
+        final ArgumentCaptor<StreamPlayerListener> listener = ArgumentCaptor.forClass(StreamPlayerListener.class);
+        verify(player).addStreamPlayerListener(listener.capture());
+        // The bus copies no progress for it
+        assertTrue(listener.getValue() instanceof StreamPlayerStatusListener);
+        final CompletableFuture<StreamPlayerEvent> endOfMedia = async.statusAsync(Status.EOM);
+
+        listener.getValue().statusUpdated(new StreamPlayerEvent(null, Status.PLAYING, 0, null));
+        assertFalse(endOfMedia.isDone());
+        listener.getValue().statusUpdated(new StreamPlayerEvent(null, Status.EOM, 0, null));
+
+        assertEquals(Status.EOM, endOfMedia.get(1, TimeUnit.SECONDS).getPlayerStatus());
+    }
+
+    @Test
+    void aPlayerPlaysToTheEndAsynchronously() throws Exception {
+        assumeTrue(hasSourceLines(), "No audio output");
+        final StreamPlayer streamPlayer = new StreamPlayer(mock(Logger.class));
+        final AsyncStreamPlayer asyncPlayer = new AsyncStreamPlayer(streamPlayer);
+        final CompletableFuture<StreamPlayerEvent> endOfMedia = asyncPlayer.statusAsync(Status.EOM);
+
+        // Execute
+        asyncPlayer.openAsync(new File("kick.mp3"));
+        asyncPlayer.playAsync().get(5, TimeUnit.SECONDS);
+
+        // Verify
+        assertNotNull(endOfMedia.get(5, TimeUnit.SECONDS));
+        asyncPlayer.stopAsync().get(5, TimeUnit.SECONDS);
+        assertNull(streamPlayer.getSourceDataLine());
+        streamPlayer.close();
+    }
+
+    private static boolean hasSourceLines() {
+        return AudioSystem.getSourceLineInfo(new Line.Info(SourceDataLine.class)).length > 0;
+    }
+}
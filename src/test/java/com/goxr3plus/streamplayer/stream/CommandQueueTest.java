@@ -0,0 +1,129 @@
+package com.goxr3plus.streamplayer.stream;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandQueueTest {
+
+    private final CommandQueue queue = new CommandQueue();
+
+    @Test
+    void commandsAreAppliedInOrderWhenDrained() {
+        final List<Integer> applied = new ArrayList<>();
+        final CompletableFuture<Void> first = queue.add(CommandQueue.of(() -> applied.add(1)));
+        final CompletableFuture<Void> second = queue.add(CommandQueue.of(() -> applied.add(2)));
+
+        assertFalse(first.isDone());
+        assertEquals(2, queue.drain(false));
+
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+        assertEquals(2, applied.size());
+        assertEquals(1, (int) applied.get(0));
+        assertTrue(queue.isEmpty());
+        assertEquals(2, queue.getAppliedCount());
+    }
+
+    @Test
+    void aFailingCommandDoesntStopTheOthers() {
+        final CompletableFuture<Void> failing = queue.add(CommandQueue.of(() -> {
+            throw new IllegalStateException("Broken");
+        }));
+        final CompletableFuture<Void> other = queue.add(CommandQueue.of(() -> {
+        }));
+
+        queue.drain(false);
+
+        final ExecutionException ex = assertThrows(ExecutionException.class, failing::get);
+        assertTrue(ex.getCause() instanceof IllegalStateException);
+        assertTrue(other.isDone());
+    }
+
+    @Test
+    void idleCommandsTakeTheirOwnPath() {
+        final CommandQueue.Command<String> command = new CommandQueue.Command<String>() {
+            @Override
+            void apply() {
+                result.complete("playing");
+            }
+
+            @Override
+            void applyIdle() {
+                result.complete("idle");
+            }
+        };
+
+        queue.add(command);
+        queue.drain(true);
+
+        assertEquals("idle", command.result.join());
+    }
+
+    @Test
+    void aWithdrawnCommandIsNotApplied() {
+        final CommandQueue.Command<Void> command = CommandQueue.of(() -> fail("Applied"));
+        queue.add(command);
+
+        assertTrue(queue.withdraw(command));
+        assertEquals(0, queue.drain(false));
+        assertFalse(queue.withdraw(command));
+    }
+
+    @Test
+    void theLatencyIsMeasured() throws InterruptedException {
+        queue.add(CommandQueue.of(() -> {
+        }));
+        Thread.sleep(20);
+
+        queue.drain(false);
+
+        assertTrue(queue.getMaximumLatencyNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(queue.getMaximumLatencyNanos(), queue.getAverageLatencyNanos());
+    }
+
+    @Test
+    void manyProducersOneConsumer() throws Exception {
+        final int producers = 4;
+        final int perProducer = 10_000;
+        final int[] lastSeen = new int[producers];
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<CompletableFuture<Void>> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads.add(CompletableFuture.runAsync(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    throw new IllegalStateException(ex);
+                }
+                for (int i = 1; i <= perProducer; i++) {
+                    final int sequence = i;
+                    // Only the consumer touches lastSeen
+                    queue.add(CommandQueue.of(() -> {
+                        assertEquals(lastSeen[producer] + 1, sequence);
+                        lastSeen[producer] = sequence;
+                    }));
+                }
+            }));
+        }
+
+        start.countDown();
+        long drained = 0;
+        while (drained < (long) producers * perProducer)
+            drained += queue.drain(false);
+        for (CompletableFuture<Void> thread : threads)
+            thread.get(5, TimeUnit.SECONDS);
+
+        // Every command is applied once, in the order of its producer
+        for (int last : lastSeen)
+            assertEquals(perProducer, last);
+    }
+}
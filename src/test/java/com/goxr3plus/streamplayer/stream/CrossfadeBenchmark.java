@@ -0,0 +1,94 @@
+package com.goxr3plus.streamplayer.stream;
+
+import com.goxr3plus.streamplayer.dsp.PcmConverter;
+import com.goxr3plus.streamplayer.enums.CrossfadeCurve;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the playback thread during the overlap of a crossfade, on 44.1 kHz 16 bits stereo audio.
+ * <p>
+ * Every operation converts 10 ms of the current track to samples and back, as the software processing does, and
+ * {@link #crossfadeBlock()} mixes as much of the previous track in. The difference between both is the cost of the
+ * crossfade, an average time of 100 us/op meaning 1% of a core. The previous track is refilled every
+ * {@value #FADE_BLOCKS} operations, when its crossfade ends. Run with {@code main}, from the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CrossfadeBenchmark {
+
+    private static final AudioFormat FORMAT = new AudioFormat(44100, 16, 2, true, false);
+    private static final int FRAMES = 441;
+    private static final int BLOCK_BYTES = FRAMES * 4;
+    private static final int FADE_BLOCKS = 256;
+
+    @Param({"EQUAL_POWER", "SQUARE_ROOT", "LINEAR"})
+    public CrossfadeCurve curve;
+
+    private final PcmConverter converter = new PcmConverter(FORMAT);
+    private final Crossfade crossfade = new Crossfade(converter, 4096);
+    private final PcmRingBuffer outgoing = new PcmRingBuffer(FADE_BLOCKS, 4096);
+    private final byte[] incoming = new byte[BLOCK_BYTES];
+    private final byte[] noise = new byte[BLOCK_BYTES];
+    private final float[] samples = new float[FRAMES * 2];
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(1);
+        random.nextBytes(incoming);
+        random.nextBytes(noise);
+    }
+
+    /**
+     * The current track alone, as after the crossfade.
+     */
+    @Benchmark
+    public byte plainBlock() {
+        converter.toFloat(incoming, BLOCK_BYTES, samples);
+        converter.toBytes(samples, FRAMES * 2, incoming);
+        return incoming[0];
+    }
+
+    /**
+     * The current track with the previous one mixed in.
+     */
+    @Benchmark
+    public byte crossfadeBlock() {
+        if (!crossfade.isActive()) {
+            byte[] block;
+            while ((block = outgoing.claim()) != null) {
+                System.arraycopy(noise, 0, block, 0, BLOCK_BYTES);
+                outgoing.publish(BLOCK_BYTES, 0);
+            }
+            crossfade.start(outgoing, curve);
+        }
+        converter.toFloat(incoming, BLOCK_BYTES, samples);
+        crossfade.mix(samples, FRAMES);
+        converter.toBytes(samples, FRAMES * 2, incoming);
+        return incoming[0];
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CrossfadeBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,138 @@
+package com.goxr3plus.streamplayer.stream;
+
+import com.goxr3plus.streamplayer.dsp.PcmConverter;
+import com.goxr3plus.streamplayer.enums.CrossfadeCurve;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class CrossfadeTest {
+
+    private static final AudioFormat FORMAT = new AudioFormat(44100, 16, 2, true, false);
+    private static final int FRAMES = 1024;
+
+    private final Crossfade crossfade = new Crossfade(new PcmConverter(FORMAT), 4096);
+    private final float[] samples = new float[FRAMES * 2];
+
+    @Test
+    void theCurvesKeepTheirLevel() {
+        for (int i = 0; i <= 100; i++) {
+            final double t = i / 100.0;
+            final double in = CrossfadeCurve.EQUAL_POWER.fadeIn(t);
+            final double out = CrossfadeCurve.EQUAL_POWER.fadeOut(t);
+            assertEquals(1, in * in + out * out, 1e-9);
+            final double rootIn = CrossfadeCurve.SQUARE_ROOT.fadeIn(t);
+            final double rootOut = CrossfadeCurve.SQUARE_ROOT.fadeOut(t);
+            assertEquals(1, rootIn * rootIn + rootOut * rootOut, 1e-9);
+            assertEquals(1, CrossfadeCurve.LINEAR.fadeIn(t) + CrossfadeCurve.LINEAR.fadeOut(t), 1e-9);
+        }
+        for (final CrossfadeCurve curve : CrossfadeCurve.values()) {
+            assertEquals(0, curve.fadeIn(0), 1e-9);
+            assertEquals(1, curve.fadeIn(1), 1e-9);
+        }
+    }
+
+    @Test
+    void aLinearCrossfadeOfTheSameSignalKeepsItsLevel() {
+        final PcmRingBuffer ring = new PcmRingBuffer(4, 4096);
+        publish(ring, 4096, 8192);
+        publish(ring, 4096, 8192);
+        publish(ring, 1000, 8192);
+        ring.markEndOfStream();
+
+        // Execute
+        crossfade.start(ring, CrossfadeCurve.LINEAR);
+
+        // Verify: the ring holds (2 * 4096 + 1000) / 4 frames, the last block of the mix ends with the crossfade
+        assertEquals(2298, crossfade.getFadeFrames());
+        for (int block = 0; block < 3; block++) {
+            assertTrue(crossfade.isActive());
+            Arrays.fill(samples, 0.25f);
+            crossfade.mix(samples, FRAMES);
+            for (final float sample : samples)
+                assertEquals(0.25f, sample, 1e-4f);
+        }
+        assertFalse(crossfade.isActive());
+        assertTrue(ring.isDrained());
+    }
+
+    @Test
+    void theIncomingTrackFollowsTheCurve() {
+        final PcmRingBuffer ring = new PcmRingBuffer(4, 4096);
+        publish(ring, 4096, 0);
+        crossfade.start(ring, CrossfadeCurve.EQUAL_POWER);
+
+        // Execute
+        Arrays.fill(samples, 1f);
+        crossfade.mix(samples, FRAMES);
+
+        // Verify: the previous track is silent, what is left is the gain of the current one
+        for (int frame = 0; frame < FRAMES; frame++) {
+            final double expected = Math.sin((double) frame / FRAMES * Math.PI / 2);
+            assertEquals(expected, samples[frame * 2], 1e-4);
+            assertEquals(expected, samples[frame * 2 + 1], 1e-4);
+        }
+        assertFalse(crossfade.isActive());
+    }
+
+    @Test
+    void cancellingDropsThePreviousTrack() {
+        final PcmRingBuffer ring = new PcmRingBuffer(4, 4096);
+        publish(ring, 4096, 8192);
+        crossfade.start(ring, CrossfadeCurve.LINEAR);
+
+        crossfade.cancel();
+        Arrays.fill(samples, 0.5f);
+        crossfade.mix(samples, FRAMES);
+
+        assertFalse(crossfade.isActive());
+        for (final float sample : samples)
+            assertEquals(0.5f, sample);
+    }
+
+    @Test
+    void mixingDoesNotAllocate() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+        final PcmRingBuffer ring = new PcmRingBuffer(64, 4096);
+
+        // Warm up, so that the measured iterations run compiled code
+        fade(ring, 2000);
+        final long before = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        fade(ring, 2000);
+        final long allocated = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+        assertTrue(allocated < 1024, "The crossfade allocated " + allocated + " bytes");
+    }
+
+    private void fade(final PcmRingBuffer ring, final int blocks) {
+        for (int i = 0; i < blocks; i++) {
+            if (!crossfade.isActive()) {
+                while (ring.claim() != null)
+                    ring.publish(4096, 0);
+                crossfade.start(ring, CrossfadeCurve.values()[i % 3]);
+            }
+            crossfade.mix(samples, FRAMES);
+        }
+    }
+
+    /**
+     * Publish a block of 16 bits stereo frames, whose samples all have the same value.
+     */
+    private static void publish(final PcmRingBuffer ring, final int length, final int value) {
+        final byte[] block = ring.claim();
+        for (int i = 0; i < length; i += 2) {
+            block[i] = (byte) value;
+            block[i + 1] = (byte) (value >> 8);
+        }
+        ring.publish(length, 0);
+    }
+}
@@ -0,0 +1,157 @@
+package com.goxr3plus.streamplayer.stream;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Control;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineListener;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * A SourceDataLine which accepts everything and plays nothing, for tests which can't rely on a sound card.
+ * It doesn't allocate when written to.
+ */
+class FakeSourceDataLine implements SourceDataLine {
+
+    private final int bufferSize;
+    private AudioFormat format;
+    private boolean open;
+    private boolean running;
+    private long bytesWritten;
+
+    FakeSourceDataLine(AudioFormat format, int bufferSize) {
+        this.format = format;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * @return the total number of bytes written since the line was created
+     */
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public void open(AudioFormat format, int bufferSize) {
+        this.format = format;
+        open = true;
+    }
+
+    @Override
+    public void open(AudioFormat format) {
+        open(format, bufferSize);
+    }
+
+    @Override
+    public void open() {
+        open = true;
+    }
+
+    @Override
+    public int write(byte[] b, int off, int len) {
+        bytesWritten += len;
+        return len;
+    }
+
+    @Override
+    public void drain() {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public boolean isActive() {
+        return running;
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    @Override
+    public int available() {
+        return bufferSize;
+    }
+
+    @Override
+    public int getFramePosition() {
+        return (int) getLongFramePosition();
+    }
+
+    @Override
+    public long getLongFramePosition() {
+        return bytesWritten / format.getFrameSize();
+    }
+
+    @Override
+    public long getMicrosecondPosition() {
+        return (long) (getLongFramePosition() * 1_000_000L / format.getFrameRate());
+    }
+
+    @Override
+    public float getLevel() {
+        return AudioSystem.NOT_SPECIFIED;
+    }
+
+    @Override
+    public DataLine.Info getLineInfo() {
+        return new DataLine.Info(SourceDataLine.class, format, bufferSize);
+    }
+
+    @Override
+    public void close() {
+        open = false;
+        running = false;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public Control[] getControls() {
+        return new Control[0];
+    }
+
+    @Override
+    public boolean isControlSupported(Control.Type control) {
+        return false;
+    }
+
+    @Override
+    public Control getControl(Control.Type control) {
+        throw new IllegalArgumentException("Unsupported control type: " + control);
+    }
+
+    @Override
+    public void addLineListener(LineListener listener) {
+    }
+
+    @Override
+    public void removeLineListener(LineListener listener) {
+    }
+}
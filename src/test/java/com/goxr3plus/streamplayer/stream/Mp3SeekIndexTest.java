@@ -0,0 +1,142 @@
+package com.goxr3plus.streamplayer.stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Mp3SeekIndexTest {
+
+    /** Offset of the first frame after the Xing frame of kick.mp3 */
+    private static final int KICK_AUDIO_START = 227;
+
+    private File repeated;
+
+    @AfterEach
+    void tearDown() {
+        if (repeated != null)
+            assertTrue(repeated.delete());
+    }
+
+    @Test
+    void scanCountsEveryFrame() throws Exception {
+        final Mp3SeekIndex index = Mp3SeekIndex.build(new File("kick.mp3"), true);
+
+        assertTrue(index.isExact());
+        assertEquals(7, index.getFrameCount());
+        assertEquals(1152, index.getSamplesPerFrame());
+        assertEquals(7 * 1152, index.getSampleCount());
+    }
+
+    @Test
+    void findsTheFrameContainingAnOffset() throws Exception {
+        final File file = repeatKick(20);
+        final Mp3SeekIndex index = Mp3SeekIndex.build(file, true);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            assertEquals(0, index.getFrameAt(channel, 0));
+            assertEquals(index.getFrameCount() - 1, index.getFrameAt(channel, file.length() - 1));
+            long previous = 0;
+            for (long offset = 0; offset < file.length(); offset += 500) {
+                final long frame = index.getFrameAt(channel, offset);
+                assertTrue(frame >= previous, "Frame " + frame + " at " + offset);
+                previous = frame;
+            }
+        }
+    }
+
+    @Test
+    void seekingDecodesTheSameAudioAsAFullDecode() throws Exception {
+        final File file = repeatKick(40);
+        final Mp3SeekIndex index = Mp3SeekIndex.build(file, true);
+        final int frameSize = 2 * channels(file);
+        final byte[] full = decode(new FileInputStream(file));
+        final long count = index.getFrameCount();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            for (final long target : new long[] { 0, 1, 3, 17, 100, count / 2, count - 3 }) {
+                final Mp3SeekIndex.Position position = index.locate(channel, target);
+                assertTrue(position.getFrame() <= target);
+                assertTrue(target - position.getFrame() <= Mp3SeekIndex.MAX_PREROLL_FRAMES);
+
+                final InputStream stream = new FileInputStream(file);
+                assertEquals(position.getOffset(), stream.skip(position.getOffset()));
+                final byte[] part = decode(stream);
+
+                final int skipped = (int) (position.getSkippedFrames() * index.getSamplesPerFrame() * frameSize);
+                final int at = (int) (target * index.getSamplesPerFrame() * frameSize);
+                assertEquals(full.length - at, part.length - skipped, "Length after frame " + target);
+                for (int i = 0; i < full.length - at; i++)
+                    if (full[at + i] != part[skipped + i])
+                        fail("Frame " + target + " differs at byte " + i);
+            }
+        }
+    }
+
+    @Test
+    void tableOfContentsIsApproximate() throws Exception {
+        final Mp3SeekIndex index = Mp3SeekIndex.build(new File("kick.mp3"), false);
+
+        assertFalse(index.isExact());
+        assertEquals(1152, index.getSamplesPerFrame());
+    }
+
+    @Test
+    void readsTheDelayAndPaddingOfTheEncoder() throws Exception {
+        for (final boolean exact : new boolean[] { true, false }) {
+            final Mp3SeekIndex index = Mp3SeekIndex.build(new File("kick.mp3"), exact);
+
+            assertTrue(index.isGapless());
+            assertEquals(576, index.getEncoderDelay());
+            assertEquals(1648, index.getEncoderPadding());
+            // kick.wav, the source of kick.mp3, holds 4688 frames
+            assertEquals(1152 + 576 + Mp3SeekIndex.DECODER_DELAY, index.getGaplessStart());
+            assertEquals(4688, index.getGaplessEnd() - index.getGaplessStart());
+        }
+    }
+
+    /**
+     * Write kick.mp3 followed by its audio frames repeated, a long file made of valid frames.
+     */
+    private File repeatKick(final int times) throws Exception {
+        final byte[] kick = Files.readAllBytes(new File("kick.mp3").toPath());
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(kick);
+        for (int i = 0; i < times; i++)
+            out.write(kick, KICK_AUDIO_START, kick.length - KICK_AUDIO_START);
+        repeated = File.createTempFile("repeated", ".mp3");
+        Files.write(repeated.toPath(), out.toByteArray());
+        return repeated;
+    }
+
+    private static int channels(final File file) throws Exception {
+        return AudioSystem.getAudioFileFormat(file).getFormat().getChannels();
+    }
+
+    private static byte[] decode(final InputStream stream) throws Exception {
+        try (AudioInputStream encoded = AudioSystem.getAudioInputStream(new BufferedInputStream(stream))) {
+            final AudioFormat format = encoded.getFormat();
+            final AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, format.getSampleRate(), 16,
+                    format.getChannels(), format.getChannels() * 2, format.getSampleRate(), false);
+            final AudioInputStream decoded = AudioSystem.getAudioInputStream(pcm, encoded);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int read;
+            // The decoder returns 0 for frames without output, only -1 is the end
+            while ((read = decoded.read(buffer)) != -1)
+                out.write(buffer, 0, read);
+            return out.toByteArray();
+        }
+    }
+}
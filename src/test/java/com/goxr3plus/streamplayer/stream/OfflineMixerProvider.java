@@ -0,0 +1,157 @@
+package com.goxr3plus.streamplayer.stream;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Control;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.LineListener;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.spi.MixerProvider;
+
+/**
+ * Installs a mixer of {@link OfflineSourceDataLine}s in the tests, through
+ * {@code META-INF/services/javax.sound.sampled.spi.MixerProvider}, so that players can open lines without a sound
+ * card. It gives any number of lines for 8 and 16 bit PCM.
+ */
+public class OfflineMixerProvider extends MixerProvider {
+
+    static final String MIXER_NAME = "StreamPlayer Offline Mixer";
+
+    private static final Mixer.Info INFO = new Mixer.Info(MIXER_NAME, "GOXR3PLUS",
+            "Plays nothing, at the rate of a sound card", "1.0") {
+    };
+
+    private static final DataLine.Info LINE_INFO = new DataLine.Info(SourceDataLine.class, new AudioFormat[] {
+            new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, AudioSystem.NOT_SPECIFIED, 16,
+                    AudioSystem.NOT_SPECIFIED, AudioSystem.NOT_SPECIFIED, AudioSystem.NOT_SPECIFIED, false),
+            new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, AudioSystem.NOT_SPECIFIED, 8,
+                    AudioSystem.NOT_SPECIFIED, AudioSystem.NOT_SPECIFIED, AudioSystem.NOT_SPECIFIED, false) },
+            AudioSystem.NOT_SPECIFIED, AudioSystem.NOT_SPECIFIED);
+
+    private static final Mixer MIXER = new OfflineMixer();
+
+    @Override
+    public Mixer.Info[] getMixerInfo() {
+        return new Mixer.Info[] { INFO };
+    }
+
+    @Override
+    public Mixer getMixer(Mixer.Info info) {
+        if (info == null || info.equals(INFO))
+            return MIXER;
+        throw new IllegalArgumentException("Unknown mixer: " + info);
+    }
+
+    private static final class OfflineMixer implements Mixer {
+
+        @Override
+        public Mixer.Info getMixerInfo() {
+            return INFO;
+        }
+
+        @Override
+        public Line.Info[] getSourceLineInfo() {
+            return new Line.Info[] { LINE_INFO };
+        }
+
+        @Override
+        public Line.Info[] getTargetLineInfo() {
+            return new Line.Info[0];
+        }
+
+        @Override
+        public Line.Info[] getSourceLineInfo(Line.Info info) {
+            return isLineSupported(info) ? getSourceLineInfo() : new Line.Info[0];
+        }
+
+        @Override
+        public Line.Info[] getTargetLineInfo(Line.Info info) {
+            return new Line.Info[0];
+        }
+
+        @Override
+        public boolean isLineSupported(Line.Info info) {
+            return info.matches(LINE_INFO);
+        }
+
+        @Override
+        public Line getLine(Line.Info info) {
+            if (!isLineSupported(info))
+                throw new IllegalArgumentException("Unsupported line: " + info);
+            return new OfflineSourceDataLine(LINE_INFO);
+        }
+
+        @Override
+        public int getMaxLines(Line.Info info) {
+            return isLineSupported(info) ? AudioSystem.NOT_SPECIFIED : 0;
+        }
+
+        @Override
+        public Line[] getSourceLines() {
+            return new Line[0];
+        }
+
+        @Override
+        public Line[] getTargetLines() {
+            return new Line[0];
+        }
+
+        @Override
+        public void synchronize(Line[] lines, boolean maintainSync) {
+            throw new IllegalArgumentException("Synchronization is not supported");
+        }
+
+        @Override
+        public void unsynchronize(Line[] lines) {
+            throw new IllegalArgumentException("Synchronization is not supported");
+        }
+
+        @Override
+        public boolean isSynchronizationSupported(Line[] lines, boolean maintainSync) {
+            return false;
+        }
+
+        @Override
+        public Line.Info getLineInfo() {
+            return new Line.Info(Mixer.class);
+        }
+
+        @Override
+        public void open() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public Control[] getControls() {
+            return new Control[0];
+        }
+
+        @Override
+        public boolean isControlSupported(Control.Type control) {
+            return false;
+        }
+
+        @Override
+        public Control getControl(Control.Type control) {
+            throw new IllegalArgumentException("Unsupported control type: " + control);
+        }
+
+        @Override
+        public void addLineListener(LineListener listener) {
+        }
+
+        @Override
+        public void removeLineListener(LineListener listener) {
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.goxr3plus.streamplayer.stream;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Control;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineListener;
+import javax.sound.sampled.SourceDataLine;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A SourceDataLine which plays nothing but consumes the audio at the rate of its format, as a sound card would.
+ * A write blocks while the buffer is full, until it is flushed, and {@link #drain()} until the buffer is empty.
+ */
+class OfflineSourceDataLine implements SourceDataLine {
+
+    static final int DEFAULT_BUFFER_SIZE = 32 * 1024;
+
+    /** How long a blocked write or drain sleeps before it looks at the buffer again */
+    private static final long POLL_NANOS = 1_000_000;
+
+    private final DataLine.Info info;
+    private AudioFormat format;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private volatile boolean open;
+    private volatile boolean running;
+
+    /** Bytes written since the line was opened */
+    private long written;
+    /** Bytes played until the line was last started or flushed */
+    private long played;
+    private long startNanos;
+    /** Counts the flushes, so that a blocked write returns when the line is flushed */
+    private volatile long flushes;
+
+    OfflineSourceDataLine(DataLine.Info info) {
+        this.info = info;
+    }
+
+    private synchronized long playedBytes() {
+        if (!running)
+            return played;
+        final double bytesPerNano = format.getFrameRate() * format.getFrameSize() / 1e9;
+        long bytes = played + (long) ((System.nanoTime() - startNanos) * bytesPerNano);
+        bytes -= bytes % format.getFrameSize();
+        return Math.min(bytes, written);
+    }
+
+    @Override
+    public synchronized void open(AudioFormat format, int bufferSize) {
+        this.format = format;
+        if (bufferSize > 0)
+            this.bufferSize = bufferSize - bufferSize % format.getFrameSize();
+        written = 0;
+        played = 0;
+        open = true;
+    }
+
+    @Override
+    public void open(AudioFormat format) {
+        open(format, AudioSystem.NOT_SPECIFIED);
+    }
+
+    @Override
+    public void open() {
+        open(new AudioFormat(44100, 16, 2, true, false));
+    }
+
+    @Override
+    public int write(byte[] b, int off, int len) {
+        final long flushesAtStart = flushes;
+        int done = 0;
+        while (done < len) {
+            final int free;
+            synchronized (this) {
+                final long playedNow = playedBytes();
+                // After an underrun the audio plays from when it arrives
+                if (running && playedNow == written) {
+                    played = playedNow;
+                    startNanos = System.nanoTime();
+                }
+                free = (int) Math.min(len - done, bufferSize - (written - playedNow));
+                if (free > 0)
+                    written += free;
+            }
+            if (free > 0) {
+                done += free;
+                continue;
+            }
+            // A flush or a close returns a blocked write, as on a sound card
+            if (!open || flushes != flushesAtStart)
+                return done;
+            LockSupport.parkNanos(POLL_NANOS);
+        }
+        return done;
+    }
+
+    @Override
+    public void drain() {
+        while (running && playedBytes() < written)
+            LockSupport.parkNanos(POLL_NANOS);
+    }
+
+    @Override
+    public synchronized void flush() {
+        flushes++;
+        played = playedBytes();
+        written = played;
+        startNanos = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running)
+            return;
+        startNanos = System.nanoTime();
+        running = true;
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running)
+            return;
+        played = playedBytes();
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public boolean isActive() {
+        return running && playedBytes() < written;
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    @Override
+    public synchronized int available() {
+        return (int) (bufferSize - (written - playedBytes()));
+    }
+
+    @Override
+    public int getFramePosition() {
+        return (int) getLongFramePosition();
+    }
+
+    @Override
+    public long getLongFramePosition() {
+        return playedBytes() / format.getFrameSize();
+    }
+
+    @Override
+    public long getMicrosecondPosition() {
+        return (long) (getLongFramePosition() * 1_000_000L / format.getFrameRate());
+    }
+
+    @Override
+    public float getLevel() {
+        return AudioSystem.NOT_SPECIFIED;
+    }
+
+    @Override
+    public DataLine.Info getLineInfo() {
+        return info;
+    }
+
+    @Override
+    public synchronized void close() {
+        stop();
+        open = false;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public Control[] getControls() {
+        return new Control[0];
+    }
+
+    @Override
+    public boolean isControlSupported(Control.Type control) {
+        return false;
+    }
+
+    @Override
+    public Control getControl(Control.Type control) {
+        throw new IllegalArgumentException("Unsupported control type: " + control);
+    }
+
+    @Override
+    public void addLineListener(LineListener listener) {
+    }
+
+    @Override
+    public void removeLineListener(LineListener listener) {
+    }
+}
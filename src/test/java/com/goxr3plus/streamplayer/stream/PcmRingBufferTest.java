@@ -0,0 +1,135 @@
+package com.goxr3plus.streamplayer.stream;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class PcmRingBufferTest {
+
+    @Test
+    void capacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(2, new PcmRingBuffer(1, 16).capacity());
+        assertEquals(4, new PcmRingBuffer(3, 16).capacity());
+        assertEquals(8, new PcmRingBuffer(8, 16).capacity());
+    }
+
+    @Test
+    void claimReturnsNullWhenFull() {
+        final PcmRingBuffer ring = new PcmRingBuffer(2, 16);
+        assertNotNull(ring.claim());
+        ring.publish(16, 0);
+        assertNotNull(ring.claim());
+        ring.publish(16, 0);
+
+        assertNull(ring.claim());
+        assertEquals(2, ring.size());
+    }
+
+    @Test
+    void blocksAreConsumedInOrder() {
+        final PcmRingBuffer ring = new PcmRingBuffer(4, 4);
+        for (int i = 1; i <= 3; i++) {
+            ring.claim()[0] = (byte) i;
+            ring.publish(i, i * 100);
+        }
+
+        for (int i = 1; i <= 3; i++) {
+            assertEquals(i, ring.peek()[0]);
+            assertEquals(i, ring.peekLength());
+            assertEquals(i * 100, ring.peekEncodedPosition());
+            ring.release();
+        }
+        assertNull(ring.peek());
+        assertEquals(3, ring.getHighWatermark());
+        // The ring ran dry before the end of the stream
+        assertEquals(0, ring.getLowWatermark());
+    }
+
+    @Test
+    void theLowWatermarkIgnoresTheStartAndTheEndOfTheStream() {
+        final PcmRingBuffer ring = new PcmRingBuffer(4, 4);
+        assertNull(ring.peek());
+        for (int i = 0; i < 2; i++) {
+            ring.claim();
+            ring.publish(4, 0);
+        }
+        ring.markEndOfStream();
+
+        // Execute
+        while (ring.peek() != null)
+            ring.release();
+
+        // Verify
+        assertEquals(1, ring.getLowWatermark());
+    }
+
+    @Test
+    void aStarvationCountsOneUnderrun() {
+        final PcmRingBuffer ring = new PcmRingBuffer(4, 4);
+        // Waiting for the first block is no underrun
+        ring.awaitData();
+        assertEquals(0, ring.getUnderruns());
+
+        for (int starvation = 1; starvation <= 2; starvation++) {
+            ring.claim();
+            ring.publish(4, 0);
+            assertNotNull(ring.peek());
+            ring.release();
+
+            // Execute
+            for (int i = 0; i < 3; i++)
+                ring.awaitData();
+
+            // Verify
+            assertEquals(starvation, ring.getUnderruns());
+        }
+        ring.markEndOfStream();
+        ring.awaitData();
+        assertEquals(2, ring.getUnderruns());
+    }
+
+    @Test
+    void isDrainedOnlyAfterEndOfStreamAndEmpty() {
+        final PcmRingBuffer ring = new PcmRingBuffer(2, 4);
+        ring.claim();
+        ring.publish(4, 0);
+        ring.markEndOfStream();
+        assertFalse(ring.isDrained());
+
+        ring.peek();
+        ring.release();
+        assertTrue(ring.isDrained());
+    }
+
+    @Test
+    void decodeAheadTaskDeliversTheWholeStream() throws InterruptedException {
+        final byte[] pcm = new byte[100_000];
+        new Random(42).nextBytes(pcm);
+        final PcmRingBuffer ring = new PcmRingBuffer(4, 4096);
+        final DecodeAheadTask task = new DecodeAheadTask(mock(Logger.class), new ByteArrayInputStream(pcm), ring, () -> 0);
+        final Thread decoder = new Thread(task);
+        decoder.start();
+
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        while (!ring.isDrained()) {
+            final byte[] block = ring.peek();
+            if (block == null) {
+                ring.awaitData();
+                continue;
+            }
+            received.write(block, 0, ring.peekLength());
+            ring.release();
+        }
+        decoder.join(1000);
+
+        assertNull(ring.getFailure());
+        assertArrayEquals(pcm, received.toByteArray());
+        assertTrue(ring.getHighWatermark() <= ring.capacity());
+    }
+}
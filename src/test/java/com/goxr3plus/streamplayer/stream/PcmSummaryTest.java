@@ -0,0 +1,68 @@
+package com.goxr3plus.streamplayer.stream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PcmSummaryTest {
+
+    @Test
+    void summarizesEveryChannel() {
+        final PcmSummary summary = new PcmSummary(null, 2);
+
+        // Left is a square wave of 0.5, right goes from -0.8 to 0.2
+        summary.accumulate(new float[] { 0.5f, -0.8f, -0.5f, 0.2f, 0.5f, 0f, -0.5f, 0f }, 0, 4);
+
+        assertEquals(4, summary.getFrames());
+        assertEquals(-0.5f, summary.getMin(0));
+        assertEquals(0.5f, summary.getMax(0));
+        assertEquals(0.5f, summary.getPeak(0));
+        assertEquals(0.5f, summary.getRms(0), 1e-6);
+        assertEquals(-0.8f, summary.getMin(1));
+        assertEquals(0.2f, summary.getMax(1));
+        assertEquals(0.8f, summary.getPeak(1));
+        assertEquals(Math.sqrt((0.64 + 0.04) / 4), summary.getRms(1), 1e-6);
+    }
+
+    @Test
+    void accumulatesARangeOfFrames() {
+        final PcmSummary summary = new PcmSummary(null, 1);
+
+        summary.accumulate(new float[] { 1f, 0.25f, -0.25f, -1f }, 1, 2);
+
+        assertEquals(2, summary.getFrames());
+        assertEquals(0.25f, summary.getPeak(0));
+    }
+
+    @Test
+    void mergesALaterSummary() {
+        final PcmSummary summary = new PcmSummary(null, 1);
+        summary.accumulate(new float[] { 0.5f, 0.5f }, 0, 2);
+        summary.setPosition(10, 100);
+        final PcmSummary later = new PcmSummary(null, 1);
+        later.accumulate(new float[] { -1f, 1f }, 0, 2);
+        later.setPosition(20, 200);
+
+        summary.merge(later);
+
+        assertEquals(4, summary.getFrames());
+        assertEquals(-1f, summary.getMin(0));
+        assertEquals(1f, summary.getMax(0));
+        assertEquals(Math.sqrt(2.5 / 4), summary.getRms(0), 1e-6);
+        assertEquals(20, summary.getEncodedBytes());
+        assertEquals(200, summary.getMicrosecondPosition());
+    }
+
+    @Test
+    void resetStartsAnEmptySummary() {
+        final PcmSummary summary = new PcmSummary(null, 1);
+        summary.accumulate(new float[] { 0.5f }, 0, 1);
+
+        summary.reset(2);
+
+        assertEquals(0, summary.getFrames());
+        assertEquals(2, summary.getChannels());
+        assertEquals(0f, summary.getPeak(1));
+        assertEquals(0f, summary.getRms(1));
+    }
+}
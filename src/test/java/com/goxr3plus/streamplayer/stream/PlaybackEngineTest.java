@@ -0,0 +1,212 @@
+package com.goxr3plus.streamplayer.stream;
+
+import com.goxr3plus.streamplayer.enums.Status;
+import com.goxr3plus.streamplayer.stream.PlaybackEngine.Step;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.SourceDataLine;
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class PlaybackEngineTest {
+
+    private final PlaybackEngine engine = new PlaybackEngine(mock(Logger.class), 2, PlaybackEngine.DEFAULT_IDLE_MICROS);
+
+    @AfterEach
+    void closeEngine() {
+        engine.close();
+    }
+
+    @Test
+    void theConfigurationIsValidated() {
+        assertThrows(IllegalArgumentException.class, () -> new PlaybackEngine(0));
+        assertThrows(IllegalArgumentException.class, () -> new PlaybackEngine(mock(Logger.class), 1, 0));
+        assertEquals(2, engine.getThreadCount());
+    }
+
+    @Test
+    void sessionsAreServicedUntilTheyFinish() throws Exception {
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        final List<AtomicInteger> steps = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            final AtomicInteger count = new AtomicInteger();
+            steps.add(count);
+            // Waits a few times, as for a full line, then finishes
+            futures.add(engine.attach(done -> count.incrementAndGet() < 5 ? Step.WAITING : Step.FINISHED));
+        }
+
+        for (CompletableFuture<Void> future : futures)
+            future.get(1, TimeUnit.SECONDS);
+
+        for (AtomicInteger count : steps)
+            assertEquals(5, count.get());
+        assertEquals(0, engine.getSessionCount());
+    }
+
+    @Test
+    void aFailingSessionDoesntStopTheOthers() throws Exception {
+        final CompletableFuture<Void> failing = engine.attach(done -> {
+            throw new IllegalStateException("Broken decoder");
+        });
+        final CompletableFuture<Void> other = engine.attach(done -> Step.FINISHED);
+
+        assertThrows(Exception.class, () -> failing.get(1, TimeUnit.SECONDS));
+        other.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void closeLetsTheSessionsLeftFinish() {
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final CompletableFuture<Void> future = engine.attach(done -> {
+            if (!done.isCancelled())
+                return Step.WAITING;
+            cancelled.set(true);
+            return Step.FINISHED;
+        });
+
+        engine.close();
+
+        assertTrue(future.isCancelled());
+        assertTrue(cancelled.get());
+        assertTrue(engine.isClosed());
+        assertThrows(IllegalStateException.class, () -> engine.attach(done -> Step.FINISHED));
+    }
+
+    @Test
+    void aPlayerPlaysToTheEndOnTheEngine() throws Exception {
+        assumeTrue(hasSourceLines(), "No audio output");
+        final CountDownLatch endOfMedia = new CountDownLatch(1);
+        final StreamPlayer player = new StreamPlayer(mock(Logger.class), engine);
+        player.addStreamPlayerListener(new StreamPlayerListener() {
+            @Override
+            public void opened(Object dataSource, Map<String, Object> properties) {
+            }
+
+            @Override
+            public void progress(int nEncodedBytes, long microsecondPosition, byte[] pcmData,
+                                 Map<String, Object> properties) {
+            }
+
+            @Override
+            public void statusUpdated(StreamPlayerEvent event) {
+                if (event.getPlayerStatus() == Status.EOM)
+                    endOfMedia.countDown();
+            }
+        });
+
+        // Execute
+        player.open(new File("kick.wav"));
+        player.play();
+
+        // Verify: the engine played the file and released the line, without a playback thread of the player
+        assertTrue(endOfMedia.await(5, TimeUnit.SECONDS));
+        player.close();
+        assertNull(player.getSourceDataLine());
+    }
+
+    @Test
+    void aQueuedTrackFollowsOnTheEngine() throws Exception {
+        assumeTrue(hasSourceLines(), "No audio output");
+        final StreamPlayer player = new StreamPlayer(mock(Logger.class), engine);
+        final StreamPlayerMethodsTest.FrameCounter frames = new StreamPlayerMethodsTest.FrameCounter();
+        player.addAudioProcessor(frames);
+        player.open(new File("kick.wav"));
+        player.enqueue(new File("kick.wav"));
+
+        // Execute
+        player.play();
+
+        // Verify: the session went on with the second track, without a frame lost
+        assertTrue(player.awaitStatus(Status.STOPPED, Duration.ofSeconds(5)));
+        assertEquals(2 * 4688, frames.count);
+        player.close();
+        assertNull(player.getSourceDataLine());
+    }
+
+    @Test
+    void aQueuedTrackCrossfadesOnTheEngine() throws Exception {
+        assumeTrue(hasSourceLines(), "No audio output");
+        final StreamPlayer player = new StreamPlayer(mock(Logger.class), engine);
+        final StreamPlayerMethodsTest.FrameCounter frames = new StreamPlayerMethodsTest.FrameCounter();
+        player.addAudioProcessor(frames);
+        player.setCrossfade(Duration.ofMillis(100));
+        player.open(StreamPlayerMethodsTest.silence(44100));
+        player.enqueue(StreamPlayerMethodsTest.silence(44100));
+
+        // Execute
+        player.play();
+
+        // Verify: the tracks overlapped by 100 ms at most
+        assertTrue(player.awaitStatus(Status.STOPPED, Duration.ofSeconds(5)));
+        assertTrue(frames.count >= 2 * 44100 - 4410, "Overlap too long: " + frames.count);
+        assertTrue(frames.count <= 2 * 44100 - 4410 + 4096 / 2, "Overlap too short: " + frames.count);
+        player.close();
+    }
+
+    @Test
+    void stopOnTheEngineReleasesTheLineBeforeReturning() throws StreamPlayerException {
+        assumeTrue(hasSourceLines(), "No audio output");
+        final StreamPlayer player = new StreamPlayer(mock(Logger.class), engine);
+        player.open(new File("kick.mp3"));
+        player.play();
+
+        // Execute
+        player.stop();
+
+        // Verify
+        assertNull(player.getSourceDataLine());
+        assertEquals(0, engine.getSessionCount());
+        player.close();
+    }
+
+    @Test
+    void aSeekOnTheEngineIsPositionedOffTheLoopThread() throws StreamPlayerException {
+        assumeTrue(hasSourceLines(), "No audio output");
+        final Logger logger = mock(Logger.class);
+        final List<String> indexingThreads = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            final Supplier<String> message = invocation.getArgument(0);
+            if (message.get().startsWith("Seek index of"))
+                indexingThreads.add(Thread.currentThread().getName());
+            return null;
+        }).when(logger).info(any(Supplier.class));
+        final StreamPlayer player = new StreamPlayer(logger, engine);
+        player.open(new File("kick.mp3"));
+        player.play();
+        player.pause();
+
+        // Execute
+        final long frame = player.seekToFrame(4000);
+
+        // Verify: the frame index was built by the decoder executor, not by the loop thread
+        assertEquals(4000, frame);
+        assertEquals(1, indexingThreads.size());
+        assertTrue(indexingThreads.get(0).startsWith("StreamPlayerDecoder"), indexingThreads.get(0));
+        assertTrue(player.isPausedOrPlaying());
+        player.close();
+    }
+
+    private static boolean hasSourceLines() {
+        return AudioSystem.getSourceLineInfo(new Line.Info(SourceDataLine.class)).length > 0;
+    }
+}
@@ -0,0 +1,129 @@
+package com.goxr3plus.streamplayer.stream;
+
+import com.goxr3plus.streamplayer.enums.Status;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlayerStateTest {
+
+    private final PlayerState state = new PlayerState();
+
+    @Test
+    void legalTransitionsCountTheEpoch() {
+        assertEquals(Status.NOT_SPECIFIED, state.get());
+        assertEquals(0, state.getEpoch());
+
+        assertTrue(state.move(Status.NOT_SPECIFIED, Status.OPENING));
+        assertTrue(state.move(Status.OPENING, Status.OPENED));
+        assertTrue(state.move(Status.OPENED, Status.PLAYING));
+
+        assertEquals(Status.PLAYING, state.get());
+        assertEquals(3, state.getEpoch());
+    }
+
+    @Test
+    void illegalTransitionsAreRefused() {
+        state.move(Status.NOT_SPECIFIED, Status.STOPPED);
+
+        assertThrows(IllegalArgumentException.class, () -> state.move(Status.STOPPED, Status.PLAYING));
+        assertFalse(state.move(state.stamp(), Status.PAUSED));
+        assertFalse(state.move(Status.OPENED, Status.PLAYING));
+        assertEquals(Status.STOPPED, state.get());
+        assertFalse(PlayerState.isLegal(Status.PLAYING, Status.EOM));
+        assertTrue(PlayerState.isLegal(Status.PAUSED, Status.NOT_SPECIFIED));
+    }
+
+    @Test
+    void aStaleStampIsRejected() {
+        state.move(Status.NOT_SPECIFIED, Status.OPENING);
+        state.move(Status.OPENING, Status.OPENED);
+        final long opened = state.stamp();
+
+        // Back in the same status, through a seek
+        state.move(Status.OPENED, Status.SEEKING);
+        state.move(Status.SEEKING, Status.OPENED);
+
+        assertEquals(Status.OPENED, PlayerState.statusOf(opened));
+        assertFalse(state.move(opened, Status.PLAYING));
+        assertTrue(state.move(state.stamp(), Status.PLAYING));
+    }
+
+    @Test
+    void resetLeavesAnyStatus() {
+        state.move(Status.NOT_SPECIFIED, Status.STOPPED);
+
+        state.reset();
+
+        assertEquals(Status.NOT_SPECIFIED, state.get());
+        assertEquals(2, state.getEpoch());
+    }
+
+    @Test
+    void onlyOneOfConcurrentTransitionsWins() throws Exception {
+        state.move(Status.NOT_SPECIFIED, Status.OPENING);
+        state.move(Status.OPENING, Status.OPENED);
+        state.move(Status.OPENED, Status.PLAYING);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger wins = new AtomicInteger();
+        final List<CompletableFuture<Void>> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            final Status to = i % 2 == 0 ? Status.PAUSED : Status.STOPPED;
+            threads.add(CompletableFuture.runAsync(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    throw new IllegalStateException(ex);
+                }
+                if (state.move(EnumSet.of(Status.PLAYING), to))
+                    wins.incrementAndGet();
+            }));
+        }
+
+        start.countDown();
+        for (CompletableFuture<Void> thread : threads)
+            thread.get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, wins.get());
+        assertEquals(4, state.getEpoch());
+    }
+
+    @Test
+    void aWaiterWakesUpOnTheTransition() throws Exception {
+        final CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return state.await(Status.STOPPED, 5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        Thread.sleep(20);
+
+        final long start = System.nanoTime();
+        state.move(Status.NOT_SPECIFIED, Status.STOPPED);
+
+        assertTrue(waiter.get(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    void aWaiterGivesUpAfterTheTimeout() throws InterruptedException {
+        assertFalse(state.await(Status.PLAYING, 10, TimeUnit.MILLISECONDS));
+        assertTrue(state.await(Status.NOT_SPECIFIED, 0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void aWaiterCanBeInterrupted() {
+        Thread.currentThread().interrupt();
+
+        assertThrows(InterruptedException.class, () -> state.await(Status.PLAYING, 5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,103 @@
+package com.goxr3plus.streamplayer.stream;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class QueuedTrackTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private QueuedTrack track(final String file) {
+        return new QueuedTrack(mock(Logger.class), new FileDataSource(new File(file)), 500, 4096);
+    }
+
+    @Test
+    void theHeadOfTheTrackIsDecodedAhead() throws Exception {
+        final QueuedTrack track = track("kick.wav");
+
+        // Execute
+        track.prepare(executor);
+        track.awaitOpened(5000);
+
+        // Verify: the short file is decoded to 16 bits, all of it fits in the ring
+        assertTrue(track.isOpened());
+        final AudioFormat format = track.getDecodedStream().getFormat();
+        assertEquals(16, format.getSampleSizeInBits());
+        assertTrue(StreamPlayer.getDecodedFormat(track.getEncodedStream().getFormat()).matches(format));
+        track.getFuture().get(5, TimeUnit.SECONDS);
+        final PcmRingBuffer ring = track.getRing();
+        int bytes = 0;
+        for (; ring.peek() != null; ring.release())
+            bytes += ring.peekLength();
+        assertEquals(4688 * format.getFrameSize(), bytes);
+        assertTrue(ring.isDrained());
+        executor.shutdown();
+    }
+
+    @Test
+    void theSilenceAddedByTheEncoderIsLeftOut() throws Exception {
+        final QueuedTrack track = track("kick.mp3");
+
+        track.prepare(executor);
+        track.getFuture().get(5, TimeUnit.SECONDS);
+
+        // Verify: the ring holds the frames of kick.wav, the source of kick.mp3, and none of the 8064 decoded around
+        assertTrue(track.isOpened());
+        final PcmRingBuffer ring = track.getRing();
+        int bytes = 0;
+        for (; ring.peek() != null; ring.release())
+            bytes += ring.peekLength();
+        assertEquals(4688 * track.getDecodedStream().getFormat().getFrameSize(), bytes);
+        executor.shutdown();
+    }
+
+    @Test
+    void aSourceWhichCannotBeOpenedFails() throws Exception {
+        final QueuedTrack track = track("pom.xml");
+
+        track.prepare(executor);
+        track.getFuture().get(5, TimeUnit.SECONDS);
+
+        assertTrue(track.isFailed());
+        assertFalse(track.isOpened());
+        executor.shutdown();
+    }
+
+    @Test
+    void aCancelledTrackIsNeverPrepared() {
+        final QueuedTrack track = track("kick.wav");
+
+        track.cancel();
+        track.prepare(executor);
+
+        assertFalse(track.isOpened());
+        assertFalse(track.getFuture().isDone());
+        executor.shutdown();
+    }
+
+    @Test
+    void cancellingStopsTheDecoder() throws Exception {
+        // A ring of two blocks, which the decoder keeps full until it is cancelled
+        final QueuedTrack track = new QueuedTrack(mock(Logger.class), new FileDataSource(new File("kick.mp3")), 1,
+            1024);
+        track.prepare(executor);
+        track.awaitOpened(5000);
+        assertTrue(track.isOpened());
+
+        // Execute
+        track.cancel();
+
+        // Verify
+        track.getFuture().get(5, TimeUnit.SECONDS);
+        executor.shutdown();
+    }
+}
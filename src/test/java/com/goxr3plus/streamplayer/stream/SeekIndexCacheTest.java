@@ -0,0 +1,156 @@
+package com.goxr3plus.streamplayer.stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SeekIndexCacheTest {
+
+    private Path directory;
+    private File media;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("seek-index");
+        media = File.createTempFile("media", ".mp3");
+        Files.copy(new File("kick.mp3").toPath(), media.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (final Path path : list(directory))
+            Files.delete(path);
+        Files.delete(directory);
+        Files.deleteIfExists(media.toPath());
+    }
+
+    @Test
+    void secondOpeningReadsTheStoredIndex() throws IOException {
+        final SeekIndexCache cache = new SeekIndexCache(directory, 1 << 20, false);
+
+        final Mp3SeekIndex built = cache.get(media, true);
+        final Mp3SeekIndex loaded = new SeekIndexCache(directory, 1 << 20, false).get(media, true);
+
+        assertEquals(1, cache.getMissCount());
+        assertEquals(built.getFrameCount(), loaded.getFrameCount());
+        assertEquals(built.getSamplesPerFrame(), loaded.getSamplesPerFrame());
+        assertEquals(built.getSampleRate(), loaded.getSampleRate());
+        assertEquals(built.getEncoderDelay(), loaded.getEncoderDelay());
+        assertEquals(built.getEncoderPadding(), loaded.getEncoderPadding());
+        assertTrue(loaded.isExact());
+        try (FileChannel channel = FileChannel.open(media.toPath(), StandardOpenOption.READ)) {
+            for (long frame = 0; frame < built.getFrameCount(); frame++)
+                assertEquals(built.locate(channel, frame).getOffset(), loaded.locate(channel, frame).getOffset());
+        }
+    }
+
+    @Test
+    void countsHitsAndMisses() throws IOException {
+        final SeekIndexCache cache = new SeekIndexCache(directory, 1 << 20, true);
+
+        cache.get(media, true);
+        cache.get(media, true);
+        // An exact index also serves approximate seeking
+        cache.get(media, false);
+
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    void rebuildsTheIndexOfAModifiedFile() throws IOException {
+        final SeekIndexCache cache = new SeekIndexCache(directory, 1 << 20, false);
+        cache.get(media, true);
+
+        final byte[] kick = Files.readAllBytes(media.toPath());
+        Files.write(media.toPath(), kick, StandardOpenOption.APPEND);
+        final Mp3SeekIndex index = cache.get(media, true);
+
+        assertEquals(2, cache.getMissCount());
+        assertTrue(index.getFrameCount() > 7);
+        assertEquals(1, list(directory).size());
+    }
+
+    @Test
+    void rebuildsACorruptEntry() throws IOException {
+        final SeekIndexCache cache = new SeekIndexCache(directory, 1 << 20, false);
+        final long frames = cache.get(media, true).getFrameCount();
+
+        final Path entry = list(directory).get(0);
+        final byte[] content = Files.readAllBytes(entry);
+        content[content.length / 2] ^= 0x5A;
+        Files.write(entry, content);
+
+        assertEquals(frames, cache.get(media, true).getFrameCount());
+        assertEquals(2, cache.getMissCount());
+
+        Files.write(entry, new byte[] { 1, 2 });
+        assertEquals(frames, cache.get(media, true).getFrameCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedEntries() throws IOException {
+        final SeekIndexCache unbounded = new SeekIndexCache(directory, 1 << 20, false);
+        unbounded.get(media, true);
+        // The copies have one more character in their path
+        final long entrySize = unbounded.size() + 1;
+        unbounded.clear();
+
+        final SeekIndexCache cache = new SeekIndexCache(directory, entrySize * 3, false);
+        final List<File> copies = new ArrayList<>();
+        try {
+            for (int i = 0; i < 4; i++) {
+                final File copy = new File(media.getPath() + i);
+                Files.copy(media.toPath(), copy.toPath());
+                copies.add(copy);
+            }
+            // Entries used in order, a second apart, as modification times may have a coarse resolution
+            for (int i = 0; i < 3; i++) {
+                final List<Path> before = list(directory);
+                cache.get(copies.get(i), true);
+                final List<Path> after = list(directory);
+                after.removeAll(before);
+                Files.setLastModifiedTime(after.get(0), FileTime.fromMillis(1000L * (i + 1)));
+            }
+            // Using the first entry makes the second one the least recently used
+            cache.get(copies.get(0), true);
+            cache.get(copies.get(3), true);
+
+            assertEquals(3, list(directory).size());
+            assertTrue(cache.size() <= entrySize * 3);
+            final long misses = cache.getMissCount();
+            cache.get(copies.get(0), true);
+            cache.get(copies.get(2), true);
+            assertEquals(misses, cache.getMissCount());
+            cache.get(copies.get(1), true);
+            assertEquals(misses + 1, cache.getMissCount());
+        } finally {
+            for (final File copy : copies)
+                Files.deleteIfExists(copy.toPath());
+        }
+    }
+
+    private static List<Path> list(final Path directory) throws IOException {
+        final List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (final Path path : stream)
+                paths.add(path);
+        }
+        return paths;
+    }
+}
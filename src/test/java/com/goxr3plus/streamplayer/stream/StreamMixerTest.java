@@ -0,0 +1,250 @@
+package com.goxr3plus.streamplayer.stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.SourceDataLine;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.mock;
+
+class StreamMixerTest {
+
+    private static final AudioFormat STEREO = new AudioFormat(44100, 16, 2, true, false);
+    private static final AudioFormat MONO = new AudioFormat(44100, 16, 1, true, false);
+    private static final int BLOCK_FRAMES = 512;
+
+    private final StreamMixer mixer = new StreamMixer(mock(Logger.class), STEREO, BLOCK_FRAMES);
+
+    @AfterEach
+    void close() {
+        mixer.close();
+    }
+
+    @Test
+    void theMixerPlaysInStereo() {
+        assertThrows(IllegalArgumentException.class, () -> new StreamMixer(MONO));
+    }
+
+    @Test
+    void theInputsAreSummedWithTheirGains() throws InterruptedException {
+        final StreamMixer.Input first = mixer.add(constant(STEREO, 2048, 8192));
+        final StreamMixer.Input second = mixer.add(constant(STEREO, 2048, 8192));
+        second.setGain(0.5f);
+        awaitDecoded(first, second);
+
+        // Execute
+        mixer.mixBlock();
+
+        // Verify: 0.25 + 0.5 * 0.25
+        final short[] block = samples(mixer.getOutputBuffer());
+        for (final short sample : block)
+            assertEquals(12288, sample, 1);
+    }
+
+    @Test
+    void aMonoInputIsPanned() throws InterruptedException {
+        final StreamMixer.Input input = mixer.add(constant(MONO, 2048, 8192));
+        input.setPan(1f);
+        awaitDecoded(input);
+
+        // Execute
+        mixer.mixBlock();
+
+        // Verify: on the right speaker only
+        final short[] block = samples(mixer.getOutputBuffer());
+        for (int frame = 0; frame < BLOCK_FRAMES; frame++) {
+            assertEquals(0, block[frame * 2]);
+            assertEquals(8192, block[frame * 2 + 1], 1);
+        }
+    }
+
+    @Test
+    void aGainChangeGlidesOverABlock() throws InterruptedException {
+        final StreamMixer.Input input = mixer.add(constant(STEREO, 2048, 8192));
+        awaitDecoded(input);
+        mixer.mixBlock();
+
+        // Execute
+        input.setGain(0f);
+        mixer.mixBlock();
+
+        // Verify: no step, the block fades to silence
+        final short[] block = samples(mixer.getOutputBuffer());
+        assertTrue(block[0] > 8000, "Step at the start: " + block[0]);
+        for (int frame = 1; frame < BLOCK_FRAMES; frame++)
+            assertTrue(block[frame * 2] <= block[frame * 2 - 2]);
+        assertEquals(0, block[BLOCK_FRAMES * 2 - 2]);
+    }
+
+    @Test
+    void anInputOfAnotherRateIsResampled() throws InterruptedException {
+        final StreamMixer.Input input = mixer.add(constant(new AudioFormat(22050, 16, 1, true, false), 2205, 8192));
+        awaitDecoded(input);
+
+        // Execute
+        int frames = 0;
+        for (int i = 0; i < 100 && mixer.getInputCount() > 0; i++) {
+            mixer.mixBlock();
+            final short[] block = samples(mixer.getOutputBuffer());
+            for (int frame = 0; frame < BLOCK_FRAMES; frame++)
+                if (block[frame * 2] != 0)
+                    frames++;
+        }
+
+        // Verify: twice as many frames at 44.1 kHz, but for the frames kept by the resampler kernel
+        assertTrue(input.isFinished());
+        assertEquals(4410, frames, 32);
+    }
+
+    @Test
+    void finishedAndRemovedInputsAreDropped() throws InterruptedException {
+        final StreamMixer.Input finished = mixer.add(constant(STEREO, 100, 8192));
+        final StreamMixer.Input removed = mixer.add(constant(STEREO, 2048, 8192));
+        awaitDecoded(finished, removed);
+        assertEquals(2, mixer.getInputCount());
+
+        // Execute
+        removed.remove();
+        mixer.mixBlock();
+
+        // Verify: the removed input played no more, the other one played its 100 frames
+        assertEquals(0, mixer.getInputCount());
+        assertTrue(finished.isFinished());
+        final short[] block = samples(mixer.getOutputBuffer());
+        assertEquals(8192, block[0], 1);
+        assertEquals(8192, block[199], 1);
+        assertEquals(0, block[200]);
+    }
+
+    @Test
+    void aDroppedInputIsReleasedOffTheMixThread() throws Exception {
+        final CountDownLatch closed = new CountDownLatch(1);
+        final AtomicReference<Thread> closingThread = new AtomicReference<>();
+        final InputStream data = new ByteArrayInputStream(new byte[2048 * 4]) {
+            @Override
+            public void close() {
+                closingThread.set(Thread.currentThread());
+                closed.countDown();
+            }
+        };
+        final StreamMixer.Input input = mixer.add(new AudioInputStream(data, STEREO, 2048));
+        awaitDecoded(input);
+
+        // Execute
+        input.remove();
+        mixer.mixBlock();
+
+        // Verify: the stream was closed by the decoder executor, not by the thread mixing the block
+        assertTrue(closed.await(1, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), closingThread.get());
+        assertEquals(0, mixer.getInputCount());
+    }
+
+    @Test
+    void mixingDoesNotAllocate() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+        for (int i = 0; i < 32; i++) {
+            final StreamMixer.Input input = mixer.add(endless(i % 4 == 0 ? new AudioFormat(48000, 16, 2, true, false)
+                : i % 2 == 0 ? MONO : STEREO));
+            input.setGain(0.1f);
+            input.setPan(i / 16f - 1);
+        }
+
+        // Warm up, so that the measured blocks run compiled code
+        for (int i = 0; i < 3000; i++)
+            mixer.mixBlock();
+        final long before = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < 3000; i++)
+            mixer.mixBlock();
+        final long allocated = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+        assertEquals(32, mixer.getInputCount());
+        assertTrue(allocated < 1024, "The mixer allocated " + allocated + " bytes");
+    }
+
+    @Test
+    void dozensOfInputsPlayOnOneLine() throws Exception {
+        assumeTrue(AudioSystem.getSourceLineInfo(new Line.Info(SourceDataLine.class)).length > 0, "No audio output");
+        mixer.start();
+        final SourceDataLine line = mixer.getSourceDataLine();
+        final StreamMixer.Input[] inputs = new StreamMixer.Input[48];
+        for (int i = 0; i < inputs.length; i++)
+            inputs[i] = mixer.add(constant(i % 3 == 0 ? new AudioFormat(22050, 16, 1, true, false) : STEREO,
+                i % 3 == 0 ? 2205 : 4410, 100));
+
+        // Execute
+        for (int i = 0; i < 500 && mixer.getInputCount() > 0; i++)
+            Thread.sleep(10);
+
+        // Verify: every input played to its end on the line of the mixer
+        assertEquals(0, mixer.getInputCount());
+        for (final StreamMixer.Input input : inputs)
+            assertTrue(input.isFinished());
+        assertTrue(line.isRunning());
+        assertTrue(line.getFormat().matches(STEREO));
+        mixer.close();
+        assertNull(mixer.getSourceDataLine());
+    }
+
+    /**
+     * @return a 16 bits stream whose samples all have the same value
+     */
+    private static AudioInputStream constant(final AudioFormat format, final int frames, final int value) {
+        final byte[] data = new byte[frames * format.getFrameSize()];
+        for (int i = 0; i < data.length; i += 2) {
+            data[i] = (byte) value;
+            data[i + 1] = (byte) (value >> 8);
+        }
+        return new AudioInputStream(new ByteArrayInputStream(data), format, frames);
+    }
+
+    /**
+     * @return a stream of silence which never ends
+     */
+    private static AudioInputStream endless(final AudioFormat format) {
+        final InputStream silence = new InputStream() {
+            @Override
+            public int read() {
+                return 0;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) {
+                Arrays.fill(b, off, off + len, (byte) 0);
+                return len;
+            }
+        };
+        return new AudioInputStream(silence, format, AudioSystem.NOT_SPECIFIED);
+    }
+
+    private static void awaitDecoded(final StreamMixer.Input... inputs) throws InterruptedException {
+        for (final StreamMixer.Input input : inputs)
+            for (int i = 0; i < 500 && !input.isDecoded(); i++)
+                Thread.sleep(1);
+    }
+
+    private static short[] samples(final byte[] block) {
+        final short[] samples = new short[block.length / 2];
+        for (int i = 0; i < samples.length; i++)
+            samples[i] = (short) ((block[i * 2] & 0xFF) | (block[i * 2 + 1] << 8));
+        return samples;
+    }
+}
@@ -0,0 +1,129 @@
+package com.goxr3plus.streamplayer.stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Checks that the steady state of the playback loop doesn't allocate, so that long running players don't cause GC pauses.
+ */
+class StreamPlayerAllocationTest {
+
+    private static final AudioFormat FORMAT = new AudioFormat(44100, 16, 2, true, false);
+    private static final int ITERATIONS = 20_000;
+
+    private com.sun.management.ThreadMXBean threadMXBean;
+    private StreamPlayer player;
+    private PcmRingBuffer ring;
+    private final ProgressCounter progressCounter = new ProgressCounter();
+    // Written by the thread delivering the events
+    private volatile long progressCalls;
+    private volatile long summaryCalls;
+
+    @BeforeEach
+    void setup() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        player = new StreamPlayer(mock(Logger.class));
+        player.getOutlet().setSourceDataLine(new FakeSourceDataLine(FORMAT, 64 * 1024));
+        player.addStreamPlayerListener(progressCounter);
+        player.addStreamPlayerListener(new SummaryCounter(), 60);
+        player.configureProcessing(FORMAT);
+        player.addAudioProcessor((samples, frames, channels) -> {
+            for (int i = 0; i < frames * channels; i++)
+                samples[i] *= 0.5f;
+        });
+        ring = new PcmRingBuffer(4, 4096);
+    }
+
+    @Test
+    void allocatedBytesStayFlatWhilePlaying() throws IOException {
+        // Deliver on this thread, so that the measure covers the listeners too
+        player.getEventBus().setSynchronous(true);
+        // Warm up, so that the measured iterations run compiled code
+        play(ITERATIONS);
+
+        final long before = allocatedBytes();
+        play(ITERATIONS);
+        final long allocated = allocatedBytes() - before;
+
+        assertEquals(2L * ITERATIONS, progressCalls);
+        assertTrue(summaryCalls > 0);
+        assertTrue(allocated < 1024, "The playback loop allocated " + allocated + " bytes");
+    }
+
+    @Test
+    void allocatedBytesStayFlatWhileTheEventsAreDeliveredOnTheirThread() throws IOException, InterruptedException {
+        assertFalse(player.getEventBus().getLinger().isZero());
+        play(ITERATIONS);
+
+        final long before = allocatedBytes();
+        play(ITERATIONS);
+        final long allocated = allocatedBytes() - before;
+
+        // Verify: every buffer is delivered or dropped, and the playback thread only copied them
+        final StreamPlayerEventBus bus = player.getEventBus();
+        for (int i = 0; i < 200 && bus.getProgressBacklog(progressCounter) > 0; i++)
+            Thread.sleep(5);
+        assertEquals(2L * ITERATIONS, progressCalls + bus.getDroppedProgressCount(progressCounter));
+        assertTrue(summaryCalls > 0);
+        assertTrue(allocated < 1024, "The playback loop allocated " + allocated + " bytes");
+    }
+
+    private void play(int iterations) throws IOException {
+        for (int i = 0; i < iterations; i++) {
+            ring.claim();
+            // Every other block is short, those used to be copied
+            ring.publish(i % 2 == 0 ? 4096 : 1000, i);
+            player.writeDecodedAhead(ring);
+        }
+    }
+
+    private long allocatedBytes() {
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private class ProgressCounter implements StreamPlayerProgressListener {
+
+        @Override
+        public void progress(StreamPlayerProgress progress) {
+            progressCalls++;
+        }
+
+        @Override
+        public void opened(Object dataSource, Map<String, Object> properties) {
+        }
+
+        @Override
+        public void statusUpdated(StreamPlayerEvent event) {
+        }
+    }
+
+    private class SummaryCounter implements StreamPlayerSummaryListener {
+
+        @Override
+        public void summary(PcmSummary summary) {
+            summaryCalls++;
+        }
+
+        @Override
+        public void opened(Object dataSource, Map<String, Object> properties) {
+        }
+
+        @Override
+        public void statusUpdated(StreamPlayerEvent event) {
+        }
+    }
+}
@@ -0,0 +1,553 @@
+package com.goxr3plus.streamplayer.stream;
+
+import com.goxr3plus.streamplayer.enums.DropPolicy;
+import com.goxr3plus.streamplayer.enums.Status;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class StreamPlayerEventBusTest {
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void deliversTheEventsInOrder() throws InterruptedException {
+        final StreamPlayerEventBus bus = new StreamPlayerEventBus(mock(Logger.class), executor, 256);
+        final Recorder recorder = new Recorder(5);
+        bus.addListener(recorder);
+
+        for (final Status status : new Status[] { Status.OPENING, Status.OPENED, Status.PLAYING, Status.PAUSED,
+                Status.STOPPED })
+            bus.publish(event(status));
+
+        assertTrue(recorder.received.await(1, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(Status.OPENING, Status.OPENED, Status.PLAYING, Status.PAUSED, Status.STOPPED),
+                recorder.statuses());
+    }
+
+    @Test
+    void aSlowListenerNeitherBlocksThePublisherNorTheOtherListeners() throws InterruptedException {
+        final StreamPlayerEventBus bus = new StreamPlayerEventBus(mock(Logger.class), executor, 256);
+        final Recorder slow = new Recorder(1);
+        slow.blocked = new CountDownLatch(1);
+        final Recorder fast = new Recorder(3);
+        bus.addListener(slow);
+        bus.addListener(fast);
+
+        final long start = System.nanoTime();
+        bus.publish(event(Status.PLAYING));
+        bus.publish(event(Status.PAUSED));
+        bus.publish(event(Status.RESUMED));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+
+        assertTrue(fast.received.await(1, TimeUnit.SECONDS));
+        slow.blocked.countDown();
+        assertTrue(slow.received.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void coalescesValuesWaitingForTheListener() throws InterruptedException {
+        final StreamPlayerEventBus bus = new StreamPlayerEventBus(mock(Logger.class), executor, 256);
+        final Recorder recorder = new Recorder(3);
+        recorder.blocked = new CountDownLatch(1);
+        bus.addListener(recorder);
+
+        bus.publish(event(Status.PLAYING));
+        // Wait for the listener to be blocked on the first event, so that the next ones wait in the mailbox
+        while (recorder.started.getCount() > 0)
+            Thread.sleep(1);
+        for (int i = 0; i < 5; i++)
+            bus.publish(event(Status.GAIN));
+        bus.publish(event(Status.PAUSED));
+        recorder.blocked.countDown();
+
+        assertTrue(recorder.received.await(1, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(Status.PLAYING, Status.GAIN, Status.PAUSED), recorder.statuses());
+        assertEquals(4, bus.getCoalescedCount());
+    }
+
+    @Test
+    void dropsTheOldestEventsOfAListenerWhichFellBehind() throws InterruptedException {
+        final StreamPlayerEventBus bus = new StreamPlayerEventBus(mock(Logger.class), executor, 2);
+        final Recorder recorder = new Recorder(3);
+        recorder.blocked = new CountDownLatch(1);
+        bus.addListener(recorder);
+
+        bus.publish(event(Status.OPENED));
+        while (recorder.started.getCount() > 0)
+            Thread.sleep(1);
+        bus.publish(event(Status.PLAYING));
+        bus.publish(event(Status.PAUSED));
+        bus.publish(event(Status.RESUMED));
+        recorder.blocked.countDown();
+
+        assertTrue(recorder.received.await(1, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(Status.OPENED, Status.PAUSED, Status.RESUMED), recorder.statuses());
+        assertEquals(1, bus.getDroppedCount());
+    }
+
+    @Test
+    void neverDropsTheEventsAListenerCantMiss() throws InterruptedException {
+        final StreamPlayerEventBus bus = new StreamPlayerEventBus(mock(Logger.class), executor, 2);
+        final List<Object> calls = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch received = new CountDownLatch(4);
+        bus.addListener(new StreamPlayerStatusListener() {
+            @Override
+            public void opened(Object dataSource, Map<String, Object> properties) {
+                calls.add(dataSource);
+                received.countDown();
+            }
+
+            @Override
+            public void statusUpdated(StreamPlayerEvent event) {
+                calls.add(event.getPlayerStatus());
+                started.countDown();
+                try {
+                    blocked.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                received.countDown();
+            }
+        });
+
+        bus.publish(event(Status.PLAYING));
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        bus.publish(event(Status.PAUSED));
+        bus.publish(event(Status.EOM));
+        bus.publish(event(Status.STOPPED));
+        bus.publishOpened(null, "next", Collections.emptyMap());
+        blocked.countDown();
+
+        // Verify: only the pause made room, the other events went beyond the capacity
+        assertTrue(received.await(1, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(Status.PLAYING, Status.EOM, Status.STOPPED, "next"), calls);
+        assertEquals(1, bus.getDroppedCount());
+    }
+
+    @Test
+    void deliversOnThePublishingThreadWhenSynchronous() {
+        final StreamPlayerEventBus bus = new StreamPlayerEventBus(mock(Logger.class), executor, 256);
+        bus.setSynchronous(true);
+        final Recorder recorder = new Recorder(1);
+        bus.addListener(recorder);
+
+        bus.publish(event(Status.SEEKED));
+
+        assertEquals(Arrays.asList(Status.SEEKED), recorder.statuses());
+        assertSame(Thread.currentThread(), recorder.thread);
+    }
+
+    @Test
+    void aFailingListenerDoesntStopTheOthers() {
+        final StreamPlayerEventBus bus = new StreamPlayerEventBus(mock(Logger.class), executor, 256);
+        bus.setSynchronous(true);
+        final Recorder failing = new Recorder(1) {
+            @Override
+            public void statusUpdated(StreamPlayerEvent event) {
+                throw new IllegalStateException("Listener failure");
+            }
+        };
+        final Recorder recorder = new Recorder(1);
+        bus.addListener(failing);
+        bus.addListener(recorder);
+        bus.removeListener(failing);
+        bus.addListener(failing);
+
+        bus.publish(event(Status.EOM));
+
+        assertEquals(Arrays.asList(Status.EOM), recorder.statuses());
+    }
+
+    @Test
+    void deliversTheProgressOffThePublishingThread() throws InterruptedException {
+        final StreamPlayerEventBus bus = new StreamPlayerEventBus(mock(Logger.class), executor, 256);
+        final ProgressRecorder recorder = new ProgressRecorder(3);
+        bus.addListener(recorder);
+
+        for (int i = 0; i < 3; i++)
+            bus.publishProgress(progress(i));
+
+        assertTrue(recorder.received.await(1, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(0, 1, 2), recorder.encodedBytes);
+        assertNotSame(Thread.currentThread(), recorder.thread);
+    }
+
+    @Test
+    void dropsTheOldestProgressOfAListenerWhichFellBehind() throws InterruptedException {
+        final StreamPlayerEventBus bus = new StreamPlayerEventBus(mock(Logger.class), executor, 256);
+        final ProgressRecorder recorder = new ProgressRecorder(3);
+        recorder.blocked = new CountDownLatch(1);
+        bus.addListener(recorder, DropPolicy.DROP_OLDEST, 2);
+
+        bus.publishProgress(progress(0));
+        while (recorder.started.getCount() > 0)
+            Thread.sleep(1);
+        for (int i = 1; i < 5; i++)
+            bus.publishProgress(progress(i));
+        assertEquals(3, bus.getProgressBacklog(recorder));
+        assertTrue(bus.getProgressLag(recorder).toNanos() > 0);
+        recorder.blocked.countDown();
+
+        assertTrue(recorder.received.await(1, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(0, 3, 4), recorder.encodedBytes);
+        assertEquals(2, bus.getDroppedProgressCount(recorder));
+    }
+
+    @Test
+    void coalescesTheProgressWaitingForTheListener() throws InterruptedException {
+        final StreamPlayerEventBus bus = new StreamPlayerEventBus(mock(Logger.class), executor, 256);
+        final ProgressRecorder recorder = new ProgressRecorder(2);
+        recorder.blocked = new CountDownLatch(1);
+        bus.addListener(recorder, DropPolicy.COALESCE, 8);
+
+        bus.publishProgress(progress(0));
+        while (recorder.started.getCount() > 0)
+            Thread.sleep(1);
+        for (int i = 1; i < 5; i++)
+            bus.publishProgress(progress(i));
+        recorder.blocked.countDown();
+
+        assertTrue(recorder.received.await(1, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(0, 4), recorder.encodedBytes);
+        assertEquals(3, bus.getDroppedProgressCount(recorder));
+    }
+
+    @Test
+    void blocksThePublisherUntilTheListenerCatchesUp() throws InterruptedException {
+        final StreamPlayerEventBus bus = new StreamPlayerEventBus(mock(Logger.class), executor, 256);
+        final ProgressRecorder recorder = new ProgressRecorder(4);
+        recorder.blocked = new CountDownLatch(1);
+        bus.addListener(recorder, DropPolicy.BLOCK, 2);
+
+        bus.publishProgress(progress(0));
+        while (recorder.started.getCount() > 0)
+            Thread.sleep(1);
+        bus.publishProgress(progress(1));
+        bus.publishProgress(progress(2));
+        final Thread publisher = new Thread(() -> bus.publishProgress(progress(3)));
+        publisher.start();
+        publisher.join(100);
+        assertTrue(publisher.isAlive(), "The publisher should wait for room in the ring");
+        recorder.blocked.countDown();
+        publisher.join(1000);
+
+        assertTrue(recorder.received.await(1, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(0, 1, 2, 3), recorder.encodedBytes);
+        assertEquals(0, bus.getDroppedProgressCount(recorder));
+    }
+
+    @Test
+    void copiesTheProgressForEveryListener() throws InterruptedException {
+        final StreamPlayerEventBus bus = new StreamPlayerEventBus(mock(Logger.class), executor, 256);
+        final ProgressRecorder recorder = new ProgressRecorder(1);
+        bus.addListener(recorder);
+        final StreamPlayerProgress progress = progress(7);
+
+        bus.publishProgress(progress);
+        // The player refills its snapshot right away
+        progress.getPcmData()[0] = 42;
+
+        assertTrue(recorder.received.await(1, TimeUnit.SECONDS));
+        assertEquals(7, recorder.firstSamples.get(0).intValue());
+    }
+
+    @Test
+    void aPlainListenerGetsThePropertiesOfItsBuffer() throws InterruptedException {
+        final StreamPlayerEventBus bus = new StreamPlayerEventBus(mock(Logger.class), executor, 256);
+        assertFalse(bus.isPropertiesWanted());
+        bus.addListener(new ProgressRecorder(1));
+        assertFalse(bus.isPropertiesWanted());
+        final List<Object> frames = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch delivered = new CountDownLatch(1);
+        bus.addListener(new Recorder(0) {
+            @Override
+            public void progress(int nEncodedBytes, long microsecondPosition, byte[] pcmData,
+                                 Map<String, Object> properties) {
+                frames.add(properties.get("mp3.frame"));
+                delivered.countDown();
+            }
+        });
+        assertTrue(bus.isPropertiesWanted());
+        final StreamPlayerProgress progress = progress(0);
+        progress.setProperties(Collections.singletonMap("mp3.frame", 1L));
+
+        bus.publishProgress(progress);
+        // The player refills its snapshot with the next buffer right away
+        progress.setProperties(Collections.singletonMap("mp3.frame", 2L));
+
+        assertTrue(delivered.await(1, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(1L), frames);
+    }
+
+    @Test
+    void aStatusListenerGetsNoProgress() throws InterruptedException {
+        final StreamPlayerEventBus bus = new StreamPlayerEventBus(mock(Logger.class), executor, 256);
+        final List<Status> statuses = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch received = new CountDownLatch(1);
+        final StreamPlayerStatusListener listener = new StreamPlayerStatusListener() {
+            @Override
+            public void opened(Object dataSource, Map<String, Object> properties) {
+            }
+
+            @Override
+            public void statusUpdated(StreamPlayerEvent event) {
+                statuses.add(event.getPlayerStatus());
+                received.countDown();
+            }
+        };
+        bus.addListener(listener);
+
+        bus.publishProgress(progress(0));
+        bus.publish(event(Status.EOM));
+
+        assertTrue(received.await(1, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(Status.EOM), statuses);
+        assertEquals(0, bus.getProgressBacklog(listener));
+        assertEquals(0, bus.getDroppedProgressCount(listener));
+    }
+
+    @Test
+    void openedKeepsItsPlaceAmongTheStatusEvents() throws InterruptedException {
+        final StreamPlayerEventBus bus = new StreamPlayerEventBus(mock(Logger.class), executor, 256);
+        final List<Object> calls = Collections.synchronizedList(new ArrayList<>());
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch received = new CountDownLatch(3);
+        bus.addListener(new StreamPlayerStatusListener() {
+            @Override
+            public void opened(Object dataSource, Map<String, Object> properties) {
+                calls.add(properties.get("audio.type"));
+                threads.add(Thread.currentThread());
+                received.countDown();
+            }
+
+            @Override
+            public void statusUpdated(StreamPlayerEvent event) {
+                calls.add(event.getPlayerStatus());
+                threads.add(Thread.currentThread());
+                received.countDown();
+            }
+        });
+
+        bus.publish(event(Status.OPENING));
+        bus.publishOpened(null, "source", Collections.singletonMap("audio.type", "MP3"));
+        bus.publish(event(Status.OPENED));
+
+        assertTrue(received.await(1, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(Status.OPENING, "MP3", Status.OPENED), calls);
+        assertFalse(threads.contains(Thread.currentThread()));
+    }
+
+    @Test
+    void summarizesTheProgressAtTheRateOfTheSubscription() {
+        final StreamPlayerEventBus bus = new StreamPlayerEventBus(mock(Logger.class), executor, 256);
+        bus.setSynchronous(true);
+        final List<String> summaries = new ArrayList<>();
+        bus.addListener(summaryListener(summaries), 10);
+
+        // 100 frames per summary at 1000 Hz, 250 frames of a constant 0.5 followed by 50 frames of -0.25
+        bus.publishProgress(mono16(1, 250, 0.5f));
+        bus.publishProgress(mono16(2, 50, -0.25f));
+
+        assertEquals(Arrays.asList("1 100 0.50 0.50", "1 100 0.50 0.50", "2 100 0.50 0.40"), summaries);
+    }
+
+    @Test
+    void mergesTheSummariesOfAListenerWhichFellBehind() throws InterruptedException {
+        final StreamPlayerEventBus bus = new StreamPlayerEventBus(mock(Logger.class), executor, 256);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch received = new CountDownLatch(2);
+        final List<Long> frames = Collections.synchronizedList(new ArrayList<>());
+        final StreamPlayerSummaryListener listener = new SummaryListener() {
+            @Override
+            public void summary(PcmSummary summary) {
+                frames.add(summary.getFrames());
+                started.countDown();
+                try {
+                    blocked.await(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                received.countDown();
+            }
+        };
+        bus.addListener(listener, 10);
+
+        bus.publishProgress(mono16(1, 100, 0.5f));
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        for (int i = 0; i < 3; i++)
+            bus.publishProgress(mono16(1, 100, 0.5f));
+        assertEquals(2, bus.getProgressBacklog(listener));
+        blocked.countDown();
+
+        assertTrue(received.await(1, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(100L, 300L), frames);
+        assertEquals(2, bus.getDroppedProgressCount(listener));
+    }
+
+    @Test
+    void rejectsASummaryRateWhichIsNotPositive() {
+        final StreamPlayerEventBus bus = new StreamPlayerEventBus(mock(Logger.class), executor, 256);
+
+        assertThrows(IllegalArgumentException.class, () -> bus.addListener(summaryListener(new ArrayList<>()), 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> bus.addListener(summaryListener(new ArrayList<>()), Double.NaN));
+    }
+
+    private static StreamPlayerSummaryListener summaryListener(List<String> summaries) {
+        return new SummaryListener() {
+            @Override
+            public void summary(PcmSummary summary) {
+                summaries.add(summary.getEncodedBytes() + " " + summary.getFrames() + " "
+                        + String.format(Locale.ROOT, "%.2f %.2f", summary.getPeak(0), summary.getRms(0)));
+            }
+        };
+    }
+
+    /**
+     * @return the progress of frames 16 bit mono samples at 1000 Hz
+     */
+    private static StreamPlayerProgress mono16(int encodedBytes, int frames, float value) {
+        final short sample = (short) Math.round(value * 32768);
+        final byte[] pcm = new byte[frames * 2];
+        for (int i = 0; i < pcm.length; i += 2) {
+            pcm[i] = (byte) sample;
+            pcm[i + 1] = (byte) (sample >> 8);
+        }
+        final StreamPlayerProgress progress = new StreamPlayerProgress(null);
+        progress.setFormat(new AudioFormat(1000, 16, 1, true, false));
+        progress.update(encodedBytes, 0, pcm, pcm.length);
+        return progress;
+    }
+
+    private abstract static class SummaryListener implements StreamPlayerSummaryListener {
+
+        @Override
+        public void opened(Object dataSource, Map<String, Object> properties) {
+        }
+
+        @Override
+        public void statusUpdated(StreamPlayerEvent event) {
+        }
+    }
+
+    private static StreamPlayerProgress progress(int encodedBytes) {
+        final StreamPlayerProgress progress = new StreamPlayerProgress(null);
+        progress.update(encodedBytes, encodedBytes * 1000L, new byte[] { (byte) encodedBytes, 0, 0, 0 }, 4);
+        return progress;
+    }
+
+    private static StreamPlayerEvent event(Status status) {
+        return new StreamPlayerEvent(null, status, 0, null);
+    }
+
+    private static class ProgressRecorder implements StreamPlayerProgressListener {
+        final List<Integer> encodedBytes = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> firstSamples = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch received;
+        final CountDownLatch started = new CountDownLatch(1);
+        volatile CountDownLatch blocked;
+        volatile Thread thread;
+
+        ProgressRecorder(int expected) {
+            received = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void progress(StreamPlayerProgress progress) {
+            thread = Thread.currentThread();
+            started.countDown();
+            if (blocked != null) {
+                try {
+                    blocked.await(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            encodedBytes.add(progress.getEncodedBytes());
+            firstSamples.add((int) progress.getPcmData()[0]);
+            received.countDown();
+        }
+
+        @Override
+        public void opened(Object dataSource, Map<String, Object> properties) {
+        }
+
+        @Override
+        public void statusUpdated(StreamPlayerEvent event) {
+        }
+    }
+
+    private static class Recorder implements StreamPlayerListener {
+        final List<StreamPlayerEvent> events = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch received;
+        final CountDownLatch started = new CountDownLatch(1);
+        volatile CountDownLatch blocked;
+        volatile Thread thread;
+
+        Recorder(int expected) {
+            received = new CountDownLatch(expected);
+        }
+
+        List<Status> statuses() {
+            final List<Status> statuses = new ArrayList<>();
+            synchronized (events) {
+                for (final StreamPlayerEvent event : events)
+                    statuses.add(event.getPlayerStatus());
+            }
+            return statuses;
+        }
+
+        @Override
+        public void opened(Object dataSource, Map<String, Object> properties) {
+        }
+
+        @Override
+        public void progress(int nEncodedBytes, long microsecondPosition, byte[] pcmData, Map<String, Object> properties) {
+        }
+
+        @Override
+        public void statusUpdated(StreamPlayerEvent event) {
+            thread = Thread.currentThread();
+            started.countDown();
+            if (blocked != null) {
+                try {
+                    blocked.await(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            events.add(event);
+            received.countDown();
+        }
+    }
+}
@@ -5,8 +5,11 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
@@ -14,14 +17,25 @@ import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.atMost;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 import javax.sound.sampled.*;
 
@@ -30,6 +44,9 @@ import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 
+import com.goxr3plus.streamplayer.dsp.AudioProcessor;
+import com.goxr3plus.streamplayer.enums.CrossfadeCurve;
+import com.goxr3plus.streamplayer.enums.PauseMode;
 import com.goxr3plus.streamplayer.enums.Status;
 
 /**
@@ -459,6 +476,25 @@ public class StreamPlayerMethodsTest {
         //  The isStopped() method is not enough.
     }
 
+    @Test
+    void stopReleasesTheLineBeforeReturning() throws StreamPlayerException {
+        assumeTrue(hasSourceLines(), "No audio output");
+
+        for (int i = 0; i < 10; i++) {
+            player.open(new File("kick.mp3"));
+            player.play();
+
+            // Execute
+            final long start = System.nanoTime();
+            player.stop();
+
+            // Verify: the playback thread has ended, without playing what was left in the line
+            assertTrue(player.isStopped());
+            assertNull(player.getSourceDataLine());
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+        }
+    }
+
     @Test
     void pan() throws StreamPlayerException {
         double delta = 1e-6;
@@ -619,11 +655,482 @@ public class StreamPlayerMethodsTest {
     }
 
     @Test
-    @Disabled("This test is a placeholder for a suggested future test to be written.")
-    void equalizerKey() {
-        player.setEqualizerKey(0, 0);
+    void seekIndexCacheIsOptIn() {
+        assertNull(player.getSeekIndexCache());
+    }
 
-        fail("Test not done");
+    @Test
+    void seekToDuration() throws StreamPlayerException, IOException {
+        // Setup
+        final ArgumentCaptor<StreamPlayerEvent> events = ArgumentCaptor.forClass(StreamPlayerEvent.class);
+        final StreamPlayerListener listener = mock(StreamPlayerListener.class);
+        player.addStreamPlayerListener(listener);
+        player.getEventBus().setSynchronous(true);
+        assumeTrue(hasSourceLines(), "No audio output");
+        final Path directory = Files.createTempDirectory("seek-index");
+        player.setSeekIndexCache(new SeekIndexCache(directory, 1 << 20, false));
+        player.open(new File("kick.mp3"));
+
+        // Execute
+        final long frame;
+        try {
+            frame = player.seek(Duration.ofMillis(50));
+        } finally {
+            player.stop();
+            try (Stream<Path> entries = Files.list(directory)) {
+                for (final Path entry : (Iterable<Path>) entries::iterator)
+                    Files.delete(entry);
+            }
+            Files.delete(directory);
+        }
+
+        // Verify: the stream is on the frame of that time, and the seek is reported with its latency
+        assertEquals(2205, frame);
+        verify(listener, atLeast(1)).statusUpdated(events.capture());
+        final SeekReport report = (SeekReport) events.getAllValues().stream()
+                .filter(event -> event.getPlayerStatus() == Status.SEEKED)
+                .findFirst().get().getDescription();
+        assertEquals(2205, report.getFrame());
+        assertTrue(report.isSampleAccurate());
+        assertFalse(report.getLatency().isNegative());
+    }
+
+    @Test
+    void seekToFrame() throws StreamPlayerException {
+        assertThrows(IllegalArgumentException.class, () -> player.seekToFrame(-1));
+        assertThrows(IllegalArgumentException.class, () -> player.seek(Duration.ofMillis(-1)));
+
+        assumeTrue(hasSourceLines(), "No audio output");
+        player.open(new File("kick.wav"));
+        assertEquals(1000, player.seekToFrame(1000));
+    }
+
+    @Test
+    void aStopDuringAReopeningSeekLeavesThePlayerStopped() throws StreamPlayerException {
+        assumeTrue(hasSourceLines(), "No audio output");
+        player.open(new File("kick.wav"));
+        player.getEventBus().setSynchronous(true);
+        // Stops from another thread once the seek is under way, before it reopens the stream
+        player.addStreamPlayerListener(new StreamPlayerListener() {
+            @Override
+            public void opened(Object dataSource, Map<String, Object> properties) {
+            }
+
+            @Override
+            public void progress(int nEncodedBytes, long microsecondPosition, byte[] pcmData,
+                                 Map<String, Object> properties) {
+            }
+
+            @Override
+            public void statusUpdated(StreamPlayerEvent event) {
+                if (event.getPlayerStatus() != Status.SEEKING)
+                    return;
+                final Thread stopper = new Thread(player::stop);
+                stopper.start();
+                try {
+                    stopper.join();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        // Execute: nothing plays, so the seek reopens the stream
+        final long frame = player.seekToFrame(1000);
+
+        // Verify: the seek gave up, the player wasn't opened again
+        assertEquals(-1, frame);
+        assertEquals(Status.STOPPED, player.getStatus());
+    }
+
+    @Test
+    void seekWhilePlayingKeepsTheLine() throws StreamPlayerException {
+        assumeTrue(hasSourceLines(), "No audio output");
+        player.open(new File("kick.mp3"));
+        player.play();
+        player.pause();
+        final SourceDataLine line = player.getSourceDataLine();
+
+        // Execute
+        final long frame = player.seekToFrame(4000);
+
+        // Verify: the seek is done by the playback thread, on the same line
+        assertEquals(4000, frame);
+        assertSame(line, player.getSourceDataLine());
+        assertTrue(player.isPausedOrPlaying());
+        player.stop();
+    }
+
+    @Test
+    void aSynchronousListenerSeeksOnThePlaybackThread() throws StreamPlayerException, InterruptedException {
+        assumeTrue(hasSourceLines(), "No audio output");
+        player.getEventBus().setSynchronous(true);
+        final CompletableFuture<Long> seeked = new CompletableFuture<>();
+        // Seeks from the first progress event, on the playback thread
+        player.addStreamPlayerListener(new StreamPlayerListener() {
+            @Override
+            public void opened(Object dataSource, Map<String, Object> properties) {
+            }
+
+            @Override
+            public void progress(int nEncodedBytes, long microsecondPosition, byte[] pcmData,
+                                 Map<String, Object> properties) {
+                if (seeked.isDone())
+                    return;
+                try {
+                    seeked.complete(player.seekToFrame(4000));
+                } catch (StreamPlayerException ex) {
+                    seeked.completeExceptionally(ex);
+                }
+            }
+
+            @Override
+            public void statusUpdated(StreamPlayerEvent event) {
+            }
+        });
+        player.open(new File("kick.wav"));
+
+        // Execute
+        player.play();
+
+        // Verify: the seek is done in place, without waiting for the playback thread it runs on
+        try {
+            assertEquals(4000, (long) seeked.get(2, TimeUnit.SECONDS));
+        } catch (ExecutionException | TimeoutException ex) {
+            fail(ex);
+        } finally {
+            player.stop();
+        }
+    }
+
+    @Test
+    void pauseModeDefaultsToFlush() {
+        assertEquals(PauseMode.FLUSH, player.getPauseMode());
+
+        player.setPauseMode(PauseMode.KEEP_BUFFERED);
+
+        assertEquals(PauseMode.KEEP_BUFFERED, player.getPauseMode());
+        assertThrows(NullPointerException.class, () -> player.setPauseMode(null));
+    }
+
+    @Test
+    void pauseKeepsTheBufferedAudio() throws StreamPlayerException, InterruptedException {
+        assumeTrue(hasSourceLines(), "No audio output");
+        player.setPauseMode(PauseMode.KEEP_BUFFERED);
+        // A small line, so that the short file is still being written when the pause comes
+        player.setLineBufferSize(4096);
+        player.open(new File("kick.mp3"));
+        player.play();
+        Thread.sleep(20);
+
+        // Execute
+        player.pause();
+        final SourceDataLine line = player.getSourceDataLine();
+        for (int i = 0; i < 100 && line.isRunning(); i++)
+            Thread.sleep(5);
+
+        // Verify: the line is stopped with its audio, which the resume plays
+        assertFalse(line.isRunning());
+        assertTrue(line.available() < line.getBufferSize());
+        assertTrue(player.resume());
+        assertTrue(line.isRunning());
+        player.stop();
+    }
+
+    @Test
+    void awaitStatusReturnsAtTheEndOfThePlayback() throws StreamPlayerException, InterruptedException {
+        assumeTrue(hasSourceLines(), "No audio output");
+        player.open(new File("kick.mp3"));
+
+        assertFalse(player.awaitStatus(Status.STOPPED, Duration.ofMillis(10)));
+        player.play();
+
+        // Verify: the short file plays to its end, then the player is stopped
+        assertTrue(player.awaitStatus(Status.STOPPED, Duration.ofSeconds(5)));
+        assertTrue(player.isStopped());
+    }
+
+    @Test
+    void aSeekWhileStoppedReopensWithoutPlaying() throws StreamPlayerException {
+        assumeTrue(hasSourceLines(), "No audio output");
+        player.open(new File("kick.wav"));
+        player.play();
+        player.stop();
+
+        // Execute: a seek while stopped reopens the stream, it doesn't resume the playback
+        player.seekBytes(100);
+
+        // Verify
+        assertEquals(Status.OPENED, player.getStatus());
+        player.play();
+        assertTrue(player.isPlaying());
+        player.stop();
+    }
+
+    @Test
+    void submittedControlsApplyRightAwayWhenNothingPlays() {
+        final CompletableFuture<Void> speed = player.submitSpeedFactor(2);
+        final CompletableFuture<Void> stop = player.submitStop();
+
+        assertTrue(speed.isDone());
+        assertEquals(2, player.getSpeedFactor());
+        assertTrue(stop.isDone());
+        assertTrue(player.isStopped());
+        assertThrows(IllegalArgumentException.class, () -> player.submitSpeedFactor(10));
+    }
+
+    @Test
+    void submittedControlsAreAppliedByThePlaybackThread() throws Exception {
+        assumeTrue(hasSourceLines(), "No audio output");
+        player.setLineBufferSize(4096);
+        player.open(new File("kick.mp3"));
+        player.play();
+
+        // Execute
+        player.submitSpeedFactor(0.5).get(1, TimeUnit.SECONDS);
+        player.submitEqualizer(new float[] { 0.5f }, 1).get(1, TimeUnit.SECONDS);
+        final CompletableFuture<Void> stopped = player.submitStop();
+
+        // Verify: the line is released once the stop completes, and the latency is that of a buffer
+        stopped.get(1, TimeUnit.SECONDS);
+        assertTrue(player.isStopped());
+        assertNull(player.getSourceDataLine());
+        assertEquals(0.5, player.getSpeedFactor());
+        assertTrue(player.getMaximumCommandLatency().compareTo(Duration.ofMillis(500)) < 0);
+        assertTrue(player.getAverageCommandLatency().compareTo(player.getMaximumCommandLatency()) <= 0);
+    }
+
+    @Test
+    void aQueuedTrackFollowsOnTheSameLineWithoutAGap() throws StreamPlayerException, InterruptedException {
+        assumeTrue(hasSourceLines(), "No audio output");
+        final FrameCounter frames = new FrameCounter();
+        player.addAudioProcessor(frames);
+        final StreamPlayerListener listener = mock(StreamPlayerListener.class);
+        player.addStreamPlayerListener(listener);
+        player.open(new File("kick.wav"));
+
+        // Execute: the wav and the mp3 are both decoded to 16 bits mono
+        player.enqueue(new File("kick.wav"));
+        player.enqueue(new File("kick.mp3"));
+        player.play();
+
+        // Verify: every frame of the first two tracks reached the line, which was opened once
+        assertTrue(player.awaitStatus(Status.STOPPED, Duration.ofSeconds(5)));
+        assertEquals(0, player.getQueueSize());
+        assertTrue(frames.count >= 2 * 4688);
+        @SuppressWarnings("unchecked")
+        final ArgumentCaptor<Map<String, Object>> properties = ArgumentCaptor.forClass(Map.class);
+        verify(listener, timeout(1000).times(3)).opened(any(), properties.capture());
+        final Object line = properties.getAllValues().get(0).get("basicplayer.sourcedataline");
+        assertNotNull(line);
+        for (Map<String, Object> opened : properties.getAllValues())
+            assertSame(line, opened.get("basicplayer.sourcedataline"));
+        final ArgumentCaptor<StreamPlayerEvent> events = ArgumentCaptor.forClass(StreamPlayerEvent.class);
+        verify(listener, timeout(1000).atLeastOnce()).statusUpdated(events.capture());
+        assertEquals(2, events.getAllValues().stream()
+            .filter(event -> event.getPlayerStatus() == Status.TRACK_CHANGED).count());
+    }
+
+    @Test
+    void aQueuedTrackIsSplicedSampleAccurately() throws StreamPlayerException, InterruptedException {
+        assumeTrue(hasSourceLines(), "No audio output");
+        final FrameCounter frames = new FrameCounter();
+        player.addAudioProcessor(frames);
+        player.open(new File("kick.wav"));
+        player.enqueue(new File("kick.wav"));
+
+        // Execute
+        player.play();
+
+        // Verify: no frame lost nor added at the boundary
+        assertTrue(player.awaitStatus(Status.STOPPED, Duration.ofSeconds(5)));
+        assertEquals(2 * 4688, frames.count);
+    }
+
+    @Test
+    void theSilenceAddedByTheMp3EncoderIsLeftOutBetweenTracks() throws StreamPlayerException, InterruptedException {
+        assumeTrue(hasSourceLines(), "No audio output");
+        final FrameCounter frames = new FrameCounter();
+        player.addAudioProcessor(frames);
+        player.open(new File("kick.mp3"));
+        player.enqueue(new File("kick.mp3"));
+
+        // Execute
+        player.play();
+
+        // Verify: the first track plays up to the padding of the encoder, the next one from the end of its delay
+        assertTrue(player.awaitStatus(Status.STOPPED, Duration.ofSeconds(5)));
+        assertEquals(1152 + 576 + Mp3SeekIndex.DECODER_DELAY + 4688 + 4688, frames.count);
+    }
+
+    @Test
+    void aQueuedTrackCrossfadesIntoTheCurrentOne() throws Exception {
+        assumeTrue(hasSourceLines(), "No audio output");
+        final FrameCounter frames = new FrameCounter();
+        player.addAudioProcessor(frames);
+        player.setCrossfade(Duration.ofMillis(100));
+        player.open(silence(44100));
+        player.enqueue(silence(44100));
+
+        // Execute
+        player.play();
+
+        // Verify: the crossfade started with the block in which the last 100 ms of the first track began
+        assertTrue(player.awaitStatus(Status.STOPPED, Duration.ofSeconds(5)));
+        assertTrue(frames.count >= 2 * 44100 - 4410, "Overlap too long: " + frames.count);
+        assertTrue(frames.count <= 2 * 44100 - 4410 + 4096 / 2, "Overlap too short: " + frames.count);
+    }
+
+    @Test
+    void crossfadeCannotBeNegative() {
+        assertEquals(Duration.ZERO, player.getCrossfade());
+        assertThrows(IllegalArgumentException.class, () -> player.setCrossfade(Duration.ofMillis(-1)));
+
+        player.setCrossfade(Duration.ofSeconds(3));
+        player.setCrossfadeCurve(CrossfadeCurve.LINEAR);
+
+        assertEquals(Duration.ofSeconds(3), player.getCrossfade());
+        assertEquals(CrossfadeCurve.LINEAR, player.getCrossfadeCurve());
+    }
+
+    @Test
+    void aQueuedTrackOfAnotherFormatReopensTheLine() throws Exception {
+        assumeTrue(hasSourceLines(), "No audio output");
+        final AudioFormat stereo = new AudioFormat(22050, 16, 2, true, false);
+        final File file = File.createTempFile("stereo", ".wav");
+        file.deleteOnExit();
+        AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(new byte[2205 * 4]), stereo, 2205),
+            AudioFileFormat.Type.WAVE, file);
+        final FrameCounter frames = new FrameCounter();
+        player.addAudioProcessor(frames);
+        player.open(new File("kick.wav"));
+        final SourceDataLine line = player.getSourceDataLine();
+
+        // Execute
+        player.enqueue(file);
+        player.play();
+
+        // Verify: the same line played both tracks, the second one in its own format
+        for (int i = 0; i < 500 && frames.channels != 2; i++)
+            Thread.sleep(5);
+        assertSame(line, player.getSourceDataLine());
+        assertTrue(line.getFormat().matches(stereo));
+        assertTrue(player.awaitStatus(Status.STOPPED, Duration.ofSeconds(5)));
+        assertEquals(4688 + 2205, frames.count);
+    }
+
+    @Test
+    void aQueuedTrackWhichCannotBeOpenedIsSkipped() throws StreamPlayerException, InterruptedException {
+        assumeTrue(hasSourceLines(), "No audio output");
+        final FrameCounter frames = new FrameCounter();
+        player.addAudioProcessor(frames);
+        player.open(new File("kick.wav"));
+        player.enqueue(new File("pom.xml"));
+        player.enqueue(new File("kick.wav"));
+
+        // Execute
+        player.play();
+
+        // Verify
+        assertTrue(player.awaitStatus(Status.STOPPED, Duration.ofSeconds(5)));
+        assertEquals(2 * 4688, frames.count);
+    }
+
+    @Test
+    void clearingTheQueueEndsWithTheCurrentTrack() throws StreamPlayerException, InterruptedException {
+        assumeTrue(hasSourceLines(), "No audio output");
+        final FrameCounter frames = new FrameCounter();
+        player.addAudioProcessor(frames);
+        player.open(new File("kick.wav"));
+        player.enqueue(new File("kick.wav"));
+        assertEquals(1, player.getQueueSize());
+
+        // Execute
+        player.clearQueue();
+        player.play();
+
+        // Verify
+        assertEquals(0, player.getQueueSize());
+        assertTrue(player.awaitStatus(Status.STOPPED, Duration.ofSeconds(5)));
+        assertEquals(4688, frames.count);
+        player.close();
+        assertThrows(IllegalStateException.class, () -> player.enqueue(new File("kick.wav")));
+    }
+
+    /**
+     * Counts the frames going to the line, on the playback thread.
+     */
+    static final class FrameCounter implements AudioProcessor {
+        volatile long count;
+        volatile int channels;
+
+        @Override
+        public void configure(float sampleRate, int channels) {
+            this.channels = channels;
+        }
+
+        @Override
+        public void process(float[] samples, int frames, int channels) {
+            count += frames;
+        }
+    }
+
+    /**
+     * @return a temporary WAV file of silence, 16 bits mono 44.1 kHz as kick.wav is decoded to
+     */
+    static File silence(final int frames) throws IOException {
+        final File file = File.createTempFile("silence", ".wav");
+        file.deleteOnExit();
+        AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(new byte[frames * 2]),
+            new AudioFormat(44100, 16, 1, true, false), frames), AudioFileFormat.Type.WAVE, file);
+        return file;
+    }
+
+    private static boolean hasSourceLines() {
+        return AudioSystem.getSourceLineInfo(new Line.Info(SourceDataLine.class)).length > 0;
+    }
+
+    @Test
+    void equalizerBand() {
+        player.setEqualizerBand(9, 6f);
+
+        assertEquals(6f, player.getEqualizer().getBandGain(9), 1e-6f);
+        assertThrows(IllegalArgumentException.class, () -> player.setEqualizerBand(10, 6f));
+        assertThrows(IllegalArgumentException.class, () -> player.setEqualizerBand(-1, 6f));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    void equalizerMapsTheSubbandsOfTheMp3DecoderOnTheOctaveBands() {
+        final float[] subbands = new float[32];
+        Arrays.fill(subbands, 0.5f);
+        player.setEqualizer(subbands, 32);
+        for (int band = 0; band < 10; band++)
+            assertEquals(6f, player.getEqualizer().getBandGain(band), 1e-6f);
+
+        // Execute: the first subband, up to 689 Hz, holds the octave bands up to 250 Hz
+        player.setEqualizerBand(9, -3f);
+        player.setEqualizer(new float[] { 1f, 0f }, 1);
+
+        // Verify: the 500 Hz band also overlaps the second subband, the other bands are left as they were
+        for (int band = 0; band < 4; band++)
+            assertEquals(12f, player.getEqualizer().getBandGain(band), 1e-6f);
+        assertEquals(9f, player.getEqualizer().getBandGain(4), 1e-6f);
+        assertEquals(6f, player.getEqualizer().getBandGain(5), 1e-6f);
+        assertEquals(-3f, player.getEqualizer().getBandGain(9), 1e-6f);
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    void equalizerKeyIsASubbandOfTheMp3Decoder() {
+        // The 8 kHz band, from 5657 Hz to 11314 Hz, overlaps the subbands 8 to 16
+        player.setEqualizerKey(0.9f, 31);
+        player.setEqualizerKey(0.9f, 12);
+
+        assertEquals(0.1f * 12, player.getEqualizer().getBandGain(8), 1e-5f);
+        assertEquals(0f, player.getEqualizer().getBandGain(7), 1e-6f);
+        assertThrows(IllegalArgumentException.class, () -> player.setEqualizerKey(0.5f, 32));
+        assertThrows(IllegalArgumentException.class, () -> player.setEqualizerKey(0.5f, -1));
     }
 
     @Test
@@ -0,0 +1,85 @@
+package com.goxr3plus.streamplayer.stream;
+
+import com.goxr3plus.streamplayer.enums.ThreadMode;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.mock;
+
+class StreamPlayerRegistryTest {
+
+    @Test
+    void aPlayerIsLiveUntilClosed() {
+        final StreamPlayer player = new StreamPlayer(mock(Logger.class));
+        assertTrue(StreamPlayerRegistry.getLivePlayers().contains(player));
+
+        player.close();
+        player.close();
+
+        assertFalse(StreamPlayerRegistry.getLivePlayers().contains(player));
+        assertNull(player.getSourceDataLine());
+    }
+
+    @Test
+    void aClosedPlayerCantBeOpened() {
+        final StreamPlayer player = new StreamPlayer(mock(Logger.class));
+        player.close();
+
+        assertThrows(IllegalStateException.class, () -> player.open(new File("kick.wav")));
+    }
+
+    @Test
+    void tryWithResourcesClosesThePlayer() {
+        final StreamPlayer closed;
+        try (StreamPlayer player = new StreamPlayer(mock(Logger.class))) {
+            closed = player;
+        }
+
+        assertFalse(StreamPlayerRegistry.getLivePlayers().contains(closed));
+    }
+
+    @Test
+    void theSharedExecutorsCountTheirThreads() throws InterruptedException {
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        StreamPlayerRegistry.getPlaybackExecutor().execute(() -> {
+            running.countDown();
+            try {
+                release.await(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        assertTrue(running.await(1, TimeUnit.SECONDS));
+        assertTrue(StreamPlayerRegistry.getThreadCount() >= 1);
+        release.countDown();
+    }
+
+    @Test
+    void virtualThreadsAreRefusedWhereUnsupported() {
+        assumeFalse(StreamPlayerRegistry.isVirtualThreadSupported());
+
+        assertThrows(UnsupportedOperationException.class,
+                () -> new StreamPlayer(mock(Logger.class), ThreadMode.VIRTUAL));
+    }
+
+    @Test
+    void theVirtualExecutorsRunVirtualThreads() throws Exception {
+        assumeTrue(StreamPlayerRegistry.isVirtualThreadSupported());
+
+        // Thread.isVirtual() isn't in the Java 8 API the tests are compiled against
+        final Future<Object> virtual = StreamPlayerRegistry.getPlaybackExecutor(ThreadMode.VIRTUAL)
+                .submit(() -> Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()));
+
+        assertEquals(Boolean.TRUE, virtual.get(1, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,132 @@
+package com.goxr3plus.streamplayer.stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Latency from {@link StreamPlayer#resume()} to the first buffer written to the line, with the playback thread
+ * waiting in the pause before every call.
+ * <p>
+ * Plays 30 seconds of silence through the default mixer, so it needs a sound card. Run with {@code main}, from the
+ * test classpath.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StreamPlayerResumeBenchmark {
+
+    private static final AudioFormat FORMAT = new AudioFormat(44100, 16, 2, true, false);
+    private static final int SECONDS = 30;
+
+    private final WriteCounter writes = new WriteCounter();
+    private File file;
+    private StreamPlayer player;
+
+    @Setup(Level.Trial)
+    public void createFile() throws IOException {
+        file = File.createTempFile("resume-benchmark", ".wav");
+        final long frames = (long) FORMAT.getFrameRate() * SECONDS;
+        final byte[] silence = new byte[(int) frames * FORMAT.getFrameSize()];
+        AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(silence), FORMAT, frames),
+                AudioFileFormat.Type.WAVE, file);
+
+        player = new StreamPlayer(Logger.getLogger(StreamPlayerResumeBenchmark.class.getName()));
+        player.getEventBus().setSynchronous(true);
+        player.addStreamPlayerListener(writes);
+    }
+
+    @Setup(Level.Iteration)
+    public void play() throws StreamPlayerException {
+        player.open(file);
+        player.play();
+        while (writes.thread == null)
+            Thread.yield();
+    }
+
+    /**
+     * Pause, and wait for the playback thread to stop the line and go to sleep.
+     */
+    @Setup(Level.Invocation)
+    public void pause() {
+        player.pause();
+        final Thread thread = writes.thread;
+        while (player.getSourceDataLine().isRunning() || thread.getState() != Thread.State.WAITING
+                && thread.getState() != Thread.State.TIMED_WAITING)
+            Thread.yield();
+    }
+
+    @Benchmark
+    public long resumeToFirstWrite() {
+        final long count = writes.count;
+        player.resume();
+        while (writes.count == count && !player.isStopped()) {
+            // Spin, the measure is in microseconds
+        }
+        return writes.count;
+    }
+
+    @TearDown(Level.Iteration)
+    public void stop() {
+        player.stop();
+        writes.thread = null;
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() {
+        player.reset();
+        file.delete();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(StreamPlayerResumeBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    /**
+     * Counts the buffers written to the line, on the playback thread since the bus is synchronous.
+     */
+    private static class WriteCounter implements StreamPlayerProgressListener {
+        volatile long count;
+        volatile Thread thread;
+
+        @Override
+        public void progress(StreamPlayerProgress progress) {
+            thread = Thread.currentThread();
+            count++;
+        }
+
+        @Override
+        public void opened(Object dataSource, Map<String, Object> properties) {
+        }
+
+        @Override
+        public void statusUpdated(StreamPlayerEvent event) {
+        }
+    }
+}
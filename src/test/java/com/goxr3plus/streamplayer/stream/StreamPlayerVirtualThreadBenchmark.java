@@ -0,0 +1,129 @@
+package com.goxr3plus.streamplayer.stream;
+
+import com.goxr3plus.streamplayer.enums.Status;
+import com.goxr3plus.streamplayer.enums.ThreadMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * The time for 1,000 players to play one second of audio at once, with their playback, events and decode-ahead on
+ * platform threads or on virtual threads. One second is the best possible, the rest is the time the players wait for
+ * a thread and the time spent switching between threads.
+ * <p>
+ * Plays through the offline mixer of the tests, see {@link OfflineMixerProvider}. Run with {@code main}, from the
+ * test classpath; the virtual threads are only measured on Java 21 and later, with the classes of the multi-release
+ * build.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StreamPlayerVirtualThreadBenchmark {
+
+    private static final AudioFormat FORMAT = new AudioFormat(44100, 16, 2, true, false);
+    private static final int PLAYERS = 1000;
+
+    @Param({ "PLATFORM", "VIRTUAL" })
+    public ThreadMode threadMode;
+
+    private final Logger logger = Logger.getLogger(StreamPlayerVirtualThreadBenchmark.class.getName());
+    private final List<StreamPlayer> playerList = new ArrayList<>();
+    private File file;
+    private volatile CountDownLatch endOfMedia;
+
+    @Setup(Level.Trial)
+    public void createPlayers() throws IOException {
+        // The players log every status change
+        logger.setLevel(java.util.logging.Level.WARNING);
+        file = File.createTempFile("virtual-thread-benchmark", ".wav");
+        final long frames = (long) FORMAT.getFrameRate();
+        final byte[] silence = new byte[(int) frames * FORMAT.getFrameSize()];
+        AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(silence), FORMAT, frames),
+                AudioFileFormat.Type.WAVE, file);
+
+        for (int i = 0; i < PLAYERS; i++) {
+            final StreamPlayer player = new StreamPlayer(logger, threadMode);
+            player.addStreamPlayerListener(new EndOfMediaCounter());
+            playerList.add(player);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void open() throws StreamPlayerException {
+        endOfMedia = new CountDownLatch(PLAYERS);
+        for (StreamPlayer player : playerList)
+            player.open(file);
+    }
+
+    @Benchmark
+    public long playAll() throws StreamPlayerException, InterruptedException {
+        for (StreamPlayer player : playerList)
+            player.play();
+        endOfMedia.await();
+        return endOfMedia.getCount();
+    }
+
+    @TearDown(Level.Trial)
+    public void closePlayers() {
+        for (StreamPlayer player : playerList)
+            player.close();
+        playerList.clear();
+        file.delete();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final String[] threadModes = StreamPlayerRegistry.isVirtualThreadSupported()
+                ? new String[] { ThreadMode.PLATFORM.name(), ThreadMode.VIRTUAL.name() }
+                : new String[] { ThreadMode.PLATFORM.name() };
+        new Runner(new OptionsBuilder().include(StreamPlayerVirtualThreadBenchmark.class.getSimpleName())
+                .param("threadMode", threadModes).build()).run();
+    }
+
+    private class EndOfMediaCounter implements StreamPlayerListener {
+
+        @Override
+        public void opened(Object dataSource, Map<String, Object> properties) {
+        }
+
+        @Override
+        public void progress(int nEncodedBytes, long microsecondPosition, byte[] pcmData,
+                             Map<String, Object> properties) {
+        }
+
+        @Override
+        public void statusUpdated(StreamPlayerEvent event) {
+            if (event.getPlayerStatus() == Status.EOM)
+                endOfMedia.countDown();
+        }
+    }
+}